@@ -0,0 +1,70 @@
+package com.example.soundscape.auth;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.spotify.SpotifyTokenManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.InMemoryOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.stereotype.Service;
+
+/**
+ * Stores the tokens from a Spotify login on our User row.
+ *
+ * CustomOAuth2UserService only sees the access token; the refresh token and expiry arrive
+ * here, when Spring Security saves the authorized client after the login succeeds. They are
+ * written to the user and handed to SpotifyTokenManager so the token can be renewed later.
+ */
+@Service
+public class SpotifyAuthorizedClientService implements OAuth2AuthorizedClientService {
+
+    private final OAuth2AuthorizedClientService delegate;
+    private final UserRepository userRepository;
+    private final SpotifyTokenManager tokenManager;
+
+    public SpotifyAuthorizedClientService(ClientRegistrationRepository clientRegistrations,
+                                          UserRepository userRepository,
+                                          SpotifyTokenManager tokenManager) {
+        this.delegate = new InMemoryOAuth2AuthorizedClientService(clientRegistrations);
+        this.userRepository = userRepository;
+        this.tokenManager = tokenManager;
+    }
+
+    @Override
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId, String principalName) {
+        return delegate.loadAuthorizedClient(clientRegistrationId, principalName);
+    }
+
+    @Override
+    public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+        delegate.saveAuthorizedClient(authorizedClient, principal);
+
+        if (!(principal.getPrincipal() instanceof SoundscapeUserPrincipal userPrincipal)) {
+            return;
+        }
+        userRepository.findById(userPrincipal.getUser().getId()).ifPresent(user -> {
+            OAuth2AccessToken accessToken = authorizedClient.getAccessToken();
+            OAuth2RefreshToken refreshToken = authorizedClient.getRefreshToken();
+
+            user.setSpotifyAccessToken(accessToken.getTokenValue());
+            user.setSpotifyTokenExpiresAt(accessToken.getExpiresAt());
+            if (refreshToken != null) {
+                user.setSpotifyRefreshToken(refreshToken.getTokenValue());
+            }
+            User savedUser = userRepository.save(user);
+            tokenManager.onLogin(savedUser, accessToken.getTokenValue(),
+                    refreshToken != null ? refreshToken.getTokenValue() : null, accessToken.getExpiresAt());
+            System.out.println("Stored Spotify tokens for " + savedUser.getUsername()
+                    + " (refresh token: " + (refreshToken != null ? "PRESENT" : "MISSING") + ")");
+        });
+    }
+
+    @Override
+    public void removeAuthorizedClient(String clientRegistrationId, String principalName) {
+        delegate.removeAuthorizedClient(clientRegistrationId, principalName);
+    }
+}
@@ -2,6 +2,7 @@ package com.example.soundscape.controllers;
 
 import com.example.soundscape.models.User;
 import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.MusicAnalysisSnapshots;
 import com.example.soundscape.services.SpotifyService;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -18,10 +19,13 @@ public class MusicAnalysisController {
 
     private final UserRepository userRepository;
     private final SpotifyService spotifyService;
+    private final MusicAnalysisSnapshots musicAnalysisSnapshots;
 
-    public MusicAnalysisController(UserRepository userRepository, SpotifyService spotifyService) {
+    public MusicAnalysisController(UserRepository userRepository, SpotifyService spotifyService,
+                                   MusicAnalysisSnapshots musicAnalysisSnapshots) {
         this.userRepository = userRepository;
         this.spotifyService = spotifyService;
+        this.musicAnalysisSnapshots = musicAnalysisSnapshots;
     }
 
     @GetMapping("/music-analysis")
@@ -36,12 +40,12 @@ public class MusicAnalysisController {
             model.addAttribute("user", user);
             
             if (user.isSpotifyConnected()) {
-                // Get comprehensive music analysis
-                Map<String, Object> musicAnalysis = spotifyService.getUserMusicAnalysis(user.getSpotifyAccessToken());
+                // Get comprehensive music analysis (the stored snapshot, refreshed in the background when stale)
+                Map<String, Object> musicAnalysis = musicAnalysisSnapshots.analysis(user);
                 model.addAttribute("musicAnalysis", musicAnalysis);
                 
                 // Get recently played tracks
-                Map<String, Object> recentlyPlayed = spotifyService.getRecentlyPlayed(user.getSpotifyAccessToken(), 20);
+                Map<String, Object> recentlyPlayed = spotifyService.getRecentlyPlayed(user, 20);
                 model.addAttribute("recentlyPlayed", recentlyPlayed);
                 
                 model.addAttribute("connected", true);
@@ -65,7 +69,7 @@ public class MusicAnalysisController {
         if (userOpt.isPresent() && userOpt.get().isSpotifyConnected()) {
             User user = userOpt.get();
             try {
-                Map<String, Object> analysis = spotifyService.getUserMusicAnalysis(user.getSpotifyAccessToken());
+                Map<String, Object> analysis = musicAnalysisSnapshots.analysis(user);
                 System.out.println("Music analysis data: " + analysis);
                 return analysis;
             } catch (Exception e) {
@@ -90,7 +94,7 @@ public class MusicAnalysisController {
         if (userOpt.isPresent() && userOpt.get().isSpotifyConnected()) {
             User user = userOpt.get();
             try {
-                Map<String, Object> recentlyPlayed = spotifyService.getRecentlyPlayed(user.getSpotifyAccessToken(), 50);
+                Map<String, Object> recentlyPlayed = spotifyService.getRecentlyPlayed(user, 50);
                 System.out.println("Recently played data: " + recentlyPlayed);
                 return recentlyPlayed;
             } catch (Exception e) {
@@ -4,6 +4,7 @@ import com.example.soundscape.models.Post;
 import com.example.soundscape.models.User;
 import com.example.soundscape.repositories.PostRepository;
 import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.spotify.TrackMetadataCache;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
@@ -15,23 +16,38 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Controller
 public class PostController {
     private final PostRepository postRepository;
     private final UserRepository userRepository;
+    private final TrackMetadataCache trackMetadataCache;
 
-    public PostController(PostRepository postRepository, UserRepository userRepository) {
+    public PostController(PostRepository postRepository, UserRepository userRepository, TrackMetadataCache trackMetadataCache) {
         this.postRepository = postRepository;
         this.userRepository = userRepository;
+        this.trackMetadataCache = trackMetadataCache;
     }
 
     @GetMapping("/posts")
-    public String postsPage(Model model) {
-        model.addAttribute("posts", postRepository.findAllByOrderByCreatedAtDesc());
+    public String postsPage(Model model, @AuthenticationPrincipal UserDetails viewer) {
+        List<Post> posts = postRepository.findAllByOrderByCreatedAtDesc();
+        model.addAttribute("posts", posts);
+        addSharedSongs(model, posts, viewer);
         return "posts";
     }
 
+    // Metadata of the songs shared in these posts, from the shared track cache in one lookup.
+    // The feed never waits on Spotify: songs not cached yet are fetched in the background and
+    // the post's stored copy is shown meanwhile.
+    private void addSharedSongs(Model model, List<Post> posts, UserDetails viewer) {
+        List<String> trackIds = posts.stream().map(Post::getSpotifyTrackId).filter(Objects::nonNull).toList();
+        User user = viewer != null ? userRepository.findByUsername(viewer.getUsername()).orElse(null) : null;
+        model.addAttribute("sharedSongs", trackIds.isEmpty() ? Map.of() : trackMetadataCache.getCached(user, trackIds));
+    }
+
     @PostMapping("/posts")
     public String createPost(@RequestParam String content, @AuthenticationPrincipal UserDetails user) {
         String username = user.getUsername();
@@ -44,7 +60,7 @@ public class PostController {
     }
 
     @GetMapping("/posts/search")
-    public String searchPosts(@RequestParam String q, Model model) {
+    public String searchPosts(@RequestParam String q, Model model, @AuthenticationPrincipal UserDetails viewer) {
 
         List<Post> posts;
         String queryPrefix = "from:";
@@ -64,6 +80,7 @@ public class PostController {
         }
 
         model.addAttribute("posts", posts);
+        addSharedSongs(model, posts, viewer);
         return "posts"; // Reuse same template
     }
 
@@ -4,15 +4,31 @@ import com.example.soundscape.models.Post;
 import com.example.soundscape.models.User;
 import com.example.soundscape.repositories.PostRepository;
 import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.NowPlayingStream;
+import com.example.soundscape.services.PlaybackCommandQueue;
+import com.example.soundscape.services.PlaybackCommandQueue.Action;
+import com.example.soundscape.services.PlaybackCommandQueue.Command;
+import com.example.soundscape.services.SavedTracksLibrary;
 import com.example.soundscape.services.SpotifyService;
+import com.example.soundscape.services.TasteMatcher;
+import com.example.soundscape.services.TrackSearch;
 import com.example.soundscape.services.UserService;
+import com.example.soundscape.spotify.SpotifyResponses.ApiError;
+import com.example.soundscape.spotify.SpotifyResponses.ApiResponse;
+import com.example.soundscape.spotify.SpotifyResponses.PlaybackStatus;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistsResponse;
+import com.example.soundscape.spotify.SpotifyResponses.SavedTrackSummary;
+import com.example.soundscape.spotify.SpotifyResponses.SearchResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Optional;
 
@@ -23,12 +39,22 @@ public class SpotifyController {
     private final SpotifyService spotifyService;
     private final PostRepository postRepository;
     private final UserService userService;
-
-    public SpotifyController(UserRepository userRepository, SpotifyService spotifyService, PostRepository postRepository, UserService userService) {
+    private final PlaybackCommandQueue playbackCommands;
+    private final TrackSearch trackSearch;
+    private final NowPlayingStream nowPlayingStream;
+    private final TasteMatcher tasteMatcher;
+
+    public SpotifyController(UserRepository userRepository, SpotifyService spotifyService, PostRepository postRepository,
+                             UserService userService, PlaybackCommandQueue playbackCommands, TrackSearch trackSearch,
+                             NowPlayingStream nowPlayingStream, TasteMatcher tasteMatcher) {
         this.userRepository = userRepository;
         this.spotifyService = spotifyService;
         this.postRepository = postRepository;
         this.userService = userService;
+        this.playbackCommands = playbackCommands;
+        this.trackSearch = trackSearch;
+        this.nowPlayingStream = nowPlayingStream;
+        this.tasteMatcher = tasteMatcher;
     }
 
     @GetMapping("/now-playing")
@@ -49,29 +75,32 @@ public class SpotifyController {
             model.addAttribute("connected", hasSpotifyToken);
 
             if (hasSpotifyToken) {
+                PlaybackStatus requestedTrack = null;
                 if (playTrackId != null && !playTrackId.isEmpty()) {
-                    try {
-                        // Tell spotify to play this track
-                        spotifyService.playTrack(user.getSpotifyAccessToken(), playTrackId);
-                        // Give Spotify's API a moment to catch up
-                        Thread.sleep(500);
-                    } catch (Exception e) {
-                        System.out.println("Error auto-playing track: " + e.getMessage());
+                    // Queue the play command instead of waiting for Spotify to start; the page shows
+                    // the requested track right away and confirms it through the command's outcome
+                    long commandId = playbackCommands.submit(user, Command.playTrack(playTrackId));
+                    model.addAttribute("pendingCommandId", commandId);
+
+                    Map<String, String> track = spotifyService.getTrackById(user, playTrackId);
+                    if (!track.isEmpty()) {
+                        requestedTrack = PlaybackStatus.playing(track.get("name"), track.get("artist"),
+                                track.get("album"), track.get("image"), track.get("id"));
                     }
                 }
                 // Get parsed Spotify profile
-                Map<String, String> spotifyProfile = spotifyService.getUserProfile(user.getSpotifyAccessToken());
+                Map<String, String> spotifyProfile = spotifyService.getUserProfile(user);
                 model.addAttribute("spotifyProfile", spotifyProfile);
 
-                // Get parsed currently playing track
-                Map<String, String> trackInfo = spotifyService.getCurrentlyPlaying(user.getSpotifyAccessToken());
+                // Get parsed currently playing track (or the one that is about to start)
+                PlaybackStatus trackInfo = requestedTrack != null ? requestedTrack : spotifyService.getCurrentlyPlaying(user);
 
                 // 1. OFFLINE FALLBACK LOGIC
                 // If nothing is playing, try to get the last played song
-                if ("false".equals(trackInfo.get("isPlaying"))) {
+                if (!trackInfo.playing()) {
                     try {
                         // Fetch 1 recent track
-                        Map<String, Object> recentHistory = spotifyService.getRecentlyPlayed(user.getSpotifyAccessToken(), 1);
+                        Map<String, Object> recentHistory = spotifyService.getRecentlyPlayed(user, 1);
 
                         // Safe casting to get the list of tracks
                         @SuppressWarnings("unchecked")
@@ -80,22 +109,16 @@ public class SpotifyController {
                         if (tracks != null && !tracks.isEmpty()) {
                             Map<String, Object> lastTrack = tracks.get(0);
 
-                            // Map recent track data to the format 'now-playing.html' expects
-                            trackInfo.put("trackName", (String) lastTrack.get("name"));
-                            trackInfo.put("albumName", (String) lastTrack.get("album_name"));
-                            trackInfo.put("albumImage", (String) lastTrack.get("image_url"));
-
                             // Handle artist list safely
                             @SuppressWarnings("unchecked")
                             java.util.List<String> artists = (java.util.List<String>) lastTrack.get("artists");
-                            if (artists != null && !artists.isEmpty()) {
-                                trackInfo.put("artistName", artists.get(0));
-                            }
-
-                            // Add a special flag so we can change the UI text later
-                            trackInfo.put("isRecent", "true");
-                            // We set isPlaying to true so the player SHOWS the info, even though it's paused
-                            trackInfo.put("isPlaying", "true");
+
+                            // Shown as playing (isRecent changes the UI text) so the player displays it
+                            trackInfo = PlaybackStatus.recent(
+                                    (String) lastTrack.get("name"),
+                                    artists != null && !artists.isEmpty() ? artists.get(0) : null,
+                                    (String) lastTrack.get("album_name"),
+                                    (String) lastTrack.get("image_url"));
                         }
                     } catch (Exception e) {
                         System.out.println("Error fetching fallback recent track: " + e.getMessage());
@@ -105,7 +128,7 @@ public class SpotifyController {
                 // 2. LIKED SONGS LOGIC
                 // Fetch user's saved tracks for the list below
                 try {
-                    java.util.List<Map<String, String>> likedSongs = spotifyService.getUserSavedTracks(user.getSpotifyAccessToken(), 0);
+                    java.util.List<SavedTrackSummary> likedSongs = spotifyService.getUserSavedTracks(user, 0);
                     model.addAttribute("likedSongs", likedSongs);
 
                     // Temporary console log for verification
@@ -119,10 +142,10 @@ public class SpotifyController {
                 // 3. PLAYLISTS LOGIC
                 // Fetch user's playlists
                 try {
-                    Map<String, Object> playlistResult = spotifyService.getUserPlaylists(user.getSpotifyAccessToken(), 50);
-                    if (playlistResult != null && playlistResult.containsKey("items")) {
-                        model.addAttribute("userPlaylists", playlistResult.get("items"));
-                        System.out.println("Fetched " + ((java.util.List<?>)playlistResult.get("items")).size() + " playlists.");
+                    PlaylistsResponse playlistResult = spotifyService.getUserPlaylists(user, 50);
+                    if (playlistResult != PlaylistsResponse.EMPTY) {
+                        model.addAttribute("userPlaylists", playlistResult.items());
+                        System.out.println("Fetched " + playlistResult.items().size() + " playlists.");
                     }
                 } catch (Exception e) {
                     System.out.println("Could not fetch playlists: " + e.getMessage());
@@ -161,8 +184,8 @@ public class SpotifyController {
         Optional<User> currentUserOpt = userRepository.findByUsername(userDetails.getUsername());
         if (currentUserOpt.isPresent()) {
             User currentUser = currentUserOpt.get();
-            // This will find users with similar music taste
-            var matches = spotifyService.findMusicMatches(currentUser);
+            // Users with the most similar music taste, best first
+            var matches = tasteMatcher.matches(currentUser);
             model.addAttribute("matches", matches);
         }
 
@@ -174,7 +197,7 @@ public class SpotifyController {
     public String playMusic(@AuthenticationPrincipal UserDetails userDetails) {
         Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
         if (userOpt.isPresent() && userOpt.get().getSpotifyAccessToken() != null) {
-            spotifyService.startPlayback(userOpt.get().getSpotifyAccessToken());
+            spotifyService.startPlayback(userOpt.get());
         }
         return "redirect:/spotify-success";
     }
@@ -182,44 +205,47 @@ public class SpotifyController {
     // API endpoint for getting playlists (AJAX)
     @GetMapping("/api/spotify/playlists")
     @ResponseBody
-    public Map<String, Object> getPlaylists(@AuthenticationPrincipal UserDetails userDetails) {
+    public ApiResponse getPlaylists(@AuthenticationPrincipal UserDetails userDetails) {
         if (userDetails == null) {
-            return Map.of("error", "Not authenticated");
+            return new ApiError("Not authenticated");
         }
 
         Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
         if (userOpt.isPresent() && userOpt.get().isSpotifyConnected()) {
             User user = userOpt.get();
-            return spotifyService.getUserPlaylists(user.getSpotifyAccessToken(), 50);
+            return spotifyService.getUserPlaylists(user, 50);
         }
 
-        return Map.of("error", "Spotify not connected");
+        return new ApiError("Spotify not connected");
     }
 
-    // API endpoint for getting playlist tracks (AJAX)
+    // API endpoint for getting playlist tracks (AJAX), paged with offset and limit (up to 100)
     @GetMapping("/api/spotify/playlist/{playlistId}/tracks")
     @ResponseBody
-    public Map<String, Object> getPlaylistTracks(
+    public ApiResponse getPlaylistTracks(
             @PathVariable String playlistId,
+            @RequestParam(defaultValue = "0") int offset,
             @RequestParam(defaultValue = "50") int limit,
             @AuthenticationPrincipal UserDetails userDetails) {
         if (userDetails == null) {
-            return Map.of("error", "Not authenticated");
+            return new ApiError("Not authenticated");
         }
 
         Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
         if (userOpt.isPresent() && userOpt.get().isSpotifyConnected()) {
             User user = userOpt.get();
-            return spotifyService.getPlaylistTracks(user.getSpotifyAccessToken(), playlistId, limit);
+            return spotifyService.getPlaylistTracks(user, playlistId, Math.max(0, offset), Math.min(Math.max(1, limit), 100));
         }
 
-        return Map.of("error", "Spotify not connected");
+        return new ApiError("Spotify not connected");
     }
 
     // API endpoint for playback control
+    // Commands are queued per user and answered with 202 right away; the outcome arrives on
+    // /api/spotify/control/events (or /api/spotify/control/status) under the returned commandId.
     @PostMapping("/api/spotify/control/{action}")
     @ResponseBody
-    public Map<String, Object> controlPlayback(
+    public ResponseEntity<Map<String, Object>> controlPlayback(
             @PathVariable String action,
             @RequestParam(required = false) String playlistId,
             @RequestParam(required = false) Integer volume,
@@ -227,93 +253,141 @@ public class SpotifyController {
             @AuthenticationPrincipal UserDetails userDetails) {
 
         if (userDetails == null) {
-            return Map.of("error", "Not authenticated");
+            return ResponseEntity.ok(Map.of("error", "Not authenticated"));
         }
 
         Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
         if (!userOpt.isPresent() || !userOpt.get().isSpotifyConnected()) {
-            return Map.of("error", "Spotify not connected");
+            return ResponseEntity.ok(Map.of("error", "Spotify not connected"));
         }
 
         User user = userOpt.get();
-        String accessToken = user.getSpotifyAccessToken();
+        Command command;
+
+        switch (action.toLowerCase()) {
+            case "play":
+                command = Command.play(playlistId != null && !playlistId.isEmpty() ? playlistId : null);
+                break;
+            case "pause":
+                command = Command.of(Action.PAUSE);
+                break;
+            case "next":
+                command = Command.of(Action.NEXT);
+                break;
+            case "previous":
+                command = Command.of(Action.PREVIOUS);
+                break;
+            case "volume":
+                if (volume != null && volume >= 0 && volume <= 100) {
+                    command = Command.volume(volume);
+                } else {
+                    return ResponseEntity.ok(Map.of("error", "Invalid volume level"));
+                }
+                break;
+            case "transfer":
+                if (deviceId != null && !deviceId.isEmpty()) {
+                    command = Command.transfer(deviceId);
+                } else {
+                    return ResponseEntity.ok(Map.of("error", "Device ID required"));
+                }
+                break;
+            default:
+                return ResponseEntity.ok(Map.of("error", "Unknown action: " + action));
+        }
 
-        try {
-            switch (action.toLowerCase()) {
-                case "play":
-                    if (playlistId != null && !playlistId.isEmpty()) {
-                        spotifyService.playPlaylist(accessToken, playlistId);
-                    } else {
-                        spotifyService.resumePlayback(accessToken);
-                    }
-                    break;
-                case "pause":
-                    spotifyService.pausePlayback(accessToken);
-                    break;
-                case "next":
-                    spotifyService.skipToNext(accessToken);
-                    break;
-                case "previous":
-                    spotifyService.skipToPrevious(accessToken);
-                    break;
-                case "volume":
-                    if (volume != null && volume >= 0 && volume <= 100) {
-                        spotifyService.setVolume(accessToken, volume);
-                    } else {
-                        return Map.of("error", "Invalid volume level");
-                    }
-                    break;
-                case "transfer":
-                    if (deviceId != null && !deviceId.isEmpty()) {
-                        spotifyService.transferPlayback(accessToken, deviceId, true);
-                    } else {
-                        return Map.of("error", "Device ID required");
-                    }
-                    break;
-                default:
-                    return Map.of("error", "Unknown action: " + action);
-            }
+        long commandId = playbackCommands.submit(user, command);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(Map.of("success", true, "action", action, "commandId", commandId));
+    }
+
+    // Outcome of the user's most recent playback command (204 if there is none yet)
+    @GetMapping("/api/spotify/control/status")
+    @ResponseBody
+    public ResponseEntity<?> getControlStatus(@AuthenticationPrincipal UserDetails userDetails) {
+        if (userDetails == null) {
+            return ResponseEntity.ok(new ApiError("Not authenticated"));
+        }
 
-            return Map.of("success", true, "action", action);
+        return userRepository.findByUsername(userDetails.getUsername())
+                .flatMap(playbackCommands::lastResult)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
 
-        } catch (Exception e) {
-            return Map.of("error", "Failed to execute action: " + e.getMessage());
+    // Server-sent "command" events with the outcome of each playback command
+    @GetMapping(path = "/api/spotify/control/events", produces = "text/event-stream")
+    public SseEmitter streamControlStatus(@AuthenticationPrincipal UserDetails userDetails) {
+        if (userDetails == null) {
+            return endedStream(new ApiError("Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
+        if (userOpt.isEmpty()) {
+            return endedStream(null);
         }
+        return playbackCommands.subscribe(userOpt.get());
+    }
+
+    // Server-sent "now-playing" events whenever the user's track or play state changes
+    @GetMapping(path = "/api/spotify/now-playing/stream", produces = "text/event-stream")
+    public SseEmitter streamNowPlaying(@AuthenticationPrincipal UserDetails userDetails) {
+        if (userDetails == null) {
+            return endedStream(new ApiError("Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
+        if (userOpt.isEmpty() || !userOpt.get().isSpotifyConnected()) {
+            return endedStream(null);
+        }
+        return nowPlayingStream.subscribe(userOpt.get());
+    }
+
+    // A stream that ends at once, after an "error" event if there is one
+    private static SseEmitter endedStream(ApiError error) {
+        SseEmitter emitter = new SseEmitter();
+        if (error != null) {
+            try {
+                emitter.send(SseEmitter.event().name("error").data(error));
+            } catch (IOException e) {
+                // Nothing to tell a client that is already gone
+            }
+        }
+        emitter.complete();
+        return emitter;
     }
 
     // API endpoint for current playback status
     @GetMapping("/api/spotify/status")
     @ResponseBody
-    public Map<String, Object> getPlaybackStatus(@AuthenticationPrincipal UserDetails userDetails) {
+    public ApiResponse getPlaybackStatus(@AuthenticationPrincipal UserDetails userDetails) {
         if (userDetails == null) {
-            return Map.of("error", "Not authenticated");
+            return new ApiError("Not authenticated");
         }
 
         Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
         if (userOpt.isPresent() && userOpt.get().isSpotifyConnected()) {
             User user = userOpt.get();
-            Map<String, String> currentlyPlaying = spotifyService.getCurrentlyPlaying(user.getSpotifyAccessToken());
-            return new HashMap<>(currentlyPlaying);
+            return spotifyService.getCurrentlyPlaying(user);
         }
 
-        return Map.of("error", "Spotify not connected");
+        return new ApiError("Spotify not connected");
     }
 
     // API endpoint for devices
     @GetMapping("/api/spotify/devices")
     @ResponseBody
-    public Map<String, Object> getDevices(@AuthenticationPrincipal UserDetails userDetails) {
+    public ApiResponse getDevices(@AuthenticationPrincipal UserDetails userDetails) {
         if (userDetails == null) {
-            return Map.of("error", "Not authenticated");
+            return new ApiError("Not authenticated");
         }
 
         Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
         if (userOpt.isPresent() && userOpt.get().isSpotifyConnected()) {
             User user = userOpt.get();
-            return spotifyService.getAvailableDevices(user.getSpotifyAccessToken());
+            return spotifyService.getAvailableDevices(user);
         }
 
-        return Map.of("error", "Spotify not connected");
+        return new ApiError("Spotify not connected");
     }
 
     // API endpoint for playing a specific playlist
@@ -332,13 +406,9 @@ public class SpotifyController {
             return Map.of("error", "Spotify not connected");
         }
 
-        try {
-            User user = userOpt.get();
-            spotifyService.playPlaylist(user.getSpotifyAccessToken(), playlistId);
-            return Map.of("success", true, "playlistId", playlistId);
-        } catch (Exception e) {
-            return Map.of("error", "Failed to play playlist: " + e.getMessage());
-        }
+        // Queued like the other playback commands; the outcome arrives on /api/spotify/control/events
+        long commandId = playbackCommands.submit(userOpt.get(), Command.play(playlistId));
+        return Map.of("success", true, "playlistId", playlistId, "commandId", commandId);
     }
 
     // API endpoint for playing a specific track
@@ -357,37 +427,33 @@ public class SpotifyController {
             return Map.of("error", "Spotify not connected");
         }
 
-        try {
-            User user = userOpt.get();
-            spotifyService.playTrack(user.getSpotifyAccessToken(), trackId);
-            return Map.of("success", true, "trackId", trackId);
-        } catch (Exception e) {
-            return Map.of("error", "Failed to play track: " + e.getMessage());
-        }
+        long commandId = playbackCommands.submit(userOpt.get(), Command.playTrack(trackId));
+        return Map.of("success", true, "trackId", trackId, "commandId", commandId);
     }
 
     // API endpoint for searching tracks (for favorite song selection)
     @GetMapping("/api/spotify/search")
     @ResponseBody
-    public Map<String, Object> searchTracks(
+    public ApiResponse searchTracks(
             @RequestParam String query,
             @AuthenticationPrincipal UserDetails userDetails) {
 
         if (userDetails == null) {
-            return Map.of("error", "Not authenticated");
+            return new ApiError("Not authenticated");
         }
 
         Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
         if (!userOpt.isPresent() || !userOpt.get().isSpotifyConnected()) {
-            return Map.of("error", "Spotify not connected");
+            return new ApiError("Spotify not connected");
         }
 
         try {
             User user = userOpt.get();
-            var tracks = spotifyService.searchTracks(user.getSpotifyAccessToken(), query);
-            return Map.of("tracks", tracks);
+            return trackSearch.search(user, query)
+                    .<ApiResponse>map(SearchResponse::new)
+                    .orElseGet(() -> new ApiError("Superseded by a newer search"));
         } catch (Exception e) {
-            return Map.of("error", "Failed to search tracks: " + e.getMessage());
+            return new ApiError("Failed to search tracks: " + e.getMessage());
         }
     }
 
@@ -407,27 +473,30 @@ public class SpotifyController {
             return Map.of("status", "error", "message", "Spotify not connected");
         }
 
-        try {
-            User user = userOpt.get();
-            spotifyService.playTrack(user.getSpotifyAccessToken(), trackId);
-            return Map.of("status", "success", "trackId", trackId);
-        } catch (Exception e) {
-            return Map.of("status", "error", "message", "Failed to play track: " + e.getMessage());
-        }
+        long commandId = playbackCommands.submit(userOpt.get(), Command.playTrack(trackId));
+        return Map.of("status", "success", "trackId", trackId, "commandId", commandId);
     }
 
     // API endpoint to fetch more liked songs (for the Load More button)
+    // Pass the X-Next-Cursor header of the previous page as cursor to page through the stored library;
+    // offset is used for the first "Load more" and while the library is still being synced.
     @GetMapping("/api/spotify/saved-tracks")
     @ResponseBody
-    public java.util.List<Map<String, String>> getMoreSavedTracks(
+    public ResponseEntity<java.util.List<SavedTrackSummary>> getMoreSavedTracks(
             @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) String cursor,
             @AuthenticationPrincipal UserDetails userDetails) {
 
         Optional<User> userOpt = userRepository.findByUsername(userDetails.getUsername());
         if (userOpt.isPresent() && userOpt.get().isSpotifyConnected()) {
-            return spotifyService.getUserSavedTracks(userOpt.get().getSpotifyAccessToken(), offset);
+            SavedTracksLibrary.Page page = spotifyService.getSavedTracksPage(userOpt.get(), cursor, Math.max(0, offset));
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header("X-Next-Cursor", page.nextCursor());
+            }
+            return response.body(page.tracks());
         }
-        return java.util.Collections.emptyList();
+        return ResponseEntity.ok(java.util.Collections.emptyList());
     }
 
     // API endpoint for sharing the current song to the feed
@@ -443,19 +512,18 @@ public class SpotifyController {
 
         try {
             User user = userService.findByUsername(userDetails.getUsername());
-            String accessToken = user.getSpotifyAccessToken();
 
             // 1. Get the currently playing track
-            Map<String, String> trackInfo = spotifyService.getCurrentlyPlaying(accessToken);
+            PlaybackStatus trackInfo = spotifyService.getCurrentlyPlaying(user);
 
-            if ("false".equals(trackInfo.get("isPlaying"))) {
+            if (!trackInfo.playing()) {
                 return Map.of("success", false, "message", "Nothing is playing.");
             }
 
-            String trackName = trackInfo.get("trackName");
-            String artistName = trackInfo.get("artistName");
-            String trackId = trackInfo.get("trackId");
-            String albumImage = trackInfo.get("albumImage");
+            String trackName = trackInfo.trackName();
+            String artistName = trackInfo.artistName();
+            String trackId = trackInfo.trackId();
+            String albumImage = trackInfo.albumImage();
 
             // 2. Create the post content (use caption, or a default)
             String content = caption.isBlank() ? "🎧 Listening now..." : caption;
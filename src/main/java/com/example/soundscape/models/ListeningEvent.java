@@ -0,0 +1,82 @@
+package com.example.soundscape.models;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+// One play from the user's Spotify history, appended by ListeningHistory. A user has at most
+// one play per played_at, which is what makes re-reading an overlapping window harmless.
+@Entity
+@Table(name = "listening_events",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "played_at"}),
+       indexes = @Index(name = "idx_listening_events_user_played", columnList = "user_id, played_at DESC"))
+public class ListeningEvent {
+
+    // Artist names may contain commas, so they are stored tab-separated
+    private static final String NAME_SEPARATOR = "\t";
+
+    // Sequence ids (handed out 50 at a time) let Hibernate batch the inserts; IDENTITY would not
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "listening_events_seq")
+    @SequenceGenerator(name = "listening_events_seq", sequenceName = "listening_events_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "track_id", nullable = false)
+    private String trackId;
+
+    @Column(name = "track_name")
+    private String trackName;
+
+    @Column(name = "artist_names", length = 1000)
+    private String artistNames;
+
+    @Column(name = "artist_ids", length = 1000)
+    private String artistIds;
+
+    @Column(name = "album_name")
+    private String albumName;
+
+    @Column(name = "image_url")
+    private String imageUrl;
+
+    @Column(name = "duration_ms")
+    private int durationMs;
+
+    @Column(name = "played_at", nullable = false)
+    private Instant playedAt;
+
+    public ListeningEvent() {}
+
+    public ListeningEvent(User user, String trackId, String trackName, List<String> artistNames, List<String> artistIds,
+                          String albumName, String imageUrl, int durationMs, Instant playedAt) {
+        this.user = user;
+        this.trackId = trackId;
+        this.trackName = trackName;
+        this.artistNames = String.join(NAME_SEPARATOR, artistNames);
+        this.artistIds = String.join(",", artistIds);
+        this.albumName = albumName;
+        this.imageUrl = imageUrl;
+        this.durationMs = durationMs;
+        this.playedAt = playedAt;
+    }
+
+    public Long getId() { return id; }
+    public User getUser() { return user; }
+    public String getTrackId() { return trackId; }
+    public String getTrackName() { return trackName; }
+    public List<String> getArtistNames() { return split(artistNames, NAME_SEPARATOR); }
+    public List<String> getArtistIds() { return split(artistIds, ","); }
+    public String getAlbumName() { return albumName; }
+    public String getImageUrl() { return imageUrl; }
+    public int getDurationMs() { return durationMs; }
+    public Instant getPlayedAt() { return playedAt; }
+
+    private static List<String> split(String joined, String separator) {
+        return joined == null || joined.isEmpty() ? List.of() : Arrays.asList(joined.split(separator));
+    }
+}
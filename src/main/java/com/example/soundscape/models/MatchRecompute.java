@@ -0,0 +1,64 @@
+package com.example.soundscape.models;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// One run of MatchRecomputeJob over every user with a taste profile. Every user up to
+// checkpointUserId has its matches stored; a resume carries on after it.
+@Entity
+@Table(name = "match_recomputes")
+public class MatchRecompute {
+
+    public enum Status { RUNNING, CANCELLED, DONE, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "model_version", nullable = false)
+    private int modelVersion;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status;
+
+    @Column(name = "checkpoint_user_id", nullable = false)
+    private long checkpointUserId;
+
+    @Column(name = "users_done", nullable = false)
+    private long usersDone;
+
+    @Column(name = "total_users", nullable = false)
+    private long totalUsers;
+
+    @Column(name = "started_at", nullable = false)
+    private Instant startedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    public MatchRecompute() {}
+
+    public MatchRecompute(int modelVersion, long totalUsers, Instant startedAt) {
+        this.modelVersion = modelVersion;
+        this.status = Status.RUNNING;
+        this.totalUsers = totalUsers;
+        this.startedAt = startedAt;
+    }
+
+    public Long getId() { return id; }
+    public int getModelVersion() { return modelVersion; }
+    public Status getStatus() { return status; }
+    public long getCheckpointUserId() { return checkpointUserId; }
+    public long getUsersDone() { return usersDone; }
+    public long getTotalUsers() { return totalUsers; }
+    public Instant getStartedAt() { return startedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+
+    // Running again from the checkpoint, now over totalUsers users in all
+    public void resumed(long totalUsers) {
+        this.status = Status.RUNNING;
+        this.totalUsers = totalUsers;
+        this.finishedAt = null;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.soundscape.models;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// A user's precomputed music analysis, kept by MusicAnalysisSnapshots. genreScores is every
+// genre's score (top-artist terms weighted 3/2/1 plus one per play), playGenreScores the
+// part that came from plays, which a refresh from Spotify carries over.
+@Entity
+@Table(name = "music_analysis_snapshots")
+public class MusicAnalysisSnapshot {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "analysis", length = 200000) // Store as JSON string: the term-sliced artists and tracks
+    private String analysis;
+
+    @Column(name = "top_genres", length = 4000) // Store as JSON string
+    private String topGenres;
+
+    @Column(name = "genre_scores", length = 100000) // Store as JSON string
+    private String genreScores;
+
+    @Column(name = "play_genre_scores", length = 100000) // Store as JSON string
+    private String playGenreScores;
+
+    // Plays up to here are in the scores
+    @Column(name = "plays_counted_until")
+    private Instant playsCountedUntil;
+
+    @Column(name = "degraded", nullable = false)
+    private boolean degraded;
+
+    @Column(name = "computed_at", nullable = false)
+    private Instant computedAt;
+
+    public MusicAnalysisSnapshot() {}
+
+    public MusicAnalysisSnapshot(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getUserId() { return userId; }
+    public String getAnalysis() { return analysis; }
+    public String getTopGenres() { return topGenres; }
+    public String getGenreScores() { return genreScores; }
+    public String getPlayGenreScores() { return playGenreScores; }
+    public Instant getPlaysCountedUntil() { return playsCountedUntil; }
+    public boolean isDegraded() { return degraded; }
+    public Instant getComputedAt() { return computedAt; }
+
+    // A fresh analysis from Spotify
+    public void recomputed(String analysis, boolean degraded, Instant computedAt) {
+        this.analysis = analysis;
+        this.degraded = degraded;
+        this.computedAt = computedAt;
+    }
+
+    public void setGenres(String topGenres, String genreScores, String playGenreScores, Instant playsCountedUntil) {
+        this.topGenres = topGenres;
+        this.genreScores = genreScores;
+        this.playGenreScores = playGenreScores;
+        this.playsCountedUntil = playsCountedUntil;
+    }
+}
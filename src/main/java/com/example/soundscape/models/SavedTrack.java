@@ -0,0 +1,60 @@
+package com.example.soundscape.models;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// A liked song from the user's Spotify library, mirrored locally by SavedTracksLibrary
+@Entity
+@Table(name = "saved_tracks",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "track_id"}),
+       indexes = @Index(name = "idx_saved_tracks_user_added", columnList = "user_id, added_at DESC, id DESC"))
+public class SavedTrack {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "saved_tracks_seq")
+    @SequenceGenerator(name = "saved_tracks_seq", sequenceName = "saved_tracks_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "track_id", nullable = false)
+    private String trackId;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "artist")
+    private String artist;
+
+    @Column(name = "uri")
+    private String uri;
+
+    @Column(name = "image")
+    private String image;
+
+    @Column(name = "added_at", nullable = false)
+    private Instant addedAt;
+
+    public SavedTrack() {}
+
+    public SavedTrack(User user, String trackId, String name, String artist, String uri, String image, Instant addedAt) {
+        this.user = user;
+        this.trackId = trackId;
+        this.name = name;
+        this.artist = artist;
+        this.uri = uri;
+        this.image = image;
+        this.addedAt = addedAt;
+    }
+
+    public Long getId() { return id; }
+    public User getUser() { return user; }
+    public String getTrackId() { return trackId; }
+    public String getName() { return name; }
+    public String getArtist() { return artist; }
+    public String getUri() { return uri; }
+    public String getImage() { return image; }
+    public Instant getAddedAt() { return addedAt; }
+}
@@ -0,0 +1,42 @@
+package com.example.soundscape.models;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// Local copy of a Spotify playlist; its tracks are stored for snapshotId only
+@Entity
+@Table(name = "spotify_playlists")
+public class SpotifyPlaylist {
+
+    @Id
+    @Column(name = "id", length = 64)
+    private String id;
+
+    @Column(name = "snapshot_id", nullable = false)
+    private String snapshotId;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "track_count", nullable = false)
+    private int trackCount;
+
+    @Column(name = "synced_at", nullable = false)
+    private Instant syncedAt;
+
+    public SpotifyPlaylist() {}
+
+    public SpotifyPlaylist(String id, String snapshotId, String name, int trackCount) {
+        this.id = id;
+        this.snapshotId = snapshotId;
+        this.name = name;
+        this.trackCount = trackCount;
+        this.syncedAt = Instant.now();
+    }
+
+    public String getId() { return id; }
+    public String getSnapshotId() { return snapshotId; }
+    public String getName() { return name; }
+    public int getTrackCount() { return trackCount; }
+    public Instant getSyncedAt() { return syncedAt; }
+}
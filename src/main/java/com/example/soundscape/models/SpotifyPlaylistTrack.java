@@ -0,0 +1,68 @@
+package com.example.soundscape.models;
+
+import jakarta.persistence.*;
+
+// One track of a stored playlist; position is 0-based and contiguous within the playlist
+@Entity
+@Table(name = "spotify_playlist_tracks",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"playlist_id", "position"}))
+public class SpotifyPlaylistTrack {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "spotify_playlist_tracks_seq")
+    @SequenceGenerator(name = "spotify_playlist_tracks_seq", sequenceName = "spotify_playlist_tracks_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "playlist_id", nullable = false, length = 64)
+    private String playlistId;
+
+    @Column(name = "position", nullable = false)
+    private int position;
+
+    @Column(name = "track_id")
+    private String trackId;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "uri")
+    private String uri;
+
+    @Column(name = "duration_ms")
+    private int durationMs;
+
+    @Column(name = "artists", length = 2000) // Store as JSON string
+    private String artists;
+
+    @Column(name = "album_name")
+    private String albumName;
+
+    @Column(name = "album_images", length = 2000) // Store as JSON string
+    private String albumImages;
+
+    public SpotifyPlaylistTrack() {}
+
+    public SpotifyPlaylistTrack(String playlistId, int position, String trackId, String name, String uri,
+                                int durationMs, String artists, String albumName, String albumImages) {
+        this.playlistId = playlistId;
+        this.position = position;
+        this.trackId = trackId;
+        this.name = name;
+        this.uri = uri;
+        this.durationMs = durationMs;
+        this.artists = artists;
+        this.albumName = albumName;
+        this.albumImages = albumImages;
+    }
+
+    public Long getId() { return id; }
+    public String getPlaylistId() { return playlistId; }
+    public int getPosition() { return position; }
+    public String getTrackId() { return trackId; }
+    public String getName() { return name; }
+    public String getUri() { return uri; }
+    public int getDurationMs() { return durationMs; }
+    public String getArtists() { return artists; }
+    public String getAlbumName() { return albumName; }
+    public String getAlbumImages() { return albumImages; }
+}
@@ -28,6 +28,22 @@ public class User {
     @Column(name = "spotify_refresh_token", length = 2000)
     private String spotifyRefreshToken;
 
+    @Column(name = "spotify_token_expires_at")
+    private Instant spotifyTokenExpiresAt;
+
+    @Column(name = "saved_tracks_synced_at")
+    private Instant savedTracksSyncedAt;
+
+    // Spotify's count of liked songs, and the newest one's added_at, at the last sync
+    @Column(name = "saved_tracks_total")
+    private Integer savedTracksTotal;
+
+    @Column(name = "saved_tracks_newest_at")
+    private Instant savedTracksNewestAt;
+
+    @Column(name = "listening_history_synced_at")
+    private Instant listeningHistorySyncedAt;
+
     @Column(name = "spotify_user_id")
     private String spotifyUserId;
 
@@ -85,6 +101,11 @@ public class User {
     // NEW: Spotify getters
     public String getSpotifyAccessToken() { return spotifyAccessToken; }
     public String getSpotifyRefreshToken() { return spotifyRefreshToken; }
+    public Instant getSpotifyTokenExpiresAt() { return spotifyTokenExpiresAt; }
+    public Instant getSavedTracksSyncedAt() { return savedTracksSyncedAt; }
+    public Integer getSavedTracksTotal() { return savedTracksTotal; }
+    public Instant getSavedTracksNewestAt() { return savedTracksNewestAt; }
+    public Instant getListeningHistorySyncedAt() { return listeningHistorySyncedAt; }
     public String getSpotifyUserId() { return spotifyUserId; }
     public String getSpotifyDisplayName() { return spotifyDisplayName; }
     public String getTopArtists() { return topArtists; }
@@ -99,6 +120,10 @@ public class User {
         this.spotifyRefreshToken = spotifyRefreshToken;
     }
 
+    public void setSpotifyTokenExpiresAt(Instant spotifyTokenExpiresAt) {
+        this.spotifyTokenExpiresAt = spotifyTokenExpiresAt;
+    }
+
     public void setSpotifyUserId(String spotifyUserId) {
         this.spotifyUserId = spotifyUserId;
     }
@@ -0,0 +1,55 @@
+package com.example.soundscape.models;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// One of a user's precomputed best matches, written by MatchRecomputeJob: rank 1 is the
+// closest. A recompute replaces all of a user's rows at once.
+@Entity
+@Table(name = "user_matches",
+       indexes = @Index(name = "idx_user_matches_user_rank", columnList = "user_id, match_rank"))
+public class UserMatch {
+
+    // Sequence ids (handed out 50 at a time) let Hibernate batch the inserts; IDENTITY would not
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_matches_seq")
+    @SequenceGenerator(name = "user_matches_seq", sequenceName = "user_matches_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "match_user_id", nullable = false)
+    private Long matchUserId;
+
+    @Column(name = "match_rank", nullable = false)
+    private int rank;
+
+    @Column(name = "similarity", nullable = false)
+    private double similarity;
+
+    @Column(name = "model_version", nullable = false)
+    private int modelVersion;
+
+    @Column(name = "computed_at", nullable = false)
+    private Instant computedAt;
+
+    public UserMatch() {}
+
+    public UserMatch(Long userId, Long matchUserId, int rank, double similarity, int modelVersion, Instant computedAt) {
+        this.userId = userId;
+        this.matchUserId = matchUserId;
+        this.rank = rank;
+        this.similarity = similarity;
+        this.modelVersion = modelVersion;
+        this.computedAt = computedAt;
+    }
+
+    public Long getId() { return id; }
+    public Long getUserId() { return userId; }
+    public Long getMatchUserId() { return matchUserId; }
+    public int getRank() { return rank; }
+    public double getSimilarity() { return similarity; }
+    public int getModelVersion() { return modelVersion; }
+    public Instant getComputedAt() { return computedAt; }
+}
@@ -0,0 +1,24 @@
+package com.example.soundscape.repositories;
+
+import com.example.soundscape.models.ListeningEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ListeningEventRepository extends JpaRepository<ListeningEvent, Long> {
+
+    // Most recent plays first
+    @Query("SELECT e FROM ListeningEvent e WHERE e.user.id = :userId ORDER BY e.playedAt DESC")
+    List<ListeningEvent> findRecent(@Param("userId") Long userId, Pageable page);
+
+    // The ingestion cursor: the latest play we have
+    Optional<ListeningEvent> findFirstByUserIdOrderByPlayedAtDesc(Long userId);
+
+    long countByUserId(Long userId);
+}
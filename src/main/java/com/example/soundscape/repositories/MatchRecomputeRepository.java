@@ -0,0 +1,32 @@
+package com.example.soundscape.repositories;
+
+import com.example.soundscape.models.MatchRecompute;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface MatchRecomputeRepository extends JpaRepository<MatchRecompute, Long> {
+
+    Optional<MatchRecompute> findFirstByOrderByIdDesc();
+
+    // Slices finish out of order and from several threads; the checkpoint only ever moves forward
+    @Transactional
+    @Modifying
+    @Query("UPDATE MatchRecompute r SET r.checkpointUserId = :checkpointUserId, r.usersDone = :usersDone " +
+           "WHERE r.id = :id AND r.checkpointUserId < :checkpointUserId")
+    int advanceCheckpoint(@Param("id") Long id, @Param("checkpointUserId") long checkpointUserId,
+                          @Param("usersDone") long usersDone);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE MatchRecompute r SET r.status = :status, r.finishedAt = :finishedAt WHERE r.id = :id")
+    int finish(@Param("id") Long id, @Param("status") MatchRecompute.Status status,
+               @Param("finishedAt") Instant finishedAt);
+}
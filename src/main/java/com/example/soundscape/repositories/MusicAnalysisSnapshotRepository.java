@@ -0,0 +1,23 @@
+package com.example.soundscape.repositories;
+
+import com.example.soundscape.models.MusicAnalysisSnapshot;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface MusicAnalysisSnapshotRepository extends JpaRepository<MusicAnalysisSnapshot, Long> {
+
+    // Users whose snapshot is degraded or older than staleBefore, in id order from after afterId
+    @Query("SELECT s.userId FROM MusicAnalysisSnapshot s " +
+           "WHERE s.userId > :afterId AND (s.degraded = true OR s.computedAt < :staleBefore) ORDER BY s.userId")
+    List<Long> findStaleAfter(@Param("afterId") Long afterId, @Param("staleBefore") Instant staleBefore, Pageable page);
+
+    // Every snapshot, in user id order from after afterId
+    List<MusicAnalysisSnapshot> findByUserIdGreaterThanOrderByUserId(Long afterId, Pageable page);
+}
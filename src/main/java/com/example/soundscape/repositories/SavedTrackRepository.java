@@ -0,0 +1,39 @@
+package com.example.soundscape.repositories;
+
+import com.example.soundscape.models.SavedTrack;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface SavedTrackRepository extends JpaRepository<SavedTrack, Long> {
+
+    // Newest liked songs first (first page, or a legacy offset page). A derived query, because
+    // only those can start at any row: ScrollPosition.offset(n) continues after row n
+    Window<SavedTrack> findByUserIdOrderByAddedAtDescIdDesc(Long userId, ScrollPosition position, Limit limit);
+
+    // Keyset page: the songs that come after (addedAt, id) in newest-first order
+    @Query("SELECT t FROM SavedTrack t WHERE t.user.id = :userId " +
+           "AND (t.addedAt < :addedAt OR (t.addedAt = :addedAt AND t.id < :id)) " +
+           "ORDER BY t.addedAt DESC, t.id DESC")
+    List<SavedTrack> findAfter(@Param("userId") Long userId, @Param("addedAt") Instant addedAt,
+                               @Param("id") Long id, Pageable page);
+
+    long countByUserId(Long userId);
+
+    @Query("SELECT t.trackId FROM SavedTrack t WHERE t.user.id = :userId AND t.trackId IN :trackIds")
+    List<String> findStoredTrackIds(@Param("userId") Long userId, @Param("trackIds") List<String> trackIds);
+
+    @Modifying
+    @Query("DELETE FROM SavedTrack t WHERE t.user.id = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+}
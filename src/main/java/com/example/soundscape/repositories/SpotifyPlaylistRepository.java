@@ -0,0 +1,9 @@
+package com.example.soundscape.repositories;
+
+import com.example.soundscape.models.SpotifyPlaylist;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SpotifyPlaylistRepository extends JpaRepository<SpotifyPlaylist, String> {
+}
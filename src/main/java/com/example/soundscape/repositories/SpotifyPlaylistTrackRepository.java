@@ -0,0 +1,22 @@
+package com.example.soundscape.repositories;
+
+import com.example.soundscape.models.SpotifyPlaylistTrack;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SpotifyPlaylistTrackRepository extends JpaRepository<SpotifyPlaylistTrack, Long> {
+
+    // One page of a playlist: positions are contiguous, so this is a range scan on (playlist_id, position)
+    List<SpotifyPlaylistTrack> findByPlaylistIdAndPositionBetweenOrderByPosition(String playlistId, int from, int to);
+
+    // Drop a playlist's tracks in one statement before storing a new snapshot
+    @Modifying
+    @Query("DELETE FROM SpotifyPlaylistTrack t WHERE t.playlistId = :playlistId")
+    int deleteByPlaylistId(@Param("playlistId") String playlistId);
+}
@@ -0,0 +1,21 @@
+package com.example.soundscape.repositories;
+
+import com.example.soundscape.models.UserMatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UserMatchRepository extends JpaRepository<UserMatch, Long> {
+
+    List<UserMatch> findByUserIdAndModelVersionOrderByRank(Long userId, int modelVersion);
+
+    @Modifying
+    @Query("DELETE FROM UserMatch m WHERE m.userId IN :userIds")
+    int deleteByUserIdIn(@Param("userIds") Collection<Long> userIds);
+}
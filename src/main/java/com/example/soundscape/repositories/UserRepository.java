@@ -1,7 +1,15 @@
 package com.example.soundscape.repositories;
 
 import com.example.soundscape.models.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User,Long> {
@@ -18,4 +26,29 @@ public interface UserRepository extends JpaRepository<User,Long> {
     // Check if username and email exist (for registration validation)
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
-}
\ No newline at end of file
+
+    // Record a finished liked-songs sync without rewriting (and racing) the rest of the row
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.savedTracksSyncedAt = :syncedAt, u.savedTracksTotal = :total, " +
+           "u.savedTracksNewestAt = :newestAt WHERE u.id = :id")
+    int markSavedTracksSynced(@Param("id") Long id, @Param("syncedAt") Instant syncedAt, @Param("total") int total,
+                              @Param("newestAt") Instant newestAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.listeningHistorySyncedAt = :syncedAt WHERE u.id = :id")
+    int markListeningHistorySynced(@Param("id") Long id, @Param("syncedAt") Instant syncedAt);
+
+    // Store refreshed Spotify tokens from the refresh thread without racing profile edits
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.spotifyAccessToken = :accessToken, u.spotifyRefreshToken = :refreshToken, " +
+           "u.spotifyTokenExpiresAt = :expiresAt WHERE u.id = :id")
+    int updateSpotifyTokens(@Param("id") Long id, @Param("accessToken") String accessToken,
+                            @Param("refreshToken") String refreshToken, @Param("expiresAt") Instant expiresAt);
+
+    // Users with a Spotify token, in id order from after afterId (keyset pages for background sweeps)
+    @Query("SELECT u FROM User u WHERE u.spotifyAccessToken IS NOT NULL AND u.id > :afterId ORDER BY u.id")
+    List<User> findSpotifyConnectedAfter(@Param("afterId") Long afterId, Pageable page);
+}
@@ -0,0 +1,67 @@
+package com.example.soundscape.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Genre scores with the k best kept in order as scores change, so reading the ranking is a
+ * walk over k entries instead of a sort of every genre.
+ *
+ * Scores only grow: a genre outside the top k can then only get in through its own
+ * increment, which is compared with the lowest genre in the top k (O(log k)). Ties are
+ * broken by name so the ranking is stable. Not thread-safe.
+ */
+public final class GenreTopK {
+
+    private final int k;
+    private final Map<String, Integer> scores = new HashMap<>();
+    // Best first; a genre's score must not change while it is in here
+    private final TreeSet<String> top = new TreeSet<>(
+            Comparator.comparing((String genre) -> scores.get(genre)).reversed().thenComparing(Comparator.naturalOrder()));
+
+    public GenreTopK(int k) {
+        this.k = k;
+    }
+
+    // Every genre in scores added once, O(n log k)
+    public static GenreTopK of(int k, Map<String, Integer> scores) {
+        GenreTopK topK = new GenreTopK(k);
+        scores.forEach(topK::add);
+        return topK;
+    }
+
+    public void add(String genre, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Genre scores only grow: " + genre + " " + weight);
+        }
+        if (weight == 0) {
+            return;
+        }
+        boolean inTop = scores.containsKey(genre) && top.remove(genre);
+        scores.merge(genre, weight, Integer::sum);
+        if (inTop || top.size() < k) {
+            top.add(genre);
+        } else if (top.comparator().compare(genre, top.last()) < 0) {
+            top.pollLast();
+            top.add(genre);
+        }
+    }
+
+    // The k best genres and their scores, best first
+    public List<Map.Entry<String, Integer>> top() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(top.size());
+        for (String genre : top) {
+            entries.add(Map.entry(genre, scores.get(genre)));
+        }
+        return entries;
+    }
+
+    public Map<String, Integer> scores() {
+        return Collections.unmodifiableMap(scores);
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.ListeningEvent;
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.ListeningEventRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPayloads.ArtistRef;
+import com.example.soundscape.spotify.SpotifyPayloads.PlayHistory;
+import com.example.soundscape.spotify.SpotifyPayloads.RecentlyPlayedPage;
+import com.example.soundscape.spotify.SpotifyPayloads.Track;
+import com.example.soundscape.spotify.SpotifyPriority;
+import com.example.soundscape.spotify.TrackMetadataCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Each user's listening history (the listening_events table), kept past the 50 plays that
+ * Spotify's recently-played returns.
+ *
+ * An ingest asks /me/player/recently-played for the plays after the newest played_at we
+ * have (the after cursor), and asks again while full pages come back, so every play is
+ * fetched once. Each page goes in as one batched insert. A sweep every sweep-interval
+ * ingests every user with a Spotify connection, a few at a time on the sync pool; reading
+ * a user's history also starts an ingest when the last one is older than refresh-interval.
+ *
+ * Until a user's first ingest has finished, recent() returns empty and callers read from
+ * Spotify directly.
+ */
+@Service
+public class ListeningHistory {
+
+    private static final int SPOTIFY_PAGE_SIZE = 50;
+    // Spotify only keeps the last 50 or so plays; more pages than this means the cursor is stuck
+    private static final int MAX_PAGES_PER_INGEST = 10;
+    private static final int SWEEP_PAGE_SIZE = 200;
+
+    private final SpotifyApiClient spotifyApiClient;
+    private final ListeningEventRepository listeningEventRepository;
+    private final UserRepository userRepository;
+    private final TrackMetadataCache trackMetadataCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService syncExecutor;
+    private final Duration refreshInterval;
+    private final int sweepParallelism;
+    private final Counter storedPlays;
+
+    private final Map<Long, Instant> lastIngested = new ConcurrentHashMap<>();
+    private final Set<Long> ingesting = ConcurrentHashMap.newKeySet();
+    private final List<BiConsumer<User, List<ListeningEvent>>> playListeners = new CopyOnWriteArrayList<>();
+
+    public ListeningHistory(SpotifyApiClient spotifyApiClient,
+                            ListeningEventRepository listeningEventRepository,
+                            UserRepository userRepository,
+                            TrackMetadataCache trackMetadataCache,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Qualifier("spotifySyncExecutor") ExecutorService syncExecutor,
+                            @Qualifier("spotifySweepScheduler") ScheduledExecutorService scheduler,
+                            @Value("${spotify.listening-history.sweep-interval:30m}") Duration sweepInterval,
+                            @Value("${spotify.listening-history.refresh-interval:2m}") Duration refreshInterval,
+                            @Value("${spotify.listening-history.sweep-parallelism:2}") int sweepParallelism) {
+        this.spotifyApiClient = spotifyApiClient;
+        this.listeningEventRepository = listeningEventRepository;
+        this.userRepository = userRepository;
+        this.trackMetadataCache = trackMetadataCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.syncExecutor = syncExecutor;
+        this.refreshInterval = refreshInterval;
+        this.sweepParallelism = sweepParallelism;
+        this.storedPlays = Counter.builder("spotify.listening-history.plays").register(meterRegistry);
+
+        scheduler.scheduleWithFixedDelay(this::sweep, sweepInterval.toNanos(), sweepInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // The user's latest plays, newest first; empty if the history has not been ingested yet
+    public Optional<List<ListeningEvent>> recent(User user, int limit) {
+        Instant ingestedAt = lastIngested.get(user.getId());
+        if (ingestedAt == null && user.getListeningHistorySyncedAt() != null) {
+            ingestedAt = user.getListeningHistorySyncedAt();
+            lastIngested.putIfAbsent(user.getId(), ingestedAt);
+        }
+        if (ingestedAt == null || ingestedAt.plus(refreshInterval).isBefore(Instant.now())) {
+            requestIngest(user);
+        }
+        if (ingestedAt == null) {
+            return Optional.empty();
+        }
+        return Optional.of(listeningEventRepository.findRecent(user.getId(), PageRequest.of(0, limit)));
+    }
+
+    // Start a background ingest for the user unless one is already running
+    public void requestIngest(User user) {
+        startIngest(user, () -> {});
+    }
+
+    // Called on the ingesting thread with each batch of newly stored plays, oldest first
+    public void onPlaysStored(BiConsumer<User, List<ListeningEvent>> listener) {
+        playListeners.add(listener);
+    }
+
+    // Ingest every connected user whose history is older than refresh-interval, sweepParallelism at a time
+    void sweep() {
+        Semaphore inFlight = new Semaphore(sweepParallelism);
+        Instant staleBefore = Instant.now().minus(refreshInterval);
+        long afterId = 0;
+        int started = 0;
+        try {
+            while (true) {
+                List<User> users = userRepository.findSpotifyConnectedAfter(afterId, PageRequest.of(0, SWEEP_PAGE_SIZE));
+                for (User user : users) {
+                    Instant ingestedAt = lastIngested.get(user.getId());
+                    if (ingestedAt != null && ingestedAt.isAfter(staleBefore)) {
+                        continue;
+                    }
+                    inFlight.acquire();
+                    if (startIngest(user, inFlight::release)) {
+                        started++;
+                    } else {
+                        inFlight.release();
+                    }
+                }
+                if (users.size() < SWEEP_PAGE_SIZE) {
+                    break;
+                }
+                afterId = users.get(users.size() - 1).getId();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // An exception would cancel the periodic sweep, so log it and try again next time
+            System.out.println("Error sweeping listening history: " + e.getMessage());
+        }
+        if (started > 0) {
+            System.out.println("Listening-history sweep ingested " + started + " users");
+        }
+    }
+
+    // Append the plays after the newest stored one; returns how many were stored
+    int ingest(User user) {
+        Long userId = user.getId();
+        Instant cursor = listeningEventRepository.findFirstByUserIdOrderByPlayedAtDesc(userId)
+                .map(ListeningEvent::getPlayedAt)
+                .orElse(null);
+        boolean firstIngest = cursor == null;
+
+        int stored = 0;
+        for (int page = 0; page < MAX_PAGES_PER_INGEST; page++) {
+            RecentlyPlayedPage plays = fetchPage(user, cursor);
+            List<ListeningEvent> rows = toRows(user, plays, cursor);
+            if (!rows.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> listeningEventRepository.saveAll(rows));
+                stored += rows.size();
+                cursor = rows.get(rows.size() - 1).getPlayedAt();
+                for (BiConsumer<User, List<ListeningEvent>> listener : playListeners) {
+                    listener.accept(user, rows);
+                }
+            }
+            // Without a cursor Spotify gives the latest page and nothing older, so one page is all there is
+            if (firstIngest || rows.isEmpty() || plays.items().size() < SPOTIFY_PAGE_SIZE) {
+                break;
+            }
+        }
+
+        storedPlays.increment(stored);
+        markIngested(userId);
+        return stored;
+    }
+
+    // whenDone runs after the ingest, or at once if none was started
+    private boolean startIngest(User user, Runnable whenDone) {
+        Long userId = user.getId();
+        if (userId == null || !ingesting.add(userId)) {
+            return false;
+        }
+        try {
+            syncExecutor.execute(() -> {
+                try {
+                    ingest(user);
+                } catch (RuntimeException e) {
+                    System.out.println("Error ingesting listening history for user " + userId + ": " + e.getMessage());
+                } finally {
+                    ingesting.remove(userId);
+                    whenDone.run();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            ingesting.remove(userId);
+            return false;
+        }
+    }
+
+    // New plays (played after the cursor) oldest first, one per played_at
+    private List<ListeningEvent> toRows(User user, RecentlyPlayedPage page, Instant cursor) {
+        Map<Instant, ListeningEvent> rows = new TreeMap<>();
+        for (PlayHistory item : page.items()) {
+            Track track = item.track();
+            if (track == null || track.id() == null || item.playedAt() == null) {
+                continue;
+            }
+            Instant playedAt;
+            try {
+                playedAt = Instant.parse(item.playedAt());
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            if (cursor != null && !playedAt.isAfter(cursor)) {
+                continue;
+            }
+            trackMetadataCache.remember(track);
+            rows.putIfAbsent(playedAt, new ListeningEvent(user, track.id(), track.name(), track.artistNames(),
+                    track.artists().stream().map(ArtistRef::id).filter(Objects::nonNull).toList(),
+                    track.album().name(), track.album().firstImageUrl(), track.durationMs(), playedAt));
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    private RecentlyPlayedPage fetchPage(User user, Instant cursor) {
+        String url = "/me/player/recently-played?limit=" + SPOTIFY_PAGE_SIZE
+                + (cursor != null ? "&after=" + cursor.toEpochMilli() : "");
+        try {
+            return spotifyApiClient.readValue(spotifyApiClient.get(user, url, SpotifyPriority.BACKGROUND).getBody(),
+                    RecentlyPlayedPage.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void markIngested(Long userId) {
+        Instant now = Instant.now();
+        userRepository.markListeningHistorySynced(userId, now);
+        lastIngested.put(userId, now);
+    }
+}
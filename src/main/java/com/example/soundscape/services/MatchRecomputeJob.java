@@ -0,0 +1,306 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.MatchRecompute;
+import com.example.soundscape.models.UserMatch;
+import com.example.soundscape.repositories.MatchRecomputeRepository;
+import com.example.soundscape.repositories.UserMatchRepository;
+import com.example.soundscape.services.TasteMatcher.Scored;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Recomputes every user's best matches into the user_matches table, for when the matching
+ * model changes (bump spotify.matches.model-version) rather than one user's taste.
+ *
+ * The users with a taste profile, in id order, are cut into slices of slice-size, and a
+ * RecursiveAction splits the slices in halves across the fork-join pool until each task
+ * is one slice. A slice scores each of its users against TasteMatcher's candidates and
+ * then, in one transaction, deletes their old rows and inserts the new ones as batched
+ * inserts, so a user's matches are swapped whole.
+ *
+ * Slices finish out of order; the run's checkpoint is the last user of the longest run of
+ * finished slices from the start, and is stored on the match_recomputes row as it moves.
+ * Cancelling stops slices from starting (a slice in flight finishes), and a cancelled,
+ * failed or interrupted run resumes after its checkpoint, redoing any slices past it.
+ * At startup, once the profiles are loaded, a run left RUNNING by a restart is resumed and
+ * a model version with no run yet starts one; cancelled and failed runs wait for resume().
+ */
+@Service
+public class MatchRecomputeJob {
+
+    private final TasteMatcher tasteMatcher;
+    private final UserMatchRepository userMatchRepository;
+    private final MatchRecomputeRepository matchRecomputeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ForkJoinPool pool;
+    private final int modelVersion;
+    private final int sliceSize;
+    private final Counter recomputedUsers;
+
+    private final List<Consumer<Progress>> progressListeners = new CopyOnWriteArrayList<>();
+    // The latest run started here; null until one is
+    private volatile Run current;
+
+    public record Progress(long jobId, MatchRecompute.Status status, long usersDone, long totalUsers,
+                           double usersPerSecond) {
+        public double fraction() {
+            return totalUsers > 0 ? (double) usersDone / totalUsers : 1;
+        }
+    }
+
+    public MatchRecomputeJob(TasteMatcher tasteMatcher,
+                             UserMatchRepository userMatchRepository,
+                             MatchRecomputeRepository matchRecomputeRepository,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Qualifier("spotifyMatchRecomputePool") ForkJoinPool pool,
+                             @Value("${spotify.matches.model-version:1}") int modelVersion,
+                             @Value("${spotify.matches.recompute.slice-size:500}") int sliceSize) {
+        this.tasteMatcher = tasteMatcher;
+        this.userMatchRepository = userMatchRepository;
+        this.matchRecomputeRepository = matchRecomputeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pool = pool;
+        this.modelVersion = modelVersion;
+        this.sliceSize = sliceSize;
+        this.recomputedUsers = Counter.builder("spotify.matches.recompute.users").register(meterRegistry);
+        Gauge.builder("spotify.matches.recompute.progress", this,
+                job -> job.progress().map(Progress::fraction).orElse(0.0)).register(meterRegistry);
+
+        tasteMatcher.onLoaded(this::startOrResume);
+    }
+
+    // Start a run over every user unless one is already running; the progress of whichever is
+    public synchronized Progress start() {
+        if (running()) {
+            return current.progress();
+        }
+        long[] userIds = tasteMatcher.userIds();
+        MatchRecompute job = matchRecomputeRepository.save(new MatchRecompute(modelVersion, userIds.length, Instant.now()));
+        return launch(new Run(job.getId(), userIds, 0));
+    }
+
+    // Carry on the latest run after its checkpoint; empty if it finished or there is none
+    public synchronized Optional<Progress> resume() {
+        if (running()) {
+            return Optional.of(current.progress());
+        }
+        MatchRecompute job = matchRecomputeRepository.findFirstByOrderByIdDesc().orElse(null);
+        if (job == null || job.getStatus() == MatchRecompute.Status.DONE) {
+            return Optional.empty();
+        }
+        long[] userIds = tasteMatcher.userIds();
+        int from = Arrays.binarySearch(userIds, job.getCheckpointUserId() + 1);
+        long[] remaining = Arrays.copyOfRange(userIds, from >= 0 ? from : -from - 1, userIds.length);
+        job.resumed(job.getUsersDone() + remaining.length);
+        matchRecomputeRepository.save(job);
+        System.out.println("Resuming match recompute " + job.getId() + " after user " + job.getCheckpointUserId()
+                + ", " + remaining.length + " users to go");
+        return Optional.of(launch(new Run(job.getId(), remaining, job.getUsersDone())));
+    }
+
+    // Stop the running run after the slices in flight; false if none is running
+    public boolean cancel() {
+        Run run = current;
+        if (run == null || run.finished) {
+            return false;
+        }
+        run.cancelled = true;
+        return true;
+    }
+
+    // The latest run's progress, if one has started since startup
+    public Optional<Progress> progress() {
+        Run run = current;
+        return run != null ? Optional.of(run.progress()) : Optional.empty();
+    }
+
+    // Called on a pool thread after every finished slice, and once more when the run ends
+    public void onProgress(Consumer<Progress> listener) {
+        progressListeners.add(listener);
+    }
+
+    void startOrResume() {
+        try {
+            MatchRecompute latest = matchRecomputeRepository.findFirstByOrderByIdDesc().orElse(null);
+            if (latest != null && latest.getModelVersion() == modelVersion) {
+                // Done, or cancelled or failed and left for resume()
+                if (latest.getStatus() == MatchRecompute.Status.RUNNING) {
+                    resume();
+                }
+                return;
+            }
+            System.out.println("Matches are from model version " + (latest != null ? latest.getModelVersion() : "none")
+                    + ", recomputing for version " + modelVersion);
+            start();
+        } catch (RuntimeException e) {
+            System.out.println("Error starting match recompute: " + e.getMessage());
+        }
+    }
+
+    private boolean running() {
+        return current != null && !current.finished;
+    }
+
+    private Progress launch(Run run) {
+        current = run;
+        pool.execute(() -> execute(run));
+        return run.progress();
+    }
+
+    private void execute(Run run) {
+        MatchRecompute.Status status;
+        try {
+            if (run.slices > 0) {
+                new Slices(run, 0, run.slices).invoke();
+            }
+            status = run.allSlicesDone() ? MatchRecompute.Status.DONE : MatchRecompute.Status.CANCELLED;
+        } catch (RuntimeException e) {
+            System.out.println("Match recompute " + run.jobId + " failed: " + e.getMessage());
+            status = MatchRecompute.Status.FAILED;
+        }
+        try {
+            matchRecomputeRepository.finish(run.jobId, status, Instant.now());
+        } catch (RuntimeException e) {
+            System.out.println("Error finishing match recompute " + run.jobId + ": " + e.getMessage());
+        }
+        run.finishedNanos = System.nanoTime();
+        run.status = status;
+        run.finished = true;
+        Progress progress = run.progress();
+        System.out.printf("Match recompute %d %s: %d of %d users, %.0f users/s%n", run.jobId, status,
+                progress.usersDone(), progress.totalUsers(), progress.usersPerSecond());
+        notifyProgress(progress);
+    }
+
+    // Score one slice's users and swap in their matches
+    private void recompute(Run run, int slice) {
+        if (run.cancelled) {
+            return;
+        }
+        int from = slice * sliceSize;
+        int to = Math.min(from + sliceSize, run.userIds.length);
+        Instant computedAt = Instant.now();
+        List<Long> userIds = new ArrayList<>(to - from);
+        List<UserMatch> rows = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            long userId = run.userIds[i];
+            userIds.add(userId);
+            int rank = 1;
+            for (Scored match : tasteMatcher.topMatches(userId)) {
+                rows.add(new UserMatch(userId, match.profile().getUserId(), rank++, match.similarity(),
+                        modelVersion, computedAt));
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            userMatchRepository.deleteByUserIdIn(userIds);
+            userMatchRepository.saveAll(rows);
+        });
+        recomputedUsers.increment(userIds.size());
+
+        int doneUpTo = run.sliceDone(slice, userIds.size());
+        if (doneUpTo > 0) {
+            int usersUpTo = Math.min(doneUpTo * sliceSize, run.userIds.length);
+            matchRecomputeRepository.advanceCheckpoint(run.jobId, run.userIds[usersUpTo - 1], run.usersBefore + usersUpTo);
+        }
+        notifyProgress(run.progress());
+    }
+
+    private void notifyProgress(Progress progress) {
+        for (Consumer<Progress> listener : progressListeners) {
+            try {
+                listener.accept(progress);
+            } catch (RuntimeException e) {
+                System.out.println("Error in match recompute progress listener: " + e.getMessage());
+            }
+        }
+    }
+
+    // Halves the slices between tasks until each has one
+    private final class Slices extends RecursiveAction {
+
+        private final Run run;
+        private final int from;
+        private final int to;
+
+        private Slices(Run run, int from, int to) {
+            this.run = run;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                recompute(run, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Slices(run, from, middle), new Slices(run, middle, to));
+        }
+    }
+
+    // One run's users (those after the checkpoint it started from) and which of their slices are done
+    private final class Run {
+
+        private final long jobId;
+        private final long[] userIds;
+        private final long usersBefore;
+        private final int slices;
+        private final boolean[] done;
+        private final long startedNanos = System.nanoTime();
+        private final AtomicLong usersDone = new AtomicLong();
+        private int doneUpTo;
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private volatile long finishedNanos;
+        private volatile MatchRecompute.Status status = MatchRecompute.Status.RUNNING;
+
+        private Run(long jobId, long[] userIds, long usersBefore) {
+            this.jobId = jobId;
+            this.userIds = userIds;
+            this.usersBefore = usersBefore;
+            this.slices = (userIds.length + sliceSize - 1) / sliceSize;
+            this.done = new boolean[slices];
+        }
+
+        // Mark the slice done; the new length of the run of done slices from the start if it grew, else 0
+        private synchronized int sliceDone(int slice, int users) {
+            usersDone.addAndGet(users);
+            done[slice] = true;
+            int before = doneUpTo;
+            while (doneUpTo < slices && done[doneUpTo]) {
+                doneUpTo++;
+            }
+            return doneUpTo > before ? doneUpTo : 0;
+        }
+
+        private synchronized boolean allSlicesDone() {
+            return doneUpTo == slices;
+        }
+
+        private Progress progress() {
+            long users = usersDone.get();
+            double seconds = ((finished ? finishedNanos : System.nanoTime()) - startedNanos) / 1e9;
+            return new Progress(jobId, status, usersBefore + users, usersBefore + userIds.length,
+                    seconds > 0 ? users / seconds : 0);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.soundscape.services;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MinHash signatures over users' artist and track sets, in a banded LSH index, so the
+ * users likely to share a lot with you are found without looking at everyone.
+ *
+ * A signature is bands x rows ints: the minimum of each of that many hash functions over
+ * the set. Two sets agree on one of them with probability equal to their Jaccard
+ * similarity, so they land in the same bucket of at least one band with probability
+ * 1 - (1 - J^rows)^bands, which is high above about (1/bands)^(1/rows) and drops fast
+ * below it.
+ *
+ * Storage is primitive: each user has a dense index and one slot per band, and the users
+ * in a bucket are a doubly linked list through the slot arrays (next/prev), with the
+ * bucket heads in an open-addressing table keyed by a hash of (band, the band's rows).
+ * Putting a user again unlinks its old slots first, so the index follows taste changes
+ * one user at a time. Not thread-safe.
+ */
+public final class MinHashIndex {
+
+    private static final int NONE = -1;
+    private static final long EMPTY_KEY = 0;
+
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+
+    // Dense user indexes; a removed user's index is reused by the next new one
+    private final Map<Long, Integer> indexes = new HashMap<>();
+    private long[] userIds = new long[16];
+    private int[][] signatures = new int[16][];
+    private int[] free = new int[16];
+    private int freeCount;
+    private int allocated;
+
+    // Per slot (user index * bands + band): the neighbours in the slot's bucket
+    private int[] next;
+    private int[] prev;
+
+    // Bucket heads: open addressing, linear probing; an emptied bucket keeps its key with head NONE
+    private long[] tableKeys = new long[1024];
+    private int[] tableHeads = new int[1024];
+    private int tableUsed;
+
+    public MinHashIndex(int bands, int rows) {
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException("Need at least one band of one row: " + bands + "x" + rows);
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < seeds.length; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            seeds[i] = seed;
+        }
+        next = new int[16 * bands];
+        prev = new int[16 * bands];
+    }
+
+    // The set's signature; null for an empty set, which has nothing to match on
+    public int[] signature(Iterable<String> elements) {
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        boolean empty = true;
+        for (String element : elements) {
+            long hash = hash64(element);
+            for (int i = 0; i < seeds.length; i++) {
+                int value = (int) (mix(hash ^ seeds[i]) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+            empty = false;
+        }
+        return empty ? null : signature;
+    }
+
+    // Index the user under this signature, replacing any earlier one; a null signature removes the user
+    public void put(long userId, int[] signature) {
+        if (signature == null) {
+            remove(userId);
+            return;
+        }
+        if (signature.length != seeds.length) {
+            throw new IllegalArgumentException("Signature of " + signature.length + " hashes, expected " + seeds.length);
+        }
+        Integer existing = indexes.get(userId);
+        int index;
+        if (existing != null) {
+            index = existing;
+            unlink(index);
+        } else {
+            index = allocate(userId);
+        }
+        signatures[index] = signature.clone();
+        for (int band = 0; band < bands; band++) {
+            link(index * bands + band, bandKey(band, signature));
+        }
+    }
+
+    public void remove(long userId) {
+        Integer index = indexes.remove(userId);
+        if (index != null) {
+            unlink(index);
+            signatures[index] = null;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, free.length * 2);
+            }
+            free[freeCount++] = index;
+        }
+    }
+
+    public boolean contains(long userId) {
+        return indexes.containsKey(userId);
+    }
+
+    public int size() {
+        return indexes.size();
+    }
+
+    // The users sharing a bucket with this one in any band, sorted, without the user; empty if not indexed
+    public long[] candidates(long userId) {
+        Integer index = indexes.get(userId);
+        if (index == null) {
+            return new long[0];
+        }
+        long[] found = new long[64];
+        int count = 0;
+        for (int band = 0; band < bands; band++) {
+            int head = tableHeads[find(bandKey(band, signatures[index]))];
+            for (int slot = head; slot != NONE; slot = next[slot]) {
+                int other = slot / bands;
+                if (other == index) {
+                    continue;
+                }
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = userIds[other];
+            }
+        }
+        // A close match shares several bands; sort once and drop the repeats
+        Arrays.sort(found, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || found[i] != found[distinct - 1]) {
+                found[distinct++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, distinct);
+    }
+
+    private int allocate(long userId) {
+        int index;
+        if (freeCount > 0) {
+            index = free[--freeCount];
+        } else {
+            index = allocated++;
+            if (index == userIds.length) {
+                int capacity = userIds.length * 2;
+                userIds = Arrays.copyOf(userIds, capacity);
+                signatures = Arrays.copyOf(signatures, capacity);
+                next = Arrays.copyOf(next, capacity * bands);
+                prev = Arrays.copyOf(prev, capacity * bands);
+            }
+        }
+        indexes.put(userId, index);
+        userIds[index] = userId;
+        return index;
+    }
+
+    private void link(int slot, long key) {
+        int entry = find(key);
+        if (tableKeys[entry] != key) {
+            entry = insert(key);
+        }
+        int head = tableHeads[entry];
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        tableHeads[entry] = slot;
+    }
+
+    // Take the user out of its buckets; its signature must still be the one it was linked under
+    private void unlink(int index) {
+        for (int band = 0; band < bands; band++) {
+            int slot = index * bands + band;
+            if (prev[slot] != NONE) {
+                next[prev[slot]] = next[slot];
+            } else {
+                tableHeads[find(bandKey(band, signatures[index]))] = next[slot];
+            }
+            if (next[slot] != NONE) {
+                prev[next[slot]] = prev[slot];
+            }
+        }
+    }
+
+    // The table entry holding key, or the empty entry where it would go
+    private int find(long key) {
+        int mask = tableKeys.length - 1;
+        int entry = (int) mix(key) & mask;
+        while (tableKeys[entry] != EMPTY_KEY && tableKeys[entry] != key) {
+            entry = (entry + 1) & mask;
+        }
+        return entry;
+    }
+
+    private int insert(long key) {
+        if ((tableUsed + 1) * 4 > tableKeys.length * 3) {
+            rehash();
+        }
+        int entry = find(key);
+        tableKeys[entry] = key;
+        tableHeads[entry] = NONE;
+        tableUsed++;
+        return entry;
+    }
+
+    // Drop the emptied buckets, doubling the table until it is at most half full
+    private void rehash() {
+        long[] oldKeys = tableKeys;
+        int[] oldHeads = tableHeads;
+        int live = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY && oldHeads[i] != NONE) {
+                live++;
+            }
+        }
+        int capacity = oldKeys.length;
+        while (live * 2 > capacity) {
+            capacity *= 2;
+        }
+        tableKeys = new long[capacity];
+        tableHeads = new int[capacity];
+        tableUsed = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY && oldHeads[i] != NONE) {
+                int entry = find(oldKeys[i]);
+                tableKeys[entry] = oldKeys[i];
+                tableHeads[entry] = oldHeads[i];
+                tableUsed++;
+            }
+        }
+    }
+
+    // The band's rows hashed together with the band number; never EMPTY_KEY
+    private long bandKey(int band, int[] signature) {
+        long key = band + 1;
+        for (int row = band * rows; row < (band + 1) * rows; row++) {
+            key = mix(key * 31 + signature[row]);
+        }
+        return key == EMPTY_KEY ? 1 : key;
+    }
+
+    // FNV-1a over the chars, spread with mix
+    private static long hash64(String element) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < element.length(); i++) {
+            hash = (hash ^ element.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // MurmurHash3's 64-bit finalizer
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
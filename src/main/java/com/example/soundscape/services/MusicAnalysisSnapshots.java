@@ -0,0 +1,350 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.ListeningEvent;
+import com.example.soundscape.models.MusicAnalysisSnapshot;
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.ListeningEventRepository;
+import com.example.soundscape.repositories.MusicAnalysisSnapshotRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.spotify.ArtistMetadataCache;
+import com.example.soundscape.spotify.ExpiringLruCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Precomputed music analysis per user (the music_analysis_snapshots table), so the
+ * music-analysis page is one row read instead of six Spotify calls and a genre ranking.
+ *
+ * A user's first view computes the snapshot in the request; after that the page gets the
+ * stored one and, if it is older than refresh-after (or was degraded), a refresh starts in
+ * the background. A sweep every sweep-interval refreshes the stale snapshots of everyone
+ * else who has one, a few at a time on the sync pool.
+ *
+ * Top genres follow the listening history as it is ingested: each new play adds one to
+ * each of its genres. The scores of the max-tallies most recently active users are held
+ * in memory as a GenreTopK, so a batch of plays costs O(log k) per genre it touches instead
+ * of re-reading and re-ranking every genre; a user who is not held is read back from the
+ * row on their next plays. Writing the row still serializes every score. A refresh
+ * replaces the top-artist part of the scores and keeps the part from plays.
+ */
+@Service
+public class MusicAnalysisSnapshots {
+
+    private static final TypeReference<Map<String, Object>> ANALYSIS = new TypeReference<>() {};
+    private static final TypeReference<Map<String, Integer>> SCORES = new TypeReference<>() {};
+    private static final TypeReference<List<Object>> TOP_GENRES = new TypeReference<>() {};
+    // Plays of the stored history counted into a user's first snapshot
+    private static final int INITIAL_PLAYS = 1000;
+    private static final int SWEEP_PAGE_SIZE = 200;
+    private static final int LOCK_STRIPES = 64;
+
+    // A user's genre scores as stored on their row, kept up to date under the user's lock
+    private record Tally(GenreTopK genres, Map<String, Integer> playScores) {}
+
+    private final SpotifyService spotifyService;
+    private final ArtistMetadataCache artistMetadataCache;
+    private final MusicAnalysisSnapshotRepository snapshotRepository;
+    private final ListeningEventRepository listeningEventRepository;
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService syncExecutor;
+    private final Duration refreshAfter;
+    private final int sweepParallelism;
+
+    private final ExpiringLruCache<Long, Tally> tallies;
+    private final Set<Long> refreshing = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<MusicAnalysisSnapshot>> snapshotListeners = new CopyOnWriteArrayList<>();
+    // Serialize the read-modify-write of a user's row between a refresh and new plays
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public MusicAnalysisSnapshots(SpotifyService spotifyService,
+                                  ArtistMetadataCache artistMetadataCache,
+                                  MusicAnalysisSnapshotRepository snapshotRepository,
+                                  ListeningEventRepository listeningEventRepository,
+                                  UserRepository userRepository,
+                                  ListeningHistory listeningHistory,
+                                  ObjectMapper objectMapper,
+                                  @Qualifier("spotifySyncExecutor") ExecutorService syncExecutor,
+                                  @Qualifier("spotifySweepScheduler") ScheduledExecutorService scheduler,
+                                  @Value("${spotify.analysis.snapshot.refresh-after:6h}") Duration refreshAfter,
+                                  @Value("${spotify.analysis.snapshot.sweep-interval:1h}") Duration sweepInterval,
+                                  @Value("${spotify.analysis.snapshot.sweep-parallelism:2}") int sweepParallelism,
+                                  @Value("${spotify.analysis.snapshot.max-tallies:5000}") int maxTallies) {
+        this.spotifyService = spotifyService;
+        this.artistMetadataCache = artistMetadataCache;
+        this.snapshotRepository = snapshotRepository;
+        this.listeningEventRepository = listeningEventRepository;
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.syncExecutor = syncExecutor;
+        this.refreshAfter = refreshAfter;
+        this.sweepParallelism = sweepParallelism;
+        this.tallies = new ExpiringLruCache<>(maxTallies, refreshAfter);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+
+        listeningHistory.onPlaysStored(this::countPlays);
+        scheduler.scheduleWithFixedDelay(this::sweep, sweepInterval.toNanos(), sweepInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // The analysis as the page renders it (see SpotifyService.getUserMusicAnalysis), plus computed_at
+    public Map<String, Object> analysis(User user) {
+        Optional<MusicAnalysisSnapshot> stored = snapshotRepository.findById(user.getId());
+        if (stored.isEmpty()) {
+            return render(refresh(user));
+        }
+        MusicAnalysisSnapshot snapshot = stored.get();
+        if (snapshot.isDegraded() || snapshot.getComputedAt().plus(refreshAfter).isBefore(Instant.now())) {
+            requestRefresh(user);
+        }
+        return render(snapshot);
+    }
+
+    // Start a background refresh for the user unless one is already running
+    public void requestRefresh(User user) {
+        startRefresh(user, () -> {});
+    }
+
+    // Called with each snapshot after it is stored, on the thread that stored it
+    public void onSnapshotSaved(Consumer<MusicAnalysisSnapshot> listener) {
+        snapshotListeners.add(listener);
+    }
+
+    // Recompute the analysis from Spotify, keeping the genre scores that came from plays
+    MusicAnalysisSnapshot refresh(User user) {
+        Long userId = user.getId();
+        Map<String, Object> analysis = new HashMap<>(spotifyService.getUserMusicAnalysis(user));
+        @SuppressWarnings("unchecked")
+        Map<String, Integer> termScores = (Map<String, Integer>) analysis.remove("genre_scores");
+        analysis.remove("top_genres");
+        boolean degraded = Boolean.TRUE.equals(analysis.get("degraded"));
+
+        // A first snapshot starts from the history already stored
+        List<ListeningEvent> plays = snapshotRepository.existsById(userId)
+                ? List.of()
+                : listeningEventRepository.findRecent(userId, PageRequest.of(0, INITIAL_PLAYS));
+        Map<String, List<String>> artistGenres = genresOf(user, plays);
+
+        synchronized (lockFor(userId)) {
+            Optional<MusicAnalysisSnapshot> existing = snapshotRepository.findById(userId);
+            if (degraded && existing.isPresent()) {
+                // Keep what we have rather than replace it with a partial analysis
+                return existing.get();
+            }
+            MusicAnalysisSnapshot snapshot = existing.orElseGet(() -> new MusicAnalysisSnapshot(userId));
+            Map<String, Integer> playScores = existing.isPresent()
+                    ? readJson(snapshot.getPlayGenreScores(), SCORES, new HashMap<>())
+                    : new HashMap<>();
+
+            GenreTopK genres = GenreTopK.of(SpotifyService.TOP_GENRES, termScores != null ? termScores : Map.of());
+            playScores.forEach(genres::add);
+            Instant countedUntil = addPlays(plays, artistGenres, snapshot.getPlaysCountedUntil(), genres, playScores);
+
+            snapshot.recomputed(toJson(analysis), degraded, Instant.now());
+            snapshot.setGenres(toJson(topGenres(genres)), toJson(genres.scores()), toJson(playScores), countedUntil);
+            MusicAnalysisSnapshot stored = snapshotRepository.save(snapshot);
+            tallies.put(userId, new Tally(genres, playScores));
+            return saved(stored);
+        }
+    }
+
+    // Newly ingested plays: add their genres to the user's snapshot, if there is one yet
+    private void countPlays(User user, List<ListeningEvent> plays) {
+        Long userId = user.getId();
+        if (!snapshotRepository.existsById(userId)) {
+            return; // the first snapshot reads the stored history
+        }
+        Map<String, List<String>> artistGenres = genresOf(user, plays);
+        synchronized (lockFor(userId)) {
+            Optional<MusicAnalysisSnapshot> existing = snapshotRepository.findById(userId);
+            if (existing.isEmpty()) {
+                return;
+            }
+            MusicAnalysisSnapshot snapshot = existing.get();
+            Tally tally = tallies.get(userId);
+            if (tally == null) {
+                tally = new Tally(GenreTopK.of(SpotifyService.TOP_GENRES, readJson(snapshot.getGenreScores(), SCORES, Map.of())),
+                        readJson(snapshot.getPlayGenreScores(), SCORES, new HashMap<>()));
+            }
+            // Dropped until the row is saved, so a failed save leaves nothing ahead of the row
+            tallies.remove(userId);
+            Instant countedUntil = addPlays(plays, artistGenres, snapshot.getPlaysCountedUntil(), tally.genres(),
+                    tally.playScores());
+            if (!Objects.equals(countedUntil, snapshot.getPlaysCountedUntil())) {
+                GenreTopK genres = tally.genres();
+                snapshot.setGenres(toJson(topGenres(genres)), toJson(genres.scores()), toJson(tally.playScores()), countedUntil);
+                MusicAnalysisSnapshot stored = snapshotRepository.save(snapshot);
+                tallies.put(userId, tally);
+                saved(stored);
+            } else {
+                tallies.put(userId, tally);
+            }
+        }
+    }
+
+    // Refresh the stale snapshots, sweepParallelism at a time
+    void sweep() {
+        Semaphore inFlight = new Semaphore(sweepParallelism);
+        long afterId = 0;
+        int started = 0;
+        try {
+            while (true) {
+                List<Long> userIds = snapshotRepository.findStaleAfter(afterId, Instant.now().minus(refreshAfter),
+                        PageRequest.of(0, SWEEP_PAGE_SIZE));
+                for (User user : userRepository.findAllById(userIds)) {
+                    if (!user.isSpotifyConnected()) {
+                        continue;
+                    }
+                    inFlight.acquire();
+                    if (startRefresh(user, inFlight::release)) {
+                        started++;
+                    } else {
+                        inFlight.release();
+                    }
+                }
+                if (userIds.size() < SWEEP_PAGE_SIZE) {
+                    break;
+                }
+                afterId = userIds.get(userIds.size() - 1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // An exception would cancel the periodic sweep, so log it and try again next time
+            System.out.println("Error sweeping music-analysis snapshots: " + e.getMessage());
+        }
+        if (started > 0) {
+            System.out.println("Music-analysis sweep refreshed " + started + " snapshots");
+        }
+    }
+
+    // whenDone runs after the refresh, or at once if none was started
+    private boolean startRefresh(User user, Runnable whenDone) {
+        Long userId = user.getId();
+        if (userId == null || !refreshing.add(userId)) {
+            return false;
+        }
+        try {
+            syncExecutor.execute(() -> {
+                try {
+                    refresh(user);
+                } catch (RuntimeException e) {
+                    System.out.println("Error refreshing music analysis for user " + userId + ": " + e.getMessage());
+                } finally {
+                    refreshing.remove(userId);
+                    whenDone.run();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(userId);
+            return false;
+        }
+    }
+
+    // One point per play for each of its genres; returns the played_at of the latest play counted
+    private static Instant addPlays(List<ListeningEvent> plays, Map<String, List<String>> artistGenres, Instant countedUntil,
+                                    GenreTopK genres, Map<String, Integer> playScores) {
+        Instant latest = countedUntil;
+        for (ListeningEvent play : plays) {
+            if (countedUntil != null && !play.getPlayedAt().isAfter(countedUntil)) {
+                continue;
+            }
+            Set<String> playGenres = new HashSet<>();
+            for (String artistId : play.getArtistIds()) {
+                playGenres.addAll(artistGenres.getOrDefault(artistId, List.of()));
+            }
+            for (String genre : playGenres) {
+                genres.add(genre, 1);
+                playScores.merge(genre, 1, Integer::sum);
+            }
+            if (latest == null || play.getPlayedAt().isAfter(latest)) {
+                latest = play.getPlayedAt();
+            }
+        }
+        return latest;
+    }
+
+    private MusicAnalysisSnapshot saved(MusicAnalysisSnapshot snapshot) {
+        for (Consumer<MusicAnalysisSnapshot> listener : snapshotListeners) {
+            listener.accept(snapshot);
+        }
+        return snapshot;
+    }
+
+    private Map<String, List<String>> genresOf(User user, List<ListeningEvent> plays) {
+        if (plays.isEmpty()) {
+            return Map.of();
+        }
+        Set<String> artistIds = new LinkedHashSet<>();
+        plays.forEach(play -> artistIds.addAll(play.getArtistIds()));
+        return artistMetadataCache.genresOf(user, artistIds);
+    }
+
+    // Same shape as before: [[genre, score], ...]
+    private static List<Object[]> topGenres(GenreTopK genres) {
+        List<Object[]> top = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : genres.top()) {
+            top.add(new Object[]{entry.getKey(), entry.getValue()});
+        }
+        return top;
+    }
+
+    private Map<String, Object> render(MusicAnalysisSnapshot snapshot) {
+        Map<String, Object> analysis = readJson(snapshot.getAnalysis(), ANALYSIS, new HashMap<>());
+        analysis.put("top_genres", readJson(snapshot.getTopGenres(), TOP_GENRES, List.of()));
+        analysis.put("degraded", snapshot.isDegraded());
+        analysis.put("computed_at", snapshot.getComputedAt().toString());
+        return analysis;
+    }
+
+    private Object lockFor(Long userId) {
+        return locks[(int) Math.floorMod(userId, (long) LOCK_STRIPES)];
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize music-analysis snapshot", e);
+        }
+    }
+
+    private <T> T readJson(String json, TypeReference<T> type, T fallback) {
+        if (json == null) {
+            return fallback;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            System.out.println("Unreadable stored music-analysis snapshot: " + e.getMessage());
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.HashedTimingWheel;
+import com.example.soundscape.spotify.SpotifyResponses.PlaybackStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-sent now-playing updates, with one Spotify poller per user however many tabs are open.
+ *
+ * The first subscriber of a user starts a poller; it calls getCurrentlyPlaying and sends a
+ * "now-playing" event to all of the user's subscribers only when the track or the play state
+ * changes. A new subscriber gets the last known state at once. When the last subscriber goes
+ * away the poller is cancelled and dropped, so the registry only ever holds users with an
+ * open stream.
+ *
+ * Each poll picks the time of the next one (see nextDelay) and books it on a timing wheel
+ * shared by all pollers. While a track plays, the next check comes just after Spotify's
+ * progress says it will end, or after max-playing-interval if that is sooner, to catch
+ * skips and pauses made on other devices. While nothing plays, the wait doubles from
+ * interval up to max-idle-interval. A playback command sent through PlaybackCommandQueue
+ * brings the next check forward to after-command-delay, so changes made in the app show
+ * up at once however long the poller was going to wait.
+ *
+ * Memory stays bounded: a user keeps at most max-subscribers-per-user streams (the oldest is
+ * closed when another opens), the app at most max-subscribers, and streams that vanished
+ * without a goodbye are found by the heartbeat comment failing to send.
+ */
+@Service
+public class NowPlayingStream {
+
+    // The part of a status that decides whether subscribers hear about it
+    private record Playing(String isPlaying, String trackId) {
+        static Playing of(PlaybackStatus status) {
+            return new Playing(status.isPlaying(), status.trackId());
+        }
+    }
+
+    private static final PlaybackStatus FAILED = PlaybackStatus.notPlaying("Unable to fetch track info");
+
+    private static final class Poller {
+        final User user;
+        final List<SseEmitter> emitters = new ArrayList<>();
+        HashedTimingWheel.Timeout next;
+        PlaybackStatus last;
+        long lastSentNanos = System.nanoTime();
+        int quietPolls;
+        boolean commandSent;
+        boolean stopped;
+
+        Poller(User user) {
+            this.user = user;
+        }
+    }
+
+    private final SpotifyService spotifyService;
+    private final HashedTimingWheel timer;
+    private final Counter polls;
+    private final Duration interval;
+    private final Duration maxIdleInterval;
+    private final Duration maxPlayingInterval;
+    private final Duration trackEndGrace;
+    private final Duration afterCommandDelay;
+    private final Duration heartbeat;
+    private final Duration streamTimeout;
+    private final int maxSubscribersPerUser;
+    private final int maxSubscribers;
+
+    private final Map<Long, Poller> pollers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    public NowPlayingStream(SpotifyService spotifyService,
+                            PlaybackCommandQueue playbackCommandQueue,
+                            MeterRegistry meterRegistry,
+                            @Qualifier("spotifyNowPlayingTimer") HashedTimingWheel timer,
+                            @Value("${spotify.now-playing.interval:5s}") Duration interval,
+                            @Value("${spotify.now-playing.max-idle-interval:60s}") Duration maxIdleInterval,
+                            @Value("${spotify.now-playing.max-playing-interval:30s}") Duration maxPlayingInterval,
+                            @Value("${spotify.now-playing.track-end-grace:1s}") Duration trackEndGrace,
+                            @Value("${spotify.now-playing.after-command-delay:500ms}") Duration afterCommandDelay,
+                            @Value("${spotify.now-playing.heartbeat:30s}") Duration heartbeat,
+                            @Value("${spotify.now-playing.stream-timeout:30m}") Duration streamTimeout,
+                            @Value("${spotify.now-playing.max-subscribers-per-user:10}") int maxSubscribersPerUser,
+                            @Value("${spotify.now-playing.max-subscribers:5000}") int maxSubscribers) {
+        this.spotifyService = spotifyService;
+        this.timer = timer;
+        this.interval = interval;
+        this.maxIdleInterval = maxIdleInterval;
+        this.maxPlayingInterval = maxPlayingInterval;
+        this.trackEndGrace = trackEndGrace;
+        this.afterCommandDelay = afterCommandDelay;
+        this.heartbeat = heartbeat;
+        this.streamTimeout = streamTimeout;
+        this.maxSubscribersPerUser = maxSubscribersPerUser;
+        this.maxSubscribers = maxSubscribers;
+
+        Gauge.builder("spotify.now-playing.pollers", pollers, Map::size).register(meterRegistry);
+        Gauge.builder("spotify.now-playing.subscribers", subscribers, AtomicInteger::get).register(meterRegistry);
+        this.polls = Counter.builder("spotify.now-playing.polls").register(meterRegistry);
+
+        playbackCommandQueue.onCommandSent(user -> pollSoon(user.getId()));
+    }
+
+    // Stream of "now-playing" events for the user; completed at once if the app is at capacity
+    public SseEmitter subscribe(User user) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            emitter.complete();
+            return emitter;
+        }
+
+        SseEmitter evicted = null;
+        PlaybackStatus last;
+        while (true) {
+            Poller poller = pollers.computeIfAbsent(user.getId(), id -> new Poller(user));
+            synchronized (poller) {
+                if (poller.stopped) {
+                    continue; // lost a race with the last subscriber leaving; start a new poller
+                }
+                poller.emitters.add(emitter);
+                if (poller.emitters.size() > maxSubscribersPerUser) {
+                    evicted = poller.emitters.remove(0);
+                    subscribers.decrementAndGet();
+                }
+                if (poller.next == null && !start(poller)) {
+                    poller.emitters.remove(emitter);
+                    subscribers.decrementAndGet();
+                    emitter.complete();
+                    return emitter;
+                }
+                last = poller.last;
+            }
+            emitter.onCompletion(() -> unsubscribe(poller, emitter));
+            emitter.onTimeout(emitter::complete);
+            emitter.onError(error -> unsubscribe(poller, emitter));
+            break;
+        }
+
+        if (evicted != null) {
+            evicted.complete();
+        }
+        if (last != null) {
+            send(emitter, last);
+        }
+        return emitter;
+    }
+
+    // Number of users with a running poller
+    int activePollers() {
+        return pollers.size();
+    }
+
+    // How long to wait before the next poll, given what the last one saw
+    Duration nextDelay(PlaybackStatus status, int quietPolls) {
+        if (status.playing()) {
+            return status.remaining()
+                    .map(remaining -> remaining.plus(trackEndGrace))
+                    .filter(untilEnd -> untilEnd.compareTo(maxPlayingInterval) < 0)
+                    .orElse(maxPlayingInterval);
+        }
+        Duration backoff = interval.multipliedBy(1L << Math.min(quietPolls, 20));
+        return backoff.compareTo(maxIdleInterval) < 0 ? backoff : maxIdleInterval;
+    }
+
+    // Caller holds the poller's lock
+    private boolean start(Poller poller) {
+        if (!schedule(poller, Duration.ZERO)) {
+            pollers.remove(poller.user.getId(), poller);
+            poller.stopped = true;
+            return false;
+        }
+        return true;
+    }
+
+    // Caller holds the poller's lock
+    private boolean schedule(Poller poller, Duration delay) {
+        try {
+            poller.next = timer.schedule(() -> poll(poller), delay);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    // A playback command just went out: look again shortly instead of at the planned time
+    private void pollSoon(Long userId) {
+        Poller poller = pollers.get(userId);
+        if (poller == null) {
+            return;
+        }
+        synchronized (poller) {
+            if (poller.stopped || poller.next == null) {
+                return;
+            }
+            poller.quietPolls = 0;
+            if (!poller.next.cancel()) {
+                poller.commandSent = true; // a poll is under way; it schedules the next one
+                return;
+            }
+            schedule(poller, afterCommandDelay);
+        }
+    }
+
+    private void unsubscribe(Poller poller, SseEmitter emitter) {
+        synchronized (poller) {
+            if (!poller.emitters.remove(emitter)) {
+                return;
+            }
+            subscribers.decrementAndGet();
+            if (poller.emitters.isEmpty() && !poller.stopped) {
+                poller.stopped = true;
+                poller.next.cancel();
+                pollers.remove(poller.user.getId(), poller);
+            }
+        }
+    }
+
+    private void poll(Poller poller) {
+        PlaybackStatus status;
+        polls.increment();
+        try {
+            status = spotifyService.getCurrentlyPlaying(poller.user);
+        } catch (RuntimeException e) {
+            System.out.println("Now-playing poll failed for user " + poller.user.getId() + ": " + e.getMessage());
+            status = null;
+        }
+
+        List<SseEmitter> emitters;
+        boolean changed;
+        synchronized (poller) {
+            if (poller.stopped) {
+                return;
+            }
+            changed = status != null && (poller.last == null || !Objects.equals(Playing.of(poller.last), Playing.of(status)));
+            if (status != null) {
+                poller.last = status;
+            }
+            // A failed poll backs off like an idle one
+            poller.quietPolls = changed ? 0 : poller.quietPolls + 1;
+            schedule(poller, poller.commandSent ? afterCommandDelay : nextDelay(status != null ? status : FAILED, poller.quietPolls));
+            poller.commandSent = false;
+
+            if (!changed && System.nanoTime() - poller.lastSentNanos < heartbeat.toNanos()) {
+                return;
+            }
+            poller.lastSentNanos = System.nanoTime();
+            emitters = List.copyOf(poller.emitters);
+        }
+        for (SseEmitter emitter : emitters) {
+            if (changed) {
+                send(emitter, status);
+            } else {
+                heartbeat(emitter);
+            }
+        }
+    }
+
+    private void send(SseEmitter emitter, PlaybackStatus status) {
+        try {
+            emitter.send(SseEmitter.event().name("now-playing").data(status));
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    // Comment line: ignored by EventSource, but fails for a client that is gone
+    private void heartbeat(SseEmitter emitter) {
+        try {
+            emitter.send(SseEmitter.event().comment("keep-alive"));
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+}
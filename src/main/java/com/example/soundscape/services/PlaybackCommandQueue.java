@@ -0,0 +1,270 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyResponseCache;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Per-user queue for playback commands (play, pause, next, volume...), so the request that
+ * issues one is answered at once and the Spotify call happens in the background.
+ *
+ * Each user's commands run one at a time, in the order they were submitted. A command that
+ * is still waiting can be superseded: a new volume replaces a queued volume, repeated
+ * next/previous clicks add up to one command sent that many times, pause and resume replace
+ * a queued pause or resume, and playing something replaces a queued play of the same thing,
+ * so a burst from a slider or a double click costs a single call. A queued play of a track
+ * or playlist is never replaced by a pause or resume, which would lose what to play.
+ *
+ * The outcome of every command that was sent (with the ids of the commands merged into it)
+ * is pushed to the user's status subscribers as a "command" event, and the latest one is
+ * kept for lastResult.
+ */
+@Service
+public class PlaybackCommandQueue {
+
+    public enum Action { PLAY, PAUSE, NEXT, PREVIOUS, VOLUME, TRANSFER }
+
+    // target is the Spotify URI to play for PLAY (null to resume) or the device id for TRANSFER
+    public record Command(Action action, String target, int volume) {
+
+        public static Command play(String playlistId) {
+            return new Command(Action.PLAY, playlistId != null ? "spotify:playlist:" + playlistId : null, 0);
+        }
+
+        public static Command playTrack(String trackId) {
+            return new Command(Action.PLAY, "spotify:track:" + trackId, 0);
+        }
+
+        public static Command of(Action action) {
+            return new Command(action, null, 0);
+        }
+
+        public static Command volume(int volumePercent) {
+            return new Command(Action.VOLUME, null, volumePercent);
+        }
+
+        public static Command transfer(String deviceId) {
+            return new Command(Action.TRANSFER, deviceId, 0);
+        }
+    }
+
+    // What happened to a command; commandIds lists it and every earlier command merged into it
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record CommandResult(long commandId, List<Long> commandIds, String action, String status, String error) {}
+
+    // A command waiting to be sent, possibly standing in for several submitted ones
+    private static final class Pending {
+        User user;
+        Command command;
+        int times = 1;
+        final List<Long> ids = new ArrayList<>(1);
+
+        Pending(User user, Command command, long id) {
+            this.user = user;
+            this.command = command;
+            ids.add(id);
+        }
+    }
+
+    private static final class Mailbox {
+        final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        boolean running;
+    }
+
+    private final SpotifyApiClient spotifyApiClient;
+    private final SpotifyResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService playbackExecutor;
+    private final Duration statusTimeout;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Map<Long, CommandResult> lastResults = new ConcurrentHashMap<>();
+    private final Map<Long, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final List<Consumer<User>> commandListeners = new CopyOnWriteArrayList<>();
+
+    public PlaybackCommandQueue(SpotifyApiClient spotifyApiClient,
+                                SpotifyResponseCache responseCache,
+                                ObjectMapper objectMapper,
+                                @Qualifier("spotifyPlaybackExecutor") ExecutorService playbackExecutor,
+                                @Value("${spotify.playback.status-timeout:30m}") Duration statusTimeout) {
+        this.spotifyApiClient = spotifyApiClient;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+        this.playbackExecutor = playbackExecutor;
+        this.statusTimeout = statusTimeout;
+    }
+
+    // Queue a command for the user and return its id; the outcome is reported to subscribers
+    public long submit(User user, Command command) {
+        long id = nextId.incrementAndGet();
+        Mailbox mailbox = mailboxes.computeIfAbsent(user.getId(), key -> new Mailbox());
+        synchronized (mailbox) {
+            Pending last = mailbox.queue.peekLast();
+            if (last != null && supersedes(last, command)) {
+                merge(last, user, command, id);
+            } else {
+                mailbox.queue.addLast(new Pending(user, command, id));
+            }
+            if (mailbox.running) {
+                return id;
+            }
+            mailbox.running = true;
+        }
+        try {
+            playbackExecutor.execute(() -> drain(user.getId(), mailbox));
+        } catch (RejectedExecutionException e) {
+            List<Pending> dropped;
+            synchronized (mailbox) {
+                dropped = new ArrayList<>(mailbox.queue);
+                mailbox.queue.clear();
+                mailbox.running = false;
+            }
+            for (Pending pending : dropped) {
+                report(user.getId(), pending, "failed", "Too many playback commands in progress, try again");
+            }
+        }
+        return id;
+    }
+
+    public Optional<CommandResult> lastResult(User user) {
+        return Optional.ofNullable(lastResults.get(user.getId()));
+    }
+
+    // Stream of "command" events for this user's playback commands
+    public SseEmitter subscribe(User user) {
+        SseEmitter emitter = new SseEmitter(statusTimeout.toMillis());
+        List<SseEmitter> emitters = subscribers.computeIfAbsent(user.getId(), key -> new CopyOnWriteArrayList<>());
+        emitters.add(emitter);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> emitters.remove(emitter));
+        return emitter;
+    }
+
+    // Called on the playback thread once each command has been sent to Spotify (or has failed)
+    public void onCommandSent(Consumer<User> listener) {
+        commandListeners.add(listener);
+    }
+
+    private static boolean supersedes(Pending queued, Command next) {
+        Action queuedAction = queued.command.action();
+        return switch (next.action()) {
+            case VOLUME, TRANSFER, NEXT, PREVIOUS -> queuedAction == next.action();
+            // Pause and resume have no target, so equal targets means both are pause/resume
+            // or both play the same track or playlist
+            case PLAY, PAUSE -> (queuedAction == Action.PLAY || queuedAction == Action.PAUSE)
+                    && Objects.equals(queued.command.target(), next.target());
+        };
+    }
+
+    private static void merge(Pending queued, User user, Command next, long id) {
+        if (next.action() == Action.NEXT || next.action() == Action.PREVIOUS) {
+            queued.times++;
+        } else {
+            queued.command = next;
+        }
+        queued.user = user;
+        queued.ids.add(id);
+    }
+
+    private void drain(Long userId, Mailbox mailbox) {
+        while (true) {
+            Pending pending;
+            synchronized (mailbox) {
+                pending = mailbox.queue.pollFirst();
+                if (pending == null) {
+                    mailbox.running = false;
+                    return;
+                }
+            }
+            try {
+                for (int i = 0; i < pending.times; i++) {
+                    send(pending.user, pending.command);
+                }
+                report(userId, pending, "done", null);
+            } catch (RuntimeException e) {
+                System.out.println("Playback command " + pending.command.action() + " failed for user " + userId + ": " + e.getMessage());
+                report(userId, pending, "failed", e.getMessage());
+            } finally {
+                responseCache.invalidateAfterPlayback(pending.user);
+                for (Consumer<User> listener : commandListeners) {
+                    listener.accept(pending.user);
+                }
+            }
+        }
+    }
+
+    private void send(User user, Command command) {
+        switch (command.action()) {
+            case PLAY -> spotifyApiClient.exchange(user, HttpMethod.PUT, "/me/player/play", playBody(command.target()));
+            case PAUSE -> spotifyApiClient.exchange(user, HttpMethod.PUT, "/me/player/pause", null);
+            case NEXT -> spotifyApiClient.exchange(user, HttpMethod.POST, "/me/player/next", null);
+            case PREVIOUS -> spotifyApiClient.exchange(user, HttpMethod.POST, "/me/player/previous", null);
+            case VOLUME -> spotifyApiClient.exchange(user, HttpMethod.PUT,
+                    "/me/player/volume?volume_percent=" + command.volume(), null);
+            case TRANSFER -> spotifyApiClient.exchange(user, HttpMethod.PUT, "/me/player",
+                    toJson(Map.of("device_ids", List.of(command.target()), "play", true)));
+        }
+    }
+
+    // A single track is played by URI; anything else (playlist, album) as the playback context
+    private String playBody(String uri) {
+        if (uri == null) {
+            return "{}";
+        }
+        return uri.startsWith("spotify:track:")
+                ? toJson(Map.of("uris", List.of(uri)))
+                : toJson(Map.of("context_uri", uri));
+    }
+
+    // Ids come from the request, so bodies are serialized rather than pasted together
+    private String toJson(Map<String, Object> body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize playback command", e);
+        }
+    }
+
+    private void report(Long userId, Pending pending, String status, String error) {
+        CommandResult result = new CommandResult(pending.ids.get(pending.ids.size() - 1), List.copyOf(pending.ids),
+                pending.command.action().name().toLowerCase(), status, error);
+        lastResults.put(userId, result);
+
+        List<SseEmitter> emitters = subscribers.get(userId);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name("command").data(result));
+            } catch (IOException | IllegalStateException e) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.SpotifyPlaylist;
+import com.example.soundscape.models.SpotifyPlaylistTrack;
+import com.example.soundscape.repositories.SpotifyPlaylistRepository;
+import com.example.soundscape.repositories.SpotifyPlaylistTrackRepository;
+import com.example.soundscape.spotify.SpotifyResponses.ImageUrl;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistTrack;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistTracksResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Local store of playlist tracks, keyed by playlist id and the snapshot_id they belong to.
+ * SpotifyService refetches a playlist only when Spotify reports a different snapshot, and
+ * serves every page of its tracks from here.
+ */
+@Service
+@Transactional
+public class PlaylistStore {
+
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {};
+    private static final TypeReference<List<ImageUrl>> IMAGE_LIST = new TypeReference<>() {};
+
+    private final SpotifyPlaylistRepository playlistRepository;
+    private final SpotifyPlaylistTrackRepository trackRepository;
+    private final ObjectMapper objectMapper;
+
+    public PlaylistStore(SpotifyPlaylistRepository playlistRepository,
+                         SpotifyPlaylistTrackRepository trackRepository,
+                         ObjectMapper objectMapper) {
+        this.playlistRepository = playlistRepository;
+        this.trackRepository = trackRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<SpotifyPlaylist> find(String playlistId) {
+        return playlistRepository.findById(playlistId);
+    }
+
+    // Replace the stored tracks with the given snapshot's tracks, in playlist order
+    public SpotifyPlaylist replaceTracks(String playlistId, String snapshotId, String name, List<PlaylistTrack> tracks) {
+        trackRepository.deleteByPlaylistId(playlistId);
+
+        List<SpotifyPlaylistTrack> rows = new ArrayList<>(tracks.size());
+        for (int position = 0; position < tracks.size(); position++) {
+            PlaylistTrack track = tracks.get(position);
+            rows.add(new SpotifyPlaylistTrack(playlistId, position, track.id(), track.name(), track.uri(),
+                    track.durationMs(), toJson(track.artists()), track.albumName(), toJson(track.albumImages())));
+        }
+        trackRepository.saveAll(rows);
+        return playlistRepository.save(new SpotifyPlaylist(playlistId, snapshotId, name, rows.size()));
+    }
+
+    @Transactional(readOnly = true)
+    public PlaylistTracksResponse page(SpotifyPlaylist playlist, int offset, int limit) {
+        List<SpotifyPlaylistTrack> rows = trackRepository.findByPlaylistIdAndPositionBetweenOrderByPosition(
+                playlist.getId(), offset, offset + limit - 1);
+
+        List<PlaylistTrack> tracks = new ArrayList<>(rows.size());
+        for (SpotifyPlaylistTrack row : rows) {
+            List<String> artists = fromJson(row.getArtists(), STRING_LIST);
+            tracks.add(new PlaylistTrack(row.getTrackId(), row.getName(), row.getUri(), row.getDurationMs(),
+                    artists, String.join(", ", artists), row.getAlbumName(), fromJson(row.getAlbumImages(), IMAGE_LIST)));
+        }
+        return new PlaylistTracksResponse(tracks, playlist.getTrackCount());
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize playlist track field", e);
+        }
+    }
+
+    private <T> List<T> fromJson(String json, TypeReference<List<T>> type) {
+        if (json == null) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            System.out.println("Unreadable stored playlist track field: " + e.getMessage());
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.SavedTrack;
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.SavedTrackRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPayloads;
+import com.example.soundscape.spotify.SpotifyPayloads.SavedTracksPage;
+import com.example.soundscape.spotify.SpotifyPayloads.Track;
+import com.example.soundscape.spotify.SpotifyPriority;
+import com.example.soundscape.spotify.SpotifyResponses.SavedTrackSummary;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Local copy of each user's liked songs (the saved_tracks table), so "Load more" is a
+ * database query instead of a Spotify round trip.
+ *
+ * The first sync pulls the whole library with a bounded number of pages in flight. Later
+ * syncs read /me/tracks (newest first) only until they reach the newest added_at Spotify
+ * listed last time. If Spotify's total then differs from last time's plus the new songs,
+ * songs were un-liked and the library is pulled again in full. The comparison is between
+ * Spotify's own counts, because items with no track id (local files, unavailable tracks)
+ * are listed and counted by Spotify but never stored. Syncs run in the background; until the first one has
+ * finished, page() returns empty and callers read from Spotify directly.
+ */
+@Service
+public class SavedTracksLibrary {
+
+    // A page of liked songs and the keyset cursor for the next one (null on the last page)
+    public record Page(List<SavedTrackSummary> tracks, String nextCursor) {}
+
+    // What /me/tracks listed at the end of a sync: its total, and the newest item's added_at
+    private record Listed(int total, Instant newestAt) {}
+
+    private static final int SPOTIFY_PAGE_SIZE = 50;
+    private static final String DEFAULT_IMAGE = "/images/default.png";
+
+    private final SpotifyApiClient spotifyApiClient;
+    private final SavedTrackRepository savedTrackRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService fanOutExecutor;
+    private final ExecutorService syncExecutor;
+    private final int parallelism;
+    private final Duration refreshInterval;
+
+    private final Map<Long, Instant> lastSynced = new ConcurrentHashMap<>();
+    private final Map<Long, Listed> lastListed = new ConcurrentHashMap<>();
+    private final Set<Long> syncing = ConcurrentHashMap.newKeySet();
+
+    public SavedTracksLibrary(SpotifyApiClient spotifyApiClient,
+                              SavedTrackRepository savedTrackRepository,
+                              UserRepository userRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Qualifier("spotifyFanOutExecutor") ExecutorService fanOutExecutor,
+                              @Qualifier("spotifySyncExecutor") ExecutorService syncExecutor,
+                              @Value("${spotify.saved-tracks.sync-parallelism:4}") int parallelism,
+                              @Value("${spotify.saved-tracks.refresh-interval:5m}") Duration refreshInterval) {
+        this.spotifyApiClient = spotifyApiClient;
+        this.savedTrackRepository = savedTrackRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.fanOutExecutor = fanOutExecutor;
+        this.syncExecutor = syncExecutor;
+        this.parallelism = parallelism;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * A page of the user's liked songs, newest first: the page after cursor if one is given,
+     * otherwise the page at offset. Empty if the library has not been synced yet.
+     */
+    public Optional<Page> page(User user, String cursor, int offset, int limit) {
+        Instant syncedAt = lastSynced.get(user.getId());
+        if (syncedAt == null && user.getSavedTracksSyncedAt() != null) {
+            syncedAt = user.getSavedTracksSyncedAt();
+            lastSynced.putIfAbsent(user.getId(), syncedAt);
+        }
+        if (syncedAt == null || syncedAt.plus(refreshInterval).isBefore(Instant.now())) {
+            requestSync(user);
+        }
+        if (syncedAt == null) {
+            return Optional.empty();
+        }
+
+        List<SavedTrack> rows;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] position = cursor.split("-", 2);
+            try {
+                rows = savedTrackRepository.findAfter(user.getId(), Instant.ofEpochMilli(Long.parseLong(position[0])),
+                        Long.parseLong(position[1]), PageRequest.of(0, limit));
+            } catch (RuntimeException e) {
+                System.out.println("Ignoring malformed saved-tracks cursor: " + cursor);
+                return Optional.of(new Page(List.of(), null));
+            }
+        } else {
+            // Rows are counted from 0 and a position continues after its row, so the page at
+            // offset continues after row offset - 1
+            ScrollPosition position = offset > 0 ? ScrollPosition.offset(offset - 1) : ScrollPosition.offset();
+            rows = savedTrackRepository.findByUserIdOrderByAddedAtDescIdDesc(user.getId(), position, Limit.of(limit))
+                    .getContent();
+        }
+
+        List<SavedTrackSummary> tracks = new ArrayList<>(rows.size());
+        for (SavedTrack row : rows) {
+            tracks.add(new SavedTrackSummary(row.getName(), row.getArtist(), row.getUri(), row.getImage()));
+        }
+        String nextCursor = null;
+        if (rows.size() == limit) {
+            SavedTrack last = rows.get(rows.size() - 1);
+            nextCursor = last.getAddedAt().toEpochMilli() + "-" + last.getId();
+        }
+        return Optional.of(new Page(tracks, nextCursor));
+    }
+
+    // Start a background sync for the user unless one is already running
+    public void requestSync(User user) {
+        Long userId = user.getId();
+        if (userId == null || !syncing.add(userId)) {
+            return;
+        }
+        try {
+            syncExecutor.execute(() -> {
+                try {
+                    sync(user);
+                } catch (RuntimeException e) {
+                    System.out.println("Error syncing liked songs for user " + userId + ": " + e.getMessage());
+                } finally {
+                    syncing.remove(userId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            syncing.remove(userId);
+        }
+    }
+
+    void sync(User user) {
+        Long userId = user.getId();
+        SavedTracksPage first = fetchPage(user, 0);
+        Listed before = lastListed.get(userId);
+        if (before == null && user.getSavedTracksTotal() != null) {
+            before = new Listed(user.getSavedTracksTotal(), user.getSavedTracksNewestAt());
+        }
+
+        if (before != null) {
+            List<SpotifyPayloads.SavedTrack> fresh = listedAfter(user, first, before.newestAt());
+            if (first.total() == before.total() + fresh.size()) {
+                int added = storeNew(user, fresh);
+                markSynced(userId, first);
+                if (added > 0) {
+                    System.out.println("Added " + added + " new liked songs for user " + userId);
+                }
+                return;
+            }
+            // Spotify's total no longer matches: songs were removed, so take the full list again
+        }
+
+        int stored = syncFull(user, first);
+        markSynced(userId, first);
+        System.out.println("Synced " + stored + " liked songs for user " + userId);
+    }
+
+    // The items added after watermark (every item if it is null); /me/tracks is ordered newest first
+    private List<SpotifyPayloads.SavedTrack> listedAfter(User user, SavedTracksPage first, Instant watermark) {
+        List<SpotifyPayloads.SavedTrack> fresh = new ArrayList<>();
+        SavedTracksPage page = first;
+        int offset = 0;
+        while (true) {
+            boolean reachedWatermark = false;
+            for (SpotifyPayloads.SavedTrack item : page.items()) {
+                if (watermark != null && !Instant.parse(item.addedAt()).isAfter(watermark)) {
+                    reachedWatermark = true;
+                    break;
+                }
+                fresh.add(item);
+            }
+            if (reachedWatermark || page.next() == null || page.items().isEmpty()) {
+                break;
+            }
+            offset += SPOTIFY_PAGE_SIZE;
+            page = fetchPage(user, offset);
+        }
+        return fresh;
+    }
+
+    // Store the songs among fresh that are not stored yet
+    private int storeNew(User user, List<SpotifyPayloads.SavedTrack> fresh) {
+        if (fresh.isEmpty()) {
+            return 0;
+        }
+        List<SavedTrack> rows = toRows(user, fresh);
+        Set<String> alreadyStored = new HashSet<>(savedTrackRepository.findStoredTrackIds(user.getId(),
+                rows.stream().map(SavedTrack::getTrackId).toList()));
+        rows.removeIf(row -> alreadyStored.contains(row.getTrackId()));
+        savedTrackRepository.saveAll(rows);
+        return rows.size();
+    }
+
+    // Fetch every page, at most `parallelism` at a time, then replace the stored library at once
+    private int syncFull(User user, SavedTracksPage first) {
+        int pages = (first.total() + SPOTIFY_PAGE_SIZE - 1) / SPOTIFY_PAGE_SIZE;
+        List<CompletableFuture<SavedTracksPage>> futures = new ArrayList<>(Math.max(1, pages));
+        futures.add(CompletableFuture.completedFuture(first));
+
+        Semaphore inFlight = new Semaphore(parallelism);
+        try {
+            for (int page = 1; page < pages; page++) {
+                int offset = page * SPOTIFY_PAGE_SIZE;
+                inFlight.acquire();
+                try {
+                    futures.add(CompletableFuture.supplyAsync(() -> fetchPage(user, offset), fanOutExecutor)
+                            .whenComplete((result, error) -> inFlight.release()));
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted syncing liked songs");
+        } catch (RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+
+        List<SpotifyPayloads.SavedTrack> items = new ArrayList<>(first.total());
+        for (CompletableFuture<SavedTracksPage> future : futures) {
+            items.addAll(future.join().items());
+        }
+        List<SavedTrack> rows = toRows(user, items);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            savedTrackRepository.deleteByUserId(user.getId());
+            savedTrackRepository.saveAll(rows);
+        });
+        return rows.size();
+    }
+
+    // One row per track id (a page boundary can shift while paging and repeat an item)
+    private static List<SavedTrack> toRows(User user, List<SpotifyPayloads.SavedTrack> items) {
+        Map<String, SavedTrack> rows = new LinkedHashMap<>();
+        for (SpotifyPayloads.SavedTrack item : items) {
+            Track track = item.track();
+            if (track == null || track.id() == null || item.addedAt() == null) {
+                continue;
+            }
+            String imageUrl = track.album().firstImageUrl();
+            rows.putIfAbsent(track.id(), new SavedTrack(user, track.id(), track.name(),
+                    track.artists().isEmpty() ? "" : track.artists().get(0).name(),
+                    track.uri(), imageUrl != null ? imageUrl : DEFAULT_IMAGE, Instant.parse(item.addedAt())));
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    private SavedTracksPage fetchPage(User user, int offset) {
+        String url = "/me/tracks?limit=" + SPOTIFY_PAGE_SIZE + "&offset=" + offset;
+        try {
+            return spotifyApiClient.readValue(spotifyApiClient.get(user, url, SpotifyPriority.BACKGROUND).getBody(),
+                    SavedTracksPage.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void markSynced(Long userId, SavedTracksPage first) {
+        Instant now = Instant.now();
+        Listed listed = new Listed(first.total(),
+                first.items().isEmpty() ? null : Instant.parse(first.items().get(0).addedAt()));
+        userRepository.markSavedTracksSynced(userId, now, listed.total(), listed.newestAt());
+        lastListed.put(userId, listed);
+        lastSynced.put(userId, now);
+    }
+}
@@ -1,42 +1,117 @@
 package com.example.soundscape.services;
 
+import com.example.soundscape.models.ListeningEvent;
+import com.example.soundscape.models.SpotifyPlaylist;
 import com.example.soundscape.models.User;
-import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.spotify.ArtistMetadataCache;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyBulkhead;
+import com.example.soundscape.spotify.SpotifyEndpoint;
+import com.example.soundscape.spotify.SpotifyPayloads.ArtistRef;
+import com.example.soundscape.spotify.SpotifyPayloads.Image;
+import com.example.soundscape.spotify.SpotifyPayloads.PlayHistory;
+import com.example.soundscape.spotify.SpotifyPayloads.PlaylistItem;
+import com.example.soundscape.spotify.SpotifyPayloads.PlaylistSnapshot;
+import com.example.soundscape.spotify.SpotifyPayloads.PlaylistTracksPage;
+import com.example.soundscape.spotify.SpotifyPayloads.RecentlyPlayedPage;
+import com.example.soundscape.spotify.SpotifyPayloads.SavedTrack;
+import com.example.soundscape.spotify.SpotifyPayloads.SavedTracksPage;
+import com.example.soundscape.spotify.SpotifyPayloads.Track;
+import com.example.soundscape.spotify.SpotifyPriority;
+import com.example.soundscape.spotify.SpotifyRequestCoalescer;
+import com.example.soundscape.spotify.SpotifyResponseCache;
+import com.example.soundscape.spotify.SpotifyResponses.Device;
+import com.example.soundscape.spotify.SpotifyResponses.DevicesResponse;
+import com.example.soundscape.spotify.SpotifyResponses.ImageUrl;
+import com.example.soundscape.spotify.SpotifyResponses.PlaybackStatus;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistSummary;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistTrack;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistTracksResponse;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistsResponse;
+import com.example.soundscape.spotify.SpotifyResponses.SavedTrackSummary;
+import com.example.soundscape.spotify.SpotifyResponses.TrackCount;
+import com.example.soundscape.spotify.TrackMetadataCache;
+import com.example.soundscape.spotify.TrackMetadataCache.TrackMetadata;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 public class SpotifyService {
 
-    private final UserRepository userRepository;
-    private final RestTemplate restTemplate;
-
-    public SpotifyService(UserRepository userRepository) {
-        this.userRepository = userRepository;
-        this.restTemplate = new RestTemplate();
+    // Genres ranked in the music analysis
+    public static final int TOP_GENRES = 10;
+
+    // Largest page Spotify serves for playlist tracks, and the only fields we store from it
+    private static final int PLAYLIST_PAGE_SIZE = 100;
+    private static final int SAVED_TRACKS_PAGE_SIZE = 50;
+    private static final String PLAYLIST_TRACK_FIELDS =
+            "total,items(track(id,name,uri,duration_ms,artists(name),album(name,images(url))))";
+
+    private final SpotifyApiClient spotifyApiClient;
+    private final SpotifyResponseCache responseCache;
+    private final SpotifyRequestCoalescer requestCoalescer;
+    private final PlaylistStore playlistStore;
+    private final SavedTracksLibrary savedTracksLibrary;
+    private final TrackMetadataCache trackMetadataCache;
+    private final ArtistMetadataCache artistMetadataCache;
+    private final ListeningHistory listeningHistory;
+    private final ExecutorService fanOutExecutor;
+    private final Duration analysisDeadline;
+
+    public SpotifyService(SpotifyApiClient spotifyApiClient,
+                          SpotifyResponseCache responseCache,
+                          SpotifyRequestCoalescer requestCoalescer,
+                          PlaylistStore playlistStore,
+                          SavedTracksLibrary savedTracksLibrary,
+                          TrackMetadataCache trackMetadataCache,
+                          ArtistMetadataCache artistMetadataCache,
+                          ListeningHistory listeningHistory,
+                          @Qualifier("spotifyFanOutExecutor") ExecutorService fanOutExecutor,
+                          @Value("${spotify.analysis.deadline:4s}") Duration analysisDeadline) {
+        this.spotifyApiClient = spotifyApiClient;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.playlistStore = playlistStore;
+        this.savedTracksLibrary = savedTracksLibrary;
+        this.trackMetadataCache = trackMetadataCache;
+        this.artistMetadataCache = artistMetadataCache;
+        this.listeningHistory = listeningHistory;
+        this.fanOutExecutor = fanOutExecutor;
+        this.analysisDeadline = analysisDeadline;
     }
 
     // Get Spotify user profile to verify connection
-    public Map<String, String> getUserProfile(String accessToken) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
+    public Map<String, String> getUserProfile(User user) {
+        return responseCache.get(user, SpotifyEndpoint.PROFILE, "",
+                () -> fetchUserProfile(user), profile -> profile.containsKey("email"));
+    }
 
-            String url = "https://api.spotify.com/v1/me";
+    private Map<String, String> fetchUserProfile(User user) {
+        try {
+            String url = "/me";
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url);
 
             if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
+                JsonNode root = spotifyApiClient.readTree(response.getBody());
 
                 Map<String, String> profile = new HashMap<>();
                 profile.put("displayName", root.get("display_name").asText());
@@ -55,19 +130,12 @@ public class SpotifyService {
     }
 
     // Get user's top artists from Spotify API
-    public String getUserTopArtists(String accessToken) {
+    public String getUserTopArtists(User user) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
             // Spotify API endpoint for user's top artists
-            String url = "https://api.spotify.com/v1/me/top/artists?limit=10";
+            String url = "/me/top/artists?limit=10";
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url);
 
             if (response.getStatusCode() == HttpStatus.OK) {
                 return response.getBody(); // Returns JSON with top artists
@@ -78,225 +146,99 @@ public class SpotifyService {
         return "Unable to fetch top artists";
     }
 
-    // Find users with similar music taste
-    public List<User> findMusicMatches(User currentUser) {
-        List<User> allUsers = userRepository.findAll();
-        List<User> matches = new ArrayList<>();
-
-        // For now, just return all other users (we'll implement actual matching later)
-        for (User user : allUsers) {
-            if (!user.getId().equals(currentUser.getId()) &&
-                    user.getSpotifyAccessToken() != null) {
-                matches.add(user);
-            }
-        }
-
-        return matches;
-    }
-
     // Start playback on user's Spotify
-    public void startPlayback(String accessToken) {
+    public void startPlayback(User user) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
             // Simple play command - you can customize this
             String playBody = "{\"context_uri\":\"spotify:album:5zT1JLIj9E57p3e1rFm9Uq\"}"; // Example album
 
-            HttpEntity<String> entity = new HttpEntity<>(playBody, headers);
+            String url = "/me/player/play";
 
-            String url = "https://api.spotify.com/v1/me/player/play";
-
-            restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
+            spotifyApiClient.exchange(user, HttpMethod.PUT, url, playBody);
+            responseCache.invalidateAfterPlayback(user);
 
         } catch (Exception e) {
             System.out.println("Error starting playback: " + e.getMessage());
         }
     }
 
-    // Play a specific track by ID
-    public void playTrack(String accessToken, String trackId) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            // Play specific track using Spotify track URI
-            String playBody = "{\"uris\":[\"spotify:track:" + trackId + "\"]}";
-
-            HttpEntity<String> entity = new HttpEntity<>(playBody, headers);
-
-            String url = "https://api.spotify.com/v1/me/player/play";
-
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Successfully started playing track: " + trackId);
-            } else {
-                System.out.println("Failed to play track. Status: " + response.getStatusCode());
-            }
-
-        } catch (Exception e) {
-            System.out.println("Error playing track " + trackId + ": " + e.getMessage());
-            throw new RuntimeException("Failed to play track: " + e.getMessage());
-        }
-    }
-
-    // Search for tracks on Spotify
-    public List<Map<String, String>> searchTracks(String accessToken, String query) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            // URL encode the query
-            String encodedQuery = java.net.URLEncoder.encode(query, "UTF-8");
-            String url = "https://api.spotify.com/v1/search?q=" + encodedQuery + "&type=track&limit=10";
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
-
-            if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
-                JsonNode tracks = root.get("tracks").get("items");
-
-                List<Map<String, String>> trackList = new ArrayList<>();
-                
-                for (JsonNode track : tracks) {
-                    Map<String, String> trackInfo = new HashMap<>();
-                    trackInfo.put("id", track.get("id").asText());
-                    trackInfo.put("name", track.get("name").asText());
-                    trackInfo.put("artist", track.get("artists").get(0).get("name").asText());
-                    trackInfo.put("album", track.get("album").get("name").asText());
-                    
-                    // Get album image if available
-                    if (track.get("album").has("images") && track.get("album").get("images").size() > 0) {
-                        trackInfo.put("image", track.get("album").get("images").get(0).get("url").asText());
-                    } else {
-                        trackInfo.put("image", "");
-                    }
-                    
-                    trackInfo.put("spotifyUrl", track.get("external_urls").get("spotify").asText());
-                    trackList.add(trackInfo);
-                }
-                
-                return trackList;
-            }
-        } catch (Exception e) {
-            System.out.println("Error searching tracks: " + e.getMessage());
-        }
-
-        return new ArrayList<>();
-    }
-
     // Get track details by Spotify ID
-    public Map<String, String> getTrackById(String accessToken, String trackId) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            String url = "https://api.spotify.com/v1/tracks/" + trackId;
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
-
-            if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode track = mapper.readTree(response.getBody());
-
-                Map<String, String> trackInfo = new HashMap<>();
-                trackInfo.put("id", track.get("id").asText());
-                trackInfo.put("name", track.get("name").asText());
-                trackInfo.put("artist", track.get("artists").get(0).get("name").asText());
-                trackInfo.put("album", track.get("album").get("name").asText());
-                
-                if (track.get("album").has("images") && track.get("album").get("images").size() > 0) {
-                    trackInfo.put("image", track.get("album").get("images").get(0).get("url").asText());
-                } else {
-                    trackInfo.put("image", "");
-                }
-                
-                trackInfo.put("spotifyUrl", track.get("external_urls").get("spotify").asText());
-                return trackInfo;
-            }
-        } catch (Exception e) {
-            System.out.println("Error getting track details: " + e.getMessage());
+    public Map<String, String> getTrackById(User user, String trackId) {
+        TrackMetadata track = trackMetadataCache.get(user, trackId);
+        if (track == null) {
+            return new HashMap<>();
         }
 
-        return new HashMap<>();
+        Map<String, String> trackInfo = new HashMap<>();
+        trackInfo.put("id", track.id());
+        trackInfo.put("name", track.name());
+        trackInfo.put("artist", track.artist());
+        trackInfo.put("album", track.album());
+        trackInfo.put("image", track.image());
+        trackInfo.put("spotifyUrl", track.spotifyUrl());
+        return trackInfo;
     }
 
     // Get currently playing track
-    public Map<String, String> getCurrentlyPlaying(String accessToken) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
+    // Concurrent polls for the same user (several tabs, status AJAX) share one Spotify call.
+    public PlaybackStatus getCurrentlyPlaying(User user) {
+        return requestCoalescer.execute(SpotifyResponseCache.ownerOf(user), "currently-playing", "",
+                () -> fetchCurrentlyPlaying(user));
+    }
 
-            String url = "https://api.spotify.com/v1/me/player/currently-playing";
+    private PlaybackStatus fetchCurrentlyPlaying(User user) {
+        try {
+            String url = "/me/player/currently-playing";
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url);
 
             if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
-
-                Map<String, String> trackInfo = new HashMap<>();
+                JsonNode root = spotifyApiClient.readTree(response.getBody());
 
                 if (root.has("is_playing") && root.get("is_playing").asBoolean()) {
                     JsonNode item = root.get("item");
-                    trackInfo.put("trackName", item.get("name").asText());
-                    trackInfo.put("artistName", item.get("artists").get(0).get("name").asText());
-                    trackInfo.put("albumName", item.get("album").get("name").asText());
-                    trackInfo.put("albumImage", item.get("album").get("images").get(0).get("url").asText());
-                    trackInfo.put("trackId", item.get("id").asText());
-                    trackInfo.put("isPlaying", "true");
-                } else {
-                    trackInfo.put("isPlaying", "false");
-                    trackInfo.put("trackName", "No track currently playing");
+                    String trackName = item.get("name").asText();
+                    String artistName = item.get("artists").get(0).get("name").asText();
+                    String albumName = item.get("album").get("name").asText();
+                    String albumImage = item.get("album").get("images").get(0).get("url").asText();
+                    String trackId = item.get("id").asText();
+                    if (root.hasNonNull("progress_ms") && item.hasNonNull("duration_ms")) {
+                        return PlaybackStatus.playing(trackName, artistName, albumName, albumImage, trackId,
+                                root.get("progress_ms").asLong(), item.get("duration_ms").asLong());
+                    }
+                    return PlaybackStatus.playing(trackName, artistName, albumName, albumImage, trackId);
                 }
-
-                return trackInfo;
+                return PlaybackStatus.notPlaying("No track currently playing");
             }
         } catch (Exception e) {
             System.out.println("Error getting currently playing: " + e.getMessage());
         }
 
-        Map<String, String> fallback = new HashMap<>();
-        fallback.put("isPlaying", "false");
-        fallback.put("trackName", "Unable to fetch track info");
-        return fallback;
+        return PlaybackStatus.notPlaying("Unable to fetch track info");
     }
 
     // Get user's top tracks with detailed information
-    public Map<String, Object> getUserTopTracks(String accessToken, String timeRange, int limit) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
+    public Map<String, Object> getUserTopTracks(User user, String timeRange, int limit) {
+        return responseCache.get(user, SpotifyEndpoint.TOP_TRACKS, timeRange + ":" + limit,
+                () -> fetchUserTopTracks(user, timeRange, limit), result -> !result.isEmpty());
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = String.format("https://api.spotify.com/v1/me/top/tracks?limit=%d&time_range=%s", 
+    private Map<String, Object> fetchUserTopTracks(User user, String timeRange, int limit) {
+        try {
+            String url = String.format("/me/top/tracks?limit=%d&time_range=%s", 
                                        limit, timeRange);
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url, SpotifyPriority.BACKGROUND);
 
             if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
+                JsonNode root = spotifyApiClient.readTree(response.getBody());
                 
                 Map<String, Object> result = new HashMap<>();
                 List<Map<String, Object>> tracks = new ArrayList<>();
                 
                 for (JsonNode item : root.get("items")) {
                     Map<String, Object> track = new HashMap<>();
+                    track.put("id", item.path("id").asText(null));
                     track.put("name", item.get("name").asText());
                     track.put("popularity", item.get("popularity").asInt());
                     track.put("duration_ms", item.get("duration_ms").asLong());
@@ -334,21 +276,20 @@ public class SpotifyService {
     }
 
     // Get user's top artists with detailed information and genres
-    public Map<String, Object> getUserTopArtistsDetailed(String accessToken, String timeRange, int limit) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
+    public Map<String, Object> getUserTopArtistsDetailed(User user, String timeRange, int limit) {
+        return responseCache.get(user, SpotifyEndpoint.TOP_ARTISTS, timeRange + ":" + limit,
+                () -> fetchUserTopArtistsDetailed(user, timeRange, limit), result -> !result.isEmpty());
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = String.format("https://api.spotify.com/v1/me/top/artists?limit=%d&time_range=%s", 
+    private Map<String, Object> fetchUserTopArtistsDetailed(User user, String timeRange, int limit) {
+        try {
+            String url = String.format("/me/top/artists?limit=%d&time_range=%s", 
                                        limit, timeRange);
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url, SpotifyPriority.BACKGROUND);
 
             if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
+                JsonNode root = spotifyApiClient.readTree(response.getBody());
                 
                 Map<String, Object> result = new HashMap<>();
                 List<Map<String, Object>> artists = new ArrayList<>();
@@ -356,15 +297,18 @@ public class SpotifyService {
                 
                 for (JsonNode item : root.get("items")) {
                     Map<String, Object> artist = new HashMap<>();
+                    artist.put("id", item.path("id").asText(null));
                     artist.put("name", item.get("name").asText());
                     artist.put("popularity", item.get("popularity").asInt());
                     artist.put("followers", item.get("followers").get("total").asLong());
                     
-                    // Genres
-                    List<String> genres = new ArrayList<>();
+                    // Genres, kept in the artist cache so track genre lookups don't refetch them
+                    List<String> genreNames = new ArrayList<>();
                     for (JsonNode genre : item.get("genres")) {
-                        String genreName = genre.asText();
-                        genres.add(genreName);
+                        genreNames.add(genre.asText());
+                    }
+                    List<String> genres = artistMetadataCache.remember(item.path("id").asText(null), genreNames);
+                    for (String genreName : genres) {
                         genreCount.put(genreName, genreCount.getOrDefault(genreName, 0) + 1);
                     }
                     artist.put("genres", genres);
@@ -389,452 +333,396 @@ public class SpotifyService {
         return new HashMap<>();
     }
 
-    // Get comprehensive user music analysis
-    public Map<String, Object> getUserMusicAnalysis(String accessToken) {
+    // Get comprehensive user music analysis, live (pages read it through MusicAnalysisSnapshots)
+    // The six Spotify reads run concurrently under one deadline; anything that has not
+    // arrived (or failed) by then is left out and the result is flagged as "degraded".
+    // genre_scores holds every genre's 3/2/1 term-weighted score, top_genres the best ten.
+    public Map<String, Object> getUserMusicAnalysis(User user) {
+        return musicAnalysis(timeRange -> getUserTopArtistsDetailed(user, timeRange, 20),
+                timeRange -> getUserTopTracks(user, timeRange, 20),
+                fanOutExecutor, System.nanoTime() + analysisDeadline.toNanos());
+    }
+
+    // The analysis from the top artists and tracks of each time range, read on executor
+    // until deadline (a System.nanoTime() value)
+    static Map<String, Object> musicAnalysis(Function<String, Map<String, Object>> topArtists,
+                                             Function<String, Map<String, Object>> topTracks,
+                                             ExecutorService executor, long deadline) {
         Map<String, Object> analysis = new HashMap<>();
-        
+
         // Get data for different time ranges
-        Map<String, Object> shortTerm = getUserTopArtistsDetailed(accessToken, "short_term", 20);
-        Map<String, Object> mediumTerm = getUserTopArtistsDetailed(accessToken, "medium_term", 20);
-        Map<String, Object> longTerm = getUserTopArtistsDetailed(accessToken, "long_term", 20);
-        
-        Map<String, Object> shortTermTracks = getUserTopTracks(accessToken, "short_term", 20);
-        Map<String, Object> mediumTermTracks = getUserTopTracks(accessToken, "medium_term", 20);
-        Map<String, Object> longTermTracks = getUserTopTracks(accessToken, "long_term", 20);
-        
-        // Combine genre analysis
-        Map<String, Integer> combinedGenres = new HashMap<>();
-        
-        @SuppressWarnings("unchecked")
-        Map<String, Integer> shortGenres = (Map<String, Integer>) shortTerm.getOrDefault("genre_analysis", new HashMap<>());
-        @SuppressWarnings("unchecked")
-        Map<String, Integer> mediumGenres = (Map<String, Integer>) mediumTerm.getOrDefault("genre_analysis", new HashMap<>());
-        @SuppressWarnings("unchecked")
-        Map<String, Integer> longGenres = (Map<String, Integer>) longTerm.getOrDefault("genre_analysis", new HashMap<>());
-        
-        // Weight recent genres more heavily
-        for (Map.Entry<String, Integer> entry : shortGenres.entrySet()) {
-            combinedGenres.put(entry.getKey(), combinedGenres.getOrDefault(entry.getKey(), 0) + entry.getValue() * 3);
-        }
-        for (Map.Entry<String, Integer> entry : mediumGenres.entrySet()) {
-            combinedGenres.put(entry.getKey(), combinedGenres.getOrDefault(entry.getKey(), 0) + entry.getValue() * 2);
-        }
-        for (Map.Entry<String, Integer> entry : longGenres.entrySet()) {
-            combinedGenres.put(entry.getKey(), combinedGenres.getOrDefault(entry.getKey(), 0) + entry.getValue());
-        }
-        
-        // Sort genres by frequency
-        List<Map.Entry<String, Integer>> sortedGenres = new ArrayList<>(combinedGenres.entrySet());
-        sortedGenres.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        CompletableFuture<Map<String, Object>> shortTermCall = fanOut(() -> topArtists.apply("short_term"), executor);
+        CompletableFuture<Map<String, Object>> mediumTermCall = fanOut(() -> topArtists.apply("medium_term"), executor);
+        CompletableFuture<Map<String, Object>> longTermCall = fanOut(() -> topArtists.apply("long_term"), executor);
+
+        CompletableFuture<Map<String, Object>> shortTermTracksCall = fanOut(() -> topTracks.apply("short_term"), executor);
+        CompletableFuture<Map<String, Object>> mediumTermTracksCall = fanOut(() -> topTracks.apply("medium_term"), executor);
+        CompletableFuture<Map<String, Object>> longTermTracksCall = fanOut(() -> topTracks.apply("long_term"), executor);
+
+        Map<String, Object> shortTerm = awaitBefore(shortTermCall, deadline);
+        Map<String, Object> mediumTerm = awaitBefore(mediumTermCall, deadline);
+        Map<String, Object> longTerm = awaitBefore(longTermCall, deadline);
+
+        Map<String, Object> shortTermTracks = awaitBefore(shortTermTracksCall, deadline);
+        Map<String, Object> mediumTermTracks = awaitBefore(mediumTermTracksCall, deadline);
+        Map<String, Object> longTermTracks = awaitBefore(longTermTracksCall, deadline);
+
+        // Every fetcher returns an empty map on failure, so an empty part means it is missing
+        boolean degraded = shortTerm.isEmpty() || mediumTerm.isEmpty() || longTerm.isEmpty()
+                || shortTermTracks.isEmpty() || mediumTermTracks.isEmpty() || longTermTracks.isEmpty();
         
+        // Combine genre analysis, weighting recent genres more heavily
+        GenreTopK combinedGenres = new GenreTopK(TOP_GENRES);
+        addGenres(combinedGenres, shortTerm, 3);
+        addGenres(combinedGenres, mediumTerm, 2);
+        addGenres(combinedGenres, longTerm, 1);
+
         // Convert to array format for frontend
         List<Object[]> topGenresArray = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : sortedGenres.subList(0, Math.min(10, sortedGenres.size()))) {
+        for (Map.Entry<String, Integer> entry : combinedGenres.top()) {
             topGenresArray.add(new Object[]{entry.getKey(), entry.getValue()});
         }
         
         // Build final analysis
         analysis.put("top_genres", topGenresArray);
+        analysis.put("genre_scores", combinedGenres.scores());
         analysis.put("short_term_artists", shortTerm.get("artists"));
         analysis.put("medium_term_artists", mediumTerm.get("artists"));
         analysis.put("long_term_artists", longTerm.get("artists"));
         analysis.put("short_term_tracks", shortTermTracks.get("tracks"));
         analysis.put("medium_term_tracks", mediumTermTracks.get("tracks"));
         analysis.put("long_term_tracks", longTermTracks.get("tracks"));
+        analysis.put("degraded", degraded);
         
         return analysis;
     }
 
-    // Get recently played tracks
-    public Map<String, Object> getRecentlyPlayed(String accessToken, int limit) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
+    private static void addGenres(GenreTopK genres, Map<String, Object> term, int weight) {
+        @SuppressWarnings("unchecked")
+        Map<String, Integer> termGenres = (Map<String, Integer>) term.getOrDefault("genre_analysis", Map.of());
+        termGenres.forEach((genre, count) -> genres.add(genre, count * weight));
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = String.format("https://api.spotify.com/v1/me/player/recently-played?limit=%d", limit);
+    private static CompletableFuture<Map<String, Object>> fanOut(Supplier<Map<String, Object>> call,
+                                                                 ExecutorService executor) {
+        if (SpotifyBulkhead.isShedding()) {
+            // This request was turned away by the bulkhead; don't hand its calls to other threads
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Spotify fan-out pool is saturated: " + e.getMessage());
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+    }
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+    // Wait for a fanned-out call until the shared deadline, giving up with an empty result
+    private static Map<String, Object> awaitBefore(CompletableFuture<Map<String, Object>> call, long deadlineNanos) {
+        try {
+            return call.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Error in music analysis call: " + e.getCause());
+        }
+        return new HashMap<>();
+    }
 
-            if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
-                
-                Map<String, Object> result = new HashMap<>();
-                List<Map<String, Object>> tracks = new ArrayList<>();
-                
-                for (JsonNode item : root.get("items")) {
-                    JsonNode track = item.get("track");
-                    Map<String, Object> trackInfo = new HashMap<>();
-                    
-                    trackInfo.put("name", track.get("name").asText());
-                    trackInfo.put("played_at", item.get("played_at").asText());
-                    
-                    // Artists
-                    List<String> artists = new ArrayList<>();
-                    for (JsonNode artist : track.get("artists")) {
-                        artists.add(artist.get("name").asText());
-                    }
-                    trackInfo.put("artists", artists);
-                    
-                    // Album
-                    JsonNode album = track.get("album");
-                    trackInfo.put("album_name", album.get("name").asText());
-                    
-                    if (album.has("images") && album.get("images").size() > 0) {
-                        trackInfo.put("image_url", album.get("images").get(0).get("url").asText());
-                    }
-                    
-                    tracks.add(trackInfo);
-                }
-                
-                result.put("tracks", tracks);
-                return result;
+    // Get recently played tracks, from the stored listening history once it has been ingested
+    public Map<String, Object> getRecentlyPlayed(User user, int limit) {
+        Optional<List<ListeningEvent>> stored = listeningHistory.recent(user, limit);
+        if (stored.isPresent()) {
+            List<Map<String, Object>> tracks = new ArrayList<>(stored.get().size());
+            Set<String> artistIds = new LinkedHashSet<>();
+            for (ListeningEvent play : stored.get()) {
+                artistIds.addAll(play.getArtistIds());
+                tracks.add(playInfo(play.getTrackName(), play.getPlayedAt().toString(), play.getArtistNames(),
+                        play.getArtistIds(), play.getAlbumName(), play.getImageUrl()));
             }
-        } catch (Exception e) {
-            System.out.println("Error fetching recently played: " + e.getMessage());
+            return recentlyPlayed(user, tracks, artistIds);
         }
-        
-        return new HashMap<>();
+        return fetchRecentlyPlayed(user, limit);
     }
 
-    // Get user's playlists
-    public Map<String, Object> getUserPlaylists(String accessToken, int limit) {
+    // Live read, for users whose history has not been ingested yet
+    private Map<String, Object> fetchRecentlyPlayed(User user, int limit) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = String.format("https://api.spotify.com/v1/me/playlists?limit=%d", limit);
+            String url = String.format("/me/player/recently-played?limit=%d", limit);
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url, SpotifyPriority.BACKGROUND);
 
             if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
-                
-                Map<String, Object> result = new HashMap<>();
-                List<Map<String, Object>> playlists = new ArrayList<>();
-                
-                for (JsonNode item : root.get("items")) {
-                    Map<String, Object> playlistInfo = new HashMap<>();
-                    
-                    playlistInfo.put("id", item.get("id").asText());
-                    playlistInfo.put("name", item.get("name").asText());
-                    playlistInfo.put("description", item.has("description") ? item.get("description").asText() : "");
-                    
-                    // Add tracks information for the frontend
-                    Map<String, Object> tracks = new HashMap<>();
-                    tracks.put("total", item.get("tracks").get("total").asInt());
-                    playlistInfo.put("tracks", tracks);
-                    
-                    // Playlist images array (match Spotify API structure)
-                    List<Map<String, Object>> images = new ArrayList<>();
-                    if (item.has("images") && item.get("images").size() > 0) {
-                        for (JsonNode imageNode : item.get("images")) {
-                            Map<String, Object> image = new HashMap<>();
-                            image.put("url", imageNode.get("url").asText());
-                            images.add(image);
-                        }
-                    }
-                    playlistInfo.put("images", images);
-                    
-                    playlists.add(playlistInfo);
+                RecentlyPlayedPage page = spotifyApiClient.readValue(response.getBody(), RecentlyPlayedPage.class);
+
+                List<Map<String, Object>> tracks = new ArrayList<>(page.items().size());
+                Set<String> artistIds = new LinkedHashSet<>();
+
+                for (PlayHistory item : page.items()) {
+                    Track track = item.track();
+                    trackMetadataCache.remember(track);
+
+                    List<String> trackArtistIds = track.artists().stream().map(ArtistRef::id).filter(Objects::nonNull).toList();
+                    artistIds.addAll(trackArtistIds);
+
+                    tracks.add(playInfo(track.name(), item.playedAt(), track.artistNames(), trackArtistIds,
+                            track.album().name(), track.album().firstImageUrl()));
                 }
-                
-                // Return structure that matches what the frontend expects
-                result.put("items", playlists); // Changed from "playlists" to "items"
-                result.put("total", root.get("total").asInt());
-                return result;
+
+                return recentlyPlayed(user, tracks, artistIds);
             }
         } catch (Exception e) {
-            System.out.println("Error fetching playlists: " + e.getMessage());
+            System.out.println("Error fetching recently played: " + e.getMessage());
         }
         
         return new HashMap<>();
     }
 
-    // Play a specific playlist
-    public void playPlaylist(String accessToken, String playlistId) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            String playBody = "{\"context_uri\":\"spotify:playlist:" + playlistId + "\"}";
-            HttpEntity<String> entity = new HttpEntity<>(playBody, headers);
-
-            String url = "https://api.spotify.com/v1/me/player/play";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Successfully started playing playlist: " + playlistId);
-            } else {
-                System.out.println("Failed to play playlist. Status: " + response.getStatusCode());
-            }
-
-        } catch (Exception e) {
-            System.out.println("Error playing playlist " + playlistId + ": " + e.getMessage());
-            throw new RuntimeException("Failed to play playlist: " + e.getMessage());
+    private static Map<String, Object> playInfo(String name, String playedAt, List<String> artists, List<String> artistIds,
+                                                String albumName, String imageUrl) {
+        Map<String, Object> trackInfo = new HashMap<>();
+        trackInfo.put("name", name);
+        trackInfo.put("played_at", playedAt);
+        trackInfo.put("artists", artists);
+        trackInfo.put("artist_ids", artistIds);
+        trackInfo.put("album_name", albumName);
+        if (imageUrl != null) {
+            trackInfo.put("image_url", imageUrl);
         }
+        return trackInfo;
     }
 
+    private Map<String, Object> recentlyPlayed(User user, List<Map<String, Object>> tracks, Set<String> artistIds) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("tracks", tracks);
+        result.put("genre_analysis", countGenres(user, tracks, artistIds));
+        return result;
+    }
 
+    // Plays per genre across the tracks, resolving the genres of all their artists in one batched lookup
+    private Map<String, Integer> countGenres(User user, List<Map<String, Object>> tracks, Set<String> artistIds) {
+        Map<String, List<String>> artistGenres = artistMetadataCache.genresOf(user, artistIds);
+        Map<String, Integer> genreCount = new HashMap<>();
+        for (Map<String, Object> track : tracks) {
+            Set<String> trackGenres = new HashSet<>();
+            @SuppressWarnings("unchecked")
+            List<String> trackArtistIds = (List<String>) track.get("artist_ids");
+            for (String artistId : trackArtistIds) {
+                trackGenres.addAll(artistGenres.getOrDefault(artistId, List.of()));
+            }
+            for (String genre : trackGenres) {
+                genreCount.merge(genre, 1, Integer::sum);
+            }
+        }
+        return genreCount;
+    }
 
-    // Get tracks from a specific playlist
-    public Map<String, Object> getPlaylistTracks(String accessToken, String playlistId, int limit) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
+    // Get user's playlists
+    public PlaylistsResponse getUserPlaylists(User user, int limit) {
+        return responseCache.get(user, SpotifyEndpoint.PLAYLISTS, String.valueOf(limit),
+                () -> fetchUserPlaylists(user, limit), result -> result != PlaylistsResponse.EMPTY);
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = String.format("https://api.spotify.com/v1/playlists/%s/tracks?limit=%d", playlistId, limit);
+    private PlaylistsResponse fetchUserPlaylists(User user, int limit) {
+        try {
+            String url = String.format("/me/playlists?limit=%d", limit);
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url);
 
             if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
-                
-                Map<String, Object> result = new HashMap<>();
-                List<Map<String, Object>> tracks = new ArrayList<>();
-                
+                JsonNode root = spotifyApiClient.readTree(response.getBody());
+
+                List<PlaylistSummary> playlists = new ArrayList<>(root.get("items").size());
+
                 for (JsonNode item : root.get("items")) {
-                    if (item.has("track") && !item.get("track").isNull()) {
-                        JsonNode track = item.get("track");
-                        Map<String, Object> trackInfo = new HashMap<>();
-                        
-                        trackInfo.put("id", track.get("id").asText());
-                        trackInfo.put("name", track.get("name").asText());
-                        trackInfo.put("uri", track.get("uri").asText());
-                        trackInfo.put("duration_ms", track.get("duration_ms").asInt());
-                        
-                        // Artist info
-                        List<String> artists = new ArrayList<>();
-                        for (JsonNode artist : track.get("artists")) {
-                            artists.add(artist.get("name").asText());
-                        }
-                        trackInfo.put("artists", artists);
-                        trackInfo.put("artist_name", String.join(", ", artists));
-                        
-                        // Album info
-                        JsonNode album = track.get("album");
-                        trackInfo.put("album_name", album.get("name").asText());
-                        
-                        // Album images
-                        List<Map<String, Object>> images = new ArrayList<>();
-                        if (album.has("images") && album.get("images").size() > 0) {
-                            for (JsonNode imageNode : album.get("images")) {
-                                Map<String, Object> image = new HashMap<>();
-                                image.put("url", imageNode.get("url").asText());
-                                images.add(image);
-                            }
+                    // Playlist images array (match Spotify API structure)
+                    List<ImageUrl> images = new ArrayList<>();
+                    if (item.has("images") && item.get("images").size() > 0) {
+                        for (JsonNode imageNode : item.get("images")) {
+                            images.add(new ImageUrl(imageNode.get("url").asText()));
                         }
-                        trackInfo.put("album_images", images);
-                        
-                        tracks.add(trackInfo);
                     }
+
+                    playlists.add(new PlaylistSummary(
+                            item.get("id").asText(),
+                            item.get("name").asText(),
+                            item.has("description") ? item.get("description").asText() : "",
+                            new TrackCount(item.get("tracks").get("total").asInt()),
+                            images));
                 }
-                
-                result.put("items", tracks);
-                result.put("total", root.get("total").asInt());
-                return result;
+
+                // Return structure that matches what the frontend expects
+                return new PlaylistsResponse(playlists, root.get("total").asInt());
             }
         } catch (Exception e) {
-            System.out.println("Error fetching playlist tracks: " + e.getMessage());
+            System.out.println("Error fetching playlists: " + e.getMessage());
         }
-        
-        return new HashMap<>();
-    }
 
-    // Enhanced playback control methods
-    public void pausePlayback(String accessToken) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = "https://api.spotify.com/v1/me/player/pause";
+        return PlaylistsResponse.EMPTY;
+    }
 
-            restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
-            System.out.println("Playback paused");
+    // Get one page of a playlist's tracks
+    // Tracks are served from PlaylistStore. The playlist's snapshot_id is checked with the user's own
+    // token (which also confirms they can see it), and the tracks are refetched only when it changes.
+    public PlaylistTracksResponse getPlaylistTracks(User user, String playlistId, int offset, int limit) {
+        PlaylistSnapshot snapshot = responseCache.get(user, SpotifyEndpoint.PLAYLIST, playlistId,
+                () -> fetchPlaylistSnapshot(user, playlistId), result -> true);
+        if (snapshot == null || snapshot.snapshotId() == null) {
+            return PlaylistTracksResponse.EMPTY;
+        }
 
-        } catch (Exception e) {
-            System.out.println("Error pausing playback: " + e.getMessage());
+        Optional<SpotifyPlaylist> stored = playlistStore.find(playlistId);
+        SpotifyPlaylist playlist = stored
+                .filter(current -> current.getSnapshotId().equals(snapshot.snapshotId()))
+                .orElseGet(() -> syncPlaylist(user, playlistId, snapshot, stored.orElse(null)));
+        if (playlist == null) {
+            return PlaylistTracksResponse.EMPTY;
         }
+        return playlistStore.page(playlist, offset, limit);
     }
 
-    public void resumePlayback(String accessToken) {
+    private PlaylistSnapshot fetchPlaylistSnapshot(User user, String playlistId) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<String> entity = new HttpEntity<>("{}", headers);
-            String url = "https://api.spotify.com/v1/me/player/play";
-
-            restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
-            System.out.println("Playback resumed");
-
+            String url = "/playlists/" + playlistId + "?fields=snapshot_id,name,tracks.total";
+            ResponseEntity<String> response = spotifyApiClient.get(user, url);
+            if (response.getStatusCode() == HttpStatus.OK) {
+                return spotifyApiClient.readValue(response.getBody(), PlaylistSnapshot.class);
+            }
         } catch (Exception e) {
-            System.out.println("Error resuming playback: " + e.getMessage());
+            System.out.println("Error fetching playlist " + playlistId + ": " + e.getMessage());
         }
+        return null;
     }
 
-    public void skipToNext(String accessToken) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = "https://api.spotify.com/v1/me/player/next";
-
-            restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-            System.out.println("Skipped to next track");
+    // Fetch every page of the snapshot in parallel and store it; on failure keep serving the old copy.
+    // One sync per playlist at a time, whatever snapshot each caller saw: two replaceTracks on the
+    // same playlist would interleave their deletes and inserts. A caller that saw a newer snapshot
+    // than the running sync gets that sync's copy and resyncs on its next read.
+    private SpotifyPlaylist syncPlaylist(User user, String playlistId, PlaylistSnapshot snapshot, SpotifyPlaylist stale) {
+        return requestCoalescer.execute("playlist:" + playlistId, "playlist-sync", "", () -> {
+            int pages = Math.max(1, (snapshot.total() + PLAYLIST_PAGE_SIZE - 1) / PLAYLIST_PAGE_SIZE);
+            List<CompletableFuture<PlaylistTracksPage>> futures = new ArrayList<>(pages);
+            try {
+                for (int page = 0; page < pages; page++) {
+                    int pageOffset = page * PLAYLIST_PAGE_SIZE;
+                    futures.add(CompletableFuture.supplyAsync(
+                            () -> fetchPlaylistTracksPage(user, playlistId, pageOffset), fanOutExecutor));
+                }
 
-        } catch (Exception e) {
-            System.out.println("Error skipping to next track: " + e.getMessage());
-        }
+                List<PlaylistTrack> tracks = new ArrayList<>(snapshot.total());
+                for (CompletableFuture<PlaylistTracksPage> future : futures) {
+                    for (PlaylistItem item : future.join().items()) {
+                        if (item.track() != null) {
+                            tracks.add(toPlaylistTrack(item.track()));
+                        }
+                    }
+                }
+                System.out.println("Synced playlist " + playlistId + ": " + tracks.size() + " tracks in " + pages + " pages");
+                return playlistStore.replaceTracks(playlistId, snapshot.snapshotId(), snapshot.name(), tracks);
+            } catch (RuntimeException e) {
+                futures.forEach(future -> future.cancel(true));
+                System.out.println("Error syncing playlist " + playlistId + ": " + e.getMessage());
+                return stale;
+            }
+        });
     }
 
-    public void skipToPrevious(String accessToken) {
+    private PlaylistTracksPage fetchPlaylistTracksPage(User user, String playlistId, int offset) {
+        String url = String.format("/playlists/%s/tracks?offset=%d&limit=%d&fields=%s",
+                playlistId, offset, PLAYLIST_PAGE_SIZE, PLAYLIST_TRACK_FIELDS);
+        // Later pages go behind interactive requests; the first one is what the user is waiting for
+        SpotifyPriority priority = offset == 0 ? SpotifyPriority.INTERACTIVE : SpotifyPriority.BACKGROUND;
+        ResponseEntity<String> response = spotifyApiClient.get(user, url, priority);
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = "https://api.spotify.com/v1/me/player/previous";
-
-            restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-            System.out.println("Skipped to previous track");
-
-        } catch (Exception e) {
-            System.out.println("Error skipping to previous track: " + e.getMessage());
+            return spotifyApiClient.readValue(response.getBody(), PlaylistTracksPage.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    public void setVolume(String accessToken, int volumePercent) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = String.format("https://api.spotify.com/v1/me/player/volume?volume_percent=%d", volumePercent);
-
-            restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
-            System.out.println("Volume set to: " + volumePercent + "%");
-
-        } catch (Exception e) {
-            System.out.println("Error setting volume: " + e.getMessage());
+    private static PlaylistTrack toPlaylistTrack(Track track) {
+        List<ImageUrl> images = new ArrayList<>(track.album().images().size());
+        for (Image image : track.album().images()) {
+            images.add(new ImageUrl(image.url()));
         }
+        List<String> artists = track.artistNames();
+        return new PlaylistTrack(track.id(), track.name(), track.uri(), track.durationMs(),
+                artists, String.join(", ", artists), track.album().name(), images);
     }
 
     // Get available devices
-    public Map<String, Object> getAvailableDevices(String accessToken) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
+    public DevicesResponse getAvailableDevices(User user) {
+        return responseCache.get(user, SpotifyEndpoint.DEVICES, "",
+                () -> fetchAvailableDevices(user), result -> result != DevicesResponse.EMPTY);
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = "https://api.spotify.com/v1/me/player/devices";
+    private DevicesResponse fetchAvailableDevices(User user) {
+        try {
+            String url = "/me/player/devices";
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url);
 
             if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
-                
-                Map<String, Object> result = new HashMap<>();
-                List<Map<String, Object>> devices = new ArrayList<>();
-                
+                JsonNode root = spotifyApiClient.readTree(response.getBody());
+
+                List<Device> devices = new ArrayList<>(root.get("devices").size());
+
                 for (JsonNode device : root.get("devices")) {
-                    Map<String, Object> deviceInfo = new HashMap<>();
-                    
-                    deviceInfo.put("id", device.get("id").asText());
-                    deviceInfo.put("name", device.get("name").asText());
-                    deviceInfo.put("type", device.get("type").asText());
-                    deviceInfo.put("is_active", device.get("is_active").asBoolean());
-                    deviceInfo.put("is_private_session", device.get("is_private_session").asBoolean());
-                    deviceInfo.put("is_restricted", device.get("is_restricted").asBoolean());
-                    deviceInfo.put("volume_percent", device.get("volume_percent").asInt());
-                    
-                    devices.add(deviceInfo);
+                    devices.add(new Device(
+                            device.get("id").asText(),
+                            device.get("name").asText(),
+                            device.get("type").asText(),
+                            device.get("is_active").asBoolean(),
+                            device.get("is_private_session").asBoolean(),
+                            device.get("is_restricted").asBoolean(),
+                            device.get("volume_percent").asInt()));
                 }
-                
-                result.put("devices", devices);
-                return result;
+
+                return new DevicesResponse(devices);
             }
         } catch (Exception e) {
             System.out.println("Error fetching devices: " + e.getMessage());
         }
-        
-        return new HashMap<>();
-    }
-
-    // Transfer playback to specific device
-    public void transferPlayback(String accessToken, String deviceId, boolean play) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            String transferBody = String.format("{\"device_ids\":[\"%s\"],\"play\":%s}", deviceId, play);
-            HttpEntity<String> entity = new HttpEntity<>(transferBody, headers);
-
-            String url = "https://api.spotify.com/v1/me/player";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Playback transferred to device: " + deviceId);
-            }
 
-        } catch (Exception e) {
-            System.out.println("Error transferring playback: " + e.getMessage());
-        }
+        return DevicesResponse.EMPTY;
     }
 
     // Get user's saved (liked) tracks with pagination
-    public List<Map<String, String>> getUserSavedTracks(String accessToken, int offset) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
+    public List<SavedTrackSummary> getUserSavedTracks(User user, int offset) {
+        return getSavedTracksPage(user, null, offset).tracks();
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
+    // A page of liked songs from the local library once it is synced, otherwise straight from Spotify
+    public SavedTracksLibrary.Page getSavedTracksPage(User user, String cursor, int offset) {
+        return savedTracksLibrary.page(user, cursor, offset, SAVED_TRACKS_PAGE_SIZE)
+                .orElseGet(() -> new SavedTracksLibrary.Page(
+                        responseCache.get(user, SpotifyEndpoint.SAVED_TRACKS, String.valueOf(offset),
+                                () -> fetchUserSavedTracks(user, offset), tracks -> !tracks.isEmpty()),
+                        null));
+    }
 
+    private List<SavedTrackSummary> fetchUserSavedTracks(User user, int offset) {
+        try {
             // Fetch 50 songs, starting from the specific offset
-            String url = "https://api.spotify.com/v1/me/tracks?limit=50&offset=" + offset;
+            String url = "/me/tracks?limit=" + SAVED_TRACKS_PAGE_SIZE + "&offset=" + offset;
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, String.class);
+            ResponseEntity<String> response = spotifyApiClient.get(user, url);
 
             if (response.getStatusCode() == HttpStatus.OK) {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response.getBody());
-                List<Map<String, String>> savedTracks = new ArrayList<>();
-
-                if (root.has("items")) {
-                    for (JsonNode item : root.get("items")) {
-                        JsonNode track = item.get("track");
-                        Map<String, String> trackInfo = new HashMap<>();
-
-                        trackInfo.put("name", track.get("name").asText());
-                        trackInfo.put("artist", track.get("artists").get(0).get("name").asText());
-                        trackInfo.put("uri", track.get("uri").asText());
-
-                        // Get image safely
-                        if (track.get("album").has("images") && track.get("album").get("images").size() > 0) {
-                            trackInfo.put("image", track.get("album").get("images").get(0).get("url").asText());
-                        } else {
-                            trackInfo.put("image", "/images/default.png");
-                        }
-
-                        savedTracks.add(trackInfo);
-                    }
+                SavedTracksPage page = spotifyApiClient.readValue(response.getBody(), SavedTracksPage.class);
+                List<SavedTrackSummary> savedTracks = new ArrayList<>(page.items().size());
+
+                for (SavedTrack item : page.items()) {
+                    Track track = item.track();
+                    trackMetadataCache.remember(track);
+                    String imageUrl = track.album().firstImageUrl();
+                    savedTracks.add(new SavedTrackSummary(
+                            track.name(),
+                            track.artists().isEmpty() ? "" : track.artists().get(0).name(),
+                            track.uri(),
+                            imageUrl != null ? imageUrl : "/images/default.png"));
                 }
                 return savedTracks;
             }
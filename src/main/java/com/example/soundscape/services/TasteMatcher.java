@@ -0,0 +1,443 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.MusicAnalysisSnapshot;
+import com.example.soundscape.models.User;
+import com.example.soundscape.models.UserMatch;
+import com.example.soundscape.repositories.MusicAnalysisSnapshotRepository;
+import com.example.soundscape.repositories.UserMatchRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.spotify.GenreDictionary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Music matches: the users whose taste is closest to yours.
+ *
+ * Every user with a music-analysis snapshot has a TasteProfile in memory, built from the
+ * snapshot's top artists (weighted 3/2/1 for short, medium and long term, like the genres)
+ * and its genre scores. Profiles are loaded from the snapshots at startup and replaced
+ * whenever MusicAnalysisSnapshots stores a new one; a viewer without a snapshot gets one
+ * computed first.
+ *
+ * Only candidates are scored, exactly, and the best maxResults kept in a bounded
+ * min-heap; only those are looked up in the users table. Candidates are the users sharing
+ * an LSH bucket with the viewer (a MinHashIndex over top artist and track ids) plus
+ * everyone sharing one of the viewer's artists, from artist -> users posting lists. An
+ * artist on more than max-posting-size users' lists says little and is skipped. When
+ * that finds fewer users than a page, the candidates widen to everyone sharing any
+ * artist or genre, which is everyone with a similarity above zero.
+ *
+ * Once MatchRecomputeJob has stored a viewer's matches for the current model-version,
+ * those are served instead, unless the viewer's analysis was recomputed after them; a
+ * viewer with no stored rows, or rows from an older model, is scored live.
+ */
+@Service
+public class TasteMatcher {
+
+    private static final String[] ARTIST_TERMS = {"short_term_artists", "medium_term_artists", "long_term_artists"};
+    private static final String[] TRACK_TERMS = {"short_term_tracks", "medium_term_tracks", "long_term_tracks"};
+    private static final int[] TERM_WEIGHTS = {3, 2, 1};
+    // Genres of a profile; the long tail of one-off genres adds nothing but length
+    private static final int MAX_GENRES = 50;
+    private static final int LOAD_PAGE_SIZE = 500;
+    // A failed load is retried after this, doubling up to LOAD_RETRY_MAX
+    private static final Duration LOAD_RETRY_FIRST = Duration.ofSeconds(5);
+    private static final Duration LOAD_RETRY_MAX = Duration.ofMinutes(5);
+    private static final TypeReference<Map<String, Integer>> SCORES = new TypeReference<>() {};
+    // Worst first, so the heap's head is the one to drop; ties go to the lower user id
+    private static final Comparator<Scored> WORST_FIRST = Comparator.comparingDouble(Scored::similarity)
+            .thenComparing(Comparator.comparingLong((Scored scored) -> scored.profile().getUserId()).reversed());
+
+    private final MusicAnalysisSnapshotRepository snapshotRepository;
+    private final UserRepository userRepository;
+    private final UserMatchRepository userMatchRepository;
+    private final MusicAnalysisSnapshots musicAnalysisSnapshots;
+    private final GenreDictionary genreDictionary;
+    private final ObjectMapper objectMapper;
+    private final int maxResults;
+    private final int maxSharedArtists;
+    private final int modelVersion;
+
+    private final Map<Long, TasteProfile> profiles = new ConcurrentHashMap<>();
+    // When each profile's analysis was computed; stored matches older than that are stale
+    private final Map<Long, Instant> analysedAt = new ConcurrentHashMap<>();
+    // Candidate lookup; profiles, the LSH index and the postings change together under the write lock
+    private final MinHashIndex lsh;
+    private final Map<Integer, UserIdBitmap> artistPostings = new HashMap<>();
+    private final Map<Integer, UserIdBitmap> genrePostings = new HashMap<>();
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final int maxPostingSize;
+    // Spotify artist ids as small ints, and their names for showing shared artists
+    private final Map<String, Integer> artistIds = new HashMap<>();
+    private final List<String> artistNames = new ArrayList<>();
+    // Completed once load() has read every stored snapshot
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private final ScheduledExecutorService scheduler;
+    private Duration loadRetryDelay = LOAD_RETRY_FIRST;
+
+    public record Match(User user, double similarity, List<String> sharedArtists) {
+        public int percent() {
+            return (int) Math.round(similarity * 100);
+        }
+    }
+
+    record Scored(TasteProfile profile, double similarity) {}
+
+    public TasteMatcher(MusicAnalysisSnapshotRepository snapshotRepository,
+                        UserRepository userRepository,
+                        UserMatchRepository userMatchRepository,
+                        MusicAnalysisSnapshots musicAnalysisSnapshots,
+                        GenreDictionary genreDictionary,
+                        ObjectMapper objectMapper,
+                        @Qualifier("spotifySweepScheduler") ScheduledExecutorService scheduler,
+                        @Value("${spotify.matches.max-results:20}") int maxResults,
+                        @Value("${spotify.matches.max-shared-artists:5}") int maxSharedArtists,
+                        @Value("${spotify.matches.lsh.bands:32}") int lshBands,
+                        @Value("${spotify.matches.lsh.rows:1}") int lshRows,
+                        @Value("${spotify.matches.max-posting-size:5000}") int maxPostingSize,
+                        @Value("${spotify.matches.model-version:1}") int modelVersion) {
+        this.snapshotRepository = snapshotRepository;
+        this.userRepository = userRepository;
+        this.userMatchRepository = userMatchRepository;
+        this.musicAnalysisSnapshots = musicAnalysisSnapshots;
+        this.genreDictionary = genreDictionary;
+        this.objectMapper = objectMapper;
+        this.maxResults = maxResults;
+        this.maxSharedArtists = maxSharedArtists;
+        this.lsh = new MinHashIndex(lshBands, lshRows);
+        this.maxPostingSize = maxPostingSize;
+        this.modelVersion = modelVersion;
+        this.scheduler = scheduler;
+
+        musicAnalysisSnapshots.onSnapshotSaved(this::update);
+        scheduler.execute(this::load);
+    }
+
+    // The users most like this one, best first
+    public List<Match> matches(User user) {
+        TasteProfile viewer = profiles.get(user.getId());
+        if (viewer == null && user.isSpotifyConnected()) {
+            // No snapshot yet: computing the first one stores the profile through update()
+            musicAnalysisSnapshots.analysis(user);
+            viewer = profiles.get(user.getId());
+        }
+        if (viewer == null) {
+            return List.of();
+        }
+        List<Scored> best = stored(viewer);
+        if (best == null) {
+            best = topMatches(viewer);
+        }
+
+        Map<Long, User> users = userRepository.findAllById(best.stream().map(scored -> scored.profile().getUserId()).toList())
+                .stream().collect(Collectors.toMap(User::getId, Function.identity()));
+        List<Match> matches = new ArrayList<>(best.size());
+        for (Scored scored : best) {
+            User match = users.get(scored.profile().getUserId());
+            if (match != null && match.isSpotifyConnected()) {
+                matches.add(new Match(match, scored.similarity(), sharedArtists(viewer, scored.profile())));
+            }
+        }
+        return matches;
+    }
+
+    // The viewer's matches from the last recompute; null if there are none for this model or the viewer's analysis is newer
+    private List<Scored> stored(TasteProfile viewer) {
+        List<UserMatch> rows = userMatchRepository.findByUserIdAndModelVersionOrderByRank(viewer.getUserId(), modelVersion);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Instant analysed = analysedAt.get(viewer.getUserId());
+        if (analysed != null && rows.get(0).getComputedAt().isBefore(analysed)) {
+            return null;
+        }
+        List<Scored> best = new ArrayList<>(rows.size());
+        for (UserMatch row : rows) {
+            TasteProfile match = profiles.get(row.getMatchUserId());
+            if (match != null) {
+                best.add(new Scored(match, row.getSimilarity()));
+            }
+        }
+        return best;
+    }
+
+    // Run the action once every stored profile is loaded: now if that has happened, else on the loading thread
+    public void onLoaded(Runnable action) {
+        loaded.thenRun(action);
+    }
+
+    // The best maxResults profiles for this user, best first; empty if the user has no profile
+    List<Scored> topMatches(long userId) {
+        TasteProfile viewer = profiles.get(userId);
+        return viewer != null ? topMatches(viewer) : List.of();
+    }
+
+    // Every user with a profile, ascending
+    long[] userIds() {
+        return profiles.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private List<Scored> topMatches(TasteProfile viewer) {
+        return viewer.isEmpty() ? List.of() : best(viewer, candidatesFor(viewer), maxResults);
+    }
+
+    // LSH neighbours and users sharing a not-too-common artist; everyone with anything in common if that is too few
+    private List<TasteProfile> candidatesFor(TasteProfile viewer) {
+        UserIdBitmap userIds = new UserIdBitmap();
+        indexLock.readLock().lock();
+        try {
+            for (long userId : lsh.candidates(viewer.getUserId())) {
+                userIds.add(userId);
+            }
+            for (int artist : viewer.getArtists()) {
+                UserIdBitmap posting = artistPostings.get(artist);
+                if (posting != null && posting.cardinality() <= maxPostingSize) {
+                    userIds.or(posting);
+                }
+            }
+            userIds.remove(viewer.getUserId());
+            if (userIds.cardinality() < maxResults) {
+                // Few users yet, or a taste nobody shares much of: the genres may still find someone
+                union(userIds, artistPostings, viewer.getArtists());
+                union(userIds, genrePostings, viewer.getGenres());
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        List<TasteProfile> candidates = new ArrayList<>((int) userIds.cardinality());
+        userIds.forEach(userId -> {
+            TasteProfile candidate = profiles.get(userId);
+            if (candidate != null) {
+                candidates.add(candidate);
+            }
+        });
+        return candidates;
+    }
+
+    private static void union(UserIdBitmap userIds, Map<Integer, UserIdBitmap> postings, int[] keys) {
+        for (int key : keys) {
+            UserIdBitmap posting = postings.get(key);
+            if (posting != null) {
+                userIds.or(posting);
+            }
+        }
+    }
+
+    // The k profiles most similar to the viewer (not the viewer, nor anyone with nothing in common), best first
+    private static List<Scored> best(TasteProfile viewer, Iterable<TasteProfile> candidates, int k) {
+        PriorityQueue<Scored> heap = new PriorityQueue<>(k + 1, WORST_FIRST);
+        for (TasteProfile candidate : candidates) {
+            if (candidate.getUserId() == viewer.getUserId()) {
+                continue;
+            }
+            double similarity = viewer.similarity(candidate);
+            if (similarity <= 0) {
+                continue;
+            }
+            if (heap.size() < k) {
+                heap.add(new Scored(candidate, similarity));
+            } else if (similarity > heap.peek().similarity()) {
+                heap.poll();
+                heap.add(new Scored(candidate, similarity));
+            }
+        }
+        List<Scored> best = new ArrayList<>(heap);
+        best.sort(WORST_FIRST.reversed());
+        return best;
+    }
+
+    // Replace the user's profile and signature with ones built from this snapshot
+    void update(MusicAnalysisSnapshot snapshot) {
+        try {
+            index(snapshot, true);
+        } catch (RuntimeException e) {
+            // Never fail the snapshot write over a profile; the old one stays until the next refresh
+            System.out.println("Error updating taste profile for user " + snapshot.getUserId() + ": " + e.getMessage());
+        }
+    }
+
+    // Build every profile from the stored snapshots, keeping any a newer snapshot has already replaced.
+    // On failure the whole load is retried later; profiles it already built are kept.
+    void load() {
+        long afterId = 0;
+        int indexed = 0;
+        try {
+            while (true) {
+                List<MusicAnalysisSnapshot> page = snapshotRepository.findByUserIdGreaterThanOrderByUserId(afterId,
+                        PageRequest.of(0, LOAD_PAGE_SIZE));
+                for (MusicAnalysisSnapshot snapshot : page) {
+                    if (index(snapshot, false)) {
+                        indexed++;
+                    }
+                }
+                if (page.size() < LOAD_PAGE_SIZE) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1).getUserId();
+            }
+            System.out.println("Loaded " + indexed + " taste profiles");
+            loaded.complete(null);
+        } catch (RuntimeException e) {
+            System.out.println("Error loading taste profiles after " + indexed + ", retrying in "
+                    + loadRetryDelay.toSeconds() + "s: " + e.getMessage());
+            scheduler.schedule(this::load, loadRetryDelay.toMillis(), TimeUnit.MILLISECONDS);
+            loadRetryDelay = loadRetryDelay.multipliedBy(2);
+            if (loadRetryDelay.compareTo(LOAD_RETRY_MAX) > 0) {
+                loadRetryDelay = LOAD_RETRY_MAX;
+            }
+        }
+    }
+
+    // False if the user already had a profile and replace is false
+    private boolean index(MusicAnalysisSnapshot snapshot, boolean replace) {
+        JsonNode analysis = readTree(snapshot.getAnalysis());
+        TasteProfile profile = profileOf(snapshot, analysis);
+        if (!put(profile, lsh.signature(idsOf(analysis, ARTIST_TERMS, TRACK_TERMS)), replace)) {
+            return false;
+        }
+        if (snapshot.getComputedAt() != null) {
+            analysedAt.put(snapshot.getUserId(), snapshot.getComputedAt());
+        }
+        return true;
+    }
+
+    private boolean put(TasteProfile profile, int[] signature, boolean replace) {
+        long userId = profile.getUserId();
+        indexLock.writeLock().lock();
+        try {
+            if (!replace && profiles.containsKey(userId)) {
+                return false;
+            }
+            TasteProfile previous = profiles.put(userId, profile);
+            lsh.put(userId, signature);
+            if (previous != null) {
+                unpost(artistPostings, previous.getArtists(), userId);
+                unpost(genrePostings, previous.getGenres(), userId);
+            }
+            post(artistPostings, profile.getArtists(), userId);
+            post(genrePostings, profile.getGenres(), userId);
+            return true;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private static void post(Map<Integer, UserIdBitmap> postings, int[] keys, long userId) {
+        for (int key : keys) {
+            postings.computeIfAbsent(key, k -> new UserIdBitmap()).add(userId);
+        }
+    }
+
+    private static void unpost(Map<Integer, UserIdBitmap> postings, int[] keys, long userId) {
+        for (int key : keys) {
+            UserIdBitmap posting = postings.get(key);
+            if (posting != null) {
+                posting.remove(userId);
+                if (posting.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    private TasteProfile profileOf(MusicAnalysisSnapshot snapshot, JsonNode analysis) {
+        Map<Integer, Integer> artists = new HashMap<>();
+        for (int term = 0; term < ARTIST_TERMS.length; term++) {
+            for (JsonNode artist : analysis.path(ARTIST_TERMS[term])) {
+                String id = artist.path("id").asText(null);
+                if (id != null) {
+                    artists.merge(artistIdOf(id, artist.path("name").asText(id)), TERM_WEIGHTS[term], Integer::sum);
+                }
+            }
+        }
+
+        Map<Integer, Integer> genres = new HashMap<>();
+        for (Map.Entry<String, Integer> genre : GenreTopK.of(MAX_GENRES, readScores(snapshot.getGenreScores())).top()) {
+            genres.put(genreDictionary.idOf(genre.getKey()), genre.getValue());
+        }
+        return TasteProfile.of(snapshot.getUserId(), artists, genres);
+    }
+
+    // The Spotify ids of every top artist and top track, each once
+    private static Set<String> idsOf(JsonNode analysis, String[]... termLists) {
+        Set<String> ids = new HashSet<>();
+        for (String[] terms : termLists) {
+            for (String term : terms) {
+                for (JsonNode item : analysis.path(term)) {
+                    String id = item.path("id").asText(null);
+                    if (id != null) {
+                        ids.add(id);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private List<String> sharedArtists(TasteProfile viewer, TasteProfile match) {
+        int[] shared = viewer.sharedArtists(match);
+        List<String> names = new ArrayList<>();
+        synchronized (artistIds) {
+            for (int i = 0; i < shared.length && i < maxSharedArtists; i++) {
+                names.add(artistNames.get(shared[i]));
+            }
+        }
+        return names;
+    }
+
+    private int artistIdOf(String spotifyId, String name) {
+        synchronized (artistIds) {
+            Integer id = artistIds.get(spotifyId);
+            if (id == null) {
+                id = artistNames.size();
+                artistNames.add(name);
+                artistIds.put(spotifyId, id);
+            }
+            return id;
+        }
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return json != null ? objectMapper.readTree(json) : objectMapper.createObjectNode();
+        } catch (JsonProcessingException e) {
+            System.out.println("Unreadable stored music-analysis snapshot: " + e.getMessage());
+            return objectMapper.createObjectNode();
+        }
+    }
+
+    private Map<String, Integer> readScores(String json) {
+        try {
+            return json != null ? objectMapper.readValue(json, SCORES) : Map.of();
+        } catch (JsonProcessingException e) {
+            System.out.println("Unreadable stored genre scores: " + e.getMessage());
+            return Map.of();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.soundscape.services;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A user's taste as two sparse vectors, one over artists and one over genres, each a
+ * sorted int[] of ids with a parallel float[] of weights and the vector's length kept
+ * alongside. Comparing two profiles is a merge of the sorted arrays, with no maps or
+ * boxing, so a scan over every user stays cheap. Immutable.
+ *
+ * Similarity is the cosine of the artist vectors and of the genre vectors, blended
+ * ARTIST_SHARE to the rest: sharing artists says more than sharing genres, but two users
+ * with no artist in common can still match on genre.
+ */
+public final class TasteProfile {
+
+    static final double ARTIST_SHARE = 0.7;
+
+    private final long userId;
+    private final int[] artists;
+    private final float[] artistWeights;
+    private final double artistNorm;
+    private final int[] genres;
+    private final float[] genreWeights;
+    private final double genreNorm;
+
+    private TasteProfile(long userId, int[] artists, float[] artistWeights, int[] genres, float[] genreWeights) {
+        this.userId = userId;
+        this.artists = artists;
+        this.artistWeights = artistWeights;
+        this.artistNorm = norm(artistWeights);
+        this.genres = genres;
+        this.genreWeights = genreWeights;
+        this.genreNorm = norm(genreWeights);
+    }
+
+    // Weights by artist id and by genre id; zero and negative weights are left out
+    public static TasteProfile of(long userId, Map<Integer, ? extends Number> artists, Map<Integer, ? extends Number> genres) {
+        int[] artistIds = sortedIds(artists);
+        int[] genreIds = sortedIds(genres);
+        return new TasteProfile(userId, artistIds, weights(artistIds, artists), genreIds, weights(genreIds, genres));
+    }
+
+    public long getUserId() { return userId; }
+
+    // Sorted artist ids
+    public int[] getArtists() { return artists.clone(); }
+
+    // Sorted genre ids
+    public int[] getGenres() { return genres.clone(); }
+
+    public boolean isEmpty() {
+        return artists.length == 0 && genres.length == 0;
+    }
+
+    // 0 (nothing in common) to 1 (the same taste)
+    public double similarity(TasteProfile other) {
+        return ARTIST_SHARE * cosine(artists, artistWeights, artistNorm, other.artists, other.artistWeights, other.artistNorm)
+                + (1 - ARTIST_SHARE) * cosine(genres, genreWeights, genreNorm, other.genres, other.genreWeights, other.genreNorm);
+    }
+
+    // Artist ids both profiles have, heaviest in this profile first
+    public int[] sharedArtists(TasteProfile other) {
+        int[] shared = new int[Math.min(artists.length, other.artists.length)];
+        float[] weights = new float[shared.length];
+        int count = 0;
+        for (int i = 0, j = 0; i < artists.length && j < other.artists.length; ) {
+            if (artists[i] == other.artists[j]) {
+                shared[count] = artists[i];
+                weights[count++] = artistWeights[i];
+                i++;
+                j++;
+            } else if (artists[i] < other.artists[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(weights[b], weights[a]));
+        int[] heaviestFirst = new int[count];
+        for (int i = 0; i < count; i++) {
+            heaviestFirst[i] = shared[order[i]];
+        }
+        return heaviestFirst;
+    }
+
+    private static double cosine(int[] ids, float[] weights, double norm, int[] otherIds, float[] otherWeights, double otherNorm) {
+        if (norm == 0 || otherNorm == 0) {
+            return 0;
+        }
+        double dot = 0;
+        for (int i = 0, j = 0; i < ids.length && j < otherIds.length; ) {
+            if (ids[i] == otherIds[j]) {
+                dot += (double) weights[i++] * otherWeights[j++];
+            } else if (ids[i] < otherIds[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dot / (norm * otherNorm);
+    }
+
+    private static int[] sortedIds(Map<Integer, ? extends Number> weights) {
+        return weights.entrySet().stream()
+                .filter(entry -> entry.getValue().doubleValue() > 0)
+                .mapToInt(Map.Entry::getKey)
+                .sorted()
+                .toArray();
+    }
+
+    private static float[] weights(int[] ids, Map<Integer, ? extends Number> weights) {
+        float[] values = new float[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = weights.get(ids[i]).floatValue();
+        }
+        return values;
+    }
+
+    private static double norm(float[] weights) {
+        double sum = 0;
+        for (float weight : weights) {
+            sum += (double) weight * weight;
+        }
+        return Math.sqrt(sum);
+    }
+}
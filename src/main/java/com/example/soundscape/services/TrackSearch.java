@@ -0,0 +1,236 @@
+package com.example.soundscape.services;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.ExpiringLruCache;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyBulkhead;
+import com.example.soundscape.spotify.SpotifyPayloads.Track;
+import com.example.soundscape.spotify.SpotifyPayloads.TrackSearchResults;
+import com.example.soundscape.spotify.SpotifyResponses.TrackResult;
+import com.example.soundscape.spotify.SpotifyUnavailableException;
+import com.example.soundscape.spotify.TrackMetadataCache;
+import com.example.soundscape.spotify.TrackMetadataCache.TrackMetadata;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Track search for the favorite-song picker, which searches as the user types.
+ *
+ * Three things keep a typed query from costing one Spotify call per keystroke:
+ *
+ * - A search waits debounce before calling Spotify, and a newer search from the same user
+ *   cancels it (interrupting the call if it already started). The superseded request gets
+ *   an empty Optional back; its browser has already moved on to the newer one.
+ * - Results are cached app-wide by normalized query (case and spacing folded) for ttl.
+ * - Each call asks Spotify for FETCH_LIMIT tracks but the picker shows RESULT_LIMIT, so a
+ *   longer query can often be answered by filtering the cached results of a prefix of it
+ *   ("radioh" from "radio"). That is done when the prefix's results were everything Spotify
+ *   had for it, or when the filter still leaves a full page.
+ */
+@Service
+public class TrackSearch {
+
+    // Tracks the picker shows, and tracks fetched per call to answer longer queries from
+    static final int RESULT_LIMIT = 10;
+    static final int FETCH_LIMIT = 50;
+
+    // Shortest prefix whose results are used for longer queries
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    // exhaustive: tracks holds every match Spotify had for the query
+    private record Entry(List<TrackResult> tracks, boolean exhaustive, long expiresAtNanos) {}
+
+    private final SpotifyApiClient spotifyApiClient;
+    private final TrackMetadataCache trackMetadataCache;
+    private final ScheduledExecutorService searchScheduler;
+    private final Duration debounce;
+    private final long ttlNanos;
+    private final ExpiringLruCache<String, Entry> entries;
+    private final Map<Long, Future<List<TrackResult>>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong prefixHits = new AtomicLong();
+    private final AtomicLong spotifyCalls = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+
+    public TrackSearch(SpotifyApiClient spotifyApiClient,
+                       TrackMetadataCache trackMetadataCache,
+                       MeterRegistry meterRegistry,
+                       @Qualifier("spotifySearchScheduler") ScheduledExecutorService searchScheduler,
+                       @Value("${spotify.search.debounce:150ms}") Duration debounce,
+                       @Value("${spotify.search.cache.ttl:10m}") Duration ttl,
+                       @Value("${spotify.search.cache.max-entries:5000}") int maxEntries) {
+        this.spotifyApiClient = spotifyApiClient;
+        this.trackMetadataCache = trackMetadataCache;
+        this.searchScheduler = searchScheduler;
+        this.debounce = debounce;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new ExpiringLruCache<>(maxEntries, ttl);
+
+        FunctionCounter.builder("spotify.search.requests", cacheHits, AtomicLong::get).tag("result", "cached").register(meterRegistry);
+        FunctionCounter.builder("spotify.search.requests", prefixHits, AtomicLong::get).tag("result", "prefix").register(meterRegistry);
+        FunctionCounter.builder("spotify.search.requests", spotifyCalls, AtomicLong::get).tag("result", "spotify").register(meterRegistry);
+        FunctionCounter.builder("spotify.search.requests", superseded, AtomicLong::get).tag("result", "superseded").register(meterRegistry);
+    }
+
+    // Tracks matching the query, or empty if a newer search from the same user replaced this one
+    public Optional<List<TrackResult>> search(User user, String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return Optional.of(List.of());
+        }
+        List<TrackResult> cached = fromCache(normalized);
+        if (cached != null) {
+            cancelPending(user);
+            return Optional.of(cached);
+        }
+        if (SpotifyBulkhead.isShedding()) {
+            throw new SpotifyUnavailableException("Spotify bulkhead is full, skipped search");
+        }
+
+        Future<List<TrackResult>> search;
+        try {
+            search = searchScheduler.schedule(() -> fetch(user, normalized), debounce.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            throw new SpotifyUnavailableException("Too many searches in progress");
+        }
+        Future<List<TrackResult>> previous = pending.put(user.getId(), search);
+        if (previous != null) {
+            previous.cancel(true);
+        }
+        try {
+            return Optional.of(search.get());
+        } catch (CancellationException e) {
+            superseded.incrementAndGet();
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            search.cancel(true);
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pending.remove(user.getId(), search);
+        }
+    }
+
+    private void cancelPending(User user) {
+        Future<List<TrackResult>> previous = pending.remove(user.getId());
+        if (previous != null) {
+            previous.cancel(true);
+        }
+    }
+
+    // Runs after the debounce on a search thread
+    private List<TrackResult> fetch(User user, String query) {
+        // Another user may have searched for the same thing meanwhile
+        List<TrackResult> cached = fromCache(query);
+        if (cached != null) {
+            return cached;
+        }
+        spotifyCalls.incrementAndGet();
+        String url = "/search?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8) + "&type=track&limit=" + FETCH_LIMIT;
+        TrackSearchResults results;
+        try {
+            results = spotifyApiClient.readValue(spotifyApiClient.get(user, url).getBody(), TrackSearchResults.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<TrackResult> tracks = new ArrayList<>(results.tracks().items().size());
+        for (Track track : results.tracks().items()) {
+            if (track != null && track.id() != null) {
+                trackMetadataCache.remember(track);
+                tracks.add(toResult(track));
+            }
+        }
+        boolean exhaustive = results.tracks().total() <= tracks.size();
+        Entry entry = new Entry(List.copyOf(tracks), exhaustive, System.nanoTime() + ttlNanos);
+        entries.put(query, entry, entry.expiresAtNanos());
+        return firstPage(tracks);
+    }
+
+    // Results for the query from the cache, exact or filtered from a prefix; null on a miss
+    private List<TrackResult> fromCache(String query) {
+        Entry exact = entries.get(query);
+        if (exact != null) {
+            cacheHits.incrementAndGet();
+            return firstPage(exact.tracks());
+        }
+        String[] terms = query.split(" ");
+        for (int length = query.length() - 1; length >= MIN_PREFIX_LENGTH; length--) {
+            Entry prefix = entries.get(query.substring(0, length));
+            if (prefix == null) {
+                continue;
+            }
+            List<TrackResult> matching = prefix.tracks().stream().filter(track -> matches(track, terms)).toList();
+            if (prefix.exhaustive() || matching.size() >= RESULT_LIMIT) {
+                // Expires with the prefix it was filtered from
+                entries.put(query, new Entry(matching, prefix.exhaustive(), prefix.expiresAtNanos()), prefix.expiresAtNanos());
+                prefixHits.incrementAndGet();
+                return firstPage(matching);
+            }
+            // The nearest cached prefix didn't have enough; shorter ones will have even fewer
+            return null;
+        }
+        return null;
+    }
+
+    // Every term of the query starts a word of the track's name, artist or album, the way
+    // Spotify matches the last (still being typed) term
+    private static boolean matches(TrackResult track, String[] terms) {
+        String[] words = normalize(track.name() + " " + track.artist() + " " + track.album()).split(" ");
+        for (String term : terms) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String normalize(String query) {
+        return query == null ? "" : query.strip().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private static List<TrackResult> firstPage(List<TrackResult> tracks) {
+        return tracks.size() <= RESULT_LIMIT ? tracks : tracks.subList(0, RESULT_LIMIT);
+    }
+
+    private static TrackResult toResult(Track track) {
+        TrackMetadata metadata = TrackMetadataCache.toMetadata(track);
+        return new TrackResult(metadata.id(), metadata.name(), metadata.artist(), metadata.album(),
+                metadata.image(), metadata.spotifyUrl());
+    }
+}
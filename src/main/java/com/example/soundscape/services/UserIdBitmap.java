@@ -0,0 +1,264 @@
+package com.example.soundscape.services;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A sorted set of user ids stored the way Roaring bitmaps are: ids are split by their
+ * high bits into chunks of 65536, and each chunk holds its low 16 bits either as a sorted
+ * char[] (up to 4096 of them, 2 bytes an id) or, once fuller than that, as a 65536-bit
+ * long[1024] (8 KB whatever the count). A posting list of a few users costs a few bytes;
+ * one of most users costs a bit each. Unions go chunk by chunk, merging arrays or OR-ing
+ * words. Not thread-safe.
+ */
+public final class UserIdBitmap {
+
+    // Past this many ids a chunk is smaller as a bitmap
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final long MAX_ID = (1L << 47) - 1;
+
+    private int[] keys = new int[2];
+    // char[] (sorted, sizes[i] used) or long[BITMAP_WORDS], per key
+    private Object[] chunks = new Object[2];
+    private int[] sizes = new int[2];
+    private int chunkCount;
+    private long cardinality;
+
+    public void add(long id) {
+        int key = keyOf(id);
+        char low = (char) id;
+        int i = Arrays.binarySearch(keys, 0, chunkCount, key);
+        if (i < 0) {
+            i = insertChunk(-i - 1, key, new char[4]);
+        }
+        if (chunks[i] instanceof char[] values) {
+            int at = Arrays.binarySearch(values, 0, sizes[i], low);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (sizes[i] == values.length) {
+                values = Arrays.copyOf(values, Math.min(values.length * 2, ARRAY_MAX + 1));
+                chunks[i] = values;
+            }
+            System.arraycopy(values, at, values, at + 1, sizes[i] - at);
+            values[at] = low;
+            sizes[i]++;
+            if (sizes[i] > ARRAY_MAX) {
+                chunks[i] = toBitmap(values, sizes[i]);
+            }
+        } else {
+            long[] words = (long[]) chunks[i];
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                return;
+            }
+            words[low >>> 6] |= bit;
+            sizes[i]++;
+        }
+        cardinality++;
+    }
+
+    public void remove(long id) {
+        int i = Arrays.binarySearch(keys, 0, chunkCount, keyOf(id));
+        if (i < 0) {
+            return;
+        }
+        char low = (char) id;
+        if (chunks[i] instanceof char[] values) {
+            int at = Arrays.binarySearch(values, 0, sizes[i], low);
+            if (at < 0) {
+                return;
+            }
+            System.arraycopy(values, at + 1, values, at, sizes[i] - at - 1);
+            sizes[i]--;
+        } else {
+            long[] words = (long[]) chunks[i];
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                return;
+            }
+            words[low >>> 6] &= ~bit;
+            sizes[i]--;
+            if (sizes[i] <= ARRAY_MAX) {
+                chunks[i] = toArray(words, sizes[i]);
+            }
+        }
+        cardinality--;
+        if (sizes[i] == 0) {
+            removeChunk(i);
+        }
+    }
+
+    public boolean contains(long id) {
+        if (id < 0 || id > MAX_ID) {
+            return false;
+        }
+        int i = Arrays.binarySearch(keys, 0, chunkCount, (int) (id >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) id;
+        if (chunks[i] instanceof char[] values) {
+            return Arrays.binarySearch(values, 0, sizes[i], low) >= 0;
+        }
+        return (((long[]) chunks[i])[low >>> 6] & (1L << low)) != 0;
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    // Add every id of other to this one
+    public void or(UserIdBitmap other) {
+        for (int j = 0; j < other.chunkCount; j++) {
+            int i = Arrays.binarySearch(keys, 0, chunkCount, other.keys[j]);
+            if (i < 0) {
+                Object copy = other.chunks[j] instanceof char[] values
+                        ? Arrays.copyOf(values, other.sizes[j])
+                        : ((long[]) other.chunks[j]).clone();
+                i = insertChunk(-i - 1, other.keys[j], copy);
+                sizes[i] = other.sizes[j];
+                cardinality += sizes[i];
+                continue;
+            }
+            cardinality -= sizes[i];
+            if (chunks[i] instanceof char[] values && other.chunks[j] instanceof char[] otherValues) {
+                char[] merged = merge(values, sizes[i], otherValues, other.sizes[j]);
+                chunks[i] = merged.length > ARRAY_MAX ? toBitmap(merged, merged.length) : merged;
+                sizes[i] = merged.length;
+            } else {
+                long[] words = chunks[i] instanceof char[] values ? toBitmap(values, sizes[i]) : (long[]) chunks[i];
+                if (other.chunks[j] instanceof char[] otherValues) {
+                    for (int k = 0; k < other.sizes[j]; k++) {
+                        words[otherValues[k] >>> 6] |= 1L << otherValues[k];
+                    }
+                } else {
+                    long[] otherWords = (long[]) other.chunks[j];
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] |= otherWords[w];
+                    }
+                }
+                chunks[i] = words;
+                sizes[i] = bitCount(words);
+            }
+            cardinality += sizes[i];
+        }
+    }
+
+    // Every id, ascending
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < chunkCount; i++) {
+            long high = (long) keys[i] << 16;
+            if (chunks[i] instanceof char[] values) {
+                for (int k = 0; k < sizes[i]; k++) {
+                    action.accept(high | values[k]);
+                }
+            } else {
+                long[] words = (long[]) chunks[i];
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(high | ((long) w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    public long[] toArray() {
+        long[] ids = new long[(int) cardinality];
+        int[] next = {0};
+        forEach(id -> ids[next[0]++] = id);
+        return ids;
+    }
+
+    private static int keyOf(long id) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("User id out of range: " + id);
+        }
+        return (int) (id >>> 16);
+    }
+
+    private int insertChunk(int at, int key, Object chunk) {
+        if (chunkCount == keys.length) {
+            keys = Arrays.copyOf(keys, chunkCount * 2);
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            sizes = Arrays.copyOf(sizes, chunkCount * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, chunkCount - at);
+        System.arraycopy(chunks, at, chunks, at + 1, chunkCount - at);
+        System.arraycopy(sizes, at, sizes, at + 1, chunkCount - at);
+        keys[at] = key;
+        chunks[at] = chunk;
+        sizes[at] = 0;
+        chunkCount++;
+        return at;
+    }
+
+    private void removeChunk(int at) {
+        System.arraycopy(keys, at + 1, keys, at, chunkCount - at - 1);
+        System.arraycopy(chunks, at + 1, chunks, at, chunkCount - at - 1);
+        System.arraycopy(sizes, at + 1, sizes, at, chunkCount - at - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+    }
+
+    // The sorted union of two sorted runs, exactly as long as it needs to be
+    private static char[] merge(char[] a, int aSize, char[] b, int bSize) {
+        char[] merged = new char[aSize + bSize];
+        int i = 0, j = 0, k = 0;
+        while (i < aSize && j < bSize) {
+            if (a[i] == b[j]) {
+                merged[k++] = a[i++];
+                j++;
+            } else if (a[i] < b[j]) {
+                merged[k++] = a[i++];
+            } else {
+                merged[k++] = b[j++];
+            }
+        }
+        while (i < aSize) {
+            merged[k++] = a[i++];
+        }
+        while (j < bSize) {
+            merged[k++] = b[j++];
+        }
+        return k == merged.length ? merged : Arrays.copyOf(merged, k);
+    }
+
+    private static long[] toBitmap(char[] values, int size) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int k = 0; k < size; k++) {
+            words[values[k] >>> 6] |= 1L << values[k];
+        }
+        return words;
+    }
+
+    private static char[] toArray(long[] words, int size) {
+        char[] values = new char[size];
+        int k = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                values[k++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+
+    private static int bitCount(long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
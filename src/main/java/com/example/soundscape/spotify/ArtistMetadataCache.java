@@ -0,0 +1,148 @@
+package com.example.soundscape.spotify;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.SpotifyPayloads.Artist;
+import com.example.soundscape.spotify.SpotifyPayloads.ArtistsPage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * App-wide cache of artist genres keyed by Spotify artist id.
+ *
+ * Genres change rarely, so entries live for days (ttl) and the cache holds up to max-entries
+ * artists, evicting the least recently used. Each artist's genres are kept as ids into the
+ * GenreDictionary rather than as strings.
+ *
+ * Misses are collected for batch-window and resolved with /artists?ids= calls of up to 50
+ * ids (see SpotifyBatchLoader), so the genres of a page of tracks by 30 different artists
+ * cost one call instead of 30. Artists that arrive in other responses (top artists) are
+ * stored through remember and never fetched at all.
+ */
+@Component
+public class ArtistMetadataCache {
+
+    // Most ids /artists accepts in one call
+    static final int MAX_IDS_PER_CALL = 50;
+
+    private static final int[] NO_GENRES = new int[0];
+
+    private final SpotifyApiClient spotifyApiClient;
+    private final GenreDictionary genres;
+    private final SpotifyBatchLoader<int[]> loader;
+    private final Duration lookupTimeout;
+    private final ExpiringLruCache<String, int[]> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong batchCalls = new AtomicLong();
+
+    public ArtistMetadataCache(SpotifyApiClient spotifyApiClient,
+                               GenreDictionary genres,
+                               MeterRegistry meterRegistry,
+                               @Qualifier("spotifyFanOutExecutor") ExecutorService fanOutExecutor,
+                               @Value("${spotify.artists.cache.max-entries:50000}") int maxEntries,
+                               @Value("${spotify.artists.cache.ttl:7d}") Duration ttl,
+                               @Value("${spotify.artists.batch-window:20ms}") Duration batchWindow,
+                               @Value("${spotify.artists.lookup-timeout:2s}") Duration lookupTimeout) {
+        this.spotifyApiClient = spotifyApiClient;
+        this.genres = genres;
+        this.lookupTimeout = lookupTimeout;
+        this.loader = new SpotifyBatchLoader<>("artists", MAX_IDS_PER_CALL, batchWindow, fanOutExecutor, this::fetch);
+        this.entries = new ExpiringLruCache<>(maxEntries, ttl);
+
+        FunctionCounter.builder("spotify.artists.requests", hits, AtomicLong::get).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("spotify.artists.requests", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("spotify.artists.batch-calls", batchCalls, AtomicLong::get)
+                .description("/artists?ids= calls made to resolve cache misses").register(meterRegistry);
+        Gauge.builder("spotify.artists.cache.size", entries, ExpiringLruCache::size).register(meterRegistry);
+        Gauge.builder("spotify.genres.dictionary.size", genres, GenreDictionary::size).register(meterRegistry);
+    }
+
+    /**
+     * Genres of every known artist in ids, fetching the misses in as few calls as possible.
+     * Artists Spotify does not know, or that did not load within lookup-timeout, are left out;
+     * an artist with no genres maps to an empty list. Ids that are not Spotify ids are left
+     * out without a call.
+     */
+    public Map<String, List<String>> genresOf(User user, Collection<String> artistIds) {
+        Map<String, int[]> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String artistId : new LinkedHashSet<>(artistIds)) {
+            if (!SpotifyBatchLoader.isSpotifyId(artistId)) {
+                continue;
+            }
+            int[] genreIds = entries.get(artistId);
+            if (genreIds != null) {
+                hits.incrementAndGet();
+                found.put(artistId, genreIds);
+            } else {
+                misses.incrementAndGet();
+                missing.add(artistId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, CompletableFuture<int[]>> loading = loader.load(user, missing);
+            found.putAll(SpotifyBatchLoader.await(loading, System.nanoTime() + lookupTimeout.toNanos()));
+        }
+
+        Map<String, List<String>> result = new HashMap<>();
+        found.forEach((artistId, genreIds) -> result.put(artistId, genres.namesOf(genreIds)));
+        return result;
+    }
+
+    // Store an artist that arrived in some other response (top artists...) and return its
+    // genres as the dictionary's instances, so the caller does not hold on to its own copies
+    public List<String> remember(String artistId, Collection<String> artistGenres) {
+        int[] genreIds = genreIds(artistGenres);
+        if (artistId != null) {
+            put(artistId, genreIds);
+        }
+        return genres.namesOf(genreIds);
+    }
+
+    // One /artists?ids= call; ids Spotify does not know are left out
+    private Map<String, int[]> fetch(User user, List<String> artistIds) throws IOException {
+        batchCalls.incrementAndGet();
+        String url = "/artists?ids=" + String.join(",", artistIds);
+        ArtistsPage page = spotifyApiClient.readValue(spotifyApiClient.get(user, url).getBody(), ArtistsPage.class);
+        Map<String, int[]> resolved = new HashMap<>();
+        for (Artist artist : page.artists()) {
+            if (artist != null && artist.id() != null) {
+                int[] genreIds = genreIds(artist.genres());
+                put(artist.id(), genreIds);
+                resolved.put(artist.id(), genreIds);
+            }
+        }
+        return resolved;
+    }
+
+    private int[] genreIds(Collection<String> artistGenres) {
+        return artistGenres == null || artistGenres.isEmpty() ? NO_GENRES : genres.idsOf(artistGenres);
+    }
+
+    private void put(String artistId, int[] genreIds) {
+        entries.put(artistId, genreIds);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        loader.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.soundscape.spotify;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory cache of at most maxEntries values that each expire ttl after they are put,
+ * evicting the least recently used value when full. Expired values are dropped when they
+ * are next looked up. Thread-safe; every call holds the cache's lock briefly.
+ *
+ * Used for the app-wide caches that are the same for every user (track metadata, artist
+ * genres, search results), unlike SpotifyResponseCache.
+ */
+public final class ExpiringLruCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAtNanos) {}
+
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    public ExpiringLruCache(int maxEntries, Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // The value for key, or null if there is none or it expired
+    public V get(K key) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expiresAtNanos() >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value();
+        }
+    }
+
+    // Store value for ttl from now
+    public void put(K key, V value) {
+        put(key, value, System.nanoTime() + ttlNanos);
+    }
+
+    // Store value until expiresAtNanos (a System.nanoTime() value), e.g. that of the value it was derived from
+    public void put(K key, V value, long expiresAtNanos) {
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, expiresAtNanos));
+        }
+    }
+
+    public void remove(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
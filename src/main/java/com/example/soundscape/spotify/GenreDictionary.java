@@ -0,0 +1,64 @@
+package com.example.soundscape.spotify;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * App-wide dictionary of genre names, so each genre is stored once and referred to by a
+ * small int id.
+ *
+ * Spotify attaches the same few thousand genre strings to millions of artists; keeping one
+ * String instance per genre (and int[] of ids per artist) means a cached artist costs a few
+ * bytes instead of a fresh copy of every genre name in every response. Ids are assigned in
+ * order of first sight and never reused.
+ */
+@Component
+public class GenreDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    // Id of the genre, assigning one the first time it is seen
+    public synchronized int idOf(String genre) {
+        Integer id = ids.get(genre);
+        if (id == null) {
+            id = names.size();
+            names.add(genre);
+            ids.put(genre, id);
+        }
+        return id;
+    }
+
+    // The canonical instance of the genre name
+    public String intern(String genre) {
+        return nameOf(idOf(genre));
+    }
+
+    public synchronized String nameOf(int id) {
+        return names.get(id);
+    }
+
+    // Ids of the distinct genres, in order
+    public synchronized int[] idsOf(Collection<String> genres) {
+        return new LinkedHashSet<>(genres).stream().filter(genre -> genre != null && !genre.isBlank())
+                .mapToInt(this::idOf).toArray();
+    }
+
+    public synchronized List<String> namesOf(int[] genreIds) {
+        List<String> genres = new ArrayList<>(genreIds.length);
+        for (int id : genreIds) {
+            genres.add(names.get(id));
+        }
+        return genres;
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+}
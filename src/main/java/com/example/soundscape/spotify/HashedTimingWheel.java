@@ -0,0 +1,171 @@
+package com.example.soundscape.spotify;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timer for large numbers of one-shot tasks that tolerate firing up to one tick late, such as
+ * per-user polls.
+ *
+ * Timers hash into a ring of wheelSize buckets by their deadline, each bucket covering one
+ * tick. A single thread advances one bucket per tick and hands the timers that are due to
+ * executor; timers further out than one turn of the wheel count down the turns they still
+ * have to wait. Scheduling and cancelling are O(1) and never block: new timers go through a
+ * queue that the wheel thread drains on its next tick, and cancelled ones are dropped when
+ * their bucket comes around. Compared with a ScheduledThreadPoolExecutor there is no heap to
+ * rebalance, which matters once thousands of timers are rescheduled every few seconds.
+ *
+ * A task the executor turns away is retried on the next tick.
+ */
+public class HashedTimingWheel implements AutoCloseable {
+
+    // A scheduled task; cancel returns false if it already ran (or is running)
+    public interface Timeout {
+        boolean cancel();
+    }
+
+    private static final class Timer implements Timeout {
+        final Runnable task;
+        final long deadlineNanos;
+        long remainingRounds;
+        final AtomicBoolean done = new AtomicBoolean();
+
+        Timer(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Executor executor;
+    private final Thread worker;
+    private final long startNanos;
+
+    // Touched only by the wheel thread
+    private final List<List<Timer>> buckets;
+    private long tick;
+
+    private final Queue<Timer> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+
+    public HashedTimingWheel(String name, Duration tick, int wheelSize, Executor executor) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two: " + wheelSize);
+        }
+        this.tickNanos = tick.toNanos();
+        this.mask = wheelSize - 1;
+        this.executor = executor;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.startNanos = System.nanoTime();
+        this.worker = SpotifyConfig.daemonThreads(name).newThread(this::run);
+        worker.start();
+    }
+
+    public Timeout schedule(Runnable task, Duration delay) {
+        if (closed) {
+            throw new RejectedExecutionException("Timing wheel is closed");
+        }
+        Timer timer = new Timer(task, System.nanoTime() + Math.max(0, delay.toNanos()));
+        pending.incrementAndGet();
+        added.add(timer);
+        return timer;
+    }
+
+    // Timers scheduled and not yet run or dropped (cancelled ones count until their bucket comes up)
+    public int pending() {
+        return pending.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                long nextTickNanos = startNanos + (tick + 1) * tickNanos;
+                long sleepNanos = nextTickNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                }
+                transferAdded();
+                expire(buckets.get((int) (tick & mask)));
+                tick++;
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    // Put new timers in the bucket of their deadline; ones already due go in the current bucket
+    private void transferAdded() {
+        Timer timer;
+        while ((timer = added.poll()) != null) {
+            place(timer);
+        }
+    }
+
+    private void place(Timer timer) {
+        if (timer.done.get()) {
+            pending.decrementAndGet();
+            return;
+        }
+        long dueTick = Math.max(tick, (timer.deadlineNanos - startNanos) / tickNanos);
+        timer.remainingRounds = (dueTick - tick) / buckets.size();
+        buckets.get((int) (dueTick & mask)).add(timer);
+    }
+
+    private void expire(List<Timer> bucket) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Timer> due = new ArrayList<>();
+        List<Timer> waiting = new ArrayList<>();
+        for (Timer timer : bucket) {
+            if (timer.done.get()) {
+                pending.decrementAndGet();
+            } else if (timer.remainingRounds > 0) {
+                timer.remainingRounds--;
+                waiting.add(timer);
+            } else {
+                due.add(timer);
+            }
+        }
+        bucket.clear();
+        bucket.addAll(waiting);
+
+        for (Timer timer : due) {
+            if (!timer.done.compareAndSet(false, true)) {
+                pending.decrementAndGet();
+                continue;
+            }
+            pending.decrementAndGet();
+            try {
+                executor.execute(timer.task);
+            } catch (RejectedExecutionException e) {
+                pending.incrementAndGet();
+                timer.done.set(false);
+                buckets.get((int) ((tick + 1) & mask)).add(timer);
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.soundscape.spotify;
+
+import com.example.soundscape.models.User;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shared HTTP client for every call SpotifyService makes to the Spotify Web API.
+ *
+ * One JDK HttpClient is reused for the life of the app, so connections (and TLS sessions)
+ * are kept alive and pooled, and HTTP/2 is negotiated where Spotify offers it. Each route
+ * (scheme + host + port) is capped at a fixed number of concurrent requests, and every call
+ * is bounded by a connect timeout, a read timeout and an overall deadline.
+ *
+ * Every request first waits for a permit from SpotifyRequestScheduler. A 429 pauses the
+ * scheduler for the Retry-After period and the request is retried once if that pause fits
+ * inside its deadline. The access token comes from SpotifyTokenManager, and a 401 is retried
+ * once with a freshly refreshed token.
+ *
+ * Each attempt also needs a permit from its endpoint's SpotifyCircuitBreaker, and nothing is
+ * sent from a request thread the SpotifyBulkhead turned away; both refusals surface as
+ * SpotifyUnavailableException without waiting.
+ *
+ * Paths are resolved against spotify.api.base-url, so the app can be pointed at a local
+ * stand-in of the Web API for load tests and integration tests.
+ *
+ * Non-2xx responses are raised as HttpClientErrorException / HttpServerErrorException and
+ * I/O failures as ResourceAccessException, the same exceptions RestTemplate used to throw.
+ */
+@Component
+public class SpotifyApiClient {
+
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final HttpClient httpClient;
+    private final ExecutorService ioExecutor;
+    private final ObjectReader jsonReader;
+    private final SpotifyRequestScheduler scheduler;
+    private final SpotifyTokenManager tokenManager;
+    private final SpotifyCircuitBreaker circuitBreaker;
+    private final String baseUrl;
+    private final Duration readTimeout;
+    private final Duration totalTimeout;
+    private final int maxPerRoute;
+    private final Map<String, Semaphore> routePermits = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectReader> typedReaders = new ConcurrentHashMap<>();
+
+    public SpotifyApiClient(ObjectMapper objectMapper,
+                            SpotifyRequestScheduler scheduler,
+                            SpotifyTokenManager tokenManager,
+                            SpotifyCircuitBreaker circuitBreaker,
+                            @Value("${spotify.api.base-url:https://api.spotify.com/v1}") String baseUrl,
+                            @Value("${spotify.http.connect-timeout:3s}") Duration connectTimeout,
+                            @Value("${spotify.http.read-timeout:5s}") Duration readTimeout,
+                            @Value("${spotify.http.total-timeout:8s}") Duration totalTimeout,
+                            @Value("${spotify.http.max-per-route:20}") int maxPerRoute,
+                            @Value("${spotify.http.io-threads:8}") int ioThreads) {
+        this.scheduler = scheduler;
+        this.tokenManager = tokenManager;
+        this.circuitBreaker = circuitBreaker;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.readTimeout = readTimeout;
+        this.totalTimeout = totalTimeout;
+        this.maxPerRoute = maxPerRoute;
+        this.ioExecutor = Executors.newFixedThreadPool(ioThreads, SpotifyConfig.daemonThreads("spotify-http"));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(ioExecutor)
+                .build();
+        // ObjectReader is immutable and thread-safe, so one instance serves every call
+        this.jsonReader = objectMapper.reader()
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    // GET a Spotify endpoint for a page or AJAX request, e.g. get(user, "/me/player/devices")
+    public ResponseEntity<String> get(User user, String path) {
+        return get(user, path, SpotifyPriority.INTERACTIVE);
+    }
+
+    public ResponseEntity<String> get(User user, String path, SpotifyPriority priority) {
+        return send(user, priority, HttpMethod.GET, path, null);
+    }
+
+    // PUT/POST/DELETE a Spotify endpoint (playback commands) with an optional JSON body
+    public ResponseEntity<String> exchange(User user, HttpMethod method, String path, String jsonBody) {
+        return send(user, SpotifyPriority.PLAYBACK, method, path, jsonBody);
+    }
+
+    private ResponseEntity<String> send(User user, SpotifyPriority priority, HttpMethod method, String path, String jsonBody) {
+        URI uri = URI.create(path.startsWith("http") ? path : baseUrl + path);
+        if (SpotifyBulkhead.isShedding()) {
+            throw new SpotifyUnavailableException("Spotify bulkhead is full, skipped " + method + " " + uri.getPath());
+        }
+        String owner = SpotifyResponseCache.ownerOf(user);
+        long deadline = System.nanoTime() + totalTimeout.toNanos();
+        String accessToken = tokenManager.accessToken(user);
+        boolean throttled = false;
+        boolean reauthorized = false;
+
+        while (true) {
+            SpotifyCircuitBreaker.Permit permit = circuitBreaker.acquire(uri);
+            try {
+                scheduler.acquire(owner, priority, Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+                HttpResponse<String> response;
+                try {
+                    response = sendOnce(uri, buildRequest(uri, method, accessToken, jsonBody), deadline);
+                } catch (ResourceAccessException e) {
+                    // A caller that gave up (superseded search) or a full local connection pool
+                    // says nothing about Spotify's health; the finally below abandons the permit
+                    if (!Thread.currentThread().isInterrupted() && !(e instanceof NoFreeConnectionException)) {
+                        permit.failure();
+                    }
+                    throw e;
+                }
+                if (response.statusCode() >= 500) {
+                    permit.failure();
+                } else {
+                    permit.success();
+                }
+                return toResponseEntity(method, uri, response);
+            } catch (HttpClientErrorException.TooManyRequests e) {
+                Duration retryAfter = parseRetryAfter(e.getResponseHeaders());
+                scheduler.onThrottled(retryAfter);
+                long remaining = deadline - System.nanoTime();
+                if (throttled || retryAfter.toNanos() >= remaining) {
+                    throw e;
+                }
+                throttled = true;
+            } catch (HttpClientErrorException.Unauthorized e) {
+                // Expired or revoked token: retry once with a refreshed one
+                String refreshedToken = reauthorized ? null : tokenManager.refreshAfterUnauthorized(user, accessToken);
+                if (refreshedToken == null) {
+                    throw e;
+                }
+                accessToken = refreshedToken;
+                reauthorized = true;
+            } finally {
+                // Whatever escaped without an outcome (no rate-limit permit in time, a request
+                // that could not be built) was never answered by Spotify; this frees a trial slot
+                permit.abandon();
+            }
+        }
+    }
+
+    private HttpRequest buildRequest(URI uri, HttpMethod method, String accessToken, String jsonBody) {
+        HttpRequest.BodyPublisher body = jsonBody != null
+                ? HttpRequest.BodyPublishers.ofString(jsonBody, StandardCharsets.UTF_8)
+                : HttpRequest.BodyPublishers.noBody();
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(readTimeout)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                .header(HttpHeaders.ACCEPT, "application/json")
+                .method(method.name(), body);
+        if (jsonBody != null) {
+            request.header(HttpHeaders.CONTENT_TYPE, "application/json");
+        }
+        return request.build();
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date
+    static Duration parseRetryAfter(HttpHeaders headers) {
+        String value = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (value == null || value.isBlank()) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration untilRetry = Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt);
+                return untilRetry.isNegative() ? Duration.ZERO : untilRetry;
+            } catch (DateTimeParseException ignored) {
+                return DEFAULT_RETRY_AFTER;
+            }
+        }
+    }
+
+    public JsonNode readTree(String json) throws IOException {
+        return jsonReader.readTree(json);
+    }
+
+    public ObjectReader reader() {
+        return jsonReader;
+    }
+
+    // Bind a response body straight into a payload record, without an intermediate JsonNode tree
+    public <T> T readValue(String json, Class<T> type) throws IOException {
+        return typedReaders.computeIfAbsent(type, jsonReader::forType).readValue(json);
+    }
+
+    private HttpResponse<String> sendOnce(URI uri, HttpRequest request, long deadline) {
+        Semaphore permits = routePermits.computeIfAbsent(routeKey(uri), key -> new Semaphore(maxPerRoute));
+        boolean acquired = false;
+        CompletableFuture<HttpResponse<String>> future = null;
+        try {
+            acquired = permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                throw new NoFreeConnectionException("No free connection for " + routeKey(uri) + " within " + totalTimeout);
+            }
+            future = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ResourceAccessException("Spotify request exceeded " + totalTimeout + ": " + request.method() + " " + uri);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (future != null) {
+                future.cancel(true);
+            }
+            throw new ResourceAccessException("Interrupted calling Spotify: " + request.method() + " " + uri);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new ResourceAccessException("I/O error on " + request.method() + " " + uri + ": " + cause.getMessage(),
+                    cause instanceof IOException io ? io : new IOException(cause));
+        } finally {
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    // Every connection to the route stayed busy until the deadline; nothing was sent
+    private static final class NoFreeConnectionException extends ResourceAccessException {
+        private NoFreeConnectionException(String message) {
+            super(message);
+        }
+    }
+
+    private static ResponseEntity<String> toResponseEntity(HttpMethod method, URI uri, HttpResponse<String> response) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        HttpStatusCode status = HttpStatusCode.valueOf(response.statusCode());
+        String body = response.body();
+
+        if (status.is4xxClientError()) {
+            throw HttpClientErrorException.create(method + " " + uri.getPath() + " returned " + status.value(),
+                    status, "", headers, bytes(body), StandardCharsets.UTF_8);
+        }
+        if (status.is5xxServerError()) {
+            throw HttpServerErrorException.create(method + " " + uri.getPath() + " returned " + status.value(),
+                    status, "", headers, bytes(body), StandardCharsets.UTF_8);
+        }
+        return new ResponseEntity<>(body, headers, status);
+    }
+
+    private static byte[] bytes(String body) {
+        return body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private static String routeKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ioExecutor.shutdownNow();
+    }
+}
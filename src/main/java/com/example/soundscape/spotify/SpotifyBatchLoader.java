@@ -0,0 +1,171 @@
+package com.example.soundscape.spotify;
+
+import com.example.soundscape.models.User;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves ids through one of Spotify's multi-id endpoints (/tracks?ids=, /artists?ids=).
+ *
+ * Ids requested within batchWindow of each other, by any user, are collected and fetched in
+ * one call of at most maxIdsPerCall ids; a batch that fills up is sent at once. The call
+ * uses the token of the user whose request opened the batch, which is fine for public
+ * catalog data. A request for an id that is already being fetched joins that call. An id
+ * the fetcher does not return, or whose call fails, completes with null.
+ *
+ * Ids are joined into the call's query string as they are, so callers pass only ids that
+ * pass isSpotifyId; anything else could split or break a batch other users are waiting on.
+ */
+final class SpotifyBatchLoader<V> {
+
+    // Spotify ids are base-62 strings of (at most) 22 characters
+    private static final Pattern SPOTIFY_ID = Pattern.compile("[A-Za-z0-9]{1,22}");
+
+    // One multi-id call; ids missing from the result are reported as unknown
+    @FunctionalInterface
+    interface Fetcher<V> {
+        Map<String, V> fetch(User user, List<String> ids) throws IOException;
+    }
+
+    // Ids waiting for the next call, and the user whose token it will use
+    private static final class Batch<V> {
+        final User user;
+        final Map<String, CompletableFuture<V>> calls = new LinkedHashMap<>();
+
+        Batch(User user) {
+            this.user = user;
+        }
+    }
+
+    private final String name;
+    private final int maxIdsPerCall;
+    private final Duration batchWindow;
+    private final ExecutorService executor;
+    private final Fetcher<V> fetcher;
+    private final ScheduledExecutorService batchTimer;
+
+    private final Object lock = new Object();
+    private final Map<String, CompletableFuture<V>> inFlight = new HashMap<>();
+    private Batch<V> openBatch;
+
+    SpotifyBatchLoader(String name, int maxIdsPerCall, Duration batchWindow, ExecutorService executor,
+                       Fetcher<V> fetcher) {
+        this.name = name;
+        this.maxIdsPerCall = maxIdsPerCall;
+        this.batchWindow = batchWindow;
+        this.executor = executor;
+        this.fetcher = fetcher;
+        this.batchTimer = Executors.newSingleThreadScheduledExecutor(SpotifyConfig.daemonThreads("spotify-" + name + "-batch"));
+    }
+
+    // Start (or join) the fetch of every id, keyed by id
+    Map<String, CompletableFuture<V>> load(User user, Collection<String> ids) {
+        Map<String, CompletableFuture<V>> loading = new LinkedHashMap<>();
+        List<Batch<V>> full = new ArrayList<>();
+        synchronized (lock) {
+            for (String id : ids) {
+                CompletableFuture<V> call = inFlight.get(id);
+                if (call == null) {
+                    if (openBatch == null) {
+                        Batch<V> batch = new Batch<>(user);
+                        openBatch = batch;
+                        batchTimer.schedule(() -> flush(batch), batchWindow.toNanos(), TimeUnit.NANOSECONDS);
+                    }
+                    call = new CompletableFuture<>();
+                    openBatch.calls.put(id, call);
+                    inFlight.put(id, call);
+                    if (openBatch.calls.size() == maxIdsPerCall) {
+                        full.add(openBatch);
+                        openBatch = null;
+                    }
+                }
+                loading.put(id, call);
+            }
+        }
+        for (Batch<V> batch : full) {
+            send(batch);
+        }
+        return loading;
+    }
+
+    // Whether id can go into a multi-id call as it is
+    static boolean isSpotifyId(String id) {
+        return id != null && SPOTIFY_ID.matcher(id).matches();
+    }
+
+    // Results that arrive before the deadline; ids that time out or resolve to null are left out
+    static <V> Map<String, V> await(Map<String, CompletableFuture<V>> loading, long deadlineNanos) {
+        Map<String, V> found = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<V>> call : loading.entrySet()) {
+            try {
+                V value = call.getValue().get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (value != null) {
+                    found.put(call.getKey(), value);
+                }
+            } catch (TimeoutException | ExecutionException e) {
+                // left out; the caller falls back to whatever it has
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return found;
+    }
+
+    // Timer fired: send the batch unless it already filled up and went out
+    private void flush(Batch<V> batch) {
+        synchronized (lock) {
+            if (openBatch != batch) {
+                return;
+            }
+            openBatch = null;
+        }
+        send(batch);
+    }
+
+    private void send(Batch<V> batch) {
+        try {
+            executor.execute(() -> resolve(batch));
+        } catch (RejectedExecutionException e) {
+            complete(batch, Map.of());
+        }
+    }
+
+    private void resolve(Batch<V> batch) {
+        Map<String, V> resolved = Map.of();
+        try {
+            resolved = fetcher.fetch(batch.user, new ArrayList<>(batch.calls.keySet()));
+        } catch (Exception e) {
+            System.out.println("Error fetching " + batch.calls.size() + " " + name + " from Spotify: " + e.getMessage());
+        } finally {
+            complete(batch, resolved);
+        }
+    }
+
+    private void complete(Batch<V> batch, Map<String, V> resolved) {
+        synchronized (lock) {
+            batch.calls.keySet().forEach(inFlight::remove);
+        }
+        batch.calls.forEach((id, call) -> call.complete(resolved.get(id)));
+    }
+
+    void shutdown() {
+        batchTimer.shutdownNow();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.soundscape.spotify;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps how many request threads can be inside Spotify-backed pages and endpoints at once,
+ * so a slow Spotify cannot tie up every Tomcat worker and starve the feed and messages.
+ *
+ * Registered as an interceptor on the paths in PATHS. A request that gets no slot within
+ * max-wait is not queued: /api/ calls get a 503 with a JSON error, and pages are rendered
+ * without live Spotify data. For those pages every Spotify call made on the request thread
+ * fails at once (see isShedding), so the service falls back to cached or empty results, and
+ * the model gets spotifyUnavailable=true. The same flag is set while any circuit is open.
+ *
+ * An async handler (an SSE stream, for example) gives its slot back as soon as it leaves the
+ * request thread, since it no longer holds a worker.
+ */
+@Component
+public class SpotifyBulkhead implements AsyncHandlerInterceptor {
+
+    public static final List<String> PATHS = List.of(
+            "/now-playing", "/music-analysis", "/music-matches", "/spotify/play",
+            "/api/spotify/**", "/api/music-analysis", "/api/recently-played");
+
+    public static final String UNAVAILABLE_ATTRIBUTE = "spotifyUnavailable";
+
+    private static final String PERMIT_ATTRIBUTE = SpotifyBulkhead.class.getName() + ".permit";
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+    private static final byte[] BUSY_BODY =
+            "{\"error\":\"Spotify is busy right now, please try again in a moment\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final Semaphore permits;
+    private final Duration maxWait;
+    private final SpotifyCircuitBreaker circuitBreaker;
+    private final Counter rejectedPages;
+    private final Counter rejectedApiCalls;
+
+    public SpotifyBulkhead(SpotifyCircuitBreaker circuitBreaker,
+                           MeterRegistry meterRegistry,
+                           @Value("${spotify.bulkhead.max-concurrent:40}") int maxConcurrent,
+                           @Value("${spotify.bulkhead.max-wait:50ms}") Duration maxWait) {
+        this.circuitBreaker = circuitBreaker;
+        this.permits = new Semaphore(maxConcurrent);
+        this.maxWait = maxWait;
+
+        Gauge.builder("spotify.bulkhead.in-use", permits, p -> maxConcurrent - p.availablePermits())
+                .description("Request threads currently inside Spotify-backed handlers")
+                .register(meterRegistry);
+        this.rejectedPages = Counter.builder("spotify.bulkhead.rejected").tag("request", "page")
+                .description("Requests turned away because the Spotify bulkhead was full")
+                .register(meterRegistry);
+        this.rejectedApiCalls = Counter.builder("spotify.bulkhead.rejected").tag("request", "api")
+                .description("Requests turned away because the Spotify bulkhead was full")
+                .register(meterRegistry);
+    }
+
+    // True on a request thread that was turned away: Spotify calls made on it must not be sent
+    public static boolean isShedding() {
+        return Boolean.TRUE.equals(SHEDDING.get());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true; // the slot was released when the request went async
+        }
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (acquired) {
+            request.setAttribute(PERMIT_ATTRIBUTE, Boolean.TRUE);
+            return true;
+        }
+
+        if (request.getRequestURI().startsWith(request.getContextPath() + "/api/")) {
+            rejectedApiCalls.increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getOutputStream().write(BUSY_BODY);
+            return false;
+        }
+        rejectedPages.increment();
+        SHEDDING.set(Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        if (modelAndView != null && !isRedirect(modelAndView) && (isShedding() || circuitBreaker.anyOpen())) {
+            modelAndView.addObject(UNAVAILABLE_ATTRIBUTE, true);
+        }
+    }
+
+    private static boolean isRedirect(ModelAndView modelAndView) {
+        String viewName = modelAndView.getViewName();
+        return viewName != null && viewName.startsWith("redirect:");
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        release(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        release(request);
+    }
+
+    private void release(HttpServletRequest request) {
+        SHEDDING.remove();
+        if (request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.soundscape.spotify;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One circuit breaker per Spotify endpoint family (me/player, me/tracks, playlists, search...).
+ *
+ * A breaker remembers the outcome of the last window-size calls. Once at least minimum-calls
+ * have been recorded and the share of failures (5xx, timeouts, I/O errors) reaches the
+ * threshold, the circuit opens and every call to that endpoint fails at once with
+ * SpotifyUnavailableException instead of holding a thread until its deadline. After
+ * open-duration a few trial calls are let through: if they all succeed the circuit closes,
+ * and if any fails it opens again. 4xx responses count as successes, since Spotify answered.
+ */
+@Component
+public class SpotifyCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final class Breaker {
+        final String endpoint;
+        final boolean[] failed;
+        final Counter rejected;
+        int next;
+        int recorded;
+        int failures;
+        State state = State.CLOSED;
+        long openedAtNanos;
+        int trialsInFlight;
+        int trialSuccesses;
+
+        Breaker(String endpoint) {
+            this.endpoint = endpoint;
+            this.failed = new boolean[windowSize];
+            this.rejected = Counter.builder("spotify.circuit.rejected").tag("endpoint", endpoint)
+                    .description("Spotify calls refused while the circuit was open")
+                    .register(meterRegistry);
+            for (State gaugeState : State.values()) {
+                Gauge.builder("spotify.circuit.state", this, breaker -> breaker.stateNow() == gaugeState ? 1 : 0)
+                        .tag("endpoint", endpoint)
+                        .tag("state", gaugeState.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+        }
+
+        synchronized State stateNow() {
+            return state;
+        }
+
+        void record(boolean failure) {
+            if (failed[next]) {
+                failures--;
+            }
+            failed[next] = failure;
+            if (failure) {
+                failures++;
+            }
+            next = (next + 1) % failed.length;
+            recorded = Math.min(recorded + 1, failed.length);
+        }
+
+        void open(long now) {
+            state = State.OPEN;
+            openedAtNanos = now;
+            trialsInFlight = 0;
+            trialSuccesses = 0;
+            System.out.println("Spotify circuit opened for " + endpoint + " (" + failures + "/" + recorded + " calls failed)");
+        }
+
+        void close() {
+            state = State.CLOSED;
+            Arrays.fill(failed, false);
+            next = 0;
+            recorded = 0;
+            failures = 0;
+            System.out.println("Spotify circuit closed for " + endpoint);
+        }
+    }
+
+    // Handed out for every call that may go ahead; report exactly one outcome on it
+    public final class Permit {
+        private final Breaker breaker;
+        private final boolean trial;
+        private boolean done;
+
+        private Permit(Breaker breaker, boolean trial) {
+            this.breaker = breaker;
+            this.trial = trial;
+        }
+
+        public void success() {
+            complete(false, true);
+        }
+
+        public void failure() {
+            complete(true, true);
+        }
+
+        // The call was never sent (e.g. no rate-limit permit in time): record nothing. Does
+        // nothing after success or failure, so it is safe in a finally
+        public void abandon() {
+            complete(false, false);
+        }
+
+        private void complete(boolean failure, boolean sent) {
+            synchronized (breaker) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                long now = System.nanoTime();
+                if (trial) {
+                    breaker.trialsInFlight = Math.max(0, breaker.trialsInFlight - 1);
+                    if (breaker.state != State.HALF_OPEN || !sent) {
+                        return;
+                    }
+                    if (failure) {
+                        breaker.open(now);
+                    } else if (++breaker.trialSuccesses >= halfOpenCalls) {
+                        breaker.close();
+                    }
+                } else if (sent && breaker.state == State.CLOSED) {
+                    breaker.record(failure);
+                    if (breaker.recorded >= minimumCalls && breaker.failures * 100 >= failureRateThreshold * breaker.recorded) {
+                        breaker.open(now);
+                    }
+                }
+            }
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public SpotifyCircuitBreaker(MeterRegistry meterRegistry,
+                                 @Value("${spotify.circuit.window-size:20}") int windowSize,
+                                 @Value("${spotify.circuit.minimum-calls:10}") int minimumCalls,
+                                 @Value("${spotify.circuit.failure-rate-threshold:50}") int failureRateThreshold,
+                                 @Value("${spotify.circuit.open-duration:30s}") Duration openDuration,
+                                 @Value("${spotify.circuit.half-open-calls:3}") int halfOpenCalls) {
+        this.meterRegistry = meterRegistry;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * Permission to call uri, or SpotifyUnavailableException if its endpoint's circuit is
+     * open (or half-open with all trial calls already taken).
+     */
+    public Permit acquire(URI uri) {
+        Breaker breaker = breakers.computeIfAbsent(endpointOf(uri), Breaker::new);
+        synchronized (breaker) {
+            long now = System.nanoTime();
+            if (breaker.state == State.OPEN && now - breaker.openedAtNanos >= openDuration.toNanos()) {
+                breaker.state = State.HALF_OPEN;
+            }
+            if (breaker.state == State.CLOSED) {
+                return new Permit(breaker, false);
+            }
+            if (breaker.state == State.HALF_OPEN && breaker.trialsInFlight < halfOpenCalls - breaker.trialSuccesses) {
+                breaker.trialsInFlight++;
+                return new Permit(breaker, true);
+            }
+        }
+        breaker.rejected.increment();
+        throw new SpotifyUnavailableException("Spotify " + breaker.endpoint + " is unavailable (circuit open)");
+    }
+
+    public State state(String endpoint) {
+        Breaker breaker = breakers.get(endpoint);
+        return breaker != null ? breaker.stateNow() : State.CLOSED;
+    }
+
+    // True while any endpoint is failing fast, so pages can say their Spotify data is missing
+    public boolean anyOpen() {
+        for (Breaker breaker : breakers.values()) {
+            if (breaker.stateNow() != State.CLOSED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Endpoint family of a Spotify URL: the first path segment after /v1, or the first two
+     * under /me. Ids never end up in the key, so the number of breakers stays small.
+     */
+    static String endpointOf(URI uri) {
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        if (path.startsWith("/v1/")) {
+            path = path.substring(4);
+        }
+        String[] segments = path.replaceFirst("^/+", "").split("/");
+        if (segments[0].equals("me") && segments.length > 1) {
+            return "me/" + segments[1];
+        }
+        return segments[0].isEmpty() ? "root" : segments[0];
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.soundscape.spotify;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class SpotifyConfig implements WebMvcConfigurer {
+
+    private final SpotifyBulkhead spotifyBulkhead;
+
+    public SpotifyConfig(SpotifyBulkhead spotifyBulkhead) {
+        this.spotifyBulkhead = spotifyBulkhead;
+    }
+
+    // Request threads entering Spotify-backed pages and endpoints go through the bulkhead
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(spotifyBulkhead).addPathPatterns(SpotifyBulkhead.PATHS);
+    }
+
+    // Bounded pool used to fan out independent Spotify reads (e.g. the six music-analysis calls).
+    // Overflow is rejected rather than run on the caller, so a saturated pool degrades the
+    // response instead of silently turning it back into sequential calls.
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService spotifyFanOutExecutor(
+            @Value("${spotify.fan-out.threads:16}") int threads,
+            @Value("${spotify.fan-out.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("spotify-fan-out"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Small pool for long-running background syncs of a user's Spotify library into our tables.
+    // Each sync mostly waits on its own paged fetches, which run on spotifyFanOutExecutor.
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService spotifySyncExecutor(
+            @Value("${spotify.sync.threads:2}") int threads,
+            @Value("${spotify.sync.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("spotify-sync"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Runs queued playback commands (see PlaybackCommandQueue); each user's commands use one thread at a time
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService spotifyPlaybackExecutor(
+            @Value("${spotify.playback.threads:4}") int threads,
+            @Value("${spotify.playback.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("spotify-playback"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Runs debounced track searches; a search superseded before its delay is up never runs
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService spotifySearchScheduler(@Value("${spotify.search.threads:4}") int threads) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, daemonThreads("spotify-search"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    // Runs the periodic sweeps over users (listening history, analysis snapshots); the work
+    // they find runs on spotifySyncExecutor
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService spotifySweepScheduler() {
+        return new ScheduledThreadPoolExecutor(2, daemonThreads("spotify-sweep"));
+    }
+
+    // Runs MatchRecomputeJob's slices: scoring is CPU-bound, so one worker per core unless set
+    @Bean(destroyMethod = "shutdownNow")
+    public ForkJoinPool spotifyMatchRecomputePool(@Value("${spotify.matches.recompute.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("spotify-match-recompute-" + thread.getPoolIndex());
+                    return thread;
+                },
+                null, false);
+    }
+
+    // Runs the now-playing pollers' Spotify calls; a poller only holds a thread while its call is in flight
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService spotifyNowPlayingExecutor(
+            @Value("${spotify.now-playing.threads:8}") int threads,
+            @Value("${spotify.now-playing.queue-capacity:5000}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("spotify-now-playing"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Holds every now-playing poller's next check; 512 buckets of the tick cover a minute at the default 100ms
+    @Bean(destroyMethod = "close")
+    public HashedTimingWheel spotifyNowPlayingTimer(
+            @Qualifier("spotifyNowPlayingExecutor") ExecutorService executor,
+            @Value("${spotify.now-playing.timer-tick:100ms}") Duration tick) {
+        return new HashedTimingWheel("spotify-now-playing-timer", tick, 512, executor);
+    }
+
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
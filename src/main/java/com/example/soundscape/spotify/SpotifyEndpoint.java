@@ -0,0 +1,34 @@
+package com.example.soundscape.spotify;
+
+import java.time.Duration;
+
+/**
+ * Spotify read endpoints whose responses are cached per user, with their default TTLs.
+ * A TTL can be overridden with spotify.cache.ttl.&lt;key&gt;, e.g. spotify.cache.ttl.devices=5s.
+ */
+public enum SpotifyEndpoint {
+
+    PROFILE("profile", Duration.ofMinutes(30), false),
+    PLAYLISTS("playlists", Duration.ofMinutes(5), false),
+    PLAYLIST("playlist", Duration.ofMinutes(1), false),
+    SAVED_TRACKS("saved-tracks", Duration.ofMinutes(5), false),
+    TOP_ARTISTS("top-artists", Duration.ofHours(6), false),
+    TOP_TRACKS("top-tracks", Duration.ofHours(6), false),
+    DEVICES("devices", Duration.ofSeconds(15), true);
+
+    private final String key;
+    private final Duration defaultTtl;
+    private final boolean changedByPlayback;
+
+    SpotifyEndpoint(String key, Duration defaultTtl, boolean changedByPlayback) {
+        this.key = key;
+        this.defaultTtl = defaultTtl;
+        this.changedByPlayback = changedByPlayback;
+    }
+
+    public String getKey() { return key; }
+    public Duration getDefaultTtl() { return defaultTtl; }
+
+    // True if playback commands (play, pause, volume, transfer...) can change this endpoint's data
+    public boolean isChangedByPlayback() { return changedByPlayback; }
+}
@@ -0,0 +1,136 @@
+package com.example.soundscape.spotify;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Typed views of the Spotify Web API payloads we read, bound directly from the response body.
+ *
+ * Each record declares only the fields SpotifyService uses; Jackson skips everything else
+ * while streaming through the body instead of building a JsonNode tree for it. Missing or
+ * null arrays are bound as empty lists, so callers never need a null check.
+ */
+public final class SpotifyPayloads {
+
+    private SpotifyPayloads() {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Image(String url) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record ArtistRef(String id, String name) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Album(String name, List<Image> images) {
+        public Album {
+            images = images != null ? images : List.of();
+        }
+
+        // URL of the largest image (Spotify lists them widest first), or null if there are none
+        public String firstImageUrl() {
+            return images.isEmpty() ? null : images.get(0).url();
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Track(String id,
+                        String name,
+                        String uri,
+                        @JsonProperty("duration_ms") int durationMs,
+                        List<ArtistRef> artists,
+                        Album album) {
+        public Track {
+            artists = artists != null ? artists : List.of();
+            album = album != null ? album : new Album(null, List.of());
+        }
+
+        public List<String> artistNames() {
+            return artists.stream().map(ArtistRef::name).toList();
+        }
+    }
+
+    // /tracks?ids=...; an unknown id comes back as a null entry
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record TracksPage(List<Track> tracks) {
+        public TracksPage {
+            tracks = tracks != null ? tracks : List.of();
+        }
+    }
+
+    // /search?type=track; total counts every match, not just the ones on this page
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record TrackSearchResults(TrackSearchPage tracks) {
+        public TrackSearchResults {
+            tracks = tracks != null ? tracks : new TrackSearchPage(List.of(), 0);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record TrackSearchPage(List<Track> items, int total) {
+        public TrackSearchPage {
+            items = items != null ? items : List.of();
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Artist(String id, String name, List<String> genres) {
+        public Artist {
+            genres = genres != null ? genres : List.of();
+        }
+    }
+
+    // /artists?ids=...; an unknown id comes back as a null entry
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record ArtistsPage(List<Artist> artists) {
+        public ArtistsPage {
+            artists = artists != null ? artists : List.of();
+        }
+    }
+
+    // Item of /playlists/{id}/tracks; track is null for removed or unavailable tracks
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record PlaylistItem(Track track) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record PlaylistTracksPage(List<PlaylistItem> items, int total) {
+        public PlaylistTracksPage {
+            items = items != null ? items : List.of();
+        }
+    }
+
+    // /playlists/{id}?fields=snapshot_id,name,tracks.total
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record PlaylistSnapshot(@JsonProperty("snapshot_id") String snapshotId, String name, TrackTotal tracks) {
+        public int total() {
+            return tracks != null ? tracks.total() : 0;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record TrackTotal(int total) {}
+
+    // Item of /me/tracks
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record SavedTrack(@JsonProperty("added_at") String addedAt, Track track) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record SavedTracksPage(List<SavedTrack> items, int total, String next) {
+        public SavedTracksPage {
+            items = items != null ? items : List.of();
+        }
+    }
+
+    // Item of /me/player/recently-played
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record PlayHistory(Track track, @JsonProperty("played_at") String playedAt) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record RecentlyPlayedPage(List<PlayHistory> items) {
+        public RecentlyPlayedPage {
+            items = items != null ? items : List.of();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.soundscape.spotify;
+
+/**
+ * Priority lanes for outbound Spotify requests, highest first. When the app-wide rate
+ * limit is saturated, waiting PLAYBACK commands are sent before INTERACTIVE page reads,
+ * which are sent before BACKGROUND analytics and sync fetches.
+ */
+public enum SpotifyPriority {
+    PLAYBACK,
+    INTERACTIVE,
+    BACKGROUND
+}
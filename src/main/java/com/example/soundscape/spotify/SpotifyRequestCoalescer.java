@@ -0,0 +1,61 @@
+package com.example.soundscape.spotify;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight layer for Spotify reads: while a call for (user, endpoint, params) is in
+ * flight, identical calls wait for it and receive the same result instead of issuing their
+ * own request. The first caller runs the request on its own thread; nothing is retained
+ * once the call completes.
+ */
+@Component
+public class SpotifyRequestCoalescer {
+
+    private record Key(String owner, String endpoint, String params) {}
+
+    private final ConcurrentMap<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter sharedCalls;
+
+    public SpotifyRequestCoalescer(MeterRegistry meterRegistry) {
+        this.sharedCalls = Counter.builder("spotify.requests.coalesced")
+                .description("Spotify reads answered by another caller's in-flight request")
+                .register(meterRegistry);
+        Gauge.builder("spotify.requests.in-flight", inFlight, ConcurrentMap::size).register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String owner, String endpoint, String params, Supplier<T> call) {
+        Key key = new Key(owner, endpoint, params);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            sharedCalls.increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+            }
+        }
+
+        try {
+            T result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.soundscape.spotify;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outbound scheduler that keeps the app inside its Spotify client quota.
+ *
+ * Every request takes a token from one app-wide token bucket before it is sent. When no
+ * token is free the caller queues: higher priority lanes are served first, and inside a
+ * lane users take turns (round-robin), so one user with a burst of requests cannot starve
+ * everyone else. A 429 from Spotify pauses the whole bucket for its Retry-After period.
+ */
+@Component
+public class SpotifyRequestScheduler {
+
+    private static final class Waiter {
+        final String owner;
+        boolean granted;
+
+        Waiter(String owner) {
+            this.owner = owner;
+        }
+    }
+
+    // One lane: a FIFO per user plus the order in which users get their next turn
+    private static final class Lane {
+        final Map<String, ArrayDeque<Waiter>> byOwner = new HashMap<>();
+        final ArrayDeque<String> turns = new ArrayDeque<>();
+        int size;
+
+        void add(Waiter waiter) {
+            ArrayDeque<Waiter> queue = byOwner.computeIfAbsent(waiter.owner, owner -> {
+                turns.addLast(owner);
+                return new ArrayDeque<>();
+            });
+            queue.addLast(waiter);
+            size++;
+        }
+
+        Waiter next() {
+            String owner = turns.pollFirst();
+            ArrayDeque<Waiter> queue = byOwner.get(owner);
+            Waiter waiter = queue.pollFirst();
+            if (queue.isEmpty()) {
+                byOwner.remove(owner);
+            } else {
+                turns.addLast(owner);
+            }
+            size--;
+            return waiter;
+        }
+
+        void remove(Waiter waiter) {
+            ArrayDeque<Waiter> queue = byOwner.get(waiter.owner);
+            if (queue != null && queue.remove(waiter)) {
+                size--;
+                if (queue.isEmpty()) {
+                    byOwner.remove(waiter.owner);
+                    turns.remove(waiter.owner);
+                }
+            }
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<SpotifyPriority, Lane> lanes = new EnumMap<>(SpotifyPriority.class);
+
+    private final double permitsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    private final Counter throttled;
+    private final Counter rejected;
+    private final Timer waitTime;
+
+    public SpotifyRequestScheduler(MeterRegistry meterRegistry,
+                                   @Value("${spotify.rate-limit.requests-per-second:10}") double requestsPerSecond,
+                                   @Value("${spotify.rate-limit.burst:20}") int burst) {
+        this.permitsPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = lastRefillNanos;
+
+        for (SpotifyPriority priority : SpotifyPriority.values()) {
+            Lane lane = new Lane();
+            lanes.put(priority, lane);
+            Gauge.builder("spotify.scheduler.queue.depth", lane, l -> l.size)
+                    .tag("lane", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        this.throttled = Counter.builder("spotify.scheduler.throttled")
+                .description("429 responses received from Spotify")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("spotify.scheduler.rejected")
+                .description("Requests that gave up waiting for a rate-limit permit")
+                .register(meterRegistry);
+        this.waitTime = Timer.builder("spotify.scheduler.wait")
+                .description("Time spent queued for a rate-limit permit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Block until this request may be sent, or throw ResourceAccessException if no permit
+     * is granted within maxWait.
+     */
+    public void acquire(String owner, SpotifyPriority priority, Duration maxWait) {
+        long start = System.nanoTime();
+        long deadline = start + maxWait.toNanos();
+
+        lock.lock();
+        try {
+            refill(start);
+            if (isIdle() && start - pausedUntilNanos >= 0 && tokens >= 1) {
+                tokens -= 1;
+                return;
+            }
+
+            Waiter waiter = new Waiter(owner);
+            lanes.get(priority).add(waiter);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    dispatch(now);
+                    if (waiter.granted) {
+                        waitTime.record(now - start, TimeUnit.NANOSECONDS);
+                        return;
+                    }
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        lanes.get(priority).remove(waiter);
+                        rejected.increment();
+                        throw new ResourceAccessException("Spotify rate limit: no permit within " + maxWait);
+                    }
+                    changed.awaitNanos(Math.min(remaining, nanosUntilNextPermit(now)));
+                }
+            } catch (InterruptedException e) {
+                lanes.get(priority).remove(waiter);
+                Thread.currentThread().interrupt();
+                throw new ResourceAccessException("Interrupted waiting for Spotify rate limit");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called on a 429: stop sending anything until Retry-After has passed
+    public void onThrottled(Duration retryAfter) {
+        throttled.increment();
+        lock.lock();
+        try {
+            long until = System.nanoTime() + retryAfter.toNanos();
+            if (until - pausedUntilNanos > 0) {
+                pausedUntilNanos = until;
+            }
+            tokens = 0;
+        } finally {
+            lock.unlock();
+        }
+        System.out.println("Spotify rate limit hit, pausing outbound requests for " + retryAfter.toSeconds() + "s");
+    }
+
+    // Hand free tokens to queued waiters: highest lane first, round-robin by user inside a lane
+    private void dispatch(long now) {
+        refill(now);
+        if (now - pausedUntilNanos < 0) {
+            return;
+        }
+        boolean grantedAny = false;
+        for (Lane lane : lanes.values()) {
+            while (lane.size > 0 && tokens >= 1) {
+                lane.next().granted = true;
+                tokens -= 1;
+                grantedAny = true;
+            }
+        }
+        if (grantedAny) {
+            changed.signalAll();
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * permitsPerNano);
+            lastRefillNanos = now;
+        }
+    }
+
+    private long nanosUntilNextPermit(long now) {
+        long untilUnpaused = Math.max(0, pausedUntilNanos - now);
+        long untilToken = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+        return Math.max(1, Math.max(untilUnpaused, untilToken));
+    }
+
+    private boolean isIdle() {
+        for (Lane lane : lanes.values()) {
+            if (lane.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
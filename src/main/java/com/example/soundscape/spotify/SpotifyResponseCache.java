@@ -0,0 +1,130 @@
+package com.example.soundscape.spotify;
+
+import com.example.soundscape.models.User;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Per-user cache for Spotify read endpoints, keyed by (spotify user id, endpoint, params).
+ *
+ * Entries expire after their endpoint's TTL and the cache holds at most maxEntries entries,
+ * evicting the least recently used one when full. Loaders run outside the lock, so a slow
+ * Spotify call never blocks readers of other keys, and concurrent misses for the same key
+ * share one load through SpotifyRequestCoalescer, so an expiring entry cannot stampede.
+ */
+@Component
+public class SpotifyResponseCache {
+
+    record Key(String owner, SpotifyEndpoint endpoint, String params) {}
+
+    private record Entry(Object value, long expiresAtNanos) {}
+
+    public record Stats(long hits, long misses, long expiredEvictions, long sizeEvictions, int size) {}
+
+    private final SpotifyRequestCoalescer coalescer;
+    private final Map<SpotifyEndpoint, Long> ttlNanos = new EnumMap<>(SpotifyEndpoint.class);
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expiredEvictions = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+
+    public SpotifyResponseCache(Environment environment,
+                                MeterRegistry meterRegistry,
+                                SpotifyRequestCoalescer coalescer,
+                                @Value("${spotify.cache.max-entries:10000}") int maxEntries) {
+        this.coalescer = coalescer;
+        for (SpotifyEndpoint endpoint : SpotifyEndpoint.values()) {
+            Duration ttl = environment.getProperty("spotify.cache.ttl." + endpoint.getKey(),
+                    Duration.class, endpoint.getDefaultTtl());
+            ttlNanos.put(endpoint, ttl.toNanos());
+        }
+
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxEntries) {
+                    sizeEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        FunctionCounter.builder("spotify.cache.requests", hits, AtomicLong::get).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("spotify.cache.requests", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("spotify.cache.evictions", expiredEvictions, AtomicLong::get).tag("cause", "expired").register(meterRegistry);
+        FunctionCounter.builder("spotify.cache.evictions", sizeEvictions, AtomicLong::get).tag("cause", "size").register(meterRegistry);
+        Gauge.builder("spotify.cache.size", this, cache -> cache.stats().size()).register(meterRegistry);
+    }
+
+    // Stable cache owner for a user: their Spotify id, or the local id if that is missing
+    public static String ownerOf(User user) {
+        return user.getSpotifyUserId() != null ? user.getSpotifyUserId() : "user-" + user.getId();
+    }
+
+    /**
+     * Return the cached value for the key, or call the loader and cache its result if
+     * cacheable accepts it (used to keep fallback/error results out of the cache).
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(User user, SpotifyEndpoint endpoint, String params, Supplier<T> loader, Predicate<T> cacheable) {
+        Key key = new Key(ownerOf(user), endpoint, params);
+        long now = System.nanoTime();
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAtNanos() < 0) {
+                    hits.incrementAndGet();
+                    return (T) entry.value();
+                }
+                entries.remove(key);
+                expiredEvictions.incrementAndGet();
+            }
+        }
+
+        misses.incrementAndGet();
+        return coalescer.execute(key.owner(), endpoint.getKey(), params, () -> {
+            T value = loader.get();
+            if (value != null && cacheable.test(value)) {
+                put(key, value);
+            }
+            return value;
+        });
+    }
+
+    private void put(Key key, Object value) {
+        long expiresAt = System.nanoTime() + ttlNanos.get(key.endpoint());
+        synchronized (entries) {
+            entries.put(key, new Entry(value, expiresAt));
+        }
+    }
+
+    // Drop the user's cached responses that a playback command may have made stale
+    public void invalidateAfterPlayback(User user) {
+        String owner = ownerOf(user);
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.owner().equals(owner) && key.endpoint().isChangedByPlayback());
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), expiredEvictions.get(), sizeEvictions.get(), entries.size());
+        }
+    }
+}
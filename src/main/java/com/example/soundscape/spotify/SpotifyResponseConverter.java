@@ -0,0 +1,57 @@
+package com.example.soundscape.spotify;
+
+import com.example.soundscape.spotify.SpotifyResponses.ApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes /api/spotify response records as JSON with one ObjectWriter per record type.
+ *
+ * The writer is built (and its root serializer resolved) the first time a type is written,
+ * then reused, so a request only pays for walking the record's fields. Spring Boot registers
+ * HttpMessageConverter beans ahead of its default Jackson converter, so this one is picked
+ * for every ApiResponse. It is write-only; request bodies still go through the defaults.
+ */
+@Component
+public class SpotifyResponseConverter extends AbstractHttpMessageConverter<ApiResponse> {
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public SpotifyResponseConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ApiResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ApiResponse readInternal(Class<? extends ApiResponse> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("SpotifyResponseConverter is write-only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(ApiResponse response, HttpOutputMessage outputMessage) throws IOException {
+        writers.computeIfAbsent(response.getClass(), objectMapper::writerFor)
+                .writeValue(StreamUtils.nonClosing(outputMessage.getBody()), response);
+    }
+}
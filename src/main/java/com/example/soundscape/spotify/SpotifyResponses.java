@@ -0,0 +1,121 @@
+package com.example.soundscape.spotify;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Response bodies of the /api/spotify endpoints and the Spotify data handed to templates.
+ *
+ * Field names are part of the contract with now-playing.html, profile-edit.html and the
+ * other pages' scripts, so snake_case keys are pinned with @JsonProperty. Everything that
+ * implements ApiResponse is written by SpotifyResponseConverter with a pre-built writer.
+ */
+public final class SpotifyResponses {
+
+    private SpotifyResponses() {
+    }
+
+    public sealed interface ApiResponse
+            permits ApiError, PlaylistsResponse, PlaylistTracksResponse, DevicesResponse,
+                    PlaybackStatus, SearchResponse {
+    }
+
+    public record ApiError(String error) implements ApiResponse {}
+
+    public record ImageUrl(String url) {}
+
+    public record TrackCount(int total) {}
+
+    public record PlaylistSummary(String id, String name, String description, TrackCount tracks, List<ImageUrl> images) {}
+
+    public record PlaylistsResponse(List<PlaylistSummary> items, int total) implements ApiResponse {
+        public static final PlaylistsResponse EMPTY = new PlaylistsResponse(List.of(), 0);
+    }
+
+    public record PlaylistTrack(String id,
+                                String name,
+                                String uri,
+                                @JsonProperty("duration_ms") int durationMs,
+                                List<String> artists,
+                                @JsonProperty("artist_name") String artistName,
+                                @JsonProperty("album_name") String albumName,
+                                @JsonProperty("album_images") List<ImageUrl> albumImages) {}
+
+    public record PlaylistTracksResponse(List<PlaylistTrack> items, int total) implements ApiResponse {
+        public static final PlaylistTracksResponse EMPTY = new PlaylistTracksResponse(List.of(), 0);
+    }
+
+    public record Device(String id,
+                         String name,
+                         String type,
+                         @JsonProperty("is_active") boolean active,
+                         @JsonProperty("is_private_session") boolean privateSession,
+                         @JsonProperty("is_restricted") boolean restricted,
+                         @JsonProperty("volume_percent") int volumePercent) {}
+
+    public record DevicesResponse(List<Device> devices) implements ApiResponse {
+        public static final DevicesResponse EMPTY = new DevicesResponse(List.of());
+    }
+
+    /**
+     * What is playing right now. isPlaying is "true" or "false" (a string, as the templates
+     * compare it that way); the track fields are only present while something is playing.
+     * isRecent is set by the now-playing page when it falls back to the last played track.
+     * progressMs and durationMs come with a playing track when Spotify reports them, so a
+     * poller can tell when the track will end.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record PlaybackStatus(String isPlaying,
+                                 String trackName,
+                                 String artistName,
+                                 String albumName,
+                                 String albumImage,
+                                 String trackId,
+                                 String isRecent,
+                                 Long progressMs,
+                                 Long durationMs) implements ApiResponse {
+
+        public static PlaybackStatus playing(String trackName, String artistName, String albumName,
+                                             String albumImage, String trackId) {
+            return new PlaybackStatus("true", trackName, artistName, albumName, albumImage, trackId, null, null, null);
+        }
+
+        public static PlaybackStatus playing(String trackName, String artistName, String albumName,
+                                             String albumImage, String trackId, long progressMs, long durationMs) {
+            return new PlaybackStatus("true", trackName, artistName, albumName, albumImage, trackId, null,
+                    progressMs, durationMs);
+        }
+
+        public static PlaybackStatus notPlaying(String message) {
+            return new PlaybackStatus("false", message, null, null, null, null, null, null, null);
+        }
+
+        // The last played track, shown as if playing so the player displays it
+        public static PlaybackStatus recent(String trackName, String artistName, String albumName, String albumImage) {
+            return new PlaybackStatus("true", trackName, artistName, albumName, albumImage, null, "true", null, null);
+        }
+
+        public boolean playing() {
+            return "true".equals(isPlaying);
+        }
+
+        // Time left in the playing track, if Spotify said how far in it is
+        public Optional<Duration> remaining() {
+            if (!playing() || progressMs == null || durationMs == null) {
+                return Optional.empty();
+            }
+            return Optional.of(Duration.ofMillis(Math.max(0, durationMs - progressMs)));
+        }
+    }
+
+    public record TrackResult(String id, String name, String artist, String album, String image, String spotifyUrl) {}
+
+    public record SearchResponse(List<TrackResult> tracks) implements ApiResponse {}
+
+    // Item of the liked songs list on the now-playing page and /api/spotify/saved-tracks
+    public record SavedTrackSummary(String name, String artist, String uri, String image) {}
+}
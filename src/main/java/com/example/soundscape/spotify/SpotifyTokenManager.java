@@ -0,0 +1,250 @@
+package com.example.soundscape.spotify;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps every active user's Spotify access token valid.
+ *
+ * The current token, its expiry and the refresh token are held in memory per user (seeded
+ * from the User row on first use) and written back to the row after every refresh, so all
+ * requests see a refreshed token at once, whichever User instance they loaded.
+ *
+ * A background sweep refreshes, in one pass, every token that expires within refresh-ahead;
+ * a token that is already close to expiry when a request needs it is refreshed inline, and
+ * SpotifyApiClient calls refreshAfterUnauthorized on a 401. Refreshes for one user are
+ * serialized, and a caller that waited for another's refresh reuses its result, so a burst
+ * of requests costs a single call to the token endpoint.
+ */
+@Component
+public class SpotifyTokenManager {
+
+    private static final String REGISTRATION_ID = "spotify";
+
+    private static final class TokenState {
+        final String accessToken;
+        final String refreshToken;
+        final Instant expiresAt;
+        volatile long lastUsedNanos = System.nanoTime();
+
+        TokenState(String accessToken, String refreshToken, Instant expiresAt) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean expiresWithin(Duration window) {
+            return expiresAt != null && Instant.now().plus(window).isAfter(expiresAt);
+        }
+    }
+
+    private final UserRepository userRepository;
+    private final ClientRegistrationRepository clientRegistrations;
+    private final ObjectMapper objectMapper;
+    private final Duration refreshAhead;
+    private final Duration inlineRefreshAhead;
+    private final Duration idleAfter;
+    private final Duration requestTimeout;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService sweeper;
+
+    private final Map<Long, TokenState> tokens = new ConcurrentHashMap<>();
+    private final Map<Long, ReentrantLock> refreshLocks = new ConcurrentHashMap<>();
+
+    private final Counter refreshed;
+    private final Counter failed;
+
+    public SpotifyTokenManager(UserRepository userRepository,
+                               ClientRegistrationRepository clientRegistrations,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${spotify.token.refresh-ahead:5m}") Duration refreshAhead,
+                               @Value("${spotify.token.inline-refresh-ahead:30s}") Duration inlineRefreshAhead,
+                               @Value("${spotify.token.sweep-interval:1m}") Duration sweepInterval,
+                               @Value("${spotify.token.idle-after:2h}") Duration idleAfter,
+                               @Value("${spotify.http.connect-timeout:3s}") Duration connectTimeout,
+                               @Value("${spotify.http.total-timeout:8s}") Duration requestTimeout) {
+        this.userRepository = userRepository;
+        this.clientRegistrations = clientRegistrations;
+        this.objectMapper = objectMapper;
+        this.refreshAhead = refreshAhead;
+        this.inlineRefreshAhead = inlineRefreshAhead;
+        this.idleAfter = idleAfter;
+        this.requestTimeout = requestTimeout;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(connectTimeout).build();
+
+        this.refreshed = Counter.builder("spotify.token.refreshes").tag("result", "success")
+                .description("Spotify access token refreshes").register(meterRegistry);
+        this.failed = Counter.builder("spotify.token.refreshes").tag("result", "failure")
+                .description("Spotify access token refreshes").register(meterRegistry);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(SpotifyConfig.daemonThreads("spotify-token-refresh"));
+        sweeper.scheduleWithFixedDelay(this::refreshExpiring,
+                sweepInterval.toMillis(), sweepInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Access token to send for this user, refreshed first if it is about to expire
+    public String accessToken(User user) {
+        if (user.getId() == null) {
+            return user.getSpotifyAccessToken();
+        }
+        TokenState state = stateOf(user);
+        state.lastUsedNanos = System.nanoTime();
+        if (state.refreshToken != null && state.expiresWithin(inlineRefreshAhead)) {
+            state = refresh(user.getId(), state);
+        }
+        return state.accessToken;
+    }
+
+    // Spotify rejected rejectedToken with a 401: return a new token, or null if none can be had
+    public String refreshAfterUnauthorized(User user, String rejectedToken) {
+        if (user.getId() == null) {
+            return null;
+        }
+        TokenState state = stateOf(user);
+        if (!Objects.equals(state.accessToken, rejectedToken)) {
+            return state.accessToken; // already replaced by another request
+        }
+        if (state.refreshToken == null) {
+            return null;
+        }
+        TokenState fresh = refresh(user.getId(), state);
+        return fresh != state ? fresh.accessToken : null;
+    }
+
+    // Record the tokens issued at login; keeps the known refresh token if none was sent
+    public void onLogin(User user, String accessToken, String refreshToken, Instant expiresAt) {
+        if (user.getId() == null) {
+            return;
+        }
+        TokenState previous = tokens.get(user.getId());
+        String keptRefreshToken = refreshToken != null ? refreshToken
+                : previous != null ? previous.refreshToken : user.getSpotifyRefreshToken();
+        tokens.put(user.getId(), new TokenState(accessToken, keptRefreshToken, expiresAt));
+    }
+
+    private TokenState stateOf(User user) {
+        return tokens.computeIfAbsent(user.getId(), id -> new TokenState(
+                user.getSpotifyAccessToken(), user.getSpotifyRefreshToken(), user.getSpotifyTokenExpiresAt()));
+    }
+
+    /**
+     * Refresh the user's token unless someone else already replaced stale while we waited
+     * for the lock. Returns the current state, which is stale itself if the refresh failed.
+     */
+    private TokenState refresh(Long userId, TokenState stale) {
+        ReentrantLock lock = refreshLocks.computeIfAbsent(userId, id -> new ReentrantLock());
+        lock.lock();
+        try {
+            TokenState current = tokens.getOrDefault(userId, stale);
+            if (current != stale) {
+                return current;
+            }
+            try {
+                TokenState fresh = requestNewToken(stale);
+                tokens.put(userId, fresh);
+                persist(userId, fresh);
+                refreshed.increment();
+                return fresh;
+            } catch (RuntimeException | IOException e) {
+                failed.increment();
+                System.out.println("Spotify token refresh failed for user " + userId + ": " + e.getMessage());
+                return current;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TokenState requestNewToken(TokenState stale) throws IOException {
+        ClientRegistration registration = clientRegistrations.findByRegistrationId(REGISTRATION_ID);
+        String credentials = registration.getClientId() + ":" + registration.getClientSecret();
+        String form = "grant_type=refresh_token&refresh_token=" + URLEncoder.encode(stale.refreshToken, StandardCharsets.UTF_8);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(registration.getProviderDetails().getTokenUri()))
+                .timeout(requestTimeout)
+                .header(HttpHeaders.AUTHORIZATION, "Basic "
+                        + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)))
+                .header(HttpHeaders.CONTENT_TYPE, "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted refreshing Spotify token");
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("token endpoint returned " + response.statusCode() + ": " + response.body());
+        }
+
+        JsonNode body = objectMapper.readTree(response.body());
+        // Spotify may rotate the refresh token; keep the old one if it does not send a new one
+        String refreshToken = body.hasNonNull("refresh_token") ? body.get("refresh_token").asText() : stale.refreshToken;
+        return new TokenState(body.get("access_token").asText(), refreshToken,
+                Instant.now().plusSeconds(body.path("expires_in").asLong(3600)));
+    }
+
+    private void persist(Long userId, TokenState state) {
+        userRepository.updateSpotifyTokens(userId, state.accessToken, state.refreshToken, state.expiresAt);
+    }
+
+    // Background sweep: refresh every recently used token that expires soon, and forget idle users
+    void refreshExpiring() {
+        long idleBefore = System.nanoTime() - idleAfter.toNanos();
+        List<Map.Entry<Long, TokenState>> due = new ArrayList<>();
+        tokens.forEach((userId, state) -> {
+            if (state.lastUsedNanos - idleBefore < 0) {
+                tokens.remove(userId, state);
+                refreshLocks.remove(userId);
+            } else if (state.refreshToken != null && state.expiresWithin(refreshAhead)) {
+                due.add(Map.entry(userId, state));
+            }
+        });
+
+        if (!due.isEmpty()) {
+            System.out.println("Refreshing " + due.size() + " expiring Spotify tokens");
+        }
+        for (Map.Entry<Long, TokenState> entry : due) {
+            refresh(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
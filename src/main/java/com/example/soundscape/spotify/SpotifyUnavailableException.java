@@ -0,0 +1,15 @@
+package com.example.soundscape.spotify;
+
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * A Spotify call that was refused without being sent, because the endpoint's circuit is
+ * open or the request thread was turned away by the bulkhead. It extends
+ * ResourceAccessException, so callers take the same fallback path as for a timeout.
+ */
+public class SpotifyUnavailableException extends ResourceAccessException {
+
+    public SpotifyUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.soundscape.spotify;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.SpotifyPayloads.Track;
+import com.example.soundscape.spotify.SpotifyPayloads.TracksPage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * App-wide cache of track metadata (name, artist, album, cover art) keyed by Spotify track id.
+ *
+ * Track metadata is the same for every user, so unlike SpotifyResponseCache the entries are
+ * not per user. The cache holds at most max-entries tracks, evicting the least recently used
+ * one when full, and entries expire after ttl.
+ *
+ * Misses are not fetched one by one: ids requested within batch-window of each other are
+ * collected and resolved with a single /tracks?ids= call (up to 50 ids per call), whichever
+ * user asked for them (see SpotifyBatchLoader).
+ */
+@Component
+public class TrackMetadataCache {
+
+    public record TrackMetadata(String id, String name, String artist, String album, String image, String spotifyUrl) {}
+
+    // Most ids /tracks accepts in one call
+    static final int MAX_IDS_PER_CALL = 50;
+
+    private final SpotifyApiClient spotifyApiClient;
+    private final SpotifyBatchLoader<TrackMetadata> loader;
+    private final Duration lookupTimeout;
+    private final ExpiringLruCache<String, TrackMetadata> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong batchCalls = new AtomicLong();
+
+    public TrackMetadataCache(SpotifyApiClient spotifyApiClient,
+                              MeterRegistry meterRegistry,
+                              @Qualifier("spotifyFanOutExecutor") ExecutorService fanOutExecutor,
+                              @Value("${spotify.tracks.cache.max-entries:20000}") int maxEntries,
+                              @Value("${spotify.tracks.cache.ttl:24h}") Duration ttl,
+                              @Value("${spotify.tracks.batch-window:20ms}") Duration batchWindow,
+                              @Value("${spotify.tracks.lookup-timeout:2s}") Duration lookupTimeout) {
+        this.spotifyApiClient = spotifyApiClient;
+        this.lookupTimeout = lookupTimeout;
+        this.loader = new SpotifyBatchLoader<>("tracks", MAX_IDS_PER_CALL, batchWindow, fanOutExecutor, this::fetch);
+        this.entries = new ExpiringLruCache<>(maxEntries, ttl);
+
+        FunctionCounter.builder("spotify.tracks.requests", hits, AtomicLong::get).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("spotify.tracks.requests", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("spotify.tracks.batch-calls", batchCalls, AtomicLong::get)
+                .description("/tracks?ids= calls made to resolve cache misses").register(meterRegistry);
+        Gauge.builder("spotify.tracks.cache.size", entries, ExpiringLruCache::size).register(meterRegistry);
+    }
+
+    // Metadata for one track, or null if Spotify does not know it or did not answer in time
+    public TrackMetadata get(User user, String trackId) {
+        return getAll(user, List.of(trackId)).get(trackId);
+    }
+
+    // Metadata for every known track in ids, fetching the misses in as few calls as possible;
+    // ids that are not Spotify ids are left out without a call
+    public Map<String, TrackMetadata> getAll(User user, Collection<String> trackIds) {
+        Map<String, TrackMetadata> found = new HashMap<>();
+        Map<String, CompletableFuture<TrackMetadata>> loading = lookup(user, trackIds, found);
+        found.putAll(SpotifyBatchLoader.await(loading, System.nanoTime() + lookupTimeout.toNanos()));
+        return found;
+    }
+
+    /**
+     * Metadata for the tracks in ids that are already cached, without waiting; the rest are
+     * fetched in the background so a later call finds them.
+     */
+    public Map<String, TrackMetadata> getCached(User user, Collection<String> trackIds) {
+        Map<String, TrackMetadata> found = new HashMap<>();
+        if (user != null && user.getSpotifyAccessToken() != null) {
+            lookup(user, trackIds, found);
+        } else {
+            for (String trackId : new LinkedHashSet<>(trackIds)) {
+                TrackMetadata track = entries.get(trackId);
+                if (track != null) {
+                    found.put(trackId, track);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Store a track that arrived in some other response (search results, playlists...)
+    public void remember(Track track) {
+        if (track != null && track.id() != null) {
+            put(toMetadata(track));
+        }
+    }
+
+    // Fill found with the cached ids and start (or join) the loads of the others
+    private Map<String, CompletableFuture<TrackMetadata>> lookup(User user, Collection<String> trackIds,
+                                                                  Map<String, TrackMetadata> found) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String trackId : new LinkedHashSet<>(trackIds)) {
+            if (!SpotifyBatchLoader.isSpotifyId(trackId)) {
+                continue;
+            }
+            TrackMetadata track = entries.get(trackId);
+            if (track != null) {
+                hits.incrementAndGet();
+                found.put(trackId, track);
+            } else {
+                misses.incrementAndGet();
+                missing.add(trackId);
+            }
+        }
+        return missing.isEmpty() ? Map.of() : loader.load(user, missing);
+    }
+
+    // One /tracks?ids= call; ids Spotify does not know are left out
+    private Map<String, TrackMetadata> fetch(User user, List<String> trackIds) throws IOException {
+        batchCalls.incrementAndGet();
+        String url = "/tracks?ids=" + String.join(",", trackIds);
+        TracksPage page = spotifyApiClient.readValue(spotifyApiClient.get(user, url).getBody(), TracksPage.class);
+        Map<String, TrackMetadata> resolved = new HashMap<>();
+        for (Track track : page.tracks()) {
+            if (track != null && track.id() != null) {
+                TrackMetadata metadata = toMetadata(track);
+                put(metadata);
+                resolved.put(track.id(), metadata);
+            }
+        }
+        return resolved;
+    }
+
+    private void put(TrackMetadata track) {
+        entries.put(track.id(), track);
+    }
+
+    // The metadata shown for a track in any Spotify response
+    public static TrackMetadata toMetadata(Track track) {
+        String image = track.album().firstImageUrl();
+        return new TrackMetadata(track.id(), track.name(),
+                track.artists().isEmpty() ? "" : track.artists().get(0).name(),
+                track.album().name(), image != null ? image : "",
+                "https://open.spotify.com/track/" + track.id());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        loader.shutdown();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.ArtistMetadataCache;
+import com.example.soundscape.spotify.GenreDictionary;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPayloads.ArtistsPage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ArtistMetadataCache against a fake /artists?ids= where every artist is "indie" plus a genre
+ * of its own, built as a fresh string for every response.
+ */
+public class ArtistMetadataCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpotifyApiClient spotifyApiClient = mock(SpotifyApiClient.class);
+    private final ExecutorService fanOut = Executors.newFixedThreadPool(4);
+    private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+    private final User user = new User("listener", "listener@example.com", "password");
+    private final GenreDictionary genres = new GenreDictionary();
+
+    private ArtistMetadataCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(spotifyApiClient.get(any(User.class), anyString())).thenAnswer(call -> {
+            String url = call.getArgument(1);
+            List<String> ids = List.of(url.substring(url.indexOf("ids=") + 4).split(","));
+            calls.add(ids);
+            List<Object> artists = new ArrayList<>();
+            for (String id : ids) {
+                artists.add(id.startsWith("unknown") ? null : Map.of(
+                        "id", id,
+                        "name", "Artist " + id,
+                        "genres", List.of("indie", "genre " + id)));
+            }
+            Map<String, Object> body = new HashMap<>();
+            body.put("artists", artists);
+            return ResponseEntity.ok(objectMapper.writeValueAsString(body));
+        });
+        when(spotifyApiClient.readValue(anyString(), eq(ArtistsPage.class)))
+                .thenAnswer(call -> objectMapper.readValue((String) call.getArgument(0), ArtistsPage.class));
+
+        cache = new ArtistMetadataCache(spotifyApiClient, genres, new SimpleMeterRegistry(), fanOut,
+                500, Duration.ofDays(7), Duration.ofMillis(20), Duration.ofSeconds(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanOut.shutdownNow();
+    }
+
+    @Test
+    void misses_areResolvedInBatchesOfAtMostFifty_andServedFromTheCacheAfterwards() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            ids.add("artist" + i);
+        }
+        ids.add("unknown1");
+
+        Map<String, List<String>> found = cache.genresOf(user, ids);
+
+        assertEquals(120, found.size());
+        assertEquals(List.of("indie", "genre artist7"), found.get("artist7"));
+        assertEquals(List.of(50, 50, 21), calls.stream().map(List::size).toList());
+
+        cache.genresOf(user, List.of("artist7", "artist99"));
+        assertEquals(3, calls.size());
+    }
+
+    @Test
+    void genreNames_areSharedAcrossArtistsAndResponses() {
+        cache.remember("known", List.of(new String("indie"), "folk"));
+        Map<String, List<String>> found = cache.genresOf(user, List.of("artist1", "artist2", "known"));
+
+        String indie = found.get("known").get(0);
+        assertSame(indie, found.get("artist1").get(0));
+        assertSame(indie, found.get("artist2").get(0));
+        assertEquals(1, calls.size());
+        assertEquals(List.of("artist1", "artist2"), calls.get(0));
+        // indie, folk and one genre of each fetched artist
+        assertEquals(4, genres.size());
+    }
+}
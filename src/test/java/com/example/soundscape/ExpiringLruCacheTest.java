@@ -0,0 +1,42 @@
+package com.example.soundscape;
+
+import com.example.soundscape.spotify.ExpiringLruCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * ExpiringLruCache's size bound, recency order and expiry.
+ */
+public class ExpiringLruCacheTest {
+
+    @Test
+    void whenFull_theLeastRecentlyUsedValueIsEvicted() {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(3, Duration.ofHours(1));
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        assertEquals(1, cache.get("a")); // a is now the most recently used
+
+        cache.put("d", 4);
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(4, cache.get("d"));
+    }
+
+    @Test
+    void expiredValues_areDroppedWhenLookedUp() throws Exception {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(10, Duration.ofMillis(50));
+        cache.put("short", 1);
+        cache.put("long", 2, System.nanoTime() + Duration.ofHours(1).toNanos());
+
+        Thread.sleep(100);
+        assertNull(cache.get("short"));
+        assertEquals(2, cache.get("long"));
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.soundscape;
+
+import com.example.soundscape.spotify.HashedTimingWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HashedTimingWheel with a 5ms tick and 8 buckets, so one turn of the wheel is 40ms.
+ */
+public class HashedTimingWheelTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final HashedTimingWheel timer = new HashedTimingWheel("test-timer", Duration.ofMillis(5), 8, executor);
+
+    @AfterEach
+    void tearDown() {
+        timer.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void timers_fireInDeadlineOrder_includingOnesSeveralTurnsAway() throws Exception {
+        List<Integer> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(4);
+        long start = System.nanoTime();
+        // 130ms is three turns and a bit, landing in the same bucket as 10ms
+        for (int millis : new int[]{130, 10, 60, 35}) {
+            timer.schedule(() -> {
+                fired.add(millis);
+                done.countDown();
+            }, Duration.ofMillis(millis));
+        }
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of(10, 35, 60, 130), fired);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(125), "fired a turn early");
+        assertEquals(0, timer.pending());
+    }
+
+    @Test
+    void cancelledTimers_neverRun_andThousandsCostNothingToBook() throws Exception {
+        AtomicInteger ran = new AtomicInteger();
+        List<HashedTimingWheel.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            timeouts.add(timer.schedule(ran::incrementAndGet, Duration.ofMillis(200 + i % 50)));
+        }
+        for (int i = 0; i < timeouts.size(); i += 2) {
+            assertTrue(timeouts.get(i).cancel());
+        }
+
+        Thread.sleep(500);
+        assertEquals(5_000, ran.get());
+        assertEquals(0, timer.pending());
+        // Too late to cancel one that has run
+        assertFalse(timeouts.get(1).cancel());
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.ListeningEvent;
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.ListeningEventRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.ListeningHistory;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPayloads.RecentlyPlayedPage;
+import com.example.soundscape.spotify.SpotifyPriority;
+import com.example.soundscape.spotify.TrackMetadataCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ListeningHistory against an in-memory database and a fake recently-played that, like
+ * Spotify, only remembers the last 50 plays and honours the after cursor.
+ */
+@DataJpaTest
+public class ListeningHistoryTest {
+
+    @Autowired
+    private ListeningEventRepository listeningEventRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpotifyApiClient spotifyApiClient = mock(SpotifyApiClient.class);
+    private final List<String> requestedUrls = new ArrayList<>();
+    private final List<Instant> plays = new ArrayList<>(); // oldest first
+    private int spotifyKeeps = 50;
+
+    private ListeningHistory history;
+    private User user;
+    private Instant clock = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(spotifyApiClient.get(any(User.class), anyString(), eq(SpotifyPriority.BACKGROUND))).thenAnswer(call -> {
+            String url = call.getArgument(1);
+            requestedUrls.add(url);
+            return ResponseEntity.ok(recentlyPlayed(url));
+        });
+        when(spotifyApiClient.readValue(anyString(), eq(RecentlyPlayedPage.class)))
+                .thenAnswer(call -> objectMapper.readValue((String) call.getArgument(0), RecentlyPlayedPage.class));
+
+        history = new ListeningHistory(spotifyApiClient, listeningEventRepository, userRepository,
+                mock(TrackMetadataCache.class), transactionManager, new SimpleMeterRegistry(),
+                mock(ExecutorService.class), mock(ScheduledExecutorService.class),
+                Duration.ofMinutes(30), Duration.ofMinutes(2), 2);
+        user = userRepository.save(new User("listener", "listener@example.com", "password"));
+        play(60);
+    }
+
+    @Test
+    void ingests_appendOnlyThePlaysAfterTheCursor() {
+        assertTrue(history.recent(user, 20).isEmpty(), "nothing stored before the first ingest");
+
+        assertEquals(50, ingest());
+        assertEquals(List.of("/me/player/recently-played?limit=50"), requestedUrls);
+
+        play(3);
+        assertEquals(3, ingest());
+        assertEquals("/me/player/recently-played?limit=50&after=" + plays.get(59).toEpochMilli(), requestedUrls.get(1));
+        assertEquals(0, ingest());
+        assertEquals(53, listeningEventRepository.countByUserId(user.getId()));
+
+        List<ListeningEvent> recent = history.recent(user, 20).orElseThrow();
+        assertEquals(20, recent.size());
+        assertEquals(plays.get(plays.size() - 1), recent.get(0).getPlayedAt());
+        assertEquals(List.of("Artist, Jr.", "Guest"), recent.get(0).getArtistNames());
+        assertEquals(List.of("artist1", "artist2"), recent.get(0).getArtistIds());
+    }
+
+    @Test
+    void moreThanAPageOfNewPlays_isReadPageByPage() {
+        ingest();
+        requestedUrls.clear();
+
+        // Fewer new plays than a page: one call
+        play(45);
+        assertEquals(45, ingest());
+        assertEquals(1, requestedUrls.size());
+
+        // More than a page (with a Spotify that remembers that many): read page by page
+        spotifyKeeps = 200;
+        play(120);
+        assertEquals(120, ingest());
+        assertEquals(4, requestedUrls.size()); // then pages of 50, 50 and 20
+        assertEquals(215, listeningEventRepository.countByUserId(user.getId()));
+        assertEquals(plays.get(plays.size() - 1),
+                listeningEventRepository.findFirstByUserIdOrderByPlayedAtDesc(user.getId()).orElseThrow().getPlayedAt());
+    }
+
+    private int ingest() {
+        return ReflectionTestUtils.invokeMethod(history, "ingest", user);
+    }
+
+    private void play(int count) {
+        for (int i = 0; i < count; i++) {
+            clock = clock.plusSeconds(200).plusMillis(123);
+            plays.add(clock);
+        }
+    }
+
+    // Newest first: the latest page, or the oldest page after the cursor
+    private String recentlyPlayed(String url) throws Exception {
+        List<Instant> remembered = plays.subList(Math.max(0, plays.size() - spotifyKeeps), plays.size());
+        List<Instant> page;
+        int after = url.indexOf("after=");
+        if (after < 0) {
+            page = remembered.subList(Math.max(0, remembered.size() - 50), remembered.size());
+        } else {
+            Instant cursor = Instant.ofEpochMilli(Long.parseLong(url.substring(after + 6)));
+            page = remembered.stream().filter(playedAt -> playedAt.isAfter(cursor)).limit(50).toList();
+        }
+
+        List<Object> items = new ArrayList<>();
+        for (Instant playedAt : page.stream().sorted(Comparator.reverseOrder()).toList()) {
+            String trackId = "track" + plays.indexOf(playedAt) % 7;
+            items.add(Map.of(
+                    "played_at", playedAt.toString(),
+                    "track", Map.of(
+                            "id", trackId,
+                            "name", "Song " + trackId,
+                            "uri", "spotify:track:" + trackId,
+                            "duration_ms", 180_000,
+                            "artists", List.of(Map.of("id", "artist1", "name", "Artist, Jr."),
+                                    Map.of("id", "artist2", "name", "Guest")),
+                            "album", Map.of("name", "Album", "images", List.of()))));
+        }
+        return objectMapper.writeValueAsString(Map.of("items", items));
+    }
+}
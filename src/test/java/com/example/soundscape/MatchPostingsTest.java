@@ -0,0 +1,121 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.MusicAnalysisSnapshot;
+import com.example.soundscape.repositories.MusicAnalysisSnapshotRepository;
+import com.example.soundscape.repositories.UserMatchRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.MusicAnalysisSnapshots;
+import com.example.soundscape.services.TasteMatcher;
+import com.example.soundscape.services.UserIdBitmap;
+import com.example.soundscape.spotify.GenreDictionary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * UserIdBitmap against a TreeSet, and TasteMatcher's artist and genre posting lists as
+ * snapshots come and go.
+ */
+public class MatchPostingsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void bitmap_matchesATreeSet_throughArrayAndBitmapChunks() {
+        Random random = new Random(3);
+        UserIdBitmap bitmap = new UserIdBitmap();
+        UserIdBitmap other = new UserIdBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        TreeSet<Long> otherExpected = new TreeSet<>();
+        for (int i = 0; i < 60_000; i++) {
+            // Chunk 0 gets dense enough to become a bitmap, chunk 3 stays sparse
+            long id = random.nextBoolean() ? random.nextInt(20_000) : 3 * 65_536 + random.nextInt(65_536);
+            if (random.nextInt(4) == 0) {
+                bitmap.remove(id);
+                expected.remove(id);
+            } else {
+                bitmap.add(id);
+                expected.add(id);
+            }
+            long otherId = random.nextInt(5 * 65_536);
+            if (random.nextInt(8) == 0) {
+                other.add(otherId);
+                otherExpected.add(otherId);
+            }
+        }
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), bitmap.toArray());
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertFalse(bitmap.contains(2 * 65_536 + 1));
+
+        bitmap.or(other);
+        expected.addAll(otherExpected);
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), bitmap.toArray());
+        assertEquals(expected.size(), bitmap.cardinality());
+
+        // Emptied down from a bitmap chunk
+        for (long id : expected) {
+            bitmap.remove(id);
+        }
+        assertEquals(0, bitmap.cardinality());
+        assertArrayEquals(new long[0], bitmap.toArray());
+    }
+
+    @Test
+    void postings_areRebuiltAtStartup_andFollowRefreshedSnapshots() throws Exception {
+        MusicAnalysisSnapshotRepository snapshotRepository = mock(MusicAnalysisSnapshotRepository.class);
+        when(snapshotRepository.findByUserIdGreaterThanOrderByUserId(eq(0L), any(Pageable.class))).thenReturn(List.of(
+                snapshot(1, List.of("radiohead", "bjork"), Map.of("art rock", 3)),
+                snapshot(2, List.of("radiohead"), Map.of("art rock", 1, "trip hop", 2))));
+        GenreDictionary genreDictionary = new GenreDictionary();
+        TasteMatcher matcher = new TasteMatcher(snapshotRepository, mock(UserRepository.class), mock(UserMatchRepository.class),
+                mock(MusicAnalysisSnapshots.class), genreDictionary, objectMapper,
+                mock(ScheduledExecutorService.class), 20, 5, 32, 1, 5000, 1);
+
+        ReflectionTestUtils.invokeMethod(matcher, "load");
+        assertArrayEquals(new long[]{1, 2}, artistPosting(matcher, "radiohead").toArray());
+        assertArrayEquals(new long[]{1}, artistPosting(matcher, "bjork").toArray());
+        assertArrayEquals(new long[]{1, 2}, genrePosting(matcher, genreDictionary, "art rock").toArray());
+
+        // User 1 drops Radiohead and Bjork for Massive Attack
+        ReflectionTestUtils.invokeMethod(matcher, "update", snapshot(1, List.of("massive"), Map.of("trip hop", 5)));
+        assertArrayEquals(new long[]{2}, artistPosting(matcher, "radiohead").toArray());
+        assertNull(artistPosting(matcher, "bjork"));
+        assertArrayEquals(new long[]{1}, artistPosting(matcher, "massive").toArray());
+        assertArrayEquals(new long[]{2}, genrePosting(matcher, genreDictionary, "art rock").toArray());
+        assertArrayEquals(new long[]{1, 2}, genrePosting(matcher, genreDictionary, "trip hop").toArray());
+    }
+
+    private static UserIdBitmap artistPosting(TasteMatcher matcher, String spotifyId) {
+        Map<?, ?> artistIds = (Map<?, ?>) ReflectionTestUtils.getField(matcher, "artistIds");
+        return (UserIdBitmap) ((Map<?, ?>) ReflectionTestUtils.getField(matcher, "artistPostings")).get(artistIds.get(spotifyId));
+    }
+
+    private static UserIdBitmap genrePosting(TasteMatcher matcher, GenreDictionary genreDictionary, String genre) {
+        return (UserIdBitmap) ((Map<?, ?>) ReflectionTestUtils.getField(matcher, "genrePostings")).get(genreDictionary.idOf(genre));
+    }
+
+    private MusicAnalysisSnapshot snapshot(long userId, List<String> artists, Map<String, Integer> genreScores) throws Exception {
+        MusicAnalysisSnapshot snapshot = new MusicAnalysisSnapshot(userId);
+        List<Map<String, String>> shortTerm = artists.stream().map(artist -> Map.of("id", artist, "name", artist)).toList();
+        snapshot.recomputed(objectMapper.writeValueAsString(Map.of("short_term_artists", shortTerm)), false, Instant.now());
+        snapshot.setGenres("[]", objectMapper.writeValueAsString(genreScores), "{}", null);
+        return snapshot;
+    }
+}
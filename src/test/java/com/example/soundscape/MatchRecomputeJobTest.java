@@ -0,0 +1,205 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.MatchRecompute;
+import com.example.soundscape.models.User;
+import com.example.soundscape.models.UserMatch;
+import com.example.soundscape.repositories.MatchRecomputeRepository;
+import com.example.soundscape.repositories.MusicAnalysisSnapshotRepository;
+import com.example.soundscape.repositories.UserMatchRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.MatchRecomputeJob;
+import com.example.soundscape.services.MatchRecomputeJob.Progress;
+import com.example.soundscape.services.MinHashIndex;
+import com.example.soundscape.services.MusicAnalysisSnapshots;
+import com.example.soundscape.services.TasteMatcher;
+import com.example.soundscape.services.TasteProfile;
+import com.example.soundscape.spotify.GenreDictionary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * MatchRecomputeJob against an in-memory database, over synthetic taste profiles. The
+ * slices commit on the pool's threads, so the test runs outside a transaction and
+ * clears the tables itself.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MatchRecomputeJobTest {
+
+    private static final int SCENES = 1_000;
+    private static final int TOP = 20;
+
+    @Autowired
+    private UserMatchRepository userMatchRepository;
+    @Autowired
+    private MatchRecomputeRepository matchRecomputeRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private TasteMatcher matcher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(userRepository.findAllById(any())).thenAnswer(call -> {
+            List<User> users = new ArrayList<>();
+            for (Long id : (Iterable<Long>) call.getArgument(0)) {
+                users.add(user(id));
+            }
+            return users;
+        });
+        matcher = new TasteMatcher(mock(MusicAnalysisSnapshotRepository.class), userRepository, mock(UserMatchRepository.class),
+                mock(MusicAnalysisSnapshots.class), new GenreDictionary(), new ObjectMapper(),
+                mock(ScheduledExecutorService.class), TOP, 5, 32, 1, 5000, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+        userMatchRepository.deleteAllInBatch();
+        matchRecomputeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void aCancelledRun_resumesFromItsCheckpoint() {
+        int users = 1_000;
+        addUsers(users, new Random(17));
+        MatchRecomputeJob job = job(100);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        job.onProgress(progress -> {
+            if (progress.usersDone() >= 300 && cancelled.compareAndSet(false, true)) {
+                job.cancel();
+            }
+        });
+
+        long jobId = job.start().jobId();
+        assertTrue(pool.awaitQuiescence(60, TimeUnit.SECONDS));
+        MatchRecompute stopped = matchRecomputeRepository.findById(jobId).orElseThrow();
+        assertEquals(MatchRecompute.Status.CANCELLED, stopped.getStatus());
+        assertEquals(MatchRecompute.Status.CANCELLED, job.progress().orElseThrow().status());
+        // Ids run 1..users, so the checkpoint is also how many users are done
+        assertTrue(stopped.getCheckpointUserId() > 0 && stopped.getCheckpointUserId() < users,
+                "checkpoint " + stopped.getCheckpointUserId());
+        assertEquals(stopped.getCheckpointUserId(), stopped.getUsersDone());
+        assertEquals(TOP, userMatchRepository.findByUserIdAndModelVersionOrderByRank(stopped.getCheckpointUserId(), 1).size());
+
+        Progress resumed = job.resume().orElseThrow();
+        assertEquals(jobId, resumed.jobId());
+        assertTrue(pool.awaitQuiescence(60, TimeUnit.SECONDS));
+        MatchRecompute finished = matchRecomputeRepository.findById(jobId).orElseThrow();
+        assertEquals(MatchRecompute.Status.DONE, finished.getStatus());
+        assertEquals(users, finished.getCheckpointUserId());
+        assertEquals(users, finished.getUsersDone());
+        // Slices past the checkpoint were redone, not doubled
+        assertEquals((long) users * TOP, userMatchRepository.count());
+        for (long userId : new long[]{1, 300, users}) {
+            List<Long> stored = userMatchRepository.findByUserIdAndModelVersionOrderByRank(userId, 1).stream()
+                    .map(UserMatch::getMatchUserId).toList();
+            // The matcher's own user_matches is a mock, so this is scored live
+            List<Long> live = matcher.matches(user(userId)).stream().map(match -> match.user().getId()).toList();
+            assertEquals(live, stored);
+        }
+        assertTrue(job.resume().isEmpty());
+    }
+
+    // The whole run on one worker per core, as in production. Scoring is most of the cost, so the floor is per worker
+    @Test
+    @Tag("benchmark")
+    void aHundredThousandUsers_throughput() {
+        int users = 100_000;
+        addUsers(users, new Random(19));
+        int workers = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool perCore = new ForkJoinPool(workers);
+        try {
+            MatchRecomputeJob job = job(500, perCore);
+
+            job.start();
+            assertTrue(perCore.awaitQuiescence(60, TimeUnit.MINUTES));
+            Progress progress = job.progress().orElseThrow();
+            System.out.printf("match recompute over %d users on %d workers: %d users done, %.0f users/s, %.1fms per user%n",
+                    users, workers, progress.usersDone(), progress.usersPerSecond(), 1000.0 * workers / progress.usersPerSecond());
+            assertEquals(MatchRecompute.Status.DONE, progress.status());
+            assertEquals((long) users * TOP, userMatchRepository.count());
+            assertTrue(progress.usersPerSecond() >= 30.0 * workers, progress.usersPerSecond() + " users/s");
+        } finally {
+            perCore.shutdownNow();
+            // Deleting all two million rows in one statement runs H2 out of memory, so clear them a slice at a time
+            TransactionTemplate transactions = new TransactionTemplate(transactionManager);
+            for (long from = 1; from <= users; from += 5_000) {
+                List<Long> userIds = LongStream.range(from, Math.min(from + 5_000, users + 1L)).boxed().toList();
+                transactions.executeWithoutResult(status -> userMatchRepository.deleteByUserIdIn(userIds));
+            }
+        }
+    }
+
+    private MatchRecomputeJob job(int sliceSize) {
+        return job(sliceSize, pool);
+    }
+
+    private MatchRecomputeJob job(int sliceSize, ForkJoinPool pool) {
+        return new MatchRecomputeJob(matcher, userMatchRepository, matchRecomputeRepository, transactionManager,
+                new SimpleMeterRegistry(), pool, 1, sliceSize);
+    }
+
+    // Users 1..count, most of whose artists come from one scene, some from a second and a few everyone likes
+    private void addUsers(int count, Random random) {
+        MinHashIndex lsh = (MinHashIndex) ReflectionTestUtils.getField(matcher, "lsh");
+        for (int artist = 0; artist < SCENES * 50 + 200; artist++) {
+            ReflectionTestUtils.invokeMethod(matcher, "artistIdOf", "artist" + artist, "Artist " + artist);
+        }
+        for (long userId = 1; userId <= count; userId++) {
+            int scene = random.nextInt(SCENES);
+            int secondScene = random.nextInt(SCENES);
+            Map<Integer, Integer> artists = new HashMap<>();
+            for (int i = 0; i < 40; i++) {
+                int artist = i < 25 ? scene * 50 + random.nextInt(50)
+                        : i < 35 ? secondScene * 50 + random.nextInt(50)
+                        : SCENES * 50 + random.nextInt(200);
+                artists.merge(artist, 1 + random.nextInt(6), Integer::sum);
+            }
+            Map<Integer, Integer> genres = new HashMap<>(Map.of(scene, 10));
+            genres.merge(secondScene, 4, Integer::sum);
+            TasteProfile profile = TasteProfile.of(userId, artists, genres);
+            List<String> ids = Arrays.stream(profile.getArtists()).mapToObj(artist -> "artist" + artist).toList();
+            ReflectionTestUtils.invokeMethod(matcher, "put", profile, lsh.signature(ids), true);
+        }
+    }
+
+    private static User user(Long id) {
+        User user = new User("user" + id, "user" + id + "@example.com", "password");
+        ReflectionTestUtils.setField(user, "id", id);
+        user.setSpotifyAccessToken("token");
+        return user;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.soundscape;
+
+import com.example.soundscape.services.MinHashIndex;
+import com.example.soundscape.services.TasteProfile;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MinHashIndex, and a recall harness: LSH candidates re-ranked exactly, as TasteMatcher
+ * does, against a brute-force scan of every user.
+ */
+public class MinHashIndexTest {
+
+    private static final int USERS = 100_000;
+    private static final int SCENES = 1_000;
+    private static final int TOP = 20;
+    // The defaults in application.properties
+    private static final int BANDS = 32;
+    private static final int ROWS = 1;
+
+    @Test
+    void puttingAUserAgain_movesItToItsNewBuckets() {
+        MinHashIndex index = new MinHashIndex(32, 2);
+        index.put(1, index.signature(List.of("a", "b", "c", "d")));
+        index.put(2, index.signature(List.of("a", "b", "c", "d")));
+        index.put(3, index.signature(List.of("x", "y", "z")));
+        assertArrayEquals(new long[]{2}, index.candidates(1));
+        assertArrayEquals(new long[0], index.candidates(3));
+
+        // User 2's taste changes to user 3's
+        index.put(2, index.signature(List.of("x", "y", "z")));
+        assertArrayEquals(new long[0], index.candidates(1));
+        assertArrayEquals(new long[]{3}, index.candidates(2));
+
+        index.remove(3);
+        assertFalse(index.contains(3));
+        assertArrayEquals(new long[0], index.candidates(2));
+        index.put(4, index.signature(List.of("x", "y", "z")));
+        assertArrayEquals(new long[]{4}, index.candidates(2));
+        assertEquals(3, index.size());
+        assertEquals(null, index.signature(List.of()));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void recallAgainstBruteForce_overAHundredThousandUsers() {
+        Random random = new Random(5);
+        MinHashIndex index = new MinHashIndex(BANDS, ROWS);
+        Map<Long, TasteProfile> profiles = new HashMap<>();
+        long started = System.nanoTime();
+        for (long userId = 1; userId <= USERS; userId++) {
+            List<Integer> artists = new ArrayList<>();
+            List<Integer> tracks = new ArrayList<>();
+            int scene = random.nextInt(SCENES);
+            int secondScene = random.nextInt(SCENES);
+            pick(random, artists, scene * 50, 50, 25);
+            pick(random, artists, secondScene * 50, 50, 10);
+            pick(random, artists, SCENES * 50, 200, 5); // everyone's favourites
+            // Two users of one scene share about a tenth of their artists and tracks
+            pick(random, tracks, scene * 150, 150, 25);
+            pick(random, tracks, secondScene * 150, 150, 10);
+            pick(random, tracks, SCENES * 150, 500, 5);
+
+            Set<String> ids = new HashSet<>();
+            Map<Integer, Integer> artistWeights = new HashMap<>();
+            for (int artist : artists) {
+                ids.add("artist" + artist);
+                artistWeights.merge(artist, 1 + random.nextInt(6), Integer::sum);
+            }
+            tracks.forEach(track -> ids.add("track" + track));
+            Map<Integer, Integer> genres = new HashMap<>(Map.of(scene, 10));
+            genres.merge(secondScene, 4, Integer::sum);
+            profiles.put(userId, TasteProfile.of(userId, artistWeights, genres));
+            index.put(userId, index.signature(ids));
+        }
+        long buildMs = (System.nanoTime() - started) / 1_000_000;
+
+        int viewers = 100;
+        double recall = 0;
+        long scored = 0;
+        for (int i = 0; i < viewers; i++) {
+            TasteProfile viewer = profiles.get(1L + random.nextInt(USERS));
+            long[] candidates = index.candidates(viewer.getUserId());
+            scored += candidates.length;
+            List<Long> approximate = top(viewer, Arrays.stream(candidates).mapToObj(profiles::get).toList());
+            List<Long> exact = top(viewer, profiles.values());
+            recall += (double) approximate.stream().filter(exact::contains).count() / exact.size();
+        }
+        recall /= viewers;
+        double scoredShare = (double) scored / viewers / USERS;
+        System.out.printf("LSH %dx%d over %d users: recall@%d=%.3f scoring %.1f%% of users per query (built in %dms)%n",
+                BANDS, ROWS, USERS, TOP, recall, scoredShare * 100, buildMs);
+
+        assertTrue(recall >= 0.9, "recall@" + TOP + " " + recall);
+        assertTrue(scoredShare <= 0.1, "scored " + scoredShare + " of users");
+    }
+
+    private static void pick(Random random, List<Integer> into, int first, int range, int count) {
+        for (int i = 0; i < count; i++) {
+            into.add(first + random.nextInt(range));
+        }
+    }
+
+    private static List<Long> top(TasteProfile viewer, Iterable<TasteProfile> candidates) {
+        List<Map.Entry<Long, Double>> scores = new ArrayList<>();
+        for (TasteProfile candidate : candidates) {
+            if (candidate.getUserId() != viewer.getUserId()) {
+                scores.add(Map.entry(candidate.getUserId(), viewer.similarity(candidate)));
+            }
+        }
+        scores.sort(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return scores.stream().limit(TOP).map(Map.Entry::getKey).toList();
+    }
+}
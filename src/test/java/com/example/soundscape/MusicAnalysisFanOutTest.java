@@ -0,0 +1,171 @@
+package com.example.soundscape;
+
+import com.example.soundscape.services.SpotifyService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The deadline behaviour of the music analysis fan-out (SpotifyService.musicAnalysis), with
+ * the six Spotify reads replaced by functions that answer, stall or fail, and its latency
+ * against SpotifyStandIn.
+ */
+public class MusicAnalysisFanOutTest {
+
+    private static final long ROUND_TRIP_MS = 80;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(6);
+    // Never counted down: a read that waits on it only ends when the executor is shut down
+    private final CountDownLatch never = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void everyReadArrives_theAnalysisIsComplete() {
+        Map<String, Object> analysis = analyse(this::artists, this::tracks, Duration.ofSeconds(5));
+
+        assertEquals(false, analysis.get("degraded"));
+        for (String timeRange : List.of("short_term", "medium_term", "long_term")) {
+            assertNotNull(analysis.get(timeRange + "_artists"), timeRange);
+            assertNotNull(analysis.get(timeRange + "_tracks"), timeRange);
+        }
+        // indie is 2 in every range, weighted 3 + 2 + 1
+        assertEquals(12, ((Map<?, ?>) analysis.get("genre_scores")).get("indie"));
+    }
+
+    @Test
+    void aReadThatStalls_isLeftOutAtTheDeadline() {
+        Duration deadline = Duration.ofMillis(200);
+        long start = System.nanoTime();
+        Map<String, Object> analysis = analyse(
+                timeRange -> timeRange.equals("long_term") ? stall() : artists(timeRange), this::tracks, deadline);
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed < deadline.plusSeconds(2).toNanos(), "waited past the deadline");
+        assertEquals(true, analysis.get("degraded"));
+        assertNull(analysis.get("long_term_artists"));
+        // What did arrive is kept
+        assertNotNull(analysis.get("short_term_artists"));
+        assertNotNull(analysis.get("long_term_tracks"));
+        assertEquals(10, ((Map<?, ?>) analysis.get("genre_scores")).get("indie"));
+    }
+
+    @Test
+    void aReadThatFails_isLeftOut() {
+        Map<String, Object> analysis = analyse(this::artists, timeRange -> {
+            if (timeRange.equals("short_term")) {
+                throw new IllegalStateException("Spotify is down");
+            }
+            return tracks(timeRange);
+        }, Duration.ofSeconds(5));
+
+        assertEquals(true, analysis.get("degraded"));
+        assertNull(analysis.get("short_term_tracks"));
+        assertNotNull(analysis.get("medium_term_tracks"));
+        assertNotNull(analysis.get("short_term_artists"));
+    }
+
+    // Six reads of one ROUND_TRIP_MS each, in parallel, should take about one round trip rather than six
+    @Test
+    @Tag("benchmark")
+    void againstTheStandIn_takesAboutOneRoundTrip() throws Exception {
+        try (SpotifyStandIn standIn = new SpotifyStandIn(42, 300, 3_000)) {
+            standIn.faults(SpotifyStandIn.Faults.none()
+                    .latency(SpotifyStandIn.Latency.fixed(Duration.ofMillis(ROUND_TRIP_MS))));
+            HttpClient client = HttpClient.newHttpClient();
+            Function<String, Map<String, Object>> topArtists = timeRange -> read(client, standIn, "artists", timeRange);
+            Function<String, Map<String, Object>> topTracks = timeRange -> read(client, standIn, "tracks", timeRange);
+            for (int i = 0; i < 5; i++) {
+                analyse(topArtists, topTracks, Duration.ofSeconds(5));
+            }
+
+            List<Long> timings = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                long start = System.nanoTime();
+                Map<String, Object> analysis = analyse(topArtists, topTracks, Duration.ofSeconds(5));
+                timings.add((System.nanoTime() - start) / 1_000_000);
+                assertEquals(false, analysis.get("degraded"));
+            }
+
+            Collections.sort(timings);
+            long p50 = timings.get(timings.size() / 2);
+            long p99 = timings.get(timings.size() * 99 / 100);
+            System.out.println("music analysis fan-out against the stand-in: p50=" + p50 + "ms p99=" + p99
+                    + "ms (sequential would be ~" + 6 * ROUND_TRIP_MS + "ms)");
+            assertTrue(p50 < 2 * ROUND_TRIP_MS, "p50 should be about one round trip, was " + p50 + "ms");
+            assertTrue(p99 < 3 * ROUND_TRIP_MS, "p99 should be well under six round trips, was " + p99 + "ms");
+        }
+    }
+
+    private Map<String, Object> analyse(Function<String, Map<String, Object>> topArtists,
+                                        Function<String, Map<String, Object>> topTracks, Duration deadline) {
+        return ReflectionTestUtils.invokeMethod(SpotifyService.class, "musicAnalysis", topArtists, topTracks,
+                executor, System.nanoTime() + deadline.toNanos());
+    }
+
+    // One /me/top read from the stand-in, as the body under "artists" or "tracks"
+    private static Map<String, Object> read(HttpClient client, SpotifyStandIn standIn, String type, String timeRange) {
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create(standIn.baseUrl() + "/me/top/" + type + "?time_range=" + timeRange + "&limit=20"))
+                .header("Authorization", "Bearer fan-out")
+                .build();
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put(type, client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, Object> artists(String timeRange) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("artists", List.of(Map.of("name", "Artist " + timeRange)));
+        result.put("genre_analysis", Map.of("indie", 2, timeRange + " pop", 1));
+        return result;
+    }
+
+    private Map<String, Object> tracks(String timeRange) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("tracks", List.of(Map.of("name", "Track " + timeRange)));
+        return result;
+    }
+
+    private Map<String, Object> stall() {
+        try {
+            never.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new HashMap<>();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.ListeningEvent;
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.ListeningEventRepository;
+import com.example.soundscape.repositories.MusicAnalysisSnapshotRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.GenreTopK;
+import com.example.soundscape.services.ListeningHistory;
+import com.example.soundscape.services.MusicAnalysisSnapshots;
+import com.example.soundscape.services.SpotifyService;
+import com.example.soundscape.spotify.ArtistMetadataCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * MusicAnalysisSnapshots against an in-memory database, with the live analysis and the
+ * artist genres stubbed. Artist a1 is jazz, a2 is jazz and blues.
+ */
+@DataJpaTest
+public class MusicAnalysisSnapshotsTest {
+
+    @Autowired
+    private MusicAnalysisSnapshotRepository snapshotRepository;
+    @Autowired
+    private ListeningEventRepository listeningEventRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private final SpotifyService spotifyService = mock(SpotifyService.class);
+    private final ArtistMetadataCache artistMetadataCache = mock(ArtistMetadataCache.class);
+    private final ListeningHistory listeningHistory = mock(ListeningHistory.class);
+    private final ExecutorService syncExecutor = mock(ExecutorService.class);
+    private final AtomicReference<Map<String, Integer>> termScores = new AtomicReference<>();
+    private final AtomicInteger liveAnalyses = new AtomicInteger();
+
+    private User user;
+    private Instant clock = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeEach
+    void setUp() {
+        when(spotifyService.getUserMusicAnalysis(any(User.class))).thenAnswer(call -> {
+            liveAnalyses.incrementAndGet();
+            Map<String, Object> analysis = new HashMap<>();
+            analysis.put("top_genres", List.of());
+            analysis.put("genre_scores", termScores.get());
+            analysis.put("short_term_artists", List.of(Map.of("name", "Artist")));
+            analysis.put("degraded", false);
+            return analysis;
+        });
+        when(artistMetadataCache.genresOf(any(User.class), any())).thenReturn(Map.of(
+                "a1", List.of("jazz"),
+                "a2", List.of("jazz", "blues")));
+        termScores.set(Map.of("rock", 9, "pop", 6, "jazz", 1));
+        user = userRepository.save(new User("listener", "listener@example.com", "password"));
+    }
+
+    @Test
+    void genreTopK_matchesAFullSort() {
+        Random random = new Random(7);
+        GenreTopK topK = new GenreTopK(10);
+        Map<String, Integer> scores = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            String genre = "genre" + (int) Math.abs(random.nextGaussian() * 80);
+            int weight = 1 + random.nextInt(3);
+            topK.add(genre, weight);
+            scores.merge(genre, weight, Integer::sum);
+        }
+
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(scores.entrySet());
+        sorted.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        assertEquals(sorted.subList(0, 10), topK.top());
+        assertEquals(scores, topK.scores());
+    }
+
+    @Test
+    void firstView_computesTheSnapshot_laterViewsReadIt() {
+        MusicAnalysisSnapshots snapshots = snapshots(Duration.ofHours(6));
+
+        Map<String, Object> first = snapshots.analysis(user);
+        assertEquals(List.of(List.of("rock", 9), List.of("pop", 6), List.of("jazz", 1)), json(first.get("top_genres")));
+        assertEquals(List.of(Map.of("name", "Artist")), first.get("short_term_artists"));
+
+        Map<String, Object> second = snapshots.analysis(user);
+        assertEquals(1, liveAnalyses.get());
+        assertEquals(first.get("computed_at"), second.get("computed_at"));
+        verify(syncExecutor, never()).execute(any());
+
+        // Once stale, the page still gets the snapshot while a refresh is queued
+        snapshots(Duration.ZERO).analysis(user);
+        assertEquals(1, liveAnalyses.get());
+        verify(syncExecutor).execute(any());
+    }
+
+    @Test
+    void plays_updateTheTopGenres_andSurviveARefresh() {
+        listeningEventRepository.save(play("a1"));
+        listeningEventRepository.save(play("a1"));
+        MusicAnalysisSnapshots snapshots = snapshots(Duration.ofHours(6));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<BiConsumer<User, List<ListeningEvent>>> plays = ArgumentCaptor.forClass(BiConsumer.class);
+        verify(listeningHistory).onPlaysStored(plays.capture());
+
+        // The first snapshot counts the stored history
+        assertEquals(List.of(List.of("rock", 9), List.of("pop", 6), List.of("jazz", 3)),
+                json(snapshots.analysis(user).get("top_genres")));
+
+        List<ListeningEvent> newPlays = List.of(play("a2"), play("a2"), play("a2"), play("a2"));
+        plays.getValue().accept(user, newPlays);
+        plays.getValue().accept(user, newPlays); // already counted
+        assertEquals(List.of(List.of("rock", 9), List.of("jazz", 7), List.of("pop", 6), List.of("blues", 4)),
+                json(snapshots.analysis(user).get("top_genres")));
+
+        // New top artists replace their part of the scores; the plays' part stays
+        termScores.set(Map.of("rock", 2, "pop", 1));
+        ReflectionTestUtils.invokeMethod(snapshots, "refresh", user);
+        assertEquals(List.of(List.of("jazz", 6), List.of("blues", 4), List.of("rock", 2), List.of("pop", 1)),
+                json(snapshots.analysis(user).get("top_genres")));
+    }
+
+    @Test
+    void usersWhoseScoresAreNotHeld_areReadBackFromTheirRow() {
+        User other = userRepository.save(new User("other", "other@example.com", "password"));
+        // Room for one user's scores, so every batch below finds the other user's held
+        MusicAnalysisSnapshots snapshots = snapshots(Duration.ofHours(6), 1);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<BiConsumer<User, List<ListeningEvent>>> plays = ArgumentCaptor.forClass(BiConsumer.class);
+        verify(listeningHistory).onPlaysStored(plays.capture());
+        snapshots.analysis(user);
+        snapshots.analysis(other);
+
+        for (int i = 0; i < 3; i++) {
+            plays.getValue().accept(user, List.of(play(user, "a2"), play(user, "a2")));
+            plays.getValue().accept(other, List.of(play(other, "a1")));
+        }
+
+        assertEquals(List.of(List.of("rock", 9), List.of("jazz", 7), List.of("blues", 6), List.of("pop", 6)),
+                json(snapshots.analysis(user).get("top_genres")));
+        assertEquals(List.of(List.of("rock", 9), List.of("pop", 6), List.of("jazz", 4)),
+                json(snapshots.analysis(other).get("top_genres")));
+    }
+
+    private MusicAnalysisSnapshots snapshots(Duration refreshAfter) {
+        return snapshots(refreshAfter, 5000);
+    }
+
+    private MusicAnalysisSnapshots snapshots(Duration refreshAfter, int maxTallies) {
+        return new MusicAnalysisSnapshots(spotifyService, artistMetadataCache, snapshotRepository,
+                listeningEventRepository, userRepository, listeningHistory, new ObjectMapper(), syncExecutor,
+                mock(ScheduledExecutorService.class), refreshAfter, Duration.ofHours(1), 2, maxTallies);
+    }
+
+    private ListeningEvent play(String artistId) {
+        return play(user, artistId);
+    }
+
+    private ListeningEvent play(User listener, String artistId) {
+        clock = clock.plusSeconds(180);
+        return new ListeningEvent(listener, "track-" + artistId, "Song", List.of("Artist"), List.of(artistId),
+                "Album", null, 180_000, clock);
+    }
+
+    // As the page sees it: [[genre, score], ...]
+    private static Object json(Object value) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            return objectMapper.readValue(objectMapper.writeValueAsString(value), Object.class);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
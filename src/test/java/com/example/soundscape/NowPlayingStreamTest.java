@@ -0,0 +1,215 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.services.NowPlayingStream;
+import com.example.soundscape.services.PlaybackCommandQueue;
+import com.example.soundscape.services.SpotifyService;
+import com.example.soundscape.spotify.HashedTimingWheel;
+import com.example.soundscape.spotify.SpotifyResponses.PlaybackStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * NowPlayingStream with a stubbed getCurrentlyPlaying. Each emitter is attached to a fake
+ * servlet-side handler that records what is sent and can play the client disconnecting.
+ */
+public class NowPlayingStreamTest {
+
+    private final SpotifyService spotifyService = mock(SpotifyService.class);
+    private final PlaybackCommandQueue playbackCommandQueue = mock(PlaybackCommandQueue.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final HashedTimingWheel timer = new HashedTimingWheel("test-timer", Duration.ofMillis(5), 64, executor);
+    private final AtomicReference<PlaybackStatus> playing = new AtomicReference<>(PlaybackStatus.notPlaying("Nothing"));
+    private final AtomicInteger polls = new AtomicInteger();
+
+    private NowPlayingStream stream;
+
+    // The sending side of one open stream
+    private static final class Client {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        Runnable disconnect;
+        volatile boolean closed;
+
+        List<String> nowPlaying() {
+            return events.stream().filter(event -> event.contains("event:now-playing")).toList();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(spotifyService.getCurrentlyPlaying(any(User.class))).thenAnswer(call -> {
+            polls.incrementAndGet();
+            return playing.get();
+        });
+        stream = stream(Duration.ofMillis(20), Duration.ofMillis(40), Duration.ofMillis(40));
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void openTabs_shareOnePoller_andOnlyHearAboutChanges() throws Exception {
+        User user = user(1L);
+        List<Client> tabs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tabs.add(connect(stream.subscribe(user)));
+        }
+        assertEquals(1, (int) ReflectionTestUtils.invokeMethod(stream, "activePollers"));
+
+        Thread.sleep(100);
+        playing.set(PlaybackStatus.playing("Song A", "Artist", "Album", "https://i.scdn.co/a", "a"));
+        Thread.sleep(100);
+        playing.set(PlaybackStatus.playing("Song B", "Artist", "Album", "https://i.scdn.co/b", "b"));
+        Thread.sleep(100);
+
+        // Roughly one poll per interval for the user, not one per tab
+        assertTrue(polls.get() <= 20, "polls: " + polls.get());
+        for (Client tab : tabs) {
+            List<String> events = tab.nowPlaying();
+            assertEquals(3, events.size(), "events: " + events);
+            assertTrue(events.get(1).contains("Song A") && events.get(2).contains("Song B"));
+        }
+
+        // A tab opened later gets the current state straight away
+        Client late = connect(stream.subscribe(user));
+        assertTrue(late.nowPlaying().get(0).contains("Song B"));
+        // ...and closes the oldest of the three allowed per user
+        assertTrue(tabs.get(0).closed);
+        assertTrue(!tabs.get(1).closed && !tabs.get(2).closed);
+    }
+
+    @Test
+    void poller_stopsWhenTheLastSubscriberLeaves() throws Exception {
+        Client first = connect(stream.subscribe(user(1L)));
+        Client second = connect(stream.subscribe(user(1L)));
+        Thread.sleep(60);
+
+        first.disconnect.run();
+        assertEquals(1, (int) ReflectionTestUtils.invokeMethod(stream, "activePollers"));
+        second.disconnect.run();
+        assertEquals(0, (int) ReflectionTestUtils.invokeMethod(stream, "activePollers"));
+
+        int pollsAfterLeaving = polls.get();
+        Thread.sleep(100);
+        assertTrue(polls.get() <= pollsAfterLeaving + 1, "polling went on after the last subscriber left");
+    }
+
+    @Test
+    void nextPoll_followsTheTrackEnd_andBacksOffWhileNothingPlays() {
+        NowPlayingStream stream = stream(Duration.ofSeconds(5), Duration.ofSeconds(60), Duration.ofSeconds(30));
+
+        // 12s left of the track: look again a grace period after it ends
+        PlaybackStatus endingSoon = PlaybackStatus.playing("Song", "Artist", "Album", "img", "a", 188_000, 200_000);
+        assertEquals(Duration.ofSeconds(12).plusMillis(10), nextDelay(stream, endingSoon, 0));
+        // Minutes left, or no progress reported: the playing cap, to catch changes made elsewhere
+        PlaybackStatus longTrack = PlaybackStatus.playing("Song", "Artist", "Album", "img", "a", 0, 600_000);
+        assertEquals(Duration.ofSeconds(30), nextDelay(stream, longTrack, 0));
+        assertEquals(Duration.ofSeconds(30), nextDelay(stream, PlaybackStatus.playing("Song", "Artist", "Album", "img", "a"), 0));
+
+        PlaybackStatus idle = PlaybackStatus.notPlaying("No track currently playing");
+        assertEquals(Duration.ofSeconds(5), nextDelay(stream, idle, 0));
+        assertEquals(Duration.ofSeconds(20), nextDelay(stream, idle, 2));
+        assertEquals(Duration.ofSeconds(60), nextDelay(stream, idle, 4));
+        assertEquals(Duration.ofSeconds(60), nextDelay(stream, idle, 1_000));
+    }
+
+    @Test
+    void playbackCommand_bringsTheNextPollForward() throws Exception {
+        NowPlayingStream stream = stream(Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofMinutes(1));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<User>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(playbackCommandQueue, atLeastOnce()).onCommandSent(listener.capture());
+
+        User user = user(1L);
+        Client tab = connect(stream.subscribe(user));
+        Thread.sleep(60);
+        assertEquals(1, polls.get());
+
+        // Without the command the next poll would be a minute away
+        playing.set(PlaybackStatus.playing("Song A", "Artist", "Album", "https://i.scdn.co/a", "a"));
+        listener.getValue().accept(user);
+        Thread.sleep(100);
+        assertEquals(2, polls.get());
+        assertTrue(tab.nowPlaying().get(1).contains("Song A"));
+    }
+
+    private NowPlayingStream stream(Duration interval, Duration maxIdleInterval, Duration maxPlayingInterval) {
+        return new NowPlayingStream(spotifyService, playbackCommandQueue, new SimpleMeterRegistry(), timer,
+                interval, maxIdleInterval, maxPlayingInterval, Duration.ofMillis(10), Duration.ofMillis(10),
+                Duration.ofMinutes(1), Duration.ofMinutes(5), 3, 100);
+    }
+
+    private static Duration nextDelay(NowPlayingStream stream, PlaybackStatus status, int quietPolls) {
+        return ReflectionTestUtils.invokeMethod(stream, "nextDelay", status, quietPolls);
+    }
+
+    // Attach the emitter to a handler, as Spring MVC does once the controller returns it
+    private static Client connect(SseEmitter emitter) throws Exception {
+        Client client = new Client();
+        Class<?> handlerType = Class.forName(
+                "org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter$Handler");
+        Object handler = Proxy.newProxyInstance(handlerType.getClassLoader(), new Class<?>[]{handlerType},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "send" -> {
+                            StringBuilder event = new StringBuilder();
+                            if (args[0] instanceof Set<?> parts) {
+                                parts.forEach(part -> {
+                                    Object data = ReflectionTestUtils.invokeMethod(part, "getData");
+                                    event.append(data);
+                                });
+                            } else {
+                                event.append(args[0]);
+                            }
+                            client.events.add(event.toString());
+                        }
+                        case "onCompletion" -> client.disconnect = (Runnable) args[0];
+                        case "complete", "completeWithError" -> {
+                            client.closed = true;
+                            if (client.disconnect != null) {
+                                client.disconnect.run();
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                    return null;
+                });
+        ReflectionTestUtils.invokeMethod(emitter, "initialize", handler);
+        return client;
+    }
+
+    private static User user(long id) {
+        User user = new User("listener" + id, "listener" + id + "@example.com", "password");
+        ReflectionTestUtils.setField(user, "id", id);
+        return user;
+    }
+}
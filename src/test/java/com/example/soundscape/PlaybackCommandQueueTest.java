@@ -0,0 +1,157 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.services.PlaybackCommandQueue;
+import com.example.soundscape.services.PlaybackCommandQueue.Action;
+import com.example.soundscape.services.PlaybackCommandQueue.Command;
+import com.example.soundscape.services.PlaybackCommandQueue.CommandResult;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyResponseCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PlaybackCommandQueueTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpotifyApiClient spotifyApiClient = mock(SpotifyApiClient.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstCallStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstCall = new CountDownLatch(1);
+
+    private PlaybackCommandQueue queue;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        when(spotifyApiClient.exchange(any(User.class), any(HttpMethod.class), anyString(), nullable(String.class)))
+                .thenAnswer(call -> {
+                    String path = call.getArgument(2);
+                    bodies.add(String.valueOf((String) call.getArgument(3)));
+                    if (sent.isEmpty()) {
+                        sent.add(path);
+                        firstCallStarted.countDown();
+                        releaseFirstCall.await(5, TimeUnit.SECONDS);
+                    } else {
+                        sent.add(path);
+                    }
+                    if (path.endsWith("/previous")) {
+                        throw new ResourceAccessException("Spotify timed out");
+                    }
+                    return ResponseEntity.noContent().build();
+                });
+
+        queue = new PlaybackCommandQueue(spotifyApiClient, mock(SpotifyResponseCache.class), objectMapper, executor,
+                Duration.ofMinutes(1));
+        user = new User("listener", "listener@example.com", "password");
+        ReflectionTestUtils.setField(user, "id", 1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void queuedCommands_areCoalescedAndSentInOrder() throws Exception {
+        queue.submit(user, Command.of(Action.PAUSE));
+        assertTrue(firstCallStarted.await(5, TimeUnit.SECONDS));
+
+        // While the pause is in flight, a slider drag and a burst of skips pile up
+        for (int volume = 10; volume <= 60; volume += 10) {
+            queue.submit(user, Command.volume(volume));
+        }
+        queue.submit(user, Command.of(Action.NEXT));
+        queue.submit(user, Command.of(Action.NEXT));
+        long lastNext = queue.submit(user, Command.of(Action.NEXT));
+        releaseFirstCall.countDown();
+
+        CommandResult result = awaitResult(lastNext);
+        assertEquals("done", result.status());
+        assertEquals(3, result.commandIds().size());
+        assertEquals(List.of(
+                "/me/player/pause",
+                "/me/player/volume?volume_percent=60",
+                "/me/player/next", "/me/player/next", "/me/player/next"), sent);
+    }
+
+    @Test
+    void aPauseOrResume_neverReplacesAQueuedTrack() throws Exception {
+        queue.submit(user, Command.of(Action.NEXT));
+        assertTrue(firstCallStarted.await(5, TimeUnit.SECONDS));
+
+        // /now-playing?playTrackId= queued a track, then the user clicked pause and play
+        queue.submit(user, Command.playTrack("4uLU6hMCjMI75M1A2tKUQC"));
+        queue.submit(user, Command.of(Action.PAUSE));
+        long resume = queue.submit(user, Command.play(null));
+        releaseFirstCall.countDown();
+
+        CommandResult result = awaitResult(resume);
+        assertEquals(2, result.commandIds().size()); // the pause and the resume, merged
+        assertEquals(List.of("/me/player/next", "/me/player/play", "/me/player/play"), sent);
+        assertEquals("spotify:track:4uLU6hMCjMI75M1A2tKUQC", objectMapper.readTree(bodies.get(1)).get("uris").get(0).asText());
+        assertEquals("{}", bodies.get(2));
+    }
+
+    @Test
+    void failedCommand_isReportedAsFailed() throws Exception {
+        queue.submit(user, Command.of(Action.PAUSE));
+        assertTrue(firstCallStarted.await(5, TimeUnit.SECONDS));
+        long previous = queue.submit(user, Command.of(Action.PREVIOUS));
+        releaseFirstCall.countDown();
+
+        CommandResult result = awaitResult(previous);
+        assertEquals("failed", result.status());
+        assertEquals("previous", result.action());
+    }
+
+    @Test
+    void idsFromTheRequest_areSerializedNotPastedIntoTheBody() throws Exception {
+        releaseFirstCall.countDown();
+        String deviceId = "abc\",\"play\":false,\"x\":\"";
+        queue.submit(user, Command.transfer(deviceId));
+        long play = queue.submit(user, Command.playTrack("4uLU6hMCjMI75M1A2tKUQC\"]}"));
+
+        assertEquals("done", awaitResult(play).status());
+        JsonNode transfer = objectMapper.readTree(bodies.get(0));
+        assertEquals(deviceId, transfer.get("device_ids").get(0).asText());
+        assertTrue(transfer.get("play").asBoolean());
+        assertEquals("spotify:track:4uLU6hMCjMI75M1A2tKUQC\"]}", objectMapper.readTree(bodies.get(1)).get("uris").get(0).asText());
+    }
+
+    private CommandResult awaitResult(long commandId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            CommandResult result = queue.lastResult(user).orElse(null);
+            if (result != null && result.commandId() == commandId) {
+                return result;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("No result for command " + commandId);
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.SpotifyPlaylistRepository;
+import com.example.soundscape.repositories.SpotifyPlaylistTrackRepository;
+import com.example.soundscape.services.ListeningHistory;
+import com.example.soundscape.services.PlaylistStore;
+import com.example.soundscape.services.SavedTracksLibrary;
+import com.example.soundscape.services.SpotifyService;
+import com.example.soundscape.spotify.ArtistMetadataCache;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPriority;
+import com.example.soundscape.spotify.SpotifyRequestCoalescer;
+import com.example.soundscape.spotify.SpotifyResponseCache;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistTrack;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistTracksResponse;
+import com.example.soundscape.spotify.TrackMetadataCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * SpotifyService.getPlaylistTracks against PlaylistStore on an in-memory database and a
+ * fake Spotify playlist whose snapshot_id and tracks the test changes.
+ */
+@DataJpaTest
+public class PlaylistTracksTest {
+
+    private static final String PLAYLIST = "37i9dQZF1DXcBWIGoYBM5M";
+
+    @Autowired
+    private SpotifyPlaylistRepository playlistRepository;
+    @Autowired
+    private SpotifyPlaylistTrackRepository trackRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpotifyApiClient spotifyApiClient = mock(SpotifyApiClient.class);
+    private final ExecutorService fanOutExecutor = Executors.newFixedThreadPool(4);
+    private final AtomicInteger pageFetches = new AtomicInteger();
+    private final User user = new User("listener", "listener@example.com", "password");
+
+    private SpotifyService spotifyService;
+    private String snapshotId = "snapshot-1";
+    private int total = 250;
+    private volatile boolean pagesFail;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        // Every read checks the snapshot, as it would once the cached one expires
+        SpotifyResponseCache responseCache = mock(SpotifyResponseCache.class);
+        when(responseCache.get(any(), any(), anyString(), any(), any()))
+                .thenAnswer(call -> ((Supplier<Object>) call.getArgument(3)).get());
+        when(spotifyApiClient.get(any(User.class), anyString())).thenAnswer(call -> ResponseEntity.ok(objectMapper.writeValueAsString(
+                Map.of("snapshot_id", snapshotId, "name", "Mix", "tracks", Map.of("total", total)))));
+        when(spotifyApiClient.get(any(User.class), anyString(), any(SpotifyPriority.class)))
+                .thenAnswer(call -> ResponseEntity.ok(tracksPage(call.getArgument(1))));
+        when(spotifyApiClient.readValue(anyString(), any(Class.class)))
+                .thenAnswer(call -> objectMapper.readValue((String) call.getArgument(0), (Class<?>) call.getArgument(1)));
+
+        PlaylistStore playlistStore = new PlaylistStore(playlistRepository, trackRepository, objectMapper);
+        spotifyService = new SpotifyService(spotifyApiClient, responseCache,
+                new SpotifyRequestCoalescer(new SimpleMeterRegistry()), playlistStore, mock(SavedTracksLibrary.class),
+                mock(TrackMetadataCache.class), mock(ArtistMetadataCache.class), mock(ListeningHistory.class),
+                fanOutExecutor, Duration.ofSeconds(4));
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanOutExecutor.shutdownNow();
+    }
+
+    @Test
+    void anUnchangedSnapshot_isServedFromTheStore() {
+        PlaylistTracksResponse first = spotifyService.getPlaylistTracks(user, PLAYLIST, 0, 50);
+        assertEquals(3, pageFetches.get()); // 250 tracks in pages of 100
+        assertEquals(250, first.total());
+        assertEquals(names(0, 50, "snapshot-1"), names(first));
+
+        PlaylistTracksResponse second = spotifyService.getPlaylistTracks(user, PLAYLIST, 50, 50);
+        assertEquals(3, pageFetches.get());
+        assertEquals(names(50, 100, "snapshot-1"), names(second));
+    }
+
+    @Test
+    void aChangedSnapshot_isFetchedAgain() {
+        spotifyService.getPlaylistTracks(user, PLAYLIST, 0, 50);
+
+        snapshotId = "snapshot-2";
+        total = 120;
+        PlaylistTracksResponse changed = spotifyService.getPlaylistTracks(user, PLAYLIST, 100, 50);
+        assertEquals(3 + 2, pageFetches.get());
+        assertEquals(120, changed.total());
+        assertEquals(names(100, 120, "snapshot-2"), names(changed));
+        assertEquals("snapshot-2", playlistRepository.findById(PLAYLIST).orElseThrow().getSnapshotId());
+    }
+
+    @Test
+    void aFailedSync_keepsServingTheStoredCopy() {
+        spotifyService.getPlaylistTracks(user, PLAYLIST, 0, 50);
+
+        snapshotId = "snapshot-2";
+        pagesFail = true;
+        PlaylistTracksResponse stale = spotifyService.getPlaylistTracks(user, PLAYLIST, 0, 50);
+        assertEquals(names(0, 50, "snapshot-1"), names(stale));
+        assertEquals("snapshot-1", playlistRepository.findById(PLAYLIST).orElseThrow().getSnapshotId());
+
+        // The next read, with Spotify back, stores the new snapshot
+        pagesFail = false;
+        assertEquals(names(0, 50, "snapshot-2"), names(spotifyService.getPlaylistTracks(user, PLAYLIST, 0, 50)));
+    }
+
+    @Test
+    void offsetsPastTheFirstSpotifyPage_readTheRightRows() {
+        // Crosses the 100/200 page boundaries Spotify returned them in
+        assertEquals(names(90, 110, "snapshot-1"), names(spotifyService.getPlaylistTracks(user, PLAYLIST, 90, 20)));
+        assertEquals(names(230, 250, "snapshot-1"), names(spotifyService.getPlaylistTracks(user, PLAYLIST, 230, 50)));
+        assertEquals(List.of(), names(spotifyService.getPlaylistTracks(user, PLAYLIST, 250, 50)));
+    }
+
+    private String tracksPage(String url) throws Exception {
+        if (pagesFail) {
+            throw new ResourceAccessException("Spotify is down");
+        }
+        pageFetches.incrementAndGet();
+        int offset = Integer.parseInt(url.replaceAll(".*[?&]offset=(\\d+).*", "$1"));
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int position = offset; position < Math.min(offset + 100, total); position++) {
+            String id = "track" + position;
+            items.add(Map.of("track", Map.of("id", id, "name", snapshotId + " #" + position, "uri", "spotify:track:" + id,
+                    "duration_ms", 200_000, "artists", List.of(Map.of("name", "Artist")),
+                    "album", Map.of("name", "Album", "images", List.of()))));
+        }
+        return objectMapper.writeValueAsString(Map.of("items", items, "total", total));
+    }
+
+    private static List<String> names(int from, int to, String snapshotId) {
+        List<String> names = new ArrayList<>();
+        for (int position = from; position < to; position++) {
+            names.add(snapshotId + " #" + position);
+        }
+        return names;
+    }
+
+    private static List<String> names(PlaylistTracksResponse response) {
+        return response.items().stream().map(PlaylistTrack::name).toList();
+    }
+}
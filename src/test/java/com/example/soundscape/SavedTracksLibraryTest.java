@@ -0,0 +1,195 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.SavedTrackRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.SavedTracksLibrary;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPayloads.SavedTracksPage;
+import com.example.soundscape.spotify.SpotifyPriority;
+import com.example.soundscape.spotify.SpotifyResponses.SavedTrackSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * SavedTracksLibrary against an in-memory database and a fake /me/tracks that serves a
+ * generated library, newest first, 50 songs per page.
+ */
+@DataJpaTest
+public class SavedTracksLibraryTest {
+
+    @Autowired
+    private SavedTrackRepository savedTrackRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService fanOut = Executors.newFixedThreadPool(4);
+    private final SpotifyApiClient spotifyApiClient = mock(SpotifyApiClient.class);
+    private final AtomicInteger pageCalls = new AtomicInteger();
+    private final List<String[]> library = new ArrayList<>(); // {trackId, addedAt}, newest first
+
+    private SavedTracksLibrary savedTracks;
+    private User user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(spotifyApiClient.get(any(User.class), anyString(), eq(SpotifyPriority.BACKGROUND))).thenAnswer(call -> {
+            pageCalls.incrementAndGet();
+            String url = call.getArgument(1);
+            return ResponseEntity.ok(page(Integer.parseInt(url.substring(url.indexOf("offset=") + 7))));
+        });
+        when(spotifyApiClient.readValue(anyString(), eq(SavedTracksPage.class)))
+                .thenAnswer(call -> objectMapper.readValue((String) call.getArgument(0), SavedTracksPage.class));
+
+        savedTracks = new SavedTracksLibrary(spotifyApiClient, savedTrackRepository, userRepository, transactionManager,
+                fanOut, fanOut, 2, Duration.ofMinutes(5));
+        user = userRepository.save(new User("listener", "listener@example.com", "password"));
+
+        Instant start = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 120; i > 0; i--) {
+            library.add(new String[] {"track" + i, start.plusSeconds(i * 60L).toString()});
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanOut.shutdownNow();
+    }
+
+    @Test
+    void fullSync_thenKeysetPagesCoverTheLibraryOnce() {
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+        assertEquals(120, savedTrackRepository.countByUserId(user.getId()));
+        assertEquals(3, pageCalls.get());
+
+        Set<String> seen = new HashSet<>();
+        List<SavedTrackSummary> all = new ArrayList<>();
+        SavedTracksLibrary.Page page = savedTracks.page(user, null, 0, 50).orElseThrow();
+        while (true) {
+            all.addAll(page.tracks());
+            page.tracks().forEach(track -> seen.add(track.uri()));
+            if (page.nextCursor() == null) {
+                break;
+            }
+            page = savedTracks.page(user, page.nextCursor(), 0, 50).orElseThrow();
+        }
+
+        assertEquals(120, all.size());
+        assertEquals(120, seen.size());
+        assertEquals("spotify:track:track120", all.get(0).uri());
+        assertEquals("spotify:track:track1", all.get(119).uri());
+    }
+
+    @Test
+    void offsetPages_startAtTheOffset_evenBetweenPageBoundaries() {
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+
+        List<SavedTrackSummary> tracks = savedTracks.page(user, null, 30, 50).orElseThrow().tracks();
+        assertEquals(50, tracks.size());
+        assertEquals("spotify:track:track90", tracks.get(0).uri());
+        assertEquals("spotify:track:track41", tracks.get(49).uri());
+
+        List<SavedTrackSummary> last = savedTracks.page(user, null, 100, 50).orElseThrow().tracks();
+        assertEquals(20, last.size());
+        assertEquals("spotify:track:track20", last.get(0).uri());
+    }
+
+    @Test
+    void incrementalSync_readsOnlyUntilTheWatermark() {
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+        pageCalls.set(0);
+
+        Instant newest = Instant.parse(library.get(0)[1]);
+        for (int i = 1; i <= 3; i++) {
+            library.add(0, new String[] {"new" + i, newest.plusSeconds(i * 60L).toString()});
+        }
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+
+        assertEquals(1, pageCalls.get());
+        assertEquals(123, savedTrackRepository.countByUserId(user.getId()));
+        assertEquals("spotify:track:new3", savedTracks.page(user, null, 0, 50).orElseThrow().tracks().get(0).uri());
+    }
+
+    @Test
+    void removedSongs_triggerFullResync() {
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+        library.remove(60);
+        pageCalls.set(0);
+
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+
+        assertEquals(119, savedTrackRepository.countByUserId(user.getId()));
+        assertEquals(3, pageCalls.get()); // page 0 is reused by the full pass
+    }
+
+    @Test
+    void songsWithNoTrack_areCountedButNotStored_andSyncStaysIncremental() {
+        Instant newest = Instant.parse(library.get(0)[1]);
+        library.add(0, new String[] {null, newest.plusSeconds(60).toString()}); // a local file
+        library.add(70, new String[] {null, library.get(70)[1]});
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+        assertEquals(120, savedTrackRepository.countByUserId(user.getId()));
+        pageCalls.set(0);
+
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+        assertEquals(1, pageCalls.get());
+
+        library.add(0, new String[] {"new1", newest.plusSeconds(120).toString()});
+        library.add(0, new String[] {null, newest.plusSeconds(180).toString()});
+        pageCalls.set(0);
+        ReflectionTestUtils.invokeMethod(savedTracks, "sync", user);
+
+        assertEquals(1, pageCalls.get());
+        assertEquals(121, savedTrackRepository.countByUserId(user.getId()));
+    }
+
+    private String page(int offset) throws Exception {
+        List<Object> items = new ArrayList<>();
+        for (int i = offset; i < Math.min(offset + 50, library.size()); i++) {
+            String trackId = library.get(i)[0];
+            Map<String, Object> item = new HashMap<>();
+            item.put("added_at", library.get(i)[1]);
+            item.put("track", trackId == null ? null : Map.of(
+                            "id", trackId,
+                            "name", "Song " + trackId,
+                            "uri", "spotify:track:" + trackId,
+                            "artists", List.of(Map.of("name", "Artist")),
+                            "album", Map.of("name", "Album", "images", List.of())));
+            items.add(item);
+        }
+        Map<String, Object> page = new HashMap<>();
+        page.put("items", items);
+        page.put("total", library.size());
+        page.put("next", offset + 50 < library.size() ? "more" : null);
+        return objectMapper.writeValueAsString(page);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyCircuitBreaker;
+import com.example.soundscape.spotify.SpotifyCircuitBreaker.State;
+import com.example.soundscape.spotify.SpotifyRequestScheduler;
+import com.example.soundscape.spotify.SpotifyTokenManager;
+import com.example.soundscape.spotify.SpotifyUnavailableException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.URI;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SpotifyCircuitBreakerTest {
+
+    private static final URI DEVICES = URI.create("https://api.spotify.com/v1/me/player/devices");
+    private static final URI PAUSE = URI.create("https://api.spotify.com/v1/me/player/pause");
+    private static final URI PLAYLIST = URI.create("https://api.spotify.com/v1/playlists/37i9dQZF1DXcBWIGoYBM5M/tracks");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SpotifyCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreaker = new SpotifyCircuitBreaker(meterRegistry, 10, 4, 50, Duration.ofMillis(100), 2);
+    }
+
+    @Test
+    void failingEndpoint_opensAndFailsFast_withoutAffectingOthers() {
+        circuitBreaker.acquire(DEVICES).success();
+        circuitBreaker.acquire(DEVICES).failure();
+        circuitBreaker.acquire(PAUSE).success();
+        assertEquals(State.CLOSED, circuitBreaker.state("me/player"));
+
+        circuitBreaker.acquire(PAUSE).failure(); // 2 of 4 calls to me/player failed
+
+        assertEquals(State.OPEN, circuitBreaker.state("me/player"));
+        assertThrows(SpotifyUnavailableException.class, () -> circuitBreaker.acquire(DEVICES));
+        circuitBreaker.acquire(PLAYLIST).success();
+        assertEquals(State.CLOSED, circuitBreaker.state("playlists"));
+
+        assertEquals(1.0, meterRegistry.get("spotify.circuit.rejected").tag("endpoint", "me/player").counter().count());
+        assertEquals(1.0, meterRegistry.get("spotify.circuit.state")
+                .tag("endpoint", "me/player").tag("state", "open").gauge().value());
+    }
+
+    @Test
+    void afterOpenDuration_successfulTrialsCloseTheCircuit() throws InterruptedException {
+        open();
+        Thread.sleep(150);
+
+        SpotifyCircuitBreaker.Permit first = circuitBreaker.acquire(DEVICES);
+        SpotifyCircuitBreaker.Permit second = circuitBreaker.acquire(DEVICES);
+        assertThrows(SpotifyUnavailableException.class, () -> circuitBreaker.acquire(DEVICES)); // only two trials
+        assertEquals(State.HALF_OPEN, circuitBreaker.state("me/player"));
+
+        first.success();
+        second.success();
+
+        assertEquals(State.CLOSED, circuitBreaker.state("me/player"));
+    }
+
+    @Test
+    void failedTrial_reopensTheCircuit() throws InterruptedException {
+        open();
+        Thread.sleep(150);
+
+        circuitBreaker.acquire(DEVICES).failure();
+
+        assertEquals(State.OPEN, circuitBreaker.state("me/player"));
+        assertThrows(SpotifyUnavailableException.class, () -> circuitBreaker.acquire(DEVICES));
+    }
+
+    @Test
+    void abandonedCalls_areNotCounted() {
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.acquire(DEVICES).abandon();
+        }
+        circuitBreaker.acquire(DEVICES).failure();
+
+        assertEquals(State.CLOSED, circuitBreaker.state("me/player"));
+    }
+
+    @Test
+    void aRequestThatCannotBeBuilt_givesItsTrialSlotBack() throws InterruptedException {
+        // A header value with a line break makes the JDK refuse to build the request
+        SpotifyApiClient apiClient = apiClient("token\nbroken", 20);
+        open();
+        Thread.sleep(150);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalArgumentException.class, () -> apiClient.get(new User(), "/me/player/devices"));
+        }
+
+        // Both trial slots are free again
+        circuitBreaker.acquire(DEVICES).success();
+        circuitBreaker.acquire(DEVICES).success();
+        assertEquals(State.CLOSED, circuitBreaker.state("me/player"));
+    }
+
+    @Test
+    void noFreeLocalConnection_isNotASpotifyFailure() {
+        // No connections to the route at all, so every call times out waiting for one
+        SpotifyApiClient apiClient = apiClient("token", 0);
+
+        for (int i = 0; i < 6; i++) {
+            assertThrows(ResourceAccessException.class, () -> apiClient.get(new User(), "/me/player/devices"));
+        }
+
+        assertEquals(State.CLOSED, circuitBreaker.state("me/player"));
+    }
+
+    // A client for a Spotify that is never reached, giving calls 50ms each
+    private SpotifyApiClient apiClient(String accessToken, int maxPerRoute) {
+        SpotifyTokenManager tokenManager = mock(SpotifyTokenManager.class);
+        when(tokenManager.accessToken(any(User.class))).thenReturn(accessToken);
+        return new SpotifyApiClient(new ObjectMapper(), new SpotifyRequestScheduler(meterRegistry, 1_000, 100),
+                tokenManager, circuitBreaker, "http://127.0.0.1:9", Duration.ofMillis(50), Duration.ofMillis(50),
+                Duration.ofMillis(50), maxPerRoute, 1);
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.acquire(DEVICES).failure();
+        }
+        assertEquals(State.OPEN, circuitBreaker.state("me/player"));
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.soundscape;
+
+import com.example.soundscape.spotify.SpotifyPayloads.SavedTrack;
+import com.example.soundscape.spotify.SpotifyPayloads.SavedTracksPage;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parsing a recorded 50-item /me/tracks page: binding into SpotifyPayloads records must give
+ * the same values as the old JsonNode tree + nested HashMap copy, while allocating less.
+ */
+public class SpotifyPayloadParsingTest {
+
+    private static final int WARMUP = 300;
+    private static final int ITERATIONS = 300;
+
+    private final ObjectReader reader = new ObjectMapper().reader()
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private final ObjectReader pageReader = reader.forType(SavedTracksPage.class);
+
+    @Test
+    void recordBinding_matchesTreeParsing() throws IOException {
+        String json = payload();
+
+        List<Map<String, Object>> fromTree = viaTree(json);
+        SavedTracksPage page = pageReader.readValue(json);
+
+        assertEquals(812, page.total());
+        assertEquals(fromTree.size(), page.items().size());
+        for (int i = 0; i < fromTree.size(); i++) {
+            SavedTrack item = page.items().get(i);
+            Map<String, Object> expected = fromTree.get(i);
+            assertEquals(expected.get("added_at"), item.addedAt());
+            assertEquals(expected.get("id"), item.track().id());
+            assertEquals(expected.get("name"), item.track().name());
+            assertEquals(expected.get("uri"), item.track().uri());
+            assertEquals(expected.get("duration_ms"), item.track().durationMs());
+            assertEquals(expected.get("artists"), item.track().artistNames());
+            assertEquals(expected.get("album_name"), item.track().album().name());
+            assertEquals(((List<?>) expected.get("album_images")).size(), item.track().album().images().size());
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void recordBinding_allocatesLessThanTreeParsing() throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String json = payload();
+
+        for (int i = 0; i < WARMUP; i++) {
+            viaTree(json);
+            pageReader.readValue(json);
+        }
+
+        long treeBytes = allocatedPerCall(threads, () -> viaTree(json));
+        long recordBytes = allocatedPerCall(threads, () -> pageReader.readValue(json));
+
+        System.out.println("saved-tracks page (" + json.length() / 1024 + " KB): tree+maps=" + treeBytes / 1024
+                + " KB/op, records=" + recordBytes / 1024 + " KB/op");
+        assertTrue(recordBytes < treeBytes, "record binding should allocate less than tree parsing");
+    }
+
+    private interface Parse {
+        Object run() throws IOException;
+    }
+
+    private long allocatedPerCall(com.sun.management.ThreadMXBean threads, Parse parse) throws IOException {
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            parse.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+    }
+
+    // How SpotifyService read these pages before: a full tree, then a HashMap copy per track
+    private List<Map<String, Object>> viaTree(String json) throws IOException {
+        JsonNode root = reader.readTree(json);
+        List<Map<String, Object>> tracks = new ArrayList<>();
+        for (JsonNode item : root.get("items")) {
+            JsonNode track = item.get("track");
+            Map<String, Object> trackInfo = new HashMap<>();
+            trackInfo.put("added_at", item.get("added_at").asText());
+            trackInfo.put("id", track.get("id").asText());
+            trackInfo.put("name", track.get("name").asText());
+            trackInfo.put("uri", track.get("uri").asText());
+            trackInfo.put("duration_ms", track.get("duration_ms").asInt());
+
+            List<String> artists = new ArrayList<>();
+            for (JsonNode artist : track.get("artists")) {
+                artists.add(artist.get("name").asText());
+            }
+            trackInfo.put("artists", artists);
+
+            JsonNode album = track.get("album");
+            trackInfo.put("album_name", album.get("name").asText());
+            List<Map<String, Object>> images = new ArrayList<>();
+            for (JsonNode imageNode : album.get("images")) {
+                Map<String, Object> image = new HashMap<>();
+                image.put("url", imageNode.get("url").asText());
+                images.add(image);
+            }
+            trackInfo.put("album_images", images);
+            tracks.add(trackInfo);
+        }
+        return tracks;
+    }
+
+    private static String payload() throws IOException {
+        try (InputStream in = SpotifyPayloadParsingTest.class.getResourceAsStream("/spotify/saved-tracks.json")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.soundscape;
+
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPriority;
+import com.example.soundscape.spotify.SpotifyRequestScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SpotifyRequestScheduler's lanes and turns, and Retry-After parsing. Waiters are queued
+ * while the scheduler is paused by a 429, so the order they are granted in depends only on
+ * the lanes, not on when each thread happened to start.
+ */
+public class SpotifyRequestSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> granted = Collections.synchronizedList(new ArrayList<>());
+    private final List<Thread> threads = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    @Test
+    void usersTakeTurnsInsideALane() throws Exception {
+        SpotifyRequestScheduler scheduler = new SpotifyRequestScheduler(meterRegistry, 20, 1);
+        scheduler.onThrottled(Duration.ofMillis(300));
+        for (int i = 1; i <= 5; i++) {
+            queue(scheduler, "burst", SpotifyPriority.BACKGROUND, "burst" + i);
+        }
+        queue(scheduler, "other", SpotifyPriority.BACKGROUND, "other");
+
+        awaitGranted(6);
+        // The second user is served after one of the first user's five, not after all of them
+        assertEquals(List.of("burst1", "other", "burst2", "burst3", "burst4", "burst5"), granted);
+    }
+
+    @Test
+    void playbackIsServedBeforeBackground() throws Exception {
+        SpotifyRequestScheduler scheduler = new SpotifyRequestScheduler(meterRegistry, 20, 1);
+        scheduler.onThrottled(Duration.ofMillis(300));
+        queue(scheduler, "a", SpotifyPriority.BACKGROUND, "background1");
+        queue(scheduler, "b", SpotifyPriority.BACKGROUND, "background2");
+        queue(scheduler, "c", SpotifyPriority.PLAYBACK, "playback");
+
+        awaitGranted(3);
+        assertEquals(List.of("playback", "background1", "background2"), granted);
+    }
+
+    @Test
+    void noPermitWithinMaxWait_isRejected() {
+        SpotifyRequestScheduler scheduler = new SpotifyRequestScheduler(meterRegistry, 1, 1);
+        scheduler.acquire("user", SpotifyPriority.INTERACTIVE, Duration.ofSeconds(1)); // the only token
+
+        assertThrows(ResourceAccessException.class,
+                () -> scheduler.acquire("user", SpotifyPriority.INTERACTIVE, Duration.ofMillis(50)));
+        assertEquals(1, meterRegistry.get("spotify.scheduler.rejected").counter().count());
+        assertEquals(0, depth(SpotifyPriority.INTERACTIVE));
+    }
+
+    @Test
+    void aThrottle_holdsEveryWaiterUntilRetryAfter() throws Exception {
+        SpotifyRequestScheduler scheduler = new SpotifyRequestScheduler(meterRegistry, 1_000, 10);
+        long start = System.nanoTime();
+        scheduler.onThrottled(Duration.ofMillis(300));
+        queue(scheduler, "a", SpotifyPriority.PLAYBACK, "a");
+        queue(scheduler, "b", SpotifyPriority.BACKGROUND, "b");
+
+        awaitGranted(2);
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(300).toNanos());
+        assertEquals(1, meterRegistry.get("spotify.scheduler.throttled").counter().count());
+    }
+
+    @Test
+    void retryAfter_deltaSecondsHttpDateOrDefault() {
+        assertEquals(Duration.ofSeconds(7), retryAfter("7"));
+        assertEquals(Duration.ZERO, retryAfter("-3"));
+
+        String inAMinute = ZonedDateTime.now().plusSeconds(60).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        Duration untilDate = retryAfter(inAMinute);
+        assertTrue(untilDate.compareTo(Duration.ofSeconds(58)) >= 0 && untilDate.compareTo(Duration.ofSeconds(60)) <= 0,
+                "until " + inAMinute + ": " + untilDate);
+        String aMinuteAgo = ZonedDateTime.now().minusSeconds(60).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        assertEquals(Duration.ZERO, retryAfter(aMinuteAgo));
+
+        // Missing, blank or unreadable: the 1s default
+        assertEquals(Duration.ofSeconds(1), retryAfter(null));
+        assertEquals(Duration.ofSeconds(1), retryAfter(" "));
+        assertEquals(Duration.ofSeconds(1), retryAfter("soon"));
+    }
+
+    // Start a thread that waits for a permit, and return once it is queued
+    private void queue(SpotifyRequestScheduler scheduler, String owner, SpotifyPriority priority, String name)
+            throws InterruptedException {
+        double before = depth(priority);
+        Thread thread = new Thread(() -> {
+            scheduler.acquire(owner, priority, Duration.ofSeconds(10));
+            granted.add(name);
+        });
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (depth(priority) == before) {
+            assertTrue(System.nanoTime() < deadline, name + " never queued");
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitGranted(int count) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(Duration.ofSeconds(10).toMillis());
+        }
+        assertEquals(count, granted.size());
+    }
+
+    private double depth(SpotifyPriority priority) {
+        return meterRegistry.get("spotify.scheduler.queue.depth").tag("lane", priority.name().toLowerCase()).gauge().value();
+    }
+
+    private static Duration retryAfter(String value) {
+        HttpHeaders headers = new HttpHeaders();
+        if (value != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, value);
+        }
+        return ReflectionTestUtils.invokeMethod(SpotifyApiClient.class, "parseRetryAfter", headers);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.SpotifyEndpoint;
+import com.example.soundscape.spotify.SpotifyRequestCoalescer;
+import com.example.soundscape.spotify.SpotifyResponseCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the per-user Spotify response cache.
+ */
+public class SpotifyResponseCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private SpotifyResponseCache newCache(int maxEntries) {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("spotify.cache.ttl.devices", "50ms");
+        environment.setConversionService(new ApplicationConversionService());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new SpotifyResponseCache(environment, meterRegistry, new SpotifyRequestCoalescer(meterRegistry), maxEntries);
+    }
+
+    private Map<String, Object> load(SpotifyResponseCache cache, User user, SpotifyEndpoint endpoint, String params) {
+        return cache.get(user, endpoint, params, () -> Map.of("load", loads.incrementAndGet()), result -> true);
+    }
+
+    private static User spotifyUser(String spotifyId) {
+        User user = new User(spotifyId, spotifyId + "@example.com", "pw");
+        user.setSpotifyUserId(spotifyId);
+        return user;
+    }
+
+    @Test
+    void get_servesRepeatReadsFromCache() {
+        SpotifyResponseCache cache = newCache(100);
+        User alice = spotifyUser("alice");
+
+        load(cache, alice, SpotifyEndpoint.PLAYLISTS, "50");
+        load(cache, alice, SpotifyEndpoint.PLAYLISTS, "50");
+        load(cache, alice, SpotifyEndpoint.PLAYLISTS, "20");
+        load(cache, spotifyUser("bob"), SpotifyEndpoint.PLAYLISTS, "50");
+
+        assertEquals(3, loads.get(), "Only distinct (user, endpoint, params) keys should load.");
+        assertEquals(1, cache.stats().hits());
+        assertEquals(3, cache.stats().misses());
+    }
+
+    @Test
+    void get_reloadsAfterEndpointTtl() throws InterruptedException {
+        SpotifyResponseCache cache = newCache(100);
+        User alice = spotifyUser("alice");
+
+        load(cache, alice, SpotifyEndpoint.DEVICES, "");
+        load(cache, alice, SpotifyEndpoint.TOP_ARTISTS, "short_term:20");
+        Thread.sleep(80);
+        load(cache, alice, SpotifyEndpoint.DEVICES, "");
+        load(cache, alice, SpotifyEndpoint.TOP_ARTISTS, "short_term:20");
+
+        assertEquals(3, loads.get(), "Devices should expire, top artists should not.");
+        assertEquals(1, cache.stats().expiredEvictions());
+    }
+
+    @Test
+    void get_doesNotCacheRejectedResults() {
+        SpotifyResponseCache cache = newCache(100);
+        User alice = spotifyUser("alice");
+
+        cache.get(alice, SpotifyEndpoint.PROFILE, "", () -> Map.of("displayName", "Unknown"), profile -> profile.containsKey("email"));
+        cache.get(alice, SpotifyEndpoint.PROFILE, "", () -> Map.of("displayName", "Unknown"), profile -> profile.containsKey("email"));
+
+        assertEquals(0, cache.stats().hits());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void get_evictsLeastRecentlyUsedWhenFull() {
+        SpotifyResponseCache cache = newCache(2);
+        User alice = spotifyUser("alice");
+
+        load(cache, alice, SpotifyEndpoint.SAVED_TRACKS, "0");
+        load(cache, alice, SpotifyEndpoint.SAVED_TRACKS, "50");
+        load(cache, alice, SpotifyEndpoint.SAVED_TRACKS, "0");
+        load(cache, alice, SpotifyEndpoint.SAVED_TRACKS, "100");
+
+        assertEquals(2, cache.stats().size());
+        assertEquals(1, cache.stats().sizeEvictions());
+        load(cache, alice, SpotifyEndpoint.SAVED_TRACKS, "0");
+        assertEquals(3, loads.get(), "Recently used offset 0 should have survived the eviction.");
+    }
+
+    @Test
+    void invalidateAfterPlayback_dropsOnlyPlaybackSensitiveEntries() {
+        SpotifyResponseCache cache = newCache(100);
+        User alice = spotifyUser("alice");
+        User bob = spotifyUser("bob");
+
+        load(cache, alice, SpotifyEndpoint.DEVICES, "");
+        load(cache, alice, SpotifyEndpoint.PLAYLISTS, "50");
+        load(cache, bob, SpotifyEndpoint.DEVICES, "");
+
+        cache.invalidateAfterPlayback(alice);
+
+        assertEquals(2, cache.stats().size());
+        load(cache, alice, SpotifyEndpoint.DEVICES, "");
+        load(cache, bob, SpotifyEndpoint.DEVICES, "");
+        assertEquals(4, loads.get());
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.soundscape;
+
+import com.example.soundscape.spotify.SpotifyResponseConverter;
+import com.example.soundscape.spotify.SpotifyResponses.ApiError;
+import com.example.soundscape.spotify.SpotifyResponses.ApiResponse;
+import com.example.soundscape.spotify.SpotifyResponses.Device;
+import com.example.soundscape.spotify.SpotifyResponses.DevicesResponse;
+import com.example.soundscape.spotify.SpotifyResponses.ImageUrl;
+import com.example.soundscape.spotify.SpotifyResponses.PlaybackStatus;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistSummary;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistTrack;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistTracksResponse;
+import com.example.soundscape.spotify.SpotifyResponses.PlaylistsResponse;
+import com.example.soundscape.spotify.SpotifyResponses.SavedTrackSummary;
+import com.example.soundscape.spotify.SpotifyResponses.SearchResponse;
+import com.example.soundscape.spotify.SpotifyResponses.TrackCount;
+import com.example.soundscape.spotify.SpotifyResponses.TrackResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Locks the JSON the /api/spotify endpoints send to the templates' scripts. These are the
+ * shapes the old Map-based responses produced; a record change that alters them fails here.
+ */
+public class SpotifyResponsesJsonTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpotifyResponseConverter converter = new SpotifyResponseConverter(objectMapper);
+
+    @Test
+    void playlists() throws IOException {
+        assertJson("""
+                {"items":[{"id":"p1","name":"Road trip","description":"",
+                           "tracks":{"total":12},"images":[{"url":"https://i.scdn.co/p1"}]}],
+                 "total":1}""",
+                new PlaylistsResponse(List.of(new PlaylistSummary("p1", "Road trip", "", new TrackCount(12),
+                        List.of(new ImageUrl("https://i.scdn.co/p1")))), 1));
+    }
+
+    @Test
+    void playlistTracks() throws IOException {
+        assertJson("""
+                {"items":[{"id":"t1","name":"Song","uri":"spotify:track:t1","duration_ms":215000,
+                           "artists":["A","B"],"artist_name":"A, B","album_name":"Album",
+                           "album_images":[{"url":"https://i.scdn.co/a1"}]}],
+                 "total":30}""",
+                new PlaylistTracksResponse(List.of(new PlaylistTrack("t1", "Song", "spotify:track:t1", 215000,
+                        List.of("A", "B"), "A, B", "Album", List.of(new ImageUrl("https://i.scdn.co/a1")))), 30));
+    }
+
+    @Test
+    void devices() throws IOException {
+        assertJson("""
+                {"devices":[{"id":"d1","name":"Laptop","type":"Computer","is_active":true,
+                             "is_private_session":false,"is_restricted":false,"volume_percent":65}]}""",
+                new DevicesResponse(List.of(new Device("d1", "Laptop", "Computer", true, false, false, 65))));
+    }
+
+    @Test
+    void status() throws IOException {
+        assertJson("""
+                {"isPlaying":"true","trackName":"Song","artistName":"A","albumName":"Album",
+                 "albumImage":"https://i.scdn.co/a1","trackId":"t1"}""",
+                PlaybackStatus.playing("Song", "A", "Album", "https://i.scdn.co/a1", "t1"));
+        assertJson("""
+                {"isPlaying":"false","trackName":"No track currently playing"}""",
+                PlaybackStatus.notPlaying("No track currently playing"));
+    }
+
+    @Test
+    void search() throws IOException {
+        // profile-edit.html reads id, name, artist, image and spotifyUrl
+        assertJson("""
+                {"tracks":[{"id":"t1","name":"Song","artist":"A","album":"Album","image":"",
+                            "spotifyUrl":"https://open.spotify.com/track/t1"}]}""",
+                new SearchResponse(List.of(new TrackResult("t1", "Song", "A", "Album", "",
+                        "https://open.spotify.com/track/t1"))));
+    }
+
+    @Test
+    void savedTracks() throws IOException {
+        // now-playing.html "Load more" reads name, artist, uri and image; the body is a bare array
+        assertEquals(objectMapper.readTree("""
+                        [{"name":"Song","artist":"A","uri":"spotify:track:t1","image":"/images/default.png"}]"""),
+                objectMapper.valueToTree(List.of(new SavedTrackSummary("Song", "A", "spotify:track:t1", "/images/default.png"))));
+    }
+
+    @Test
+    void error() throws IOException {
+        assertJson("""
+                {"error":"Spotify not connected"}""", new ApiError("Spotify not connected"));
+    }
+
+    private void assertJson(String expected, ApiResponse response) throws IOException {
+        assertTrue(converter.canWrite(response.getClass(), MediaType.APPLICATION_JSON));
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(response, MediaType.APPLICATION_JSON, output);
+        assertEquals(objectMapper.readTree(expected), objectMapper.readTree(output.getBodyAsString()));
+    }
+}
@@ -0,0 +1,589 @@
+package com.example.soundscape;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Embedded stand-in for the part of the Spotify Web API the app calls (me, top, player,
+ * playlists, tracks, artists, search, recently-played, devices, saved tracks) plus the
+ * accounts token endpoint, for integration tests and load tests that must not hit Spotify.
+ *
+ * Payloads are generated from a seeded catalog of artists (with genres), albums and tracks,
+ * so runs with the same seed see the same data. Each access token is its own listener: top
+ * items, history, library, playlists and devices are derived from the token, and the player
+ * state follows the playback commands sent with it.
+ *
+ * Faults are injected per request, for every endpoint or for one endpoint ("me/player",
+ * "search", as in SpotifyCircuitBreaker): a latency drawn from a distribution, and shares of
+ * 429s with Retry-After, 5xx and timeouts (the request is held for hang, then the connection
+ * is dropped without a response).
+ *
+ * main serves it on a fixed port, for running the whole app against it:
+ * spotify.api.base-url=http://127.0.0.1:PORT/v1 and
+ * spring.security.oauth2.client.provider.spotify.token-uri=http://127.0.0.1:PORT/api/token
+ */
+public class SpotifyStandIn implements AutoCloseable {
+
+    // Delay before each response, in milliseconds
+    @FunctionalInterface
+    public interface Latency {
+        long sampleMillis(Random random);
+
+        static Latency none() {
+            return random -> 0;
+        }
+
+        static Latency fixed(Duration delay) {
+            return random -> delay.toMillis();
+        }
+
+        static Latency uniform(Duration min, Duration max) {
+            return random -> min.toMillis() + (long) (random.nextDouble() * (max.toMillis() - min.toMillis()));
+        }
+
+        // Long-tailed, like real network latency: half the requests under median, 1% over p99
+        static Latency logNormal(Duration median, Duration p99) {
+            double sigma = Math.log((double) p99.toMillis() / median.toMillis()) / 2.326;
+            return random -> Math.round(median.toMillis() * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    public static final class Faults {
+        private Latency latency = Latency.none();
+        private double throttleRate;
+        private Duration retryAfter = Duration.ofSeconds(1);
+        private double serverErrorRate;
+        private double timeoutRate;
+        private Duration hang = Duration.ofSeconds(30);
+
+        public static Faults none() {
+            return new Faults();
+        }
+
+        public Faults latency(Latency latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        // Share of requests answered 429 with the given Retry-After
+        public Faults throttle(double rate, Duration retryAfter) {
+            this.throttleRate = rate;
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        // Share of requests answered 500, 502 or 503
+        public Faults serverErrors(double rate) {
+            this.serverErrorRate = rate;
+            return this;
+        }
+
+        // Share of requests held for hang and then dropped without a response
+        public Faults timeouts(double rate, Duration hang) {
+            this.timeoutRate = rate;
+            this.hang = hang;
+            return this;
+        }
+    }
+
+    private static final String[] GENRES = {
+            "indie rock", "indie pop", "dream pop", "shoegaze", "post-punk", "art pop", "synthpop",
+            "electropop", "house", "deep house", "techno", "ambient", "drum and bass", "uk garage",
+            "hip hop", "conscious hip hop", "trap", "r&b", "neo soul", "funk", "disco", "jazz",
+            "bebop", "jazz fusion", "classical", "modern classical", "folk", "indie folk", "americana",
+            "country", "bluegrass", "metal", "doom metal", "punk", "hardcore", "emo", "k-pop",
+            "j-pop", "latin pop", "reggaeton", "afrobeats", "reggae", "blues", "soul", "gospel"};
+    private static final String[] WORDS = {
+            "Midnight", "Golden", "Echo", "Velvet", "Neon", "Paper", "Silver", "Wild", "Quiet",
+            "Electric", "Broken", "Summer", "Ocean", "Glass", "Fever", "Radio", "Lonely", "Bright",
+            "Crystal", "Shadow", "River", "Static", "Honey", "Violet", "Northern", "Satellite",
+            "Garden", "Heart", "Machine", "Light", "Love", "Dream", "City", "Fire", "Rain", "Stars"};
+
+    // Returned by route for commands, answered 204 like Spotify's player endpoints
+    private static final Object NO_CONTENT = new Object();
+
+    private static final String ID_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private record Artist(String id, String name, List<String> genres, int popularity, long followers) {}
+
+    private record Album(String id, String name, Artist artist, String releaseDate, String image) {}
+
+    private record Track(String id, String name, List<Artist> artists, Album album, int durationMs,
+                         int popularity, boolean explicit) {}
+
+    // What a listener's player is doing; changed by the playback commands sent with its token
+    private static final class Player {
+        boolean playing;
+        Track track;
+        int volume = 60;
+        String deviceId;
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long seed;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final List<Artist> artists = new ArrayList<>();
+    private final List<Track> tracks = new ArrayList<>();
+    private final Map<String, Artist> artistsById = new HashMap<>();
+    private final Map<String, Track> tracksById = new HashMap<>();
+
+    private volatile Faults defaultFaults = Faults.none();
+    private final Map<String, Faults> endpointFaults = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final Map<String, Player> players = new ConcurrentHashMap<>();
+    private final AtomicInteger issuedTokens = new AtomicInteger();
+
+    public SpotifyStandIn(long seed, int catalogArtists, int catalogTracks) throws IOException {
+        this(seed, catalogArtists, catalogTracks, 0);
+    }
+
+    public SpotifyStandIn(long seed, int catalogArtists, int catalogTracks, int port) throws IOException {
+        this.seed = seed;
+        generateCatalog(new Random(seed), catalogArtists, catalogTracks);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "spotify-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/v1/", this::handleApi);
+        server.createContext("/api/token", this::handleToken);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        SpotifyStandIn standIn = new SpotifyStandIn(seed, 2_000, 20_000, port);
+        standIn.faults(Faults.none().latency(Latency.logNormal(Duration.ofMillis(60), Duration.ofMillis(400))));
+        System.out.println("Spotify stand-in serving " + standIn.baseUrl());
+        Thread.currentThread().join();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    public String tokenUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/token";
+    }
+
+    public void faults(Faults faults) {
+        this.defaultFaults = faults;
+    }
+
+    public void faults(String endpoint, Faults faults) {
+        endpointFaults.put(endpoint, faults);
+    }
+
+    public void clearFaults() {
+        defaultFaults = Faults.none();
+        endpointFaults.clear();
+    }
+
+    // Requests received for an endpoint ("me/top", "tracks"...), faulted ones included
+    public int requests(String endpoint) {
+        AtomicInteger count = requests.get(endpoint);
+        return count != null ? count.get() : 0;
+    }
+
+    public int totalRequests() {
+        return requests.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    // An artist id from the catalog, for tests that look artists up directly
+    public String artistId(int index) {
+        return artists.get(index).id();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void generateCatalog(Random random, int artistCount, int trackCount) {
+        for (int i = 0; i < artistCount; i++) {
+            List<String> genres = new ArrayList<>();
+            int genreCount = random.nextInt(4);
+            while (genres.size() < genreCount) {
+                String genre = GENRES[random.nextInt(GENRES.length)];
+                if (!genres.contains(genre)) {
+                    genres.add(genre);
+                }
+            }
+            Artist artist = new Artist(id(random), words(random, 1 + random.nextInt(2)), genres,
+                    random.nextInt(100), (long) Math.exp(random.nextDouble() * 16));
+            artists.add(artist);
+            artistsById.put(artist.id(), artist);
+        }
+        List<Album> albums = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, trackCount / 10); i++) {
+            Artist artist = artists.get(skewed(random, artists.size()));
+            String id = id(random);
+            albums.add(new Album(id, words(random, 1 + random.nextInt(3)), artist,
+                    (1960 + random.nextInt(66)) + "-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(10),
+                    "https://i.scdn.co/image/" + id));
+        }
+        for (int i = 0; i < trackCount; i++) {
+            Album album = albums.get(random.nextInt(albums.size()));
+            List<Artist> trackArtists = new ArrayList<>(List.of(album.artist()));
+            if (random.nextInt(5) == 0) {
+                trackArtists.add(artists.get(skewed(random, artists.size())));
+            }
+            Track track = new Track(id(random), words(random, 1 + random.nextInt(4)), trackArtists, album,
+                    120_000 + random.nextInt(240_000), random.nextInt(100), random.nextInt(8) == 0);
+            tracks.add(track);
+            tracksById.put(track.id(), track);
+        }
+    }
+
+    // Index biased towards the front of the list, so some artists are far more popular than others
+    private static int skewed(Random random, int size) {
+        return (int) (size * Math.pow(random.nextDouble(), 2.5));
+    }
+
+    private static String id(Random random) {
+        StringBuilder id = new StringBuilder(22);
+        for (int i = 0; i < 22; i++) {
+            id.append(ID_CHARS.charAt(random.nextInt(ID_CHARS.length())));
+        }
+        return id.toString();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            words.append(i > 0 ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String refreshToken = query(body).getOrDefault("refresh_token", "listener");
+            send(exchange, 200, Map.of(
+                    "access_token", refreshToken + "-" + issuedTokens.incrementAndGet(),
+                    "token_type", "Bearer",
+                    "expires_in", 3600));
+        }
+    }
+
+    private void handleApi(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath().substring("/v1/".length());
+            String[] segments = path.split("/");
+            String endpoint = segments[0].equals("me") && segments.length > 1 ? "me/" + segments[1] : segments[0];
+            requests.computeIfAbsent(endpoint, key -> new AtomicInteger()).incrementAndGet();
+
+            if (injectFault(exchange, endpointFaults.getOrDefault(endpoint, defaultFaults))) {
+                return;
+            }
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !authorization.startsWith("Bearer ")) {
+                send(exchange, 401, error(401, "No token provided"));
+                return;
+            }
+            // A refreshed token ("listener-7") is still the same listener
+            String listener = authorization.substring(7).replaceFirst("-\\d+$", "");
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            Object response = route(exchange.getRequestMethod(), segments, query, listener);
+            if (response == null) {
+                send(exchange, 404, error(404, "Service not found"));
+            } else if (response == NO_CONTENT) {
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                send(exchange, 200, response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // True if a fault was served instead of the real response
+    private boolean injectFault(HttpExchange exchange, Faults faults) throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = Math.max(0, faults.latency.sampleMillis(random));
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+        double roll = random.nextDouble();
+        if (roll < faults.timeoutRate) {
+            Thread.sleep(faults.hang.toMillis());
+            return true; // closed without a response
+        }
+        roll -= faults.timeoutRate;
+        if (roll < faults.throttleRate) {
+            exchange.getResponseHeaders().add("Retry-After", String.valueOf(faults.retryAfter.toSeconds()));
+            send(exchange, 429, error(429, "API rate limit exceeded"));
+            return true;
+        }
+        roll -= faults.throttleRate;
+        if (roll < faults.serverErrorRate) {
+            int status = new int[]{500, 502, 503}[random.nextInt(3)];
+            send(exchange, status, error(status, "Server error"));
+            return true;
+        }
+        return false;
+    }
+
+    private Object route(String method, String[] segments, Map<String, String> query, String listener) {
+        Random random = new Random(seed ^ listener.hashCode());
+        int limit = Integer.parseInt(query.getOrDefault("limit", "20"));
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        String resource = String.join("/", segments);
+
+        if (method.equals("GET")) {
+            switch (resource) {
+                case "me":
+                    return Map.of("id", listener, "display_name", "Listener " + listener,
+                            "email", listener + "@example.com", "country", "SE", "product", "premium",
+                            "followers", Map.of("total", random.nextInt(500)),
+                            "images", List.of(Map.of("url", "https://i.scdn.co/image/" + listener)));
+                case "me/top/artists": {
+                    List<Artist> top = pick(random, artists, 50);
+                    return page(top.stream().map(this::artistJson).toList(), offset, limit);
+                }
+                case "me/top/tracks": {
+                    List<Track> top = pick(random, tracks, 50);
+                    return page(top.stream().map(this::trackJson).toList(), offset, limit);
+                }
+                case "me/tracks": {
+                    List<Track> saved = pick(random, tracks, 40 + random.nextInt(400));
+                    List<Object> items = new ArrayList<>();
+                    Instant addedAt = Instant.parse("2026-01-01T00:00:00Z");
+                    for (Track track : saved) {
+                        addedAt = addedAt.minusSeconds(3600 + random.nextInt(86_400));
+                        items.add(Map.of("added_at", addedAt.toString(), "track", trackJson(track)));
+                    }
+                    return page(items, offset, limit);
+                }
+                case "me/player/recently-played": {
+                    List<Object> items = new ArrayList<>();
+                    Instant playedAt = Instant.now();
+                    for (Track track : pick(random, tracks, limit)) {
+                        playedAt = playedAt.minusSeconds(track.durationMs() / 1000 + random.nextInt(600));
+                        items.add(Map.of("track", trackJson(track), "played_at", playedAt.toString()));
+                    }
+                    return Map.of("items", items, "limit", limit);
+                }
+                case "me/player/currently-playing":
+                case "me/player": {
+                    Player player = player(listener);
+                    synchronized (player) {
+                        if (player.track == null) {
+                            return NO_CONTENT;
+                        }
+                        return Map.of("is_playing", player.playing, "progress_ms", random.nextInt(player.track.durationMs()),
+                                "item", trackJson(player.track),
+                                "device", Map.of("id", player.deviceId != null ? player.deviceId : listener + "-phone",
+                                        "volume_percent", player.volume));
+                    }
+                }
+                case "me/player/devices": {
+                    Player player = player(listener);
+                    synchronized (player) {
+                        List<Object> devices = new ArrayList<>();
+                        for (String type : List.of("Computer", "Smartphone")) {
+                            String id = listener + "-" + type.toLowerCase(Locale.ROOT);
+                            devices.add(Map.of("id", id, "name", listener + "'s " + type, "type", type,
+                                    "is_active", id.equals(player.deviceId), "is_private_session", false,
+                                    "is_restricted", false, "volume_percent", player.volume));
+                        }
+                        return Map.of("devices", devices);
+                    }
+                }
+                case "me/playlists": {
+                    List<Object> playlists = new ArrayList<>();
+                    for (int i = 0; i < 25; i++) {
+                        String id = listener + "-playlist-" + i;
+                        playlists.add(Map.of("id", id, "name", words(random, 2), "description", "",
+                                "tracks", Map.of("total", playlistTracks(id).size()),
+                                "images", List.of(Map.of("url", "https://i.scdn.co/image/" + id))));
+                    }
+                    return page(playlists, offset, limit);
+                }
+                case "tracks":
+                    return Map.of("tracks", lookup(query.get("ids"), tracksById, this::trackJson));
+                case "artists":
+                    return Map.of("artists", lookup(query.get("ids"), artistsById, this::artistJson));
+                case "search":
+                    return Map.of("tracks", page(search(query.getOrDefault("q", "")), offset, limit));
+                default:
+                    break;
+            }
+            if (segments[0].equals("playlists") && segments.length == 2) {
+                List<Track> playlist = playlistTracks(segments[1]);
+                return Map.of("snapshot_id", "snapshot-" + segments[1], "name", "Playlist " + segments[1],
+                        "tracks", Map.of("total", playlist.size()));
+            }
+            if (segments[0].equals("playlists") && segments.length == 3 && segments[2].equals("tracks")) {
+                List<Object> items = playlistTracks(segments[1]).stream()
+                        .map(track -> (Object) Map.of("track", trackJson(track))).toList();
+                return page(items, offset, limit);
+            }
+            return null;
+        }
+
+        Player player = player(listener);
+        synchronized (player) {
+            switch (method + " " + resource) {
+                case "PUT me/player/play" -> {
+                    player.playing = true;
+                    if (player.track == null) {
+                        player.track = tracks.get(random.nextInt(tracks.size()));
+                    }
+                }
+                case "PUT me/player/pause" -> player.playing = false;
+                case "POST me/player/next", "POST me/player/previous" -> {
+                    player.track = tracks.get(ThreadLocalRandom.current().nextInt(tracks.size()));
+                    player.playing = true;
+                }
+                case "PUT me/player/volume" -> player.volume = Integer.parseInt(query.getOrDefault("volume_percent", "50"));
+                case "PUT me/player" -> player.deviceId = listener + "-computer";
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return NO_CONTENT;
+    }
+
+    private Player player(String listener) {
+        return players.computeIfAbsent(listener, key -> new Player());
+    }
+
+    private List<Track> playlistTracks(String playlistId) {
+        Random random = new Random(seed ^ playlistId.hashCode());
+        return pick(random, tracks, 10 + random.nextInt(290));
+    }
+
+    // Every term of the query starts a word of the track's name or one of its artists
+    private List<Object> search(String q) {
+        String[] terms = q.toLowerCase(Locale.ROOT).trim().split("\\s+");
+        List<Object> found = new ArrayList<>();
+        for (Track track : tracks) {
+            StringBuilder text = new StringBuilder(track.name());
+            track.artists().forEach(artist -> text.append(' ').append(artist.name()));
+            List<String> words = List.of(text.toString().toLowerCase(Locale.ROOT).split(" "));
+            boolean matches = true;
+            for (String term : terms) {
+                if (words.stream().noneMatch(word -> word.startsWith(term))) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                found.add(trackJson(track));
+            }
+        }
+        return found;
+    }
+
+    private static <T> List<T> pick(Random random, List<T> from, int count) {
+        List<T> picked = new ArrayList<>(count);
+        for (int i = 0; i < Math.min(count, from.size()); i++) {
+            picked.add(from.get(skewed(random, from.size())));
+        }
+        return picked;
+    }
+
+    private static Map<String, Object> page(List<?> items, int offset, int limit) {
+        List<?> window = items.subList(Math.min(offset, items.size()), Math.min(offset + limit, items.size()));
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", window);
+        page.put("total", items.size());
+        page.put("limit", limit);
+        page.put("offset", offset);
+        page.put("next", offset + limit < items.size() ? "offset=" + (offset + limit) : null);
+        return page;
+    }
+
+    // /tracks?ids= and /artists?ids=: one entry per id, null for unknown ones
+    private static <T> List<Object> lookup(String ids, Map<String, T> byId, Function<T, Object> toJson) {
+        List<Object> found = new ArrayList<>();
+        for (String id : ids == null ? new String[0] : ids.split(",")) {
+            T value = byId.get(id);
+            found.add(value != null ? toJson.apply(value) : null);
+        }
+        return found;
+    }
+
+    private Object artistJson(Artist artist) {
+        return Map.of("id", artist.id(), "name", artist.name(), "genres", artist.genres(),
+                "popularity", artist.popularity(), "followers", Map.of("total", artist.followers()),
+                "images", List.of(Map.of("url", "https://i.scdn.co/image/" + artist.id())),
+                "uri", "spotify:artist:" + artist.id());
+    }
+
+    private Object trackJson(Track track) {
+        Album album = track.album();
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", track.id());
+        json.put("name", track.name());
+        json.put("uri", "spotify:track:" + track.id());
+        json.put("duration_ms", track.durationMs());
+        json.put("popularity", track.popularity());
+        json.put("explicit", track.explicit());
+        json.put("artists", track.artists().stream()
+                .map(artist -> Map.of("id", artist.id(), "name", artist.name())).toList());
+        json.put("album", Map.of("id", album.id(), "name", album.name(), "release_date", album.releaseDate(),
+                "images", List.of(Map.of("url", album.image(), "width", 640, "height", 640))));
+        json.put("external_urls", Map.of("spotify", "https://open.spotify.com/track/" + track.id()));
+        return json;
+    }
+
+    private static Map<String, Object> error(int status, String message) {
+        return Map.of("error", Map.of("status", status, "message", message));
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.SpotifyService;
+import com.example.soundscape.services.TrackSearch;
+import com.example.soundscape.spotify.SpotifyResponses.DevicesResponse;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The whole app pointed at SpotifyStandIn through spotify.api.base-url, with short HTTP
+ * timeouts so injected hangs fail fast.
+ */
+@SpringBootTest(properties = {
+        "spotify.http.read-timeout=300ms",
+        "spotify.http.total-timeout=600ms"
+})
+public class SpotifyStandInTest {
+
+    private static final SpotifyStandIn standIn = start();
+
+    @Autowired
+    private SpotifyService spotifyService;
+
+    @Autowired
+    private TrackSearch trackSearch;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @DynamicPropertySource
+    static void spotifyUrls(DynamicPropertyRegistry registry) {
+        registry.add("spotify.api.base-url", standIn::baseUrl);
+        registry.add("spring.security.oauth2.client.provider.spotify.token-uri", standIn::tokenUrl);
+    }
+
+    @AfterEach
+    void clearFaults() {
+        standIn.clearFaults();
+    }
+
+    @AfterAll
+    static void stop() {
+        standIn.close();
+    }
+
+    @Test
+    void appReads_areServedFromGeneratedData() {
+        User user = listener("standin-reader");
+
+        assertEquals("Listener standin-reader", spotifyService.getUserProfile(user).get("displayName"));
+        assertEquals(20, ((List<?>) spotifyService.getUserTopArtistsDetailed(user, "short_term", 20).get("artists")).size());
+        assertEquals(2, spotifyService.getAvailableDevices(user).devices().size());
+        assertFalse(trackSearch.search(user, "love").orElseThrow().isEmpty());
+
+        Map<String, Object> recentlyPlayed = spotifyService.getRecentlyPlayed(user, 50);
+        assertEquals(50, ((List<?>) recentlyPlayed.get("tracks")).size());
+        assertFalse(((Map<?, ?>) recentlyPlayed.get("genre_analysis")).isEmpty());
+        assertTrue(standIn.requests("artists") >= 1);
+    }
+
+    @Test
+    void injectedFaults_degradeTheResultInsteadOfFailing() {
+        User user = listener("standin-faulted");
+
+        standIn.faults("me", SpotifyStandIn.Faults.none().serverErrors(1.0));
+        assertEquals("Unknown", spotifyService.getUserProfile(user).get("displayName"));
+
+        // A 429 is retried once after its Retry-After, then given up on
+        standIn.faults("me/top", SpotifyStandIn.Faults.none().throttle(1.0, Duration.ZERO));
+        assertTrue(spotifyService.getUserTopArtistsDetailed(user, "long_term", 20).isEmpty());
+        assertEquals(2, standIn.requests("me/top"));
+
+        // A hung request degrades to no devices after one attempt; it is not retried
+        standIn.faults("me/player", SpotifyStandIn.Faults.none().timeouts(1.0, Duration.ofSeconds(2)));
+        int playerRequests = standIn.requests("me/player");
+        assertSame(DevicesResponse.EMPTY, spotifyService.getAvailableDevices(user));
+        assertEquals(playerRequests + 1, standIn.requests("me/player"));
+    }
+
+    private User listener(String name) {
+        User user = new User(name, name + "@example.com", "password");
+        user.setSpotifyUserId(name);
+        user.setSpotifyAccessToken(name);
+        user.setSpotifyRefreshToken(name);
+        user.setSpotifyTokenExpiresAt(Instant.now().plus(Duration.ofHours(1)));
+        return userRepository.save(user);
+    }
+
+    private static SpotifyStandIn start() {
+        try {
+            return new SpotifyStandIn(42, 300, 3_000);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.spotify.SpotifyTokenManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * SpotifyTokenManager against a local stand-in for the Spotify token endpoint.
+ */
+public class SpotifyTokenManagerTest {
+
+    private final AtomicInteger tokenCalls = new AtomicInteger();
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private HttpServer tokenEndpoint;
+    private SpotifyTokenManager tokenManager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tokenEndpoint = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        tokenEndpoint.createContext("/api/token", exchange -> {
+            int call = tokenCalls.incrementAndGet();
+            sleep(50);
+            byte[] body = ("{\"access_token\":\"fresh-" + call + "\",\"token_type\":\"Bearer\",\"expires_in\":3600}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        tokenEndpoint.setExecutor(Executors.newFixedThreadPool(4));
+        tokenEndpoint.start();
+
+        ClientRegistration spotify = ClientRegistration.withRegistrationId("spotify")
+                .clientId("client").clientSecret("secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("http://127.0.0.1/callback")
+                .authorizationUri("http://127.0.0.1/authorize")
+                .tokenUri("http://127.0.0.1:" + tokenEndpoint.getAddress().getPort() + "/api/token")
+                .build();
+
+        tokenManager = new SpotifyTokenManager(userRepository, new InMemoryClientRegistrationRepository(spotify),
+                new ObjectMapper(), new SimpleMeterRegistry(), Duration.ofMinutes(5), Duration.ofSeconds(30),
+                Duration.ofHours(1), Duration.ofHours(2), Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        tokenEndpoint.stop(0);
+    }
+
+    @Test
+    void burstOfUnauthorizedCalls_refreshesOnce() throws Exception {
+        User user = user(1L, "expired", Instant.now().plusSeconds(3000));
+        ExecutorService callers = Executors.newFixedThreadPool(20);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(callers.submit(() -> {
+                start.await();
+                return tokenManager.refreshAfterUnauthorized(user, "expired");
+            }));
+        }
+        start.countDown();
+        for (Future<String> result : results) {
+            assertEquals("fresh-1", result.get());
+        }
+        callers.shutdownNow();
+
+        assertEquals(1, tokenCalls.get());
+        assertEquals("fresh-1", tokenManager.accessToken(user));
+        // Only the token columns are written, never the whole user row
+        verify(userRepository).updateSpotifyTokens(eq(1L), eq("fresh-1"), any(), any(Instant.class));
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void tokenCloseToExpiry_isRefreshedBeforeUse() {
+        User user = user(2L, "almost-expired", Instant.now().plusSeconds(10));
+
+        assertEquals("fresh-1", tokenManager.accessToken(user));
+        assertEquals("fresh-1", tokenManager.accessToken(user));
+        assertEquals(1, tokenCalls.get());
+    }
+
+    @Test
+    void backgroundSweep_refreshesOnlyTokensExpiringSoon() {
+        User expiring = user(3L, "expiring", Instant.now().plusSeconds(120));
+        User valid = user(4L, "valid", Instant.now().plusSeconds(3000));
+        tokenManager.accessToken(expiring);
+        tokenManager.accessToken(valid);
+
+        ReflectionTestUtils.invokeMethod(tokenManager, "refreshExpiring");
+
+        assertEquals(1, tokenCalls.get());
+        assertEquals("fresh-1", tokenManager.accessToken(expiring));
+        assertEquals("valid", tokenManager.accessToken(valid));
+    }
+
+    private static User user(long id, String accessToken, Instant expiresAt) {
+        User user = new User("user" + id, "user" + id + "@example.com", "password");
+        ReflectionTestUtils.setField(user, "id", id);
+        user.setSpotifyAccessToken(accessToken);
+        user.setSpotifyRefreshToken("refresh-" + id);
+        user.setSpotifyTokenExpiresAt(expiresAt);
+        return user;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
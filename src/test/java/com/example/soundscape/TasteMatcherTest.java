@@ -0,0 +1,231 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.MusicAnalysisSnapshot;
+import com.example.soundscape.models.User;
+import com.example.soundscape.models.UserMatch;
+import com.example.soundscape.repositories.MusicAnalysisSnapshotRepository;
+import com.example.soundscape.repositories.UserMatchRepository;
+import com.example.soundscape.repositories.UserRepository;
+import com.example.soundscape.services.MinHashIndex;
+import com.example.soundscape.services.MusicAnalysisSnapshots;
+import com.example.soundscape.services.TasteMatcher;
+import com.example.soundscape.services.TasteMatcher.Match;
+import com.example.soundscape.services.TasteProfile;
+import com.example.soundscape.spotify.GenreDictionary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * TasteMatcher with the users table stubbed: every user id exists and is connected.
+ */
+public class TasteMatcherTest {
+
+    private static final int USERS = 100_000;
+    private static final int SCENES = 1_000;
+    private static final int ARTISTS = SCENES * 50 + 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MusicAnalysisSnapshots musicAnalysisSnapshots = mock(MusicAnalysisSnapshots.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final UserMatchRepository userMatchRepository = mock(UserMatchRepository.class);
+    private TasteMatcher matcher;
+    private Consumer<MusicAnalysisSnapshot> snapshotSaved;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(userRepository.findAllById(any())).thenAnswer(call -> {
+            List<User> users = new ArrayList<>();
+            for (Long id : (Iterable<Long>) call.getArgument(0)) {
+                users.add(user(id));
+            }
+            return users;
+        });
+        matcher = new TasteMatcher(mock(MusicAnalysisSnapshotRepository.class), userRepository, userMatchRepository, musicAnalysisSnapshots,
+                new GenreDictionary(), objectMapper, mock(ScheduledExecutorService.class), 3, 5, 32, 1, 5000, 1);
+        ArgumentCaptor<Consumer<MusicAnalysisSnapshot>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(musicAnalysisSnapshots).onSnapshotSaved(listener.capture());
+        snapshotSaved = listener.getValue();
+    }
+
+    @Test
+    void snapshots_becomeProfiles_rankedBySharedArtistsThenGenres() throws Exception {
+        snapshotSaved.accept(snapshot(1, List.of("radiohead", "portishead", "bjork"), Map.of("trip hop", 6, "art rock", 5)));
+        snapshotSaved.accept(snapshot(2, List.of("portishead", "radiohead", "massive"), Map.of("trip hop", 4, "art rock", 2)));
+        snapshotSaved.accept(snapshot(3, List.of("bjork", "drake"), Map.of("art rock", 1, "rap", 6)));
+        snapshotSaved.accept(snapshot(4, List.of("tricky"), Map.of("trip hop", 3)));
+        snapshotSaved.accept(snapshot(5, List.of("drake"), Map.of("rap", 9)));
+
+        List<Match> matches = matcher.matches(user(1L));
+        assertEquals(List.of(2L, 3L, 4L), matches.stream().map(match -> match.user().getId()).toList());
+        assertEquals(List.of("Radiohead", "Portishead"), matches.get(0).sharedArtists());
+        assertEquals(List.of("Bjork"), matches.get(1).sharedArtists());
+        assertEquals(List.of(), matches.get(2).sharedArtists()); // genre only
+        assertTrue(matches.get(0).percent() > matches.get(1).percent());
+
+        // A refreshed snapshot replaces the profile
+        snapshotSaved.accept(snapshot(4, List.of("radiohead", "portishead", "bjork"), Map.of("trip hop", 6, "art rock", 5)));
+        Match same = matcher.matches(user(1L)).get(0);
+        assertEquals(4L, same.user().getId());
+        assertEquals(100, same.percent());
+    }
+
+    @Test
+    void storedMatches_areServedUntilTheViewersAnalysisIsNewer() throws Exception {
+        snapshotSaved.accept(snapshot(1, List.of("radiohead", "portishead"), Map.of("trip hop", 6)));
+        snapshotSaved.accept(snapshot(2, List.of("radiohead", "portishead"), Map.of("trip hop", 6)));
+        snapshotSaved.accept(snapshot(3, List.of("drake"), Map.of("rap", 9)));
+        Instant recomputedAt = Instant.now().plusSeconds(60);
+        when(userMatchRepository.findByUserIdAndModelVersionOrderByRank(1L, 1)).thenReturn(List.of(
+                new UserMatch(1L, 3L, 1, 0.5, 1, recomputedAt),
+                new UserMatch(1L, 2L, 2, 0.4, 1, recomputedAt)));
+
+        // As stored, though live scoring would put user 2 first and never list user 3
+        List<Match> stored = matcher.matches(user(1L));
+        assertEquals(List.of(3L, 2L), stored.stream().map(match -> match.user().getId()).toList());
+        assertEquals(50, stored.get(0).percent());
+        assertEquals(List.of("Radiohead", "Portishead"), stored.get(1).sharedArtists());
+
+        // A newer analysis of the viewer is scored live
+        MusicAnalysisSnapshot refreshed = snapshot(1, List.of("radiohead", "portishead"), Map.of("trip hop", 6));
+        refreshed.recomputed(refreshed.getAnalysis(), false, recomputedAt.plusSeconds(1));
+        snapshotSaved.accept(refreshed);
+        assertEquals(List.of(2L), matcher.matches(user(1L)).stream().map(match -> match.user().getId()).toList());
+    }
+
+    @Test
+    void aFailedLoad_isRetriedOnTheScheduler_untilProfilesAreLoaded() throws Exception {
+        MusicAnalysisSnapshotRepository snapshotRepository = mock(MusicAnalysisSnapshotRepository.class);
+        when(snapshotRepository.findByUserIdGreaterThanOrderByUserId(anyLong(), any(Pageable.class)))
+                .thenThrow(new IllegalStateException("database unavailable"))
+                .thenReturn(List.of(snapshot(7, List.of("radiohead"), Map.of("art rock", 3))));
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        TasteMatcher loading = new TasteMatcher(snapshotRepository, userRepository, userMatchRepository, musicAnalysisSnapshots,
+                new GenreDictionary(), objectMapper, scheduler, 3, 5, 32, 1, 5000, 1);
+        AtomicBoolean loaded = new AtomicBoolean();
+        loading.onLoaded(() -> loaded.set(true));
+
+        ReflectionTestUtils.invokeMethod(loading, "load");
+        assertFalse(loaded.get());
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(retry.capture(), eq(5_000L), eq(TimeUnit.MILLISECONDS));
+
+        retry.getValue().run();
+        assertTrue(loaded.get());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void aHundredThousandUsers_candidatesFindTheTopMatches() {
+        Random random = new Random(11);
+        for (int artist = 0; artist < ARTISTS; artist++) {
+            ReflectionTestUtils.invokeMethod(matcher, "artistIdOf", "artist" + artist, "Artist " + artist);
+        }
+        MinHashIndex lsh = (MinHashIndex) ReflectionTestUtils.getField(matcher, "lsh");
+        for (long userId = 1; userId <= USERS; userId++) {
+            TasteProfile profile = randomProfile(userId, random);
+            List<String> ids = Arrays.stream(profile.getArtists()).mapToObj(artist -> "artist" + artist).toList();
+            ReflectionTestUtils.invokeMethod(matcher, "put", profile, lsh.signature(ids), true);
+        }
+        ReflectionTestUtils.setField(matcher, "maxResults", 20);
+        Map<Long, TasteProfile> profiles = profiles();
+
+        double recall = 0;
+        int viewers = 20;
+        for (int i = 0; i < viewers; i++) {
+            long viewer = 1L + random.nextInt(USERS);
+            List<Long> exact = fullSort(profiles.get(viewer), profiles.values());
+            List<Long> found = matcher.matches(user(viewer)).stream().map(match -> match.user().getId()).toList();
+            recall += (double) found.stream().filter(exact::contains).count() / exact.size();
+        }
+        recall /= viewers;
+
+        int queries = 50;
+        long started = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            matcher.matches(user(1L + random.nextInt(USERS)));
+        }
+        long perQueryMs = (System.nanoTime() - started) / queries / 1_000_000;
+        System.out.printf("music matches over %d users: recall@20=%.3f, %dms per query%n", USERS, recall, perQueryMs);
+        assertTrue(recall >= 0.9, "recall@20 " + recall);
+    }
+
+    // Most of a user's artists come from one scene, some from a second and a few are everyone's favourites
+    private static TasteProfile randomProfile(long userId, Random random) {
+        int scene = random.nextInt(SCENES);
+        int secondScene = random.nextInt(SCENES);
+        Map<Integer, Integer> artists = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            int artist = i < 25 ? scene * 50 + random.nextInt(50)
+                    : i < 35 ? secondScene * 50 + random.nextInt(50)
+                    : SCENES * 50 + random.nextInt(200);
+            artists.merge(artist, 1 + random.nextInt(6), Integer::sum);
+        }
+        Map<Integer, Integer> genres = new HashMap<>(Map.of(scene, 10));
+        genres.merge(secondScene, 4, Integer::sum);
+        return TasteProfile.of(userId, artists, genres);
+    }
+
+    private static List<Long> fullSort(TasteProfile viewer, Collection<TasteProfile> candidates) {
+        List<Map.Entry<Long, Double>> scores = new ArrayList<>();
+        for (TasteProfile candidate : candidates) {
+            if (candidate.getUserId() != viewer.getUserId()) {
+                scores.add(Map.entry(candidate.getUserId(), viewer.similarity(candidate)));
+            }
+        }
+        scores.sort(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return scores.stream().limit(20).map(Map.Entry::getKey).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, TasteProfile> profiles() {
+        return (Map<Long, TasteProfile>) ReflectionTestUtils.getField(matcher, "profiles");
+    }
+
+    // Each artist in the short term only, with its name capitalized
+    private MusicAnalysisSnapshot snapshot(long userId, List<String> artists, Map<String, Integer> genreScores) throws Exception {
+        List<Map<String, Object>> shortTerm = new ArrayList<>();
+        for (String artist : artists) {
+            shortTerm.add(Map.of("id", artist, "name", Character.toUpperCase(artist.charAt(0)) + artist.substring(1)));
+        }
+        MusicAnalysisSnapshot snapshot = new MusicAnalysisSnapshot(userId);
+        snapshot.recomputed(objectMapper.writeValueAsString(Map.of("short_term_artists", shortTerm)), false, Instant.now());
+        snapshot.setGenres("[]", objectMapper.writeValueAsString(genreScores), "{}", null);
+        return snapshot;
+    }
+
+    private static User user(Long id) {
+        User user = new User("user" + id, "user" + id + "@example.com", "password");
+        ReflectionTestUtils.setField(user, "id", id);
+        user.setSpotifyAccessToken("token");
+        return user;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPayloads.TracksPage;
+import com.example.soundscape.spotify.TrackMetadataCache;
+import com.example.soundscape.spotify.TrackMetadataCache.TrackMetadata;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * TrackMetadataCache against a fake /tracks?ids= that records the ids of every call.
+ */
+public class TrackMetadataCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpotifyApiClient spotifyApiClient = mock(SpotifyApiClient.class);
+    private final ExecutorService fanOut = Executors.newFixedThreadPool(4);
+    private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+    private final User user = new User("listener", "listener@example.com", "password");
+
+    private TrackMetadataCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        user.setSpotifyAccessToken("token");
+        when(spotifyApiClient.get(any(User.class), anyString())).thenAnswer(call -> {
+            String url = call.getArgument(1);
+            List<String> ids = List.of(url.substring(url.indexOf("ids=") + 4).split(","));
+            calls.add(ids);
+            List<Object> tracks = new ArrayList<>();
+            for (String id : ids) {
+                tracks.add(id.startsWith("unknown") ? null : Map.of(
+                        "id", id,
+                        "name", "Song " + id,
+                        "artists", List.of(Map.of("name", "Artist " + id)),
+                        "album", Map.of("name", "Album", "images", List.of(Map.of("url", "https://i.scdn.co/" + id)))));
+            }
+            Map<String, Object> body = new HashMap<>();
+            body.put("tracks", tracks);
+            return ResponseEntity.ok(objectMapper.writeValueAsString(body));
+        });
+        when(spotifyApiClient.readValue(anyString(), eq(TracksPage.class)))
+                .thenAnswer(call -> objectMapper.readValue((String) call.getArgument(0), TracksPage.class));
+
+        cache = new TrackMetadataCache(spotifyApiClient, new SimpleMeterRegistry(), fanOut,
+                500, Duration.ofHours(1), Duration.ofMillis(50), Duration.ofSeconds(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanOut.shutdownNow();
+    }
+
+    @Test
+    void concurrentMisses_areResolvedInBatchesOfAtMostFifty() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(12);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, TrackMetadata>>> results = new ArrayList<>();
+        for (int caller = 0; caller < 12; caller++) {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                ids.add("track" + (caller * 10 + i));
+            }
+            results.add(callers.submit(() -> {
+                start.await();
+                return cache.getAll(user, ids);
+            }));
+        }
+        start.countDown();
+        for (Future<Map<String, TrackMetadata>> result : results) {
+            assertEquals(10, result.get().size());
+        }
+        callers.shutdownNow();
+
+        assertEquals(120, calls.stream().mapToInt(List::size).sum());
+        assertTrue(calls.size() >= 3 && calls.size() <= 4, "calls: " + calls.size());
+        assertTrue(calls.stream().allMatch(ids -> ids.size() <= 50));
+
+        TrackMetadata track = cache.get(user, "track7");
+        assertEquals("Song track7", track.name());
+        assertEquals("Artist track7", track.artist());
+        assertEquals("https://open.spotify.com/track/track7", track.spotifyUrl());
+        assertEquals(120, calls.stream().mapToInt(List::size).sum()); // served from the cache
+    }
+
+    @Test
+    void unknownTracks_areLeftOut() {
+        Map<String, TrackMetadata> found = cache.getAll(user, List.of("track1", "unknown1", "track1"));
+
+        assertEquals(Map.of("track1", found.get("track1")), found);
+        assertEquals(List.of(List.of("track1", "unknown1")), calls);
+    }
+
+    @Test
+    void idsThatAreNotSpotifyIds_neverReachTheSharedBatch() {
+        Map<String, TrackMetadata> found = cache.getAll(user,
+                List.of("track1", "track2,track3", "track4&market=SE", "track 5", "\"track6", ""));
+
+        assertEquals(List.of("track1"), List.copyOf(found.keySet()));
+        assertEquals(List.of(List.of("track1")), calls);
+    }
+
+    @Test
+    void getCached_neverWaits_andLoadsMissesInTheBackground() throws Exception {
+        assertTrue(cache.getCached(user, List.of("track1", "track2")).isEmpty());
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (cache.getCached(user, List.of("track1", "track2")).size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, cache.getCached(user, List.of("track1", "track2")).size());
+        assertEquals(1, calls.size());
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.soundscape;
+
+import com.example.soundscape.models.User;
+import com.example.soundscape.services.TrackSearch;
+import com.example.soundscape.spotify.SpotifyApiClient;
+import com.example.soundscape.spotify.SpotifyPayloads.TrackSearchResults;
+import com.example.soundscape.spotify.SpotifyResponses.TrackResult;
+import com.example.soundscape.spotify.TrackMetadataCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * TrackSearch against a fake /search over a small catalog: three "radio" tracks and sixty
+ * "love" songs, matched word by word the way Spotify matches a query being typed.
+ */
+public class TrackSearchTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpotifyApiClient spotifyApiClient = mock(SpotifyApiClient.class);
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(2);
+    private final List<String> queries = new CopyOnWriteArrayList<>();
+    private final List<Map<String, Object>> catalog = new ArrayList<>();
+
+    private TrackSearch search;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        catalog.add(track("t1", "Radio Ga Ga", "Queen"));
+        catalog.add(track("t2", "Radioactive", "Imagine Dragons"));
+        catalog.add(track("t3", "Video Killed the Radio Star", "The Buggles"));
+        for (int i = 0; i < 60; i++) {
+            catalog.add(track("love" + i, "Love Song " + i, i == 7 ? "Lorde" : "Someone"));
+        }
+
+        when(spotifyApiClient.get(any(User.class), anyString())).thenAnswer(call -> {
+            String url = call.getArgument(1);
+            String query = URLDecoder.decode(url.substring(url.indexOf("q=") + 2, url.indexOf('&')), StandardCharsets.UTF_8);
+            queries.add(query);
+            List<Map<String, Object>> matching = catalog.stream().filter(track -> matches(track, query)).toList();
+            return ResponseEntity.ok(objectMapper.writeValueAsString(Map.of("tracks", Map.of(
+                    "items", matching.subList(0, Math.min(50, matching.size())),
+                    "total", matching.size()))));
+        });
+        when(spotifyApiClient.readValue(anyString(), eq(TrackSearchResults.class)))
+                .thenAnswer(call -> objectMapper.readValue((String) call.getArgument(0), TrackSearchResults.class));
+
+        search = new TrackSearch(spotifyApiClient, mock(TrackMetadataCache.class), new SimpleMeterRegistry(), scheduler,
+                Duration.ofMillis(150), Duration.ofMinutes(10), 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void typingBurst_costsOneSpotifyCall() throws Exception {
+        User user = user(1L);
+        ExecutorService browser = Executors.newCachedThreadPool();
+        List<Future<Optional<List<TrackResult>>>> results = new ArrayList<>();
+        for (String typed : List.of("r", "ra", "rad", "radi", "Radio")) {
+            results.add(browser.submit(() -> search.search(user, typed)));
+            Thread.sleep(30);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(results.get(i).get().isEmpty(), "keystroke " + i + " should be superseded");
+        }
+        assertEquals(List.of("t1", "t2", "t3"), ids(results.get(4).get().orElseThrow()));
+        assertEquals(List.of("radio"), queries);
+        browser.shutdownNow();
+    }
+
+    @Test
+    void longerQueries_areAnsweredFromCachedPrefixes_acrossUsers() {
+        assertEquals(3, search.search(user(1L), "radio").orElseThrow().size());
+        assertEquals(10, search.search(user(1L), "lo").orElseThrow().size());
+        assertEquals(List.of("radio", "lo"), queries);
+
+        // "radio" was exhaustive, so anything longer is a filter of it
+        assertEquals(List.of("t1"), ids(search.search(user(2L), "Radio  ga").orElseThrow()));
+        assertEquals(List.of("t2"), ids(search.search(user(2L), "radioactive").orElseThrow()));
+        // "lo" had more than one page, but its filter still fills one
+        assertEquals(10, search.search(user(2L), "love").orElseThrow().size());
+        assertEquals(List.of("radio", "lo"), queries);
+
+        // ...and does not when too few of the cached fifty match, so Spotify is asked
+        assertEquals(List.of("love7"), ids(search.search(user(2L), "lo lorde").orElseThrow()));
+        assertEquals(List.of("radio", "lo", "lo lorde"), queries);
+    }
+
+    private static Map<String, Object> track(String id, String name, String artist) {
+        return Map.of("id", id, "name", name,
+                "artists", List.of(Map.of("name", artist)),
+                "album", Map.of("name", name, "images", List.of()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matches(Map<String, Object> track, String query) {
+        String artist = (String) ((List<Map<String, Object>>) track.get("artists")).get(0).get("name");
+        List<String> words = List.of((track.get("name") + " " + artist).toLowerCase().split(" "));
+        for (String term : query.split(" ")) {
+            if (words.stream().noneMatch(word -> word.startsWith(term))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> ids(List<TrackResult> tracks) {
+        return tracks.stream().map(TrackResult::id).toList();
+    }
+
+    private static User user(long id) {
+        User user = new User("listener" + id, "listener" + id + "@example.com", "password");
+        ReflectionTestUtils.setField(user, "id", id);
+        return user;
+    }
+}